@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2011 Michael Griffel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * This distribution includes other third-party libraries.
+ * These libraries and their corresponding licenses (where different
+ * from the GNU General Public License) are enumerated below.
+ *
+ * PlantUML is a Open-Source tool in Java to draw UML Diagram.
+ * The software is developed by Arnaud Roques at
+ * http://plantuml.sourceforge.org.
+ */
+package de.griffel.confluence.plugins.plantuml;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.common.base.Joiner;
+
+/**
+ * Generated sample diagrams of the benchmarks.
+ */
+public final class BenchmarkCorpus {
+
+   /**
+    * Size of a sample diagram.
+    */
+   public enum Size {
+      small(20), medium(500), huge(5000);
+
+      private final int lines;
+
+      private Size(int lines) {
+         this.lines = lines;
+      }
+
+      public int getLines() {
+         return lines;
+      }
+   }
+
+   private BenchmarkCorpus() {
+   }
+
+   /**
+    * Returns the body of a class diagram. Every 10th line is an URL, alternating between a link to a Confluence page
+    * and an absolute URL, and every 100th line includes the page <tt>Common</tt>.
+    *
+    * @param size the size of the diagram.
+    * @return the lines of the diagram.
+    */
+   public static List<String> classDiagram(Size size) {
+      final List<String> lines = new ArrayList<String>(size.getLines());
+      for (int i = 0; i < size.getLines(); i++) {
+         if (i % 100 == 50) {
+            lines.add("!include Common");
+         } else if (i % 20 == 0) {
+            lines.add("url of Class" + i + " is [[Home]]");
+         } else if (i % 10 == 0) {
+            lines.add("url of Class" + i + " is [[http://www.example.com/" + i + "]]");
+         } else if (i % 2 == 0) {
+            lines.add("class Class" + i);
+         } else {
+            lines.add("Class" + (i - 1) + " --> Class" + (i + 1) + " : uses");
+         }
+      }
+      return lines;
+   }
+
+   /**
+    * Returns the body of a class diagram where every 100th line is an absolute URL.
+    *
+    * @param size the size of the diagram.
+    * @return the lines of the diagram.
+    */
+   public static List<String> externalUrlDiagram(Size size) {
+      final List<String> lines = new ArrayList<String>(size.getLines());
+      for (int i = 0; i < size.getLines(); i++) {
+         if (i % 100 == 0) {
+            lines.add("url of Class" + i + " is [[http://www.example.com/" + i + "]]");
+         } else if (i % 2 == 0) {
+            lines.add("class Class" + i);
+         } else {
+            lines.add("Class" + (i - 1) + " --> Class" + (i + 1) + " : uses");
+         }
+      }
+      return lines;
+   }
+
+   /**
+    * Returns a complete sequence diagram, which is rendered without Graphviz.
+    *
+    * @param size the size of the diagram; the diagram has a tenth of its lines as messages.
+    * @return the diagram.
+    */
+   public static String sequenceDiagram(Size size) {
+      final StringBuilder sb = new StringBuilder("@startuml\n");
+      for (int i = 0; i < size.getLines() / 10; i++) {
+         sb.append("Participant").append(i % 7).append(" -> Participant").append((i + 3) % 7)
+               .append(" : message ").append(i).append('\n');
+      }
+      return sb.append("@enduml\n").toString();
+   }
+
+   /**
+    * Returns the edges of a graph as they are appended by the space and link graph macros.
+    *
+    * @param size the size of the graph.
+    * @return the edges of the graph.
+    */
+   public static List<String> graphEdges(Size size) {
+      final List<String> edges = new ArrayList<String>(size.getLines());
+      for (int i = 1; i < size.getLines(); i++) {
+         edges.add("\"Page " + (i / 4) + "\" -> \"Page " + i + "\" [URL=\"http://localhost/pages/" + i + "\"];");
+      }
+      return edges;
+   }
+
+   /**
+    * Returns an HTML image map as exported by PlantUML.
+    *
+    * @param size the size of the image map; the map has a tenth of its lines as areas.
+    * @return the image map.
+    */
+   public static String imageMap(Size size) {
+      final StringBuilder sb = new StringBuilder("<map id=\"plantuml123_map\" name=\"plantuml123_map\">\n");
+      for (int i = 0; i < size.getLines() / 10; i++) {
+         sb.append("<area shape=\"rect\" id=\"id").append(i).append("\" href=\"http://localhost/pages/").append(i)
+               .append("\" title=\"Page ").append(i).append("\" alt=\"\" coords=\"").append(i).append(",10,")
+               .append(i + 100).append(",40\"/>\n");
+      }
+      return sb.append("</map>").toString();
+   }
+
+   public static String join(List<String> lines) {
+      return Joiner.on('\n').join(lines);
+   }
+}
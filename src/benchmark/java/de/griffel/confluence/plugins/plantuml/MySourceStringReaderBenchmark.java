@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2011 Michael Griffel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * This distribution includes other third-party libraries.
+ * These libraries and their corresponding licenses (where different
+ * from the GNU General Public License) are enumerated below.
+ *
+ * PlantUML is a Open-Source tool in Java to draw UML Diagram.
+ * The software is developed by Arnaud Roques at
+ * http://plantuml.sourceforge.org.
+ */
+package de.griffel.confluence.plugins.plantuml;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import net.sourceforge.plantuml.FileFormat;
+import net.sourceforge.plantuml.preproc.Defines;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.griffel.confluence.plugins.plantuml.PlantUmlMacro.MySourceStringReader;
+
+/**
+ * Benchmark of parsing and exporting a diagram with {@link MySourceStringReader}, i.e. the work of a render task.
+ * Sequence diagrams are used, so that no Graphviz installation is needed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class MySourceStringReaderBenchmark {
+
+   @Param({ "small", "medium", "huge" })
+   public BenchmarkCorpus.Size size;
+
+   @Param({ "PNG", "SVG" })
+   public FileFormat fileFormat;
+
+   private String source;
+
+   @Setup
+   public void setUp() {
+      source = BenchmarkCorpus.sequenceDiagram(size);
+   }
+
+   @Benchmark
+   public MySourceStringReader parse() {
+      return new MySourceStringReader(new Defines(), source, Collections.<String> emptyList());
+   }
+
+   @Benchmark
+   public byte[] parseAndExport() throws IOException {
+      final MySourceStringReader reader =
+            new MySourceStringReader(new Defines(), source, Collections.<String> emptyList());
+      final ByteArrayOutputStream out = new ByteArrayOutputStream();
+      reader.renderImage(out, fileFormat, 0);
+      return out.toByteArray();
+   }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2011 Michael Griffel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * This distribution includes other third-party libraries.
+ * These libraries and their corresponding licenses (where different
+ * from the GNU General Public License) are enumerated below.
+ *
+ * PlantUML is a Open-Source tool in Java to draw UML Diagram.
+ * The software is developed by Arnaud Roques at
+ * http://plantuml.sourceforge.org.
+ */
+package de.griffel.confluence.plugins.plantuml.preprocess;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import net.sourceforge.plantuml.core.DiagramType;
+import net.sourceforge.plantuml.core.UmlSource;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.collect.ImmutableList;
+
+import de.griffel.confluence.plugins.plantuml.BenchmarkCorpus;
+import de.griffel.confluence.plugins.plantuml.Mocks;
+import de.griffel.confluence.plugins.plantuml.config.PlantUmlConfigurationBean;
+import de.griffel.confluence.plugins.plantuml.type.UmlSourceBuilder;
+
+/**
+ * Benchmark of the preprocessor, which expands includes and replaces URLs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class PlantUmlPreprocessorBenchmark {
+
+   @Param({ "small", "medium", "huge" })
+   public BenchmarkCorpus.Size size;
+
+   private UmlSource umlSource;
+   private UmlSourceLocator locator;
+   private PreprocessingContext context;
+
+   @Setup
+   public void setUp() {
+      umlSource = new UmlSourceBuilder(DiagramType.UML, false, false, new PlantUmlConfigurationBean())
+            .append(BenchmarkCorpus.classDiagram(size)).build();
+      final UmlSource include = new UmlSourceBuilder(DiagramType.UML, false, false, new PlantUmlConfigurationBean())
+            .append(ImmutableList.of("class Common", "Common --> Class0")).build();
+      locator = new UmlSourceLocator() {
+         public UmlSource get(String name) {
+            return include;
+         }
+
+         public Set<Long> getDependencies() {
+            return Collections.emptySet();
+         }
+      };
+      context = new Mocks().getPreprocessingContext();
+   }
+
+   @Benchmark
+   public String toUmlBlock() throws IOException {
+      return new PlantUmlPreprocessor(umlSource, locator, context).toUmlBlock();
+   }
+}
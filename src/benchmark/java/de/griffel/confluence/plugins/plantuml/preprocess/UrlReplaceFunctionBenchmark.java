@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2011 Michael Griffel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * This distribution includes other third-party libraries.
+ * These libraries and their corresponding licenses (where different
+ * from the GNU General Public License) are enumerated below.
+ *
+ * PlantUML is a Open-Source tool in Java to draw UML Diagram.
+ * The software is developed by Arnaud Roques at
+ * http://plantuml.sourceforge.org.
+ */
+package de.griffel.confluence.plugins.plantuml.preprocess;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import de.griffel.confluence.plugins.plantuml.BenchmarkCorpus;
+import de.griffel.confluence.plugins.plantuml.Mocks;
+
+/**
+ * Benchmark of replacing the URLs of a diagram, including the links to Confluence pages.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class UrlReplaceFunctionBenchmark {
+
+   @Param({ "small", "medium", "huge" })
+   public BenchmarkCorpus.Size size;
+
+   private List<String> lines;
+   private UrlReplaceFunction function;
+   private PreprocessingContext context;
+
+   @Setup
+   public void setUp() {
+      lines = BenchmarkCorpus.classDiagram(size);
+      function = new UrlReplaceFunction();
+      context = new Mocks().getPreprocessingContext();
+   }
+
+   @Benchmark
+   public void apply(Blackhole blackhole) throws IOException, PreprocessingException {
+      for (String line : lines) {
+         blackhole.consume(function.isApplicable(line) ? function.apply(context, line) : line);
+      }
+   }
+}
@@ -38,6 +38,18 @@ import de.griffel.confluence.plugins.plantuml.type.GraphBuilder;
  */
 abstract class AbstractFlowChartMacroImpl {
    public String execute(Map<String, String> params, String body, RenderContext context) throws MacroException {
+      final String dotString = toDotString(params, body);
+      return executePlantUmlMacro(params, dotString, context);
+   }
+
+   /**
+    * Returns the dot source of a flowchart and sets the PlantUML macro parameters to render it.
+    *
+    * @param params the flowchart macro parameters; updated to the PlantUML macro parameters.
+    * @param body the flowchart macro body.
+    * @return the dot source of the flowchart.
+    */
+   static String toDotString(Map<String, String> params, String body) {
       final FlowChartMacroParams macroParams = new FlowChartMacroParams(params);
 
       final GraphBuilder graphBuilder = new GraphBuilder().appendGraph(body.trim())
@@ -48,14 +60,12 @@ abstract class AbstractFlowChartMacroImpl {
             .withNodeFontname(macroParams.getNodeFontname())
             .withNodeFontsize(macroParams.getNodeFontsize());
 
-      final String dotString = graphBuilder.build();
-
       params.put(PlantUmlMacroParams.Param.type.name(), DiagramType.DOT.name());
       if (macroParams.isDebug()) {
          params.put(PlantUmlMacroParams.Param.debug.name(), Boolean.TRUE.toString());
       }
 
-      return executePlantUmlMacro(params, dotString, context);
+      return graphBuilder.build();
    }
 
    protected abstract String executePlantUmlMacro(Map<String, String> params, String dotString, RenderContext context)
@@ -32,41 +32,66 @@ import com.atlassian.confluence.links.OutgoingLink;
 import com.atlassian.confluence.pages.Page;
 import com.atlassian.confluence.pages.PageManager;
 import com.atlassian.confluence.renderer.PageContext;
-import com.atlassian.confluence.security.Permission;
 import com.atlassian.confluence.security.PermissionManager;
 import com.atlassian.confluence.setup.settings.SettingsManager;
-import com.atlassian.confluence.spaces.Space;
 import com.atlassian.confluence.spaces.SpaceManager;
-import com.atlassian.confluence.util.GeneralUtil;
-import com.atlassian.confluence.user.AuthenticatedUserThreadLocal;
 import com.atlassian.renderer.RenderContext;
 import com.atlassian.renderer.v2.macro.MacroException;
-import com.google.common.collect.Sets;
+import de.griffel.confluence.plugins.plantuml.graph.LinkGraph;
+import de.griffel.confluence.plugins.plantuml.graph.LinkIndex;
+import de.griffel.confluence.plugins.plantuml.graph.LongHashSet;
+import de.griffel.confluence.plugins.plantuml.graph.LongPairHashSet;
+import de.griffel.confluence.plugins.plantuml.graph.PageHierarchyIndex;
+import de.griffel.confluence.plugins.plantuml.graph.SpaceHierarchy;
+import de.griffel.confluence.plugins.plantuml.render.RenderBudget;
 import net.sourceforge.plantuml.core.DiagramType;
 import org.apache.commons.lang.StringUtils;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.regex.Pattern;
 
 /**
  * Implementation of {linkgraph} and {spacegraph} macros.
  */
 abstract class AbstractLinkAndSpaceGraphMacroImpl {
+   private static final Pattern SPECIAL_CHARACTERS = Pattern.compile("([<>{}|\"])");
+
+   /**
+    * Orders pages like {@link SpaceHierarchy}, so that the graph does not change once the page tree of the space has
+    * been built.
+    */
+   private static final Comparator<Page> BY_TITLE = new Comparator<Page>() {
+      public int compare(Page a, Page b) {
+         return StringUtils.defaultString(a.getTitle()).compareToIgnoreCase(StringUtils.defaultString(b.getTitle()));
+      }
+   };
 
    private ContentPropertyManager _cpm;
-   private PermissionManager _pm;
+   private PageManager _pageManager;
+   private SpaceHierarchy _pageHierarchy;
+   private LinkGraph _linkGraph;
+   private ViewPermissionFilter _permissionFilter;
    private String _baseUrl;
    private LinkAndSpaceGraphMacroParams _macroParams;
-   private Set<ContentEntityObject> _visitedReferredPages = Sets.newHashSet();
-   private Set<ContentEntityObject> _visitedReferringPages = Sets.newHashSet();
-   private Set<String> _visitedEdges = Sets.newHashSet();
+   private LongHashSet _visitedReferredPages = new LongHashSet();
+   private LongHashSet _visitedReferringPages = new LongHashSet();
+   private LongHashSet _deniedPages = new LongHashSet();
+   private LongPairHashSet _visitedEdges = new LongPairHashSet();
 
    public String execute(Map<String, String> params, String dotString, RenderContext context) throws MacroException {
+      if (RenderBudget.get() != null) {
+         // the graphs depend on the permissions of the viewer, which background jobs like the cache warm-up don't have
+         return "";
+      }
       final LinkAndSpaceGraphMacroParams macroParams = new LinkAndSpaceGraphMacroParams(params);
 
       params.put(PlantUmlMacroParams.Param.type.name(), DiagramType.DOT.name());
@@ -83,11 +108,12 @@ abstract class AbstractLinkAndSpaceGraphMacroImpl {
    // ============================= SPACE GRAPH =============================
    public String createDotForSpaceGraph(Map<String, String> params, PageContext pageContext, SpaceManager spaceManager,
            PageManager pageManager, SettingsManager settingsManager, PermissionManager permissionManager,
-           ContentPropertyManager contentPropertyManager) {
+           ContentPropertyManager contentPropertyManager, PageHierarchyIndex pageHierarchyIndex) {
 
       _baseUrl = settingsManager.getGlobalSettings().getBaseUrl();
-      _pm = permissionManager;
+      _permissionFilter = new ViewPermissionFilter(permissionManager);
       _cpm = contentPropertyManager;
+      _pageManager = pageManager;
       _macroParams = new LinkAndSpaceGraphMacroParams(params);
 
       String spaceKey = _macroParams.getSpace();
@@ -119,50 +145,133 @@ abstract class AbstractLinkAndSpaceGraphMacroImpl {
                && isViewPermitted(startPage)
                && !startPage.isDeleted()) {
             rootPages.add(startPage);
-            sb.append(buildDotNode(startPage));
+            _pageHierarchy = pageHierarchyIndex.getHierarchy(startPage.getSpaceKey());
          } else {
             sb.append(buildDotNode(spaceKey + "/" + startPageTitle + " not found"));
          }
       } else {
-         final Space space = spaceManager.getSpace(spaceKey);
-
-         final List<Page> pageList = pageManager.getPages(space, true /* only current ones */);
-         for (Page page : pageList) {
-            if (page.getAncestors().isEmpty()
-                  && isViewPermitted(page)
-                  && !page.isDeleted()) {
-               rootPages.add(page);
-               sb.append(buildDotNode(page));
+         _pageHierarchy = pageHierarchyIndex.getHierarchy(spaceKey);
+
+         final List<Page> candidates = new ArrayList<Page>();
+         if (_pageHierarchy != null) {
+            addPages(candidates, _pageHierarchy.getRootIds());
+         } else {
+            for (Page page : pageManager.getTopLevelPages(spaceManager.getSpace(spaceKey))) {
+               if (!page.isDeleted()) {
+                  candidates.add(page);
+               }
             }
+            Collections.sort(candidates, BY_TITLE);
          }
+         rootPages.addAll(_permissionFilter.filter(candidates));
       }
 
-      sb.append(processChildren(rootPages, _macroParams.getDepth(), 0 /* currentDepth */));
+      appendPageTree(sb, rootPages, _macroParams.getDepth(), _macroParams.getMaxNodes());
       sb.append("}\n");
 
       return sb.toString();
    }
 
-   String processChildren(List<Page> parents, int depth, int currentDepth) {
-      if (currentDepth >= depth) {
-         return "";
+   /**
+    * Appends the root pages and their descendants breadth first, one level of the page tree at a time, so that the
+    * pages nearest to the roots are kept when the node budget is used up. The permissions of the children are checked
+    * with a single bulk check per level. Each parent with pages left out gets a "+ N more" node.
+    *
+    * @param sb the DOT output.
+    * @param rootPages the visible root pages.
+    * @param depth the number of levels below the root pages.
+    * @param maxNodes the maximum number of pages in the graph.
+    */
+   void appendPageTree(StringBuilder sb, List<Page> rootPages, int depth, int maxNodes) {
+      final LongHashSet visitedPageIds = new LongHashSet();
+      List<Page> currentLevel = new ArrayList<Page>();
+      for (Page page : rootPages) {
+         if (visitedPageIds.add(page.getId()) && currentLevel.size() < maxNodes) {
+            sb.append(buildDotNode(page));
+            currentLevel.add(page);
+         }
+      }
+      if (currentLevel.size() < visitedPageIds.size()) {
+         sb.append(buildDotTruncationNode("roots", visitedPageIds.size() - currentLevel.size()));
       }
 
-      final StringBuilder sb = new StringBuilder();
-
-      for (Page page : parents) {
-         final List<Page> children = page.getChildren();
+      int nodeCount = currentLevel.size();
+      for (int currentDepth = 0; currentDepth < depth && !currentLevel.isEmpty(); currentDepth++) {
+         final Map<Page, List<Page>> childrenByParent = new LinkedHashMap<Page, List<Page>>();
+         final List<Page> candidates = new ArrayList<Page>();
+         for (Page page : currentLevel) {
+            final List<Page> children = new ArrayList<Page>();
+            for (Page child : getChildren(page)) {
+               if (!child.isDeleted() && !visitedPageIds.contains(child.getId())) {
+                  children.add(child);
+               }
+            }
+            childrenByParent.put(page, children);
+            candidates.addAll(children);
+         }
+         final LongHashSet visibleChildIds = new LongHashSet();
+         for (Page child : _permissionFilter.filter(candidates)) {
+            visibleChildIds.add(child.getId());
+         }
 
-         sb.append(processChildren(children, depth, currentDepth + 1));
-         for (Page child : children) {
-            if (isViewPermitted(child)
-                  && !child.isDeleted()) {
+         final List<Page> nextLevel = new ArrayList<Page>();
+         for (Map.Entry<Page, List<Page>> entry : childrenByParent.entrySet()) {
+            // quoted on the first edge, so that pages without visible children are not formatted
+            String parentTitle = null;
+            int omitted = 0;
+            for (Page child : entry.getValue()) {
+               if (!visibleChildIds.contains(child.getId()) || !visitedPageIds.add(child.getId())) {
+                  continue;
+               }
+               if (nodeCount >= maxNodes) {
+                  omitted++;
+                  continue;
+               }
+               nodeCount++;
+               if (parentTitle == null) {
+                  parentTitle = quote(entry.getKey().getDisplayTitle());
+               }
                sb.append(buildDotNode(child));
-               sb.append(buildDotEdge(quote(page.getDisplayTitle()), quote(child.getDisplayTitle())));
+               sb.append(buildDotEdge(parentTitle, quote(child.getDisplayTitle())));
+               nextLevel.add(child);
+            }
+            if (omitted > 0) {
+               if (parentTitle == null) {
+                  parentTitle = quote(entry.getKey().getDisplayTitle());
+               }
+               final String node = String.valueOf(entry.getKey().getId());
+               sb.append(buildDotTruncationNode(node, omitted));
+               sb.append("\"").append(parentTitle).append("\" -> \"more:").append(node)
+                     .append("\" [style=\"dashed\"];\n");
             }
          }
+         currentLevel = nextLevel;
+      }
+   }
+
+   /**
+    * Returns the children of the given page ordered by title. They are looked up in the page tree index if the tree of
+    * the space is available, so that only the children themselves are loaded instead of the child collection of the
+    * page.
+    */
+   private List<Page> getChildren(Page page) {
+      if (_pageHierarchy == null || !_pageHierarchy.contains(page.getId())) {
+         final List<Page> children = new ArrayList<Page>(page.getChildren());
+         Collections.sort(children, BY_TITLE);
+         return children;
+      }
+      final List<Page> children = new ArrayList<Page>();
+      addPages(children, _pageHierarchy.getChildIds(page.getId()));
+      return children;
+   }
+
+   private void addPages(List<Page> pages, long[] pageIds) {
+      for (long pageId : pageIds) {
+         final Page page = _pageManager.getPage(pageId);
+         if (page != null) {
+            pages.add(page);
+         }
       }
-      return sb.toString();
    }
 
    // ============================= LINK GRAPH =============================
@@ -171,11 +280,13 @@ abstract class AbstractLinkAndSpaceGraphMacroImpl {
     */
    public String createDotForLinkGraph(Map<String, String> params, PageContext pageContext, SpaceManager spaceManager,
            PageManager pageManager, SettingsManager settingsManager, PermissionManager permissionManager,
-           ContentPropertyManager contentPropertyManager, LinkManager linkManager) {
+           ContentPropertyManager contentPropertyManager, LinkManager linkManager, LinkIndex linkIndex) {
 
       _baseUrl = settingsManager.getGlobalSettings().getBaseUrl();
-      _pm = permissionManager;
+      _permissionFilter = new ViewPermissionFilter(permissionManager);
       _cpm = contentPropertyManager;
+      _pageManager = pageManager;
+      _linkGraph = linkIndex.getLinkGraph();
       _macroParams = new LinkAndSpaceGraphMacroParams(params);
 
       String spaceKey = _macroParams.getSpace();
@@ -203,14 +314,14 @@ abstract class AbstractLinkAndSpaceGraphMacroImpl {
 
       final Collection<ContentEntityObject> rootPages = new ArrayList<ContentEntityObject>();
       final Page startPage = pageManager.getPage(spaceKey, startPageTitle);
-	  this._visitedReferredPages.add(startPage);
-	  this._visitedReferringPages.add(startPage);
-	  
+
       if (startPage != null
             && isViewPermitted(startPage)
             && !startPage.isDeleted()) {
 
          rootPages.add(startPage);
+         this._visitedReferredPages.add(startPage.getId());
+         this._visitedReferringPages.add(startPage.getId());
 
          final int currentDepth = 0;
          final Set<String> allowedLabels = _macroParams.getLabels();
@@ -228,72 +339,167 @@ abstract class AbstractLinkAndSpaceGraphMacroImpl {
       return sb.toString();
    }
 
+   /**
+    * Processes the pages referring to the pages of one link level. The candidates of the whole level are collected
+    * first and checked with a single bulk permission check.
+    */
    void processReferringPages(StringBuilder sb, Collection<ContentEntityObject> pagesToFindReferringOnes, int maxDepth, int currentDepth, Set<String> allowedLabels, PageManager pageManager, LinkManager linkManager) {
-      if (currentDepth >= maxDepth) {
+      if (currentDepth >= maxDepth || pagesToFindReferringOnes.isEmpty()) {
          return;
       }
 
+      final Map<ContentEntityObject, List<ContentEntityObject>> candidatesByPage =
+            new LinkedHashMap<ContentEntityObject, List<ContentEntityObject>>();
       for (ContentEntityObject currentPage : pagesToFindReferringOnes) {
-         final Collection<ContentEntityObject> visibleReferringPages = new ArrayList<ContentEntityObject>();
-
-         for (ContentEntityObject referringPage : linkManager.getReferringContent(currentPage)) {
+         final List<ContentEntityObject> candidates = new ArrayList<ContentEntityObject>();
+         for (ContentEntityObject referringPage : getReferringContent(currentPage, linkManager)) {
             if ((referringPage != null)
                   && (currentPage.getId() != referringPage.getId())
-				  && !this._visitedReferringPages.contains(referringPage)
-                  && isViewPermitted(referringPage)
+                  && !this._visitedReferringPages.contains(referringPage.getId())
+                  && !this._deniedPages.contains(referringPage.getId())
                   && !referringPage.isDeleted()
                   && doesLabelFit(referringPage, allowedLabels)) {
-               visibleReferringPages.add(referringPage);
-			   this._visitedReferringPages.add(referringPage);
+               candidates.add(referringPage);
             }
          }
-         processReferringPages(sb, visibleReferringPages, maxDepth, currentDepth + 1, allowedLabels, pageManager, linkManager);
+         candidatesByPage.put(currentPage, candidates);
+      }
+
+      final Map<ContentEntityObject, Collection<ContentEntityObject>> visibleByPage = filterViewPermitted(candidatesByPage, this._visitedReferringPages);
+      final Collection<ContentEntityObject> nextLevel = new ArrayList<ContentEntityObject>();
+      for (Collection<ContentEntityObject> visibleReferringPages : visibleByPage.values()) {
+         nextLevel.addAll(visibleReferringPages);
+      }
+      processReferringPages(sb, nextLevel, maxDepth, currentDepth + 1, allowedLabels, pageManager, linkManager);
 
-         for (ContentEntityObject referringPage : visibleReferringPages) {
+      for (Map.Entry<ContentEntityObject, Collection<ContentEntityObject>> entry : visibleByPage.entrySet()) {
+         final ContentEntityObject currentPage = entry.getKey();
+         for (ContentEntityObject referringPage : entry.getValue()) {
             sb.append(buildDotNode(referringPage));
-            final String edge = buildDotEdge(quote(referringPage.getDisplayTitle()), quote(currentPage.getDisplayTitle()));
-            if (!this._visitedEdges.contains(edge)) {
-               this._visitedEdges.add(edge);
-               sb.append(edge);
+            if (this._visitedEdges.add(referringPage.getId(), currentPage.getId())) {
+               sb.append(buildDotEdge(quote(referringPage.getDisplayTitle()), quote(currentPage.getDisplayTitle())));
             }
          }
-
       }
    }
 
+   /**
+    * Processes the pages referred to by the pages of one link level. The candidates of the whole level are collected
+    * first and checked with a single bulk permission check.
+    */
    void processReferredPages(StringBuilder sb, Collection<ContentEntityObject> pagesToFindOutgoingLinks, int maxDepth, int currentDepth, Set<String> allowedLabels, PageManager pageManager) {
-      if (currentDepth >= maxDepth) {
+      if (currentDepth >= maxDepth || pagesToFindOutgoingLinks.isEmpty()) {
          return;
       }
 
+      final Map<ContentEntityObject, List<ContentEntityObject>> candidatesByPage =
+            new LinkedHashMap<ContentEntityObject, List<ContentEntityObject>>();
       for (ContentEntityObject currentPage : pagesToFindOutgoingLinks) {
-         final Collection<ContentEntityObject> visibleReferredPages = new ArrayList<ContentEntityObject>();
+         final List<ContentEntityObject> candidates = new ArrayList<ContentEntityObject>();
+         for (Page referredPage : getReferredPages(currentPage, pageManager)) {
+            if ((referredPage != null)
+                  && (referredPage.getId() != currentPage.getId())
+                  && !this._visitedReferredPages.contains(referredPage.getId())
+                  && !this._deniedPages.contains(referredPage.getId())
+                  && !referredPage.isDeleted()
+                  && doesLabelFit(referredPage, allowedLabels)) {
+               candidates.add(referredPage);
+            }
+         }
+         candidatesByPage.put(currentPage, candidates);
+      }
+
+      final Map<ContentEntityObject, Collection<ContentEntityObject>> visibleByPage = filterViewPermitted(candidatesByPage, this._visitedReferredPages);
+      final Collection<ContentEntityObject> nextLevel = new ArrayList<ContentEntityObject>();
+      for (Collection<ContentEntityObject> visibleReferredPages : visibleByPage.values()) {
+         nextLevel.addAll(visibleReferredPages);
+      }
+      processReferredPages(sb, nextLevel, maxDepth, currentDepth + 1, allowedLabels, pageManager);
+
+      for (Map.Entry<ContentEntityObject, Collection<ContentEntityObject>> entry : visibleByPage.entrySet()) {
+         final ContentEntityObject currentPage = entry.getKey();
+         for (ContentEntityObject referredPage : entry.getValue()) {
+            sb.append(buildDotNode(referredPage));
+            if (this._visitedEdges.add(currentPage.getId(), referredPage.getId())) {
+               sb.append(buildDotEdge(quote(currentPage.getDisplayTitle()), quote(referredPage.getDisplayTitle())));
+            }
+         }
+      }
+   }
 
-         for (OutgoingLink outgoingLink : currentPage.getOutgoingLinks()) {
+   /**
+    * Returns the content linking to the given page, from the link index if it is available.
+    */
+   private Collection<ContentEntityObject> getReferringContent(ContentEntityObject page, LinkManager linkManager) {
+      if (_linkGraph == null) {
+         return linkManager.getReferringContent(page);
+      }
+      final List<ContentEntityObject> result = new ArrayList<ContentEntityObject>();
+      for (long contentId : _linkGraph.getIncomingIds(page.getId())) {
+         result.add(_pageManager.getAbstractPage(contentId));
+      }
+      return result;
+   }
+
+   /**
+    * Returns the pages the given page links to, from the link index if it is available. Links to pages which do not
+    * exist are returned as null.
+    */
+   private List<Page> getReferredPages(ContentEntityObject page, PageManager pageManager) {
+      final List<Page> result = new ArrayList<Page>();
+      if (_linkGraph == null) {
+         for (OutgoingLink outgoingLink : page.getOutgoingLinks()) {
             if (!outgoingLink.isUrlLink()) {
-               final Page referredPage = pageManager.getPage(outgoingLink.getDestinationSpaceKey(), outgoingLink.getDestinationPageTitle());
-               if ((referredPage != null)
-                     && (referredPage.getId() != currentPage.getId())
-					 && !this._visitedReferredPages.contains(referredPage)
-                     && isViewPermitted(referredPage)
-                     && !referredPage.isDeleted()
-                     && doesLabelFit(referredPage, allowedLabels)) {						
-                  visibleReferredPages.add(referredPage);
-				  this._visitedReferredPages.add(referredPage);
-               }
+               result.add(pageManager.getPage(outgoingLink.getDestinationSpaceKey(), outgoingLink.getDestinationPageTitle()));
             }
          }
-         processReferredPages(sb, visibleReferredPages, maxDepth, currentDepth + 1, allowedLabels, pageManager);
-		 
-         for (ContentEntityObject referredPage : visibleReferredPages) {
-            sb.append(buildDotNode(referredPage));
-            final String edge = buildDotEdge(quote(currentPage.getDisplayTitle()), quote(referredPage.getDisplayTitle()));
-            if (!this._visitedEdges.contains(edge)) {
-               this._visitedEdges.add(edge);
-               sb.append(edge);
+      } else {
+         for (long pageId : _linkGraph.getOutgoingIds(page.getId())) {
+            result.add(pageManager.getPage(pageId));
+         }
+      }
+      return result;
+   }
+
+   /**
+    * Checks the candidates of all pages of one link level with a single bulk permission check. A candidate is assigned
+    * to the first page referencing it and added to the visited pages; candidates the user is not allowed to view are
+    * remembered, so that they are not checked again on the next level.
+    *
+    * @param candidatesByPage the candidates per page of the current level.
+    * @param visitedPages the pages already in the graph.
+    * @return the new visible pages per page of the current level.
+    */
+   private Map<ContentEntityObject, Collection<ContentEntityObject>> filterViewPermitted(
+         Map<ContentEntityObject, List<ContentEntityObject>> candidatesByPage, LongHashSet visitedPages) {
+      final LongHashSet candidateIds = new LongHashSet();
+      final List<ContentEntityObject> candidates = new ArrayList<ContentEntityObject>();
+      for (List<ContentEntityObject> pageCandidates : candidatesByPage.values()) {
+         for (ContentEntityObject candidate : pageCandidates) {
+            if (candidateIds.add(candidate.getId())) {
+               candidates.add(candidate);
+            }
+         }
+      }
+      final LongHashSet permitted = new LongHashSet();
+      for (ContentEntityObject page : _permissionFilter.filter(candidates)) {
+         permitted.add(page.getId());
+      }
+
+      final Map<ContentEntityObject, Collection<ContentEntityObject>> result =
+            new LinkedHashMap<ContentEntityObject, Collection<ContentEntityObject>>();
+      for (Map.Entry<ContentEntityObject, List<ContentEntityObject>> entry : candidatesByPage.entrySet()) {
+         final Collection<ContentEntityObject> visiblePages = new ArrayList<ContentEntityObject>();
+         for (ContentEntityObject candidate : entry.getValue()) {
+            if (!permitted.contains(candidate.getId())) {
+               this._deniedPages.add(candidate.getId());
+            } else if (visitedPages.add(candidate.getId())) {
+               visiblePages.add(candidate);
             }
          }
+         result.put(entry.getKey(), visiblePages);
       }
+      return result;
    }
 
    // ============================= COMMON FUNCTIONS =============================
@@ -330,23 +536,27 @@ abstract class AbstractLinkAndSpaceGraphMacroImpl {
       return sb.toString();
    }
 
+   /**
+    * Builds the node summarizing the pages left out of a graph.
+    *
+    * @param id the id of the node, unique within the graph.
+    * @param count the number of pages left out.
+    * @return the DOT node.
+    */
+   public String buildDotTruncationNode(String id, int count) {
+      // "more:id" [label="+ 412 more", shape="plaintext", style="solid"];
+      return "\"more:" + id + "\" [label=\"+ " + count + " more\", shape=\"plaintext\", style=\"solid\"];\n";
+   }
+
    public String buildDotNode(String node) {
       // "node";
       return "\"" + node + "\";\n";
    }
 
    public boolean isViewPermitted(ContentEntityObject page) {
-	   boolean isViewPermitted = false;
-	   
-	   if (GeneralUtil.getVersionNumber().matches("^[0-4]\\..*$") || GeneralUtil.getVersionNumber().matches("^5\\.[0-1]\\..*$")) {
-			//obviously using a Confluence version prior to 5.2, falling back to old user authentication handling
-		   isViewPermitted = _pm.hasPermission(AuthenticatedUserThreadLocal.getUser(), Permission.VIEW, page);		   
-	   } else {
-		   isViewPermitted = _pm.hasPermission(AuthenticatedUserThreadLocal.get(), Permission.VIEW, page);
-	   }
-      return isViewPermitted;
+      return _permissionFilter.isPermitted(page);
    }
-   
+
    public boolean doesLabelFit(ContentEntityObject page, Set allowedLabels) {
       if (allowedLabels.isEmpty()) {
          return true;
@@ -393,7 +603,7 @@ abstract class AbstractLinkAndSpaceGraphMacroImpl {
     * @return Cleaned string
     */
    private String quote(String s) {
-      return s.replaceAll("([<>{}|\"])", "\\\\$1");
+      return SPECIAL_CHARACTERS.matcher(s).replaceAll("\\\\$1");
    }
 
    private Set<String> getMetadataKeysToShow() {
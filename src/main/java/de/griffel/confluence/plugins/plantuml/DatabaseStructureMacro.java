@@ -38,7 +38,12 @@ import com.atlassian.renderer.RenderContext;
 import com.atlassian.renderer.v2.RenderMode;
 import com.atlassian.renderer.v2.macro.BaseMacro;
 import com.atlassian.renderer.v2.macro.MacroException;
+import de.griffel.confluence.plugins.plantuml.cache.DependencyIndex;
+import de.griffel.confluence.plugins.plantuml.cache.DiagramCache;
+import de.griffel.confluence.plugins.plantuml.cache.IncludeCache;
 import de.griffel.confluence.plugins.plantuml.config.PlantUmlConfigurationManager;
+import de.griffel.confluence.plugins.plantuml.metrics.RenderMetrics;
+import de.griffel.confluence.plugins.plantuml.render.RenderExecutor;
 import java.util.Map;
 
 /**
@@ -56,7 +61,9 @@ public class DatabaseStructureMacro extends BaseMacro {
    public DatabaseStructureMacro(WritableDownloadResourceManager writeableDownloadResourceManager, PageManager pageManager,
            SpaceManager spaceManager, SettingsManager settingsManager, PluginAccessor pluginAccessor,
            ShortcutLinksManager shortcutLinksManager, PlantUmlConfigurationManager configurationManager,
-           PermissionManager permissionManager, ContentPropertyManager contentPropertyManager, I18NBeanFactory i18NBeanFactory) {
+           PermissionManager permissionManager, ContentPropertyManager contentPropertyManager, I18NBeanFactory i18NBeanFactory,
+           DiagramCache diagramCache, RenderExecutor renderExecutor, IncludeCache includeCache,
+           DependencyIndex dependencyIndex, RenderMetrics renderMetrics) {
 
       _spaceManager = spaceManager;
       _pageManager = pageManager;
@@ -65,7 +72,8 @@ public class DatabaseStructureMacro extends BaseMacro {
       _contentPropertyManager = contentPropertyManager;
 
       plantUmlMacro = new PlantUmlMacro(writeableDownloadResourceManager, pageManager, spaceManager, settingsManager,
-              pluginAccessor, shortcutLinksManager, configurationManager, i18NBeanFactory);
+              pluginAccessor, shortcutLinksManager, configurationManager, i18NBeanFactory, diagramCache,
+              renderExecutor, includeCache, dependencyIndex, renderMetrics);
    }
 
    @SuppressWarnings("unchecked")
@@ -39,7 +39,12 @@ import com.atlassian.confluence.util.i18n.I18NBeanFactory;
 import com.atlassian.plugin.PluginAccessor;
 import com.atlassian.renderer.RenderContext;
 import com.atlassian.renderer.v2.macro.MacroException;
+import de.griffel.confluence.plugins.plantuml.cache.DependencyIndex;
+import de.griffel.confluence.plugins.plantuml.cache.DiagramCache;
+import de.griffel.confluence.plugins.plantuml.cache.IncludeCache;
 import de.griffel.confluence.plugins.plantuml.config.PlantUmlConfigurationManager;
+import de.griffel.confluence.plugins.plantuml.metrics.RenderMetrics;
+import de.griffel.confluence.plugins.plantuml.render.RenderExecutor;
 import java.util.Map;
 
 /**
@@ -58,7 +63,9 @@ public class DatabaseStructureMacroV4 implements Macro {
    public DatabaseStructureMacroV4(WritableDownloadResourceManager writeableDownloadResourceManager, PageManager pageManager,
            SpaceManager spaceManager, SettingsManager settingsManager, PluginAccessor pluginAccessor,
            ShortcutLinksManager shortcutLinksManager, PlantUmlConfigurationManager configurationManager,
-           PermissionManager permissionManager, ContentPropertyManager contentPropertyManager, I18NBeanFactory i18NBeanFactory) {
+           PermissionManager permissionManager, ContentPropertyManager contentPropertyManager, I18NBeanFactory i18NBeanFactory,
+           DiagramCache diagramCache, RenderExecutor renderExecutor, IncludeCache includeCache,
+           DependencyIndex dependencyIndex, RenderMetrics renderMetrics) {
 
       _spaceManager = spaceManager;
       _pageManager = pageManager;
@@ -68,7 +75,8 @@ public class DatabaseStructureMacroV4 implements Macro {
 
       plantUmlMacroV4
               = new PlantUmlMacroV4(writeableDownloadResourceManager, pageManager, spaceManager, settingsManager,
-                      pluginAccessor, shortcutLinksManager, configurationManager, i18NBeanFactory);
+                      pluginAccessor, shortcutLinksManager, configurationManager, i18NBeanFactory, diagramCache,
+                      renderExecutor, includeCache, dependencyIndex, renderMetrics);
    }
 
    public String execute(Map<String, String> params, String body, ConversionContext context)
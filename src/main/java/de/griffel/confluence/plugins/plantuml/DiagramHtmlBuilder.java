@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2011 Michael Griffel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * This distribution includes other third-party libraries.
+ * These libraries and their corresponding licenses (where different
+ * from the GNU General Public License) are enumerated below.
+ *
+ * PlantUML is a Open-Source tool in Java to draw UML Diagram.
+ * The software is developed by Arnaud Roques at
+ * http://plantuml.sourceforge.org.
+ */
+package de.griffel.confluence.plugins.plantuml;
+
+import java.io.UnsupportedEncodingException;
+
+import net.sourceforge.plantuml.FileFormat;
+
+import de.griffel.confluence.plugins.plantuml.cache.RenderedImage;
+import de.griffel.confluence.plugins.plantuml.type.ImageMap;
+
+/**
+ * Builds the HTML of the images of a rendered diagram. Used for diagrams rendered within the page as well as for
+ * diagrams rendered in the background and fetched by the browser.
+ */
+public final class DiagramHtmlBuilder {
+   private final PlantUmlMacroParams macroParams;
+   private final StringBuilder sb = new StringBuilder();
+
+   public DiagramHtmlBuilder(PlantUmlMacroParams macroParams) {
+      this.macroParams = macroParams;
+   }
+
+   public DiagramHtmlBuilder append(String html) {
+      sb.append(html);
+      return this;
+   }
+
+   /**
+    * Appends the clickable image map of an image, if it has one.
+    *
+    * @param image the rendered image.
+    * @return this builder.
+    */
+   public DiagramHtmlBuilder appendImageMap(RenderedImage image) {
+      final ImageMap cmap = image.getImageMap();
+      if (cmap.isValid()) {
+         sb.append(cmap.toHtmlString());
+      }
+      return this;
+   }
+
+   /**
+    * Appends an image. SVG images are inlined, PNG images are referenced by their download path.
+    *
+    * @param image the rendered image.
+    * @param fileFormat the format of the image.
+    * @param downloadPath the download path of the image; ignored for SVG images.
+    * @return this builder.
+    * @throws UnsupportedEncodingException never.
+    */
+   public DiagramHtmlBuilder appendImage(RenderedImage image, FileFormat fileFormat, String downloadPath)
+         throws UnsupportedEncodingException {
+      if (FileFormat.SVG == fileFormat) {
+         sb.append(new String(image.getData(), "UTF-8"));
+      } else /* PNG */{
+         final ImageMap cmap = image.getImageMap();
+         sb.append("<span class=\"image-wrap\" style=\"").append(macroParams.getAlignment().getCssStyle()).append("\">");
+         sb.append("<img");
+         if (cmap.isValid()) {
+            sb.append(" usemap=\"#");
+            sb.append(cmap.getId());
+            sb.append("\"");
+         }
+         sb.append(" src='");
+         sb.append(downloadPath);
+         sb.append("'");
+         sb.append(macroParams.getImageStyle());
+         sb.append("/>");
+         sb.append("</span>");
+      }
+      return this;
+   }
+
+   @Override
+   public String toString() {
+      return sb.toString();
+   }
+}
@@ -38,7 +38,12 @@ import com.atlassian.renderer.v2.RenderMode;
 import com.atlassian.renderer.v2.macro.BaseMacro;
 import com.atlassian.renderer.v2.macro.MacroException;
 
+import de.griffel.confluence.plugins.plantuml.cache.DependencyIndex;
+import de.griffel.confluence.plugins.plantuml.cache.DiagramCache;
+import de.griffel.confluence.plugins.plantuml.cache.IncludeCache;
 import de.griffel.confluence.plugins.plantuml.config.PlantUmlConfigurationManager;
+import de.griffel.confluence.plugins.plantuml.metrics.RenderMetrics;
+import de.griffel.confluence.plugins.plantuml.render.RenderExecutor;
 
 /**
  * This is the {flowchart} Macro (Confluence < 4.0).
@@ -49,9 +54,10 @@ public class FlowChartMacro extends BaseMacro {
    public FlowChartMacro(WritableDownloadResourceManager writeableDownloadResourceManager, PageManager pageManager,
          SpaceManager spaceManager, SettingsManager settingsManager, PluginAccessor pluginAccessor,
          ShortcutLinksManager shortcutLinksManager, PlantUmlConfigurationManager configurationManager,
-         I18NBeanFactory i18NBeanFactory) {
+         I18NBeanFactory i18NBeanFactory, DiagramCache diagramCache, RenderExecutor renderExecutor,
+         IncludeCache includeCache, DependencyIndex dependencyIndex, RenderMetrics renderMetrics) {
       plantUmlMacro = new PlantUmlMacro(writeableDownloadResourceManager, pageManager, spaceManager, settingsManager,
-            pluginAccessor, shortcutLinksManager, configurationManager, i18NBeanFactory);
+            pluginAccessor, shortcutLinksManager, configurationManager, i18NBeanFactory, diagramCache, renderExecutor, includeCache, dependencyIndex, renderMetrics);
    }
 
    @SuppressWarnings("unchecked")
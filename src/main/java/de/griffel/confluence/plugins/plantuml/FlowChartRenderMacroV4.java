@@ -39,7 +39,12 @@ import com.atlassian.plugin.PluginAccessor;
 import com.atlassian.renderer.RenderContext;
 import com.atlassian.renderer.v2.macro.MacroException;
 
+import de.griffel.confluence.plugins.plantuml.cache.DependencyIndex;
+import de.griffel.confluence.plugins.plantuml.cache.DiagramCache;
+import de.griffel.confluence.plugins.plantuml.cache.IncludeCache;
 import de.griffel.confluence.plugins.plantuml.config.PlantUmlConfigurationManager;
+import de.griffel.confluence.plugins.plantuml.metrics.RenderMetrics;
+import de.griffel.confluence.plugins.plantuml.render.RenderExecutor;
 
 /**
  * This is the {flowchart} Macro (Confluence > 4.0).
@@ -51,10 +56,12 @@ public class FlowChartRenderMacroV4 implements Macro {
    public FlowChartRenderMacroV4(WritableDownloadResourceManager writeableDownloadResourceManager, PageManager pageManager,
          SpaceManager spaceManager, SettingsManager settingsManager, PluginAccessor pluginAccessor,
          ShortcutLinksManager shortcutLinksManager, PlantUmlConfigurationManager configurationManager,
-         I18NBeanFactory i18NBeanFactory) {
+         I18NBeanFactory i18NBeanFactory, DiagramCache diagramCache, RenderExecutor renderExecutor,
+         IncludeCache includeCache, DependencyIndex dependencyIndex, RenderMetrics renderMetrics) {
       plantUmlRenderMacroV4 =
             new PlantUmlRenderMacroV4(writeableDownloadResourceManager, pageManager, spaceManager, settingsManager,
-                  pluginAccessor, shortcutLinksManager, configurationManager, i18NBeanFactory);
+                  pluginAccessor, shortcutLinksManager, configurationManager, i18NBeanFactory, diagramCache,
+                  renderExecutor, includeCache, dependencyIndex, renderMetrics);
    }
 
    public String execute(Map<String, String> params, String body, ConversionContext context)
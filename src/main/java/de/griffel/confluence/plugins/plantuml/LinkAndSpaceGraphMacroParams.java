@@ -37,6 +37,7 @@ public final class LinkAndSpaceGraphMacroParams {
    public static final String LR = "LR";
 
    private static final int DEFAULT_DEPTH = 3;
+   private static final int DEFAULT_MAX_NODES = 500;
    private static final int DEFAULT_INCOMING_LINK_LEVELS = 1;
    private static final int DEFAULT_OUTGOING_LINK_LEVELS = 1;
    private static final int DEFAULT_NODE_FONTSIZE = 9;
@@ -47,6 +48,7 @@ public final class LinkAndSpaceGraphMacroParams {
       space,
       page,
       depth,              // only spacegraph
+      maxNodes,           // only spacegraph
       incomingLinkLevels, // only link graph
       outgoingLinkLevels, // only link graph
       rootNodeColor,      // only link graph
@@ -87,6 +89,22 @@ public final class LinkAndSpaceGraphMacroParams {
       }
    }
 
+   /**
+    * Maximum number of pages shown in the graph. Pages beyond this budget are summarized by a "+ N more" node below
+    * their parent.
+    *
+    * Only macro spacegraph
+    * @return Maximum number of pages; always positive.
+    */
+   public int getMaxNodes() {
+      try {
+         final int maxNodes = Integer.parseInt(get(Param.maxNodes));
+         return maxNodes > 0 ? maxNodes : DEFAULT_MAX_NODES;
+      } catch (NumberFormatException e) {
+         return DEFAULT_MAX_NODES;
+      }
+   }
+
    /**
     * Levels of outgoing links to be processed.
     *
@@ -39,7 +39,13 @@ import com.atlassian.renderer.RenderContext;
 import com.atlassian.renderer.v2.RenderMode;
 import com.atlassian.renderer.v2.macro.BaseMacro;
 import com.atlassian.renderer.v2.macro.MacroException;
+import de.griffel.confluence.plugins.plantuml.cache.DependencyIndex;
+import de.griffel.confluence.plugins.plantuml.cache.DiagramCache;
+import de.griffel.confluence.plugins.plantuml.cache.IncludeCache;
 import de.griffel.confluence.plugins.plantuml.config.PlantUmlConfigurationManager;
+import de.griffel.confluence.plugins.plantuml.graph.LinkIndex;
+import de.griffel.confluence.plugins.plantuml.metrics.RenderMetrics;
+import de.griffel.confluence.plugins.plantuml.render.RenderExecutor;
 import java.util.Map;
 
 /**
@@ -53,12 +59,15 @@ public class LinkGraphMacro extends BaseMacro {
    private final PermissionManager _permissionManager;
    private final ContentPropertyManager _contentPropertyManager;
    private final LinkManager _linkManager;
+   private final LinkIndex _linkIndex;
 
    public LinkGraphMacro(WritableDownloadResourceManager writeableDownloadResourceManager, PageManager pageManager,
          SpaceManager spaceManager, SettingsManager settingsManager, PluginAccessor pluginAccessor,
          ShortcutLinksManager shortcutLinksManager, PlantUmlConfigurationManager configurationManager,
          PermissionManager permissionManager, ContentPropertyManager contentPropertyManager,
-         I18NBeanFactory i18NBeanFactory, LinkManager linkManager) {
+         I18NBeanFactory i18NBeanFactory, LinkManager linkManager, DiagramCache diagramCache,
+         RenderExecutor renderExecutor, IncludeCache includeCache, DependencyIndex dependencyIndex,
+         RenderMetrics renderMetrics, LinkIndex linkIndex) {
 
       _spaceManager = spaceManager;
       _pageManager = pageManager;
@@ -66,9 +75,10 @@ public class LinkGraphMacro extends BaseMacro {
       _permissionManager = permissionManager;
       _contentPropertyManager = contentPropertyManager;
       _linkManager = linkManager;
+      _linkIndex = linkIndex;
 
       plantUmlMacro = new PlantUmlMacro(writeableDownloadResourceManager, pageManager, spaceManager, settingsManager,
-            pluginAccessor, shortcutLinksManager, configurationManager, i18NBeanFactory);
+            pluginAccessor, shortcutLinksManager, configurationManager, i18NBeanFactory, diagramCache, renderExecutor, includeCache, dependencyIndex, renderMetrics);
    }
 
    @SuppressWarnings("unchecked")
@@ -78,7 +88,8 @@ public class LinkGraphMacro extends BaseMacro {
          protected String executePlantUmlMacro(Map<String, String> params, String dotString, RenderContext context)
                throws MacroException {
             String realString = createDotForLinkGraph(params, (PageContext) context,
-                  _spaceManager, _pageManager, _settingsManager, _permissionManager, _contentPropertyManager, _linkManager);
+                  _spaceManager, _pageManager, _settingsManager, _permissionManager, _contentPropertyManager, _linkManager,
+                  _linkIndex);
             return plantUmlMacro.execute(params, realString, context);
          }
       }.execute(params, body, context);
@@ -40,7 +40,13 @@ import com.atlassian.confluence.util.i18n.I18NBeanFactory;
 import com.atlassian.plugin.PluginAccessor;
 import com.atlassian.renderer.RenderContext;
 import com.atlassian.renderer.v2.macro.MacroException;
+import de.griffel.confluence.plugins.plantuml.cache.DependencyIndex;
+import de.griffel.confluence.plugins.plantuml.cache.DiagramCache;
+import de.griffel.confluence.plugins.plantuml.cache.IncludeCache;
 import de.griffel.confluence.plugins.plantuml.config.PlantUmlConfigurationManager;
+import de.griffel.confluence.plugins.plantuml.graph.LinkIndex;
+import de.griffel.confluence.plugins.plantuml.metrics.RenderMetrics;
+import de.griffel.confluence.plugins.plantuml.render.RenderExecutor;
 import java.util.Map;
 
 /**
@@ -55,12 +61,15 @@ public class LinkGraphMacroV4 implements Macro {
    private final PermissionManager _permissionManager;
    private final ContentPropertyManager _contentPropertyManager;
    private final LinkManager _linkManager;
+   private final LinkIndex _linkIndex;
 
    public LinkGraphMacroV4(WritableDownloadResourceManager writeableDownloadResourceManager, PageManager pageManager,
          SpaceManager spaceManager, SettingsManager settingsManager, PluginAccessor pluginAccessor,
          ShortcutLinksManager shortcutLinksManager, PlantUmlConfigurationManager configurationManager,
          PermissionManager permissionManager, ContentPropertyManager contentPropertyManager, I18NBeanFactory i18NBeanFactory,
-         LinkManager linkManager) {
+         LinkManager linkManager, DiagramCache diagramCache, RenderExecutor renderExecutor,
+         IncludeCache includeCache, DependencyIndex dependencyIndex, RenderMetrics renderMetrics,
+         LinkIndex linkIndex) {
 
       _spaceManager = spaceManager;
       _pageManager = pageManager;
@@ -68,10 +77,12 @@ public class LinkGraphMacroV4 implements Macro {
       _permissionManager = permissionManager;
       _contentPropertyManager = contentPropertyManager;
       _linkManager = linkManager;
+      _linkIndex = linkIndex;
 
       plantUmlMacroV4 =
             new PlantUmlMacroV4(writeableDownloadResourceManager, pageManager, spaceManager, settingsManager,
-                  pluginAccessor, shortcutLinksManager, configurationManager, i18NBeanFactory);
+                  pluginAccessor, shortcutLinksManager, configurationManager, i18NBeanFactory, diagramCache,
+                  renderExecutor, includeCache, dependencyIndex, renderMetrics);
    }
 
    public String execute(Map<String, String> params, String body, ConversionContext context)
@@ -82,7 +93,8 @@ public class LinkGraphMacroV4 implements Macro {
             protected String executePlantUmlMacro(Map<String, String> params, String dotString, RenderContext context)
                   throws MacroException {
                String realString = createDotForLinkGraph(params, (PageContext) context,
-                     _spaceManager, _pageManager, _settingsManager, _permissionManager, _contentPropertyManager, _linkManager);
+                     _spaceManager, _pageManager, _settingsManager, _permissionManager, _contentPropertyManager, _linkManager,
+                     _linkIndex);
                return plantUmlMacroV4.execute(params, realString, context);
             }
          }.execute(params, body, context.getPageContext());
@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2011 Michael Griffel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * This distribution includes other third-party libraries.
+ * These libraries and their corresponding licenses (where different
+ * from the GNU General Public License) are enumerated below.
+ *
+ * PlantUML is a Open-Source tool in Java to draw UML Diagram.
+ * The software is developed by Arnaud Roques at
+ * http://plantuml.sourceforge.org.
+ */
+package de.griffel.confluence.plugins.plantuml;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.nodes.Node;
+import org.jsoup.nodes.TextNode;
+import org.jsoup.parser.Parser;
+
+/**
+ * Finds the macros with a plain text body in the storage format of a page.
+ */
+final class PageMacroScanner {
+   private final Collection<String> macroNames;
+
+   PageMacroScanner(Collection<String> macroNames) {
+      this.macroNames = macroNames;
+   }
+
+   /**
+    * Returns the macros of the page in document order, including macros nested in the bodies of other macros.
+    *
+    * @param storageFormat the body of the page in storage format.
+    * @return the macros of the page.
+    */
+   List<MacroInstance> scan(String storageFormat) {
+      final List<MacroInstance> result = new ArrayList<MacroInstance>();
+      final Document doc = Jsoup.parse(storageFormat, "", Parser.xmlParser());
+      for (Element macro : doc.getElementsByTag("ac:structured-macro")) {
+         final String name = macro.attr("ac:name");
+         if (!macroNames.contains(name)) {
+            continue;
+         }
+         final Map<String, String> params = new HashMap<String, String>();
+         Element body = null;
+         for (Element child : macro.children()) {
+            if ("ac:parameter".equals(child.tagName())) {
+               params.put(child.attr("ac:name"), getText(child));
+            } else if ("ac:plain-text-body".equals(child.tagName())) {
+               body = child;
+            }
+         }
+         result.add(new MacroInstance(name, params, body != null ? getText(body) : ""));
+      }
+      return result;
+   }
+
+   private static String getText(Element element) {
+      final StringBuilder sb = new StringBuilder();
+      for (Node node : element.childNodes()) {
+         if (node instanceof TextNode) {
+            // CDATA sections are text nodes as well
+            sb.append(((TextNode) node).getWholeText());
+         }
+      }
+      return sb.toString();
+   }
+
+   /**
+    * A macro of a page.
+    */
+   static final class MacroInstance {
+      private final String name;
+      private final Map<String, String> params;
+      private final String body;
+
+      MacroInstance(String name, Map<String, String> params, String body) {
+         this.name = name;
+         this.params = params;
+         this.body = body;
+      }
+
+      String getName() {
+         return name;
+      }
+
+      Map<String, String> getParams() {
+         return params;
+      }
+
+      String getBody() {
+         return body;
+      }
+   }
+}
@@ -24,15 +24,26 @@
  */
 package de.griffel.confluence.plugins.plantuml;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.io.StringReader;
 import java.io.StringWriter;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Callable;
 
 import net.sourceforge.plantuml.BlockUml;
 import net.sourceforge.plantuml.FileFormat;
@@ -43,19 +54,21 @@ import net.sourceforge.plantuml.core.DiagramType;
 import net.sourceforge.plantuml.core.ImageData;
 import net.sourceforge.plantuml.core.UmlSource;
 import net.sourceforge.plantuml.preproc.Defines;
+import net.sourceforge.plantuml.sequencediagram.SequenceDiagram;
 
 import org.apache.commons.io.HexDump;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringEscapeUtils;
+import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang.time.StopWatch;
 import org.apache.log4j.Logger;
 
 import com.atlassian.confluence.core.ContentEntityObject;
 import com.atlassian.confluence.importexport.resource.DownloadResourceNotFoundException;
-import com.atlassian.confluence.importexport.resource.DownloadResourceReader;
 import com.atlassian.confluence.importexport.resource.DownloadResourceWriter;
 import com.atlassian.confluence.importexport.resource.UnauthorizedDownloadResourceException;
 import com.atlassian.confluence.importexport.resource.WritableDownloadResourceManager;
+import com.atlassian.confluence.pages.AbstractPage;
 import com.atlassian.confluence.pages.Attachment;
 import com.atlassian.confluence.pages.Page;
 import com.atlassian.confluence.pages.PageManager;
@@ -65,6 +78,7 @@ import com.atlassian.confluence.renderer.ShortcutLinksManager;
 import com.atlassian.confluence.setup.settings.SettingsManager;
 import com.atlassian.confluence.spaces.SpaceManager;
 import com.atlassian.confluence.user.AuthenticatedUserThreadLocal;
+import com.atlassian.confluence.util.i18n.I18NBean;
 import com.atlassian.confluence.util.i18n.I18NBeanFactory;
 import com.atlassian.core.exception.InfrastructureException;
 import com.atlassian.plugin.PluginAccessor;
@@ -73,15 +87,28 @@ import com.atlassian.renderer.v2.RenderMode;
 import com.atlassian.renderer.v2.macro.BaseMacro;
 import com.atlassian.renderer.v2.macro.MacroException;
 
+import de.griffel.confluence.plugins.plantuml.PageMacroScanner.MacroInstance;
 import de.griffel.confluence.plugins.plantuml.PlantUmlMacro.MySourceStringReader.ImageInfo;
+import de.griffel.confluence.plugins.plantuml.cache.DependencyIndex;
+import de.griffel.confluence.plugins.plantuml.cache.DiagramCache;
+import de.griffel.confluence.plugins.plantuml.cache.DiagramKeyBuilder;
+import de.griffel.confluence.plugins.plantuml.cache.IncludeCache;
+import de.griffel.confluence.plugins.plantuml.cache.RenderedDiagram;
+import de.griffel.confluence.plugins.plantuml.cache.RenderedImage;
 import de.griffel.confluence.plugins.plantuml.config.PlantUmlConfiguration;
 import de.griffel.confluence.plugins.plantuml.config.PlantUmlConfigurationManager;
+import de.griffel.confluence.plugins.plantuml.metrics.RenderMetrics;
+import de.griffel.confluence.plugins.plantuml.metrics.RenderPhase;
 import de.griffel.confluence.plugins.plantuml.preprocess.PageAnchorBuilder;
 import de.griffel.confluence.plugins.plantuml.preprocess.PlantUmlPreprocessor;
 import de.griffel.confluence.plugins.plantuml.preprocess.PreprocessingContext;
 import de.griffel.confluence.plugins.plantuml.preprocess.PreprocessingException;
 import de.griffel.confluence.plugins.plantuml.preprocess.UmlSourceLocator;
+import de.griffel.confluence.plugins.plantuml.render.RenderExecutor;
+import de.griffel.confluence.plugins.plantuml.render.RenderRejectedException;
+import de.griffel.confluence.plugins.plantuml.render.RenderTimeoutException;
 import de.griffel.confluence.plugins.plantuml.type.ConfluenceLink;
+import de.griffel.confluence.plugins.plantuml.type.ConfluenceLinkResolver;
 import de.griffel.confluence.plugins.plantuml.type.ImageMap;
 import de.griffel.confluence.plugins.plantuml.type.UmlSourceBuilder;
 
@@ -93,6 +120,19 @@ import de.griffel.confluence.plugins.plantuml.type.UmlSourceBuilder;
 public class PlantUmlMacro extends BaseMacro {
    private static final Logger logger = Logger.getLogger(PlantUmlMacro.class);
 
+   private static final String PLANTUML_MACRO = "plantuml";
+
+   private static final String FLOWCHART_MACRO = "flowchart";
+
+   /**
+    * Macros with a plain text body, whose diagrams can be prepared from the storage format of the page.
+    */
+   private static final List<String> PRERENDERED_MACROS = Arrays.asList(PLANTUML_MACRO, FLOWCHART_MACRO);
+
+   private static final String PRERENDERED_PARAM = PlantUmlMacro.class.getName() + ".prerendered";
+
+   private static final String PREPARED_PARAM = PlantUmlMacro.class.getName() + ".prepared";
+
    private final WritableDownloadResourceManager writeableDownloadResourceManager;
 
    private final PageManager pageManager;
@@ -109,11 +149,22 @@ public class PlantUmlMacro extends BaseMacro {
 
    private final I18NBeanFactory i18NBeanFactory;
 
+   private final DiagramCache diagramCache;
+
+   private final RenderExecutor renderExecutor;
+
+   private final IncludeCache includeCache;
+
+   private final DependencyIndex dependencyIndex;
+
+   private final RenderMetrics renderMetrics;
+
    public PlantUmlMacro(WritableDownloadResourceManager writeableDownloadResourceManager,
          PageManager pageManager, SpaceManager spaceManager, SettingsManager settingsManager,
          PluginAccessor pluginAccessor, ShortcutLinksManager shortcutLinksManager,
          PlantUmlConfigurationManager configurationManager,
-         I18NBeanFactory i18NBeanFactory) {
+         I18NBeanFactory i18NBeanFactory, DiagramCache diagramCache, RenderExecutor renderExecutor,
+         IncludeCache includeCache, DependencyIndex dependencyIndex, RenderMetrics renderMetrics) {
       this.writeableDownloadResourceManager = writeableDownloadResourceManager;
       this.pageManager = pageManager;
       this.spaceManager = spaceManager;
@@ -122,6 +173,11 @@ public class PlantUmlMacro extends BaseMacro {
       this.shortcutLinksManager = shortcutLinksManager;
       this.configurationManager = configurationManager;
       this.i18NBeanFactory = i18NBeanFactory;
+      this.diagramCache = diagramCache;
+      this.renderExecutor = renderExecutor;
+      this.includeCache = includeCache;
+      this.dependencyIndex = dependencyIndex;
+      this.renderMetrics = renderMetrics;
    }
 
    @Override
@@ -178,8 +234,36 @@ public class PlantUmlMacro extends BaseMacro {
       }
 
       final PageContext pageContext = (PageContext) renderContext;
-      final UmlSourceLocator umlSourceLocator = new UmlSourceLocatorConfluence(pageContext);
-      final PreprocessingContext preprocessingContext = new MyPreprocessingContext(pageContext);
+      prerenderPage(pageContext);
+
+      final DiagramType diagramType = macroParams.getDiagramType();
+      final PreparedDiagram prepared = prepare(macroParams, body, pageContext);
+      final PlantUmlPreprocessor preprocessor = prepared.preprocessor;
+      final String umlBlock = prepared.umlBlock;
+
+      final FileFormat fileFormat = macroParams.getFileFormat(pageContext);
+      final List<String> config = new PlantUmlConfigBuilder().build(macroParams);
+      final String cacheKey = createCacheKey(umlBlock, config, fileFormat);
+
+      final String result = render(umlBlock, cacheKey, config, fileFormat, pageContext, macroParams, preprocessor);
+
+      stopWatch.stop();
+      renderMetrics.recordPhase(RenderPhase.MACRO, stopWatch.getTime());
+      final ContentEntityObject page = pageContext.getEntity();
+      renderMetrics.getSlowDiagramReport().record(page != null ? page.getId() : 0, pageContext.getSpaceKey(),
+            pageContext.getPageTitle(), diagramType, cacheKey, StringUtils.countMatches(umlBlock, "\n"),
+            stopWatch.getTime());
+      logger.info(String.format("Rendering %s diagram on page %s:%s took %d ms.", diagramType,
+            pageContext.getSpaceKey(), pageContext.getPageTitle(), stopWatch.getTime()));
+
+      return result;
+   }
+
+   private PlantUmlPreprocessor createPreprocessor(PlantUmlMacroParams macroParams, String body,
+         PageContext pageContext) throws IOException {
+      final ConfluenceLinkResolver linkResolver = new ConfluenceLinkResolver(pageContext, spaceManager, pageManager);
+      final UmlSourceLocator umlSourceLocator = new UmlSourceLocatorConfluence(linkResolver);
+      final PreprocessingContext preprocessingContext = new MyPreprocessingContext(pageContext, linkResolver);
 
       final DiagramType diagramType = macroParams.getDiagramType();
       final boolean dropShadow = macroParams.getDropShadow();
@@ -187,105 +271,333 @@ public class PlantUmlMacro extends BaseMacro {
       final PlantUmlConfiguration configuration = configurationManager.load();
       final UmlSourceBuilder builder =
             new UmlSourceBuilder(diagramType, dropShadow, separation, configuration).append(new StringReader(body));
-      final PlantUmlPreprocessor preprocessor =
-            new PlantUmlPreprocessor(builder.build(), umlSourceLocator, preprocessingContext);
-      final String umlBlock = preprocessor.toUmlBlock();
+      return new PlantUmlPreprocessor(builder.build(), umlSourceLocator, preprocessingContext);
+   }
 
-      final String result = render(umlBlock, pageContext, macroParams, preprocessor);
+   /**
+    * Returns the preprocessed diagram. Diagrams are preprocessed once per page render, so the diagrams prepared for
+    * pre-rendering are not preprocessed a second time when their macro is executed.
+    */
+   private PreparedDiagram prepare(PlantUmlMacroParams macroParams, String body, PageContext pageContext)
+         throws IOException {
+      @SuppressWarnings("unchecked")
+      Map<String, PreparedDiagram> preparedDiagrams =
+            (Map<String, PreparedDiagram>) pageContext.getParam(PREPARED_PARAM);
+      if (preparedDiagrams == null) {
+         preparedDiagrams = new HashMap<String, PreparedDiagram>();
+         pageContext.addParam(PREPARED_PARAM, preparedDiagrams);
+      }
+      // everything createPreprocessor() depends on besides the page
+      final String key = macroParams.getDiagramType() + "\n" + macroParams.getDropShadow() + "\n"
+            + macroParams.getSeparation() + "\n" + body;
+      PreparedDiagram prepared = preparedDiagrams.get(key);
+      if (prepared == null) {
+         final long preprocessStart = System.currentTimeMillis();
+         final PlantUmlPreprocessor preprocessor = createPreprocessor(macroParams, body, pageContext);
+         prepared = new PreparedDiagram(preprocessor, preprocessor.toUmlBlock());
+         renderMetrics.recordPhase(RenderPhase.PREPROCESS, System.currentTimeMillis() - preprocessStart);
+         preparedDiagrams.put(key, prepared);
+      }
+      return prepared;
+   }
 
-      stopWatch.stop();
-      logger.info(String.format("Rendering %s diagram on page %s:%s took %d ms.", diagramType,
-            pageContext.getSpaceKey(), pageContext.getPageTitle(), stopWatch.getTime()));
+   private static String createCacheKey(String umlBlock, List<String> config, FileFormat fileFormat) {
+      return new DiagramKeyBuilder().append(umlBlock).append(config).append(fileFormat).build();
+   }
 
-      return result;
+   /**
+    * Records the included pages and attachments of the diagram, so that the diagram is evicted as soon as one of them
+    * changes.
+    */
+   private void addDependencies(String cacheKey, PlantUmlPreprocessor preprocessor) {
+      final Set<Long> dependencies = preprocessor.getDependencies();
+      if (!dependencies.isEmpty()) {
+         dependencyIndex.add(cacheKey, dependencies);
+      }
    }
 
-   private String render(final String umlBlock, final PageContext pageContext, final PlantUmlMacroParams macroParams,
-         final PlantUmlPreprocessor preprocessor) throws IOException,
-         UnauthorizedDownloadResourceException, DownloadResourceNotFoundException {
+   /**
+    * Starts rendering all diagrams of the page when the first diagram of the page is executed, so that the diagrams
+    * are rendered in parallel instead of one after the other. Each macro then finds its diagram in the cache or
+    * waits for the running render. Only the source of the diagrams is prepared on the request thread, and each macro
+    * reuses its prepared source. Pre-renders do not count towards the render limit of the user.
+    */
+   private void prerenderPage(PageContext pageContext) {
+      if (pageContext.getParam(PRERENDERED_PARAM) != null || pageContext.getEntity() == null) {
+         return;
+      }
+      pageContext.addParam(PRERENDERED_PARAM, Boolean.TRUE);
+      if (configurationManager.load().isAsyncRendering()) {
+         return; // diagrams are rendered in the background anyway
+      }
 
-      final FileFormat fileFormat = macroParams.getFileFormat(pageContext);
+      final List<MacroInstance> macros =
+            new PageMacroScanner(PRERENDERED_MACROS).scan(pageContext.getEntity().getBodyAsString());
+      if (macros.size() < 2) {
+         return;
+      }
+      for (MacroInstance macro : macros) {
+         try {
+            prerender(macro, pageContext);
+         } catch (RenderRejectedException e) {
+            logger.debug("Stopped pre-rendering page " + pageContext.getSpaceKey() + ":" + pageContext.getPageTitle()
+                  + ": " + e.getMessage());
+            return;
+         } catch (RenderTimeoutException e) {
+            logger.debug("Diagram not pre-rendered: " + e.getMessage());
+         } catch (IOException e) {
+            logger.debug("Diagram not pre-rendered", e);
+         } catch (RuntimeException e) {
+            // the macro reports the error when it is executed
+            logger.debug("Diagram not pre-rendered", e);
+         }
+      }
+   }
 
+   private void prerender(MacroInstance macro, PageContext pageContext)
+         throws IOException, RenderRejectedException, RenderTimeoutException {
+      final Map<String, String> params = new HashMap<String, String>(macro.getParams());
+      String body = macro.getBody();
+      if (FLOWCHART_MACRO.equals(macro.getName())) {
+         body = AbstractFlowChartMacroImpl.toDotString(params, body);
+      }
+
+      // the same body as in execute(), so that the macro finds the prepared diagram
+      final PlantUmlMacroParams macroParams = new PlantUmlMacroParams(params);
+      final PreparedDiagram prepared = prepare(macroParams, unescapeHtml(body), pageContext);
+      final String umlBlock = prepared.umlBlock;
+      final FileFormat fileFormat = macroParams.getFileFormat(pageContext);
       final List<String> config = new PlantUmlConfigBuilder().build(macroParams);
-      final MySourceStringReader reader = new MySourceStringReader(new Defines(), umlBlock, config);
+      final String cacheKey = createCacheKey(umlBlock, config, fileFormat);
+      addDependencies(cacheKey, prepared.preprocessor);
+      if (diagramCache.get(cacheKey) == null) {
+         renderExecutor.prerender(cacheKey,
+               createRenderTask(umlBlock, config, fileFormat, macroParams.getDiagramType()));
+      }
+   }
 
-      final StringBuilder sb = new StringBuilder();
+   private String render(final String umlBlock, final String cacheKey, final List<String> config,
+         final FileFormat fileFormat, final PageContext pageContext, final PlantUmlMacroParams macroParams,
+         final PlantUmlPreprocessor preprocessor) throws IOException,
+         UnauthorizedDownloadResourceException, DownloadResourceNotFoundException {
+
+      addDependencies(cacheKey, preprocessor);
+      final long contentId = getContentId(pageContext);
+      if (contentId > 0) {
+         diagramCache.addOwner(cacheKey, contentId);
+      }
+
+      final DiagramHtmlBuilder html = new DiagramHtmlBuilder(macroParams);
 
       if (preprocessor.hasExceptions()) {
-         sb.append("<span class=\"error\">");
+         html.append("<span class=\"error\">");
          for (PreprocessingException exception : preprocessor.getExceptions()) {
-            sb.append("<span class=\"error\">");
-            sb.append("plantuml: ");
-            sb.append(exception.getDetails());
-            sb.append("</span><br/>");
+            html.append("<span class=\"error\">");
+            html.append("plantuml: ");
+            html.append(exception.getDetails());
+            html.append("</span><br/>");
          }
-         sb.append("</span>");
+         html.append("</span>");
       }
 
-      while (reader.hasNext()) {
-         final DownloadResourceWriter resourceWriter = writeableDownloadResourceManager.getResourceWriter(
-               AuthenticatedUserThreadLocal.getUsername(), "plantuml", fileFormat.getFileSuffix());
-
-         final ImageInfo imageInfo = reader.renderImage(resourceWriter.getStreamForWriting(), fileFormat);
-         final ImageMap cmap = imageInfo.getImageMap();
-
-         if (cmap.isValid()) {
-            sb.append(cmap.toHtmlString());
+      RenderedDiagram diagram = diagramCache.get(cacheKey);
+      if (diagram == null) {
+         renderMetrics.recordCacheMiss();
+         final Callable<RenderedDiagram> task =
+               createRenderTask(umlBlock, config, fileFormat, macroParams.getDiagramType());
+         try {
+            if (isAsyncRendering(pageContext, macroParams)) {
+               renderExecutor.submit(cacheKey, task);
+               return html.append(createAsyncPlaceholder(cacheKey, contentId, macroParams)).toString();
+            }
+            diagram = renderExecutor.render(cacheKey, task);
+         } catch (RenderRejectedException e) {
+            logger.info("Diagram " + cacheKey + " on page " + pageContext.getSpaceKey() + ":"
+                  + pageContext.getPageTitle() + " not rendered: " + e.getMessage());
+            return html.append(createPlaceholder(e)).toString();
+         } catch (RenderTimeoutException e) {
+            logger.warn("Diagram " + cacheKey + " on page " + pageContext.getSpaceKey() + ":"
+                  + pageContext.getPageTitle() + " not rendered: " + e.getMessage());
+            return html.append(createTimeoutError(e)).toString();
+         }
+      } else {
+         renderMetrics.recordCacheHit();
+         if (logger.isDebugEnabled()) {
+            logger.debug("Using cached diagram " + cacheKey);
          }
+      }
+
+      for (RenderedImage image : diagram.getImages()) {
+         html.appendImageMap(image);
 
          if (umlBlock.matches(PlantUmlPluginInfo.PLANTUML_VERSION_INFO_REGEX)) {
-            sb.append(new PlantUmlPluginInfo(pluginAccessor, i18NBeanFactory.getI18NBean()).toHtmlString());
+            html.append(new PlantUmlPluginInfo(pluginAccessor, i18NBeanFactory.getI18NBean()).toHtmlString());
          }
 
          final DownloadResourceInfo resourceInfo;
          if (macroParams.getExportName() != null && !preprocessor.hasExceptions()) {
-            resourceInfo = attachImage(pageContext.getEntity(), macroParams, imageInfo, fileFormat, resourceWriter);
+            final long attachmentStart = System.currentTimeMillis();
+            resourceInfo = attachImage(pageContext.getEntity(), macroParams, diagram, image, fileFormat);
+            renderMetrics.recordPhase(RenderPhase.ATTACHMENT, System.currentTimeMillis() - attachmentStart);
+         } else if (FileFormat.SVG == fileFormat) {
+            resourceInfo = null; // SVG images are inlined
          } else {
-            resourceInfo = new DefaultDownloadResourceInfo(writeableDownloadResourceManager, resourceWriter);
-         }
-
-         if (FileFormat.SVG == fileFormat) {
-            final StringWriter sw = new StringWriter();
-            IOUtils.copy(resourceInfo.getStreamForReading(), sw);
-            sb.append(sw.getBuffer());
-         } else /* PNG */{
-            sb.append("<span class=\"image-wrap\" style=\"").append(macroParams.getAlignment().getCssStyle()).append("\">");
-            sb.append("<img");
-            if (cmap.isValid()) {
-               sb.append(" usemap=\"#");
-               sb.append(cmap.getId());
-               sb.append("\"");
-            }
-            sb.append(" src='");
-            sb.append(resourceInfo.getDownloadPath());
-            sb.append("'");
-            sb.append(macroParams.getImageStyle());
-            sb.append("/>");
-            sb.append("</span>");
+            resourceInfo = createDownloadResourceInfo(cacheKey, contentId, diagram, image, fileFormat);
          }
 
+         html.appendImage(image, fileFormat, resourceInfo != null ? resourceInfo.getDownloadPath() : null);
       }
 
       if (macroParams.isDebug()) {
-         sb.append("<div class=\"puml-debug\">");
-         sb.append("<pre>");
+         html.append("<div class=\"puml-debug\">");
+         html.append("<pre>");
          final ByteArrayOutputStream baos = new ByteArrayOutputStream();
          HexDump.dump(umlBlock.getBytes("UTF-8"), 0, baos, 0);
-         sb.append(baos.toString()); // HexDump class writer bytes with JVM default encoding
-         sb.append("</pre>");
-         sb.append("</div>");
+         html.append(baos.toString()); // HexDump class writer bytes with JVM default encoding
+         html.append("</pre>");
+         html.append("</div>");
+      }
+
+      return html.toString();
+   }
+
+   /**
+    * Returns the id of the page showing the diagram. Images in the disk cache are only served for pages and blog
+    * posts, where the view permission of the user can be checked.
+    */
+   private static long getContentId(PageContext pageContext) {
+      final ContentEntityObject entity = pageContext.getEntity();
+      return entity instanceof AbstractPage ? entity.getId() : 0;
+   }
+
+   /**
+    * Returns a task that renders the diagram.
+    */
+   private Callable<RenderedDiagram> createRenderTask(final String umlBlock, final List<String> config,
+         final FileFormat fileFormat, final DiagramType diagramType) {
+      return new Callable<RenderedDiagram>() {
+         public RenderedDiagram call() throws IOException {
+            final long start = System.currentTimeMillis();
+            final RenderedDiagram diagram = renderDiagram(umlBlock, config, fileFormat);
+            renderMetrics.recordRender(diagramType, System.currentTimeMillis() - start);
+            return diagram;
+         }
+      };
+   }
+
+   /**
+    * Returns true if a diagram that is not cached yet is rendered in the background and shown as a placeholder, which
+    * the browser replaces as soon as the diagram is available. This requires the async rendering option, the disk
+    * cache and a page or blog post displayed in the browser. Exported diagrams are always rendered synchronously, since
+    * their attachment has to be saved.
+    */
+   private boolean isAsyncRendering(PageContext pageContext, PlantUmlMacroParams macroParams) {
+      final PlantUmlConfiguration configuration = configurationManager.load();
+      // the browser fetches the images of asynchronously rendered diagrams from the disk cache
+      return configuration.isAsyncRendering() && configuration.getDiskCacheSize() > 0 && getContentId(pageContext) > 0
+            && RenderContext.DISPLAY.equals(pageContext.getOutputType()) && macroParams.getExportName() == null;
+   }
+
+   private String createAsyncPlaceholder(String cacheKey, long contentId, PlantUmlMacroParams macroParams)
+         throws UnsupportedEncodingException {
+      final StringBuilder query = new StringBuilder("contentId=").append(contentId);
+      for (Map.Entry<String, String> param : macroParams.getDisplayParams().entrySet()) {
+         query.append('&');
+         query.append(param.getKey()).append('=').append(URLEncoder.encode(param.getValue(), "UTF-8"));
       }
+      final I18NBean i18n = i18NBeanFactory.getI18NBean();
+      return "<div class=\"plantuml-placeholder plantuml-async\" data-plantuml-key=\"" + cacheKey
+            + "\" data-plantuml-params=\"" + StringEscapeUtils.escapeHtml(query.toString())
+            + "\" data-plantuml-failed=\"" + StringEscapeUtils.escapeHtml(i18n.getText("plantuml.render.failed"))
+            + "\">" + StringEscapeUtils.escapeHtml(i18n.getText("plantuml.render.async")) + "</div>";
+   }
+
+   private String createPlaceholder(RenderRejectedException e) {
+      final String message = i18NBeanFactory.getI18NBean().getText(
+            e.isInProgress() ? "plantuml.render.pending" : "plantuml.render.busy");
+      return "<div class=\"plantuml-placeholder\">" + StringEscapeUtils.escapeHtml(message) + "</div>";
+   }
 
-      return sb.toString();
+   /**
+    * Returns the HTML shown instead of a diagram that exceeded the render timeout.
+    */
+   private String createTimeoutError(RenderTimeoutException e) {
+      final String message = i18NBeanFactory.getI18NBean().getText("plantuml.render.timeout",
+            new Object[] { e.getTimeoutSeconds() });
+      return "<span class=\"error\">plantuml: " + StringEscapeUtils.escapeHtml(message) + "</span>";
+   }
+
+   /**
+    * Renders all images of the given UML block.
+    */
+   private RenderedDiagram renderDiagram(final String umlBlock, final List<String> config, final FileFormat fileFormat)
+         throws IOException {
+      // the source is parsed once for all pages of the diagram
+      final long parseStart = System.currentTimeMillis();
+      final MySourceStringReader reader = new MySourceStringReader(new Defines(), umlBlock, config);
+      renderMetrics.recordPhase(RenderPhase.PARSE, System.currentTimeMillis() - parseStart);
+      final int nbImages = reader.getNbImages();
+      if (nbImages > 1 && reader.isParallelExportSupported()) {
+         final List<Callable<RenderedImage>> pages = new ArrayList<Callable<RenderedImage>>(nbImages);
+         for (int i = 0; i < nbImages; i++) {
+            final int index = i;
+            pages.add(new Callable<RenderedImage>() {
+               public RenderedImage call() throws IOException {
+                  return renderImage(reader, index, fileFormat);
+               }
+            });
+         }
+         return new RenderedDiagram(fileFormat, renderExecutor.invokeAll(pages));
+      }
+
+      final List<RenderedImage> images = new ArrayList<RenderedImage>(nbImages);
+      for (int i = 0; i < nbImages; i++) {
+         if (Thread.currentThread().isInterrupted()) {
+            throw new InterruptedIOException("Rendering cancelled");
+         }
+         images.add(renderImage(reader, i, fileFormat));
+      }
+      return new RenderedDiagram(fileFormat, images);
+   }
+
+   private RenderedImage renderImage(MySourceStringReader reader, int index, FileFormat fileFormat)
+         throws IOException {
+      final long start = System.currentTimeMillis();
+      final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+      final ImageInfo imageInfo = reader.renderImage(baos, fileFormat, index);
+      renderMetrics.recordPhase(RenderPhase.EXPORT, System.currentTimeMillis() - start);
+      return new RenderedImage(baos.toByteArray(), imageInfo.getImageMap(), imageInfo.getIndex());
+   }
+
+   /**
+    * Returns the download resource of an image. Images are served from the diagram cache if possible. Otherwise (e.g.
+    * the disk cache is disabled) a temporary download resource is created.
+    */
+   private DownloadResourceInfo createDownloadResourceInfo(final String cacheKey, final long contentId,
+         final RenderedDiagram diagram, final RenderedImage image, final FileFormat fileFormat) throws IOException {
+      final String downloadPath = diagramCache.getDownloadPath(cacheKey, contentId, diagram, image);
+      if (downloadPath != null) {
+         return new CachedDownloadResourceInfo(settingsManager.getGlobalSettings().getBaseUrl() + downloadPath,
+               image.getData());
+      }
+
+      final DownloadResourceWriter resourceWriter = writeableDownloadResourceManager.getResourceWriter(
+            AuthenticatedUserThreadLocal.getUsername(), "plantuml", fileFormat.getFileSuffix());
+      final OutputStream outputStream = resourceWriter.getStreamForWriting();
+      try {
+         outputStream.write(image.getData());
+      } finally {
+         IOUtils.closeQuietly(outputStream);
+      }
+      return new DefaultDownloadResourceInfo(writeableDownloadResourceManager, resourceWriter);
    }
 
    private DownloadResourceInfo attachImage(final ContentEntityObject page, final PlantUmlMacroParams macroParams,
-         ImageInfo imageInfo, final FileFormat fileFormat, final DownloadResourceWriter resourceWriter)
-         throws UnauthorizedDownloadResourceException, DownloadResourceNotFoundException, IOException {
+         final RenderedDiagram diagram, final RenderedImage image, final FileFormat fileFormat) throws IOException {
 
       final String attachmentName;
-      if (imageInfo.isSplitImage()) {
-         attachmentName = macroParams.getExportName() + "-" + imageInfo.getIndex() + fileFormat.getFileSuffix();
+      if (diagram.isSplitImage()) {
+         attachmentName = macroParams.getExportName() + "-" + image.getIndex() + fileFormat.getFileSuffix();
       } else {
          attachmentName = macroParams.getExportName() + fileFormat.getFileSuffix();
       }
@@ -306,31 +618,44 @@ public class PlantUmlMacro extends BaseMacro {
          }
       }
 
-      final DownloadResourceReader resourceReader =
-            writeableDownloadResourceManager.getResourceReader(AuthenticatedUserThreadLocal.getUsername(),
-                  resourceWriter.getResourcePath(), Collections.emptyMap());
+      final byte[] data = image.getData();
 
       if (previousVersion == null
-            || previousVersion.getFileSize() != resourceReader.getContentLength()
-            || !IOUtils.contentEquals(previousVersion.getContentsAsStream(), resourceReader.getStreamForReading())) {
-         attachment.setFileSize(resourceReader.getContentLength());
+            || previousVersion.getFileSize() != data.length
+            || !IOUtils.contentEquals(previousVersion.getContentsAsStream(), new ByteArrayInputStream(data))) {
+         attachment.setFileSize(data.length);
          page.addAttachment(attachment);
          pageManager.getAttachmentManager().saveAttachment(attachment, previousVersion,
-               resourceReader.getStreamForReading());
+               new ByteArrayInputStream(data));
 
          logger.debug("Saved image as attachment " + attachmentName);
       }
       return new AttachmentDownloadResourceInfo(settingsManager.getGlobalSettings().getBaseUrl(), attachment);
    }
 
+   /**
+    * A preprocessed diagram.
+    */
+   private static final class PreparedDiagram {
+      private final PlantUmlPreprocessor preprocessor;
+      private final String umlBlock;
+
+      PreparedDiagram(PlantUmlPreprocessor preprocessor, String umlBlock) {
+         this.preprocessor = preprocessor;
+         this.umlBlock = umlBlock;
+      }
+   }
+
    private final class MyPreprocessingContext implements PreprocessingContext {
       private final PageContext pageContext;
+      private final ConfluenceLinkResolver linkResolver;
 
       /**
        * {@inheritDoc}
        */
-      private MyPreprocessingContext(PageContext pageContext) {
+      private MyPreprocessingContext(PageContext pageContext, ConfluenceLinkResolver linkResolver) {
          this.pageContext = pageContext;
+         this.linkResolver = linkResolver;
       }
 
       /**
@@ -374,30 +699,37 @@ public class PlantUmlMacro extends BaseMacro {
       public PageAnchorBuilder getPageAnchorBuilder() {
          return createPageAnchorBuilder();
       }
+
+      /**
+       * {@inheritDoc}
+       */
+      public ConfluenceLinkResolver getLinkResolver() {
+         return linkResolver;
+      }
    }
 
    /**
     * Gets the UML source either from a Confluence page or from an attachment.
     */
    private final class UmlSourceLocatorConfluence implements UmlSourceLocator {
-      private final PageContext pageContext;
+      private final ConfluenceLinkResolver linkResolver;
+      private final Set<Long> dependencies = new LinkedHashSet<Long>();
 
       /**
-       * @param pageContext
+       * @param linkResolver
        */
-      private UmlSourceLocatorConfluence(PageContext pageContext) {
-         this.pageContext = pageContext;
+      private UmlSourceLocatorConfluence(ConfluenceLinkResolver linkResolver) {
+         this.linkResolver = linkResolver;
       }
 
       public UmlSource get(String name) throws IOException {
-         final ConfluenceLink.Parser parser = new ConfluenceLink.Parser(pageContext, spaceManager, pageManager);
-         final ConfluenceLink confluenceLink = parser.parse(name);
+         final ConfluenceLink confluenceLink = linkResolver.parse(name);
 
          if (logger.isDebugEnabled()) {
             logger.debug("Link '" + name + "' -> " + confluenceLink);
          }
 
-         final Page page = pageManager.getPage(confluenceLink.getSpaceKey(), confluenceLink.getPageTitle());
+         final Page page = linkResolver.getPage(confluenceLink.getSpaceKey(), confluenceLink.getPageTitle());
          // page cannot be null since it is validated before
          if (confluenceLink.hasAttachmentName()) {
             final Attachment attachment =
@@ -407,12 +739,41 @@ public class PlantUmlMacro extends BaseMacro {
                      + "' on page '" + confluenceLink.getPageTitle()
                      + "' in space '" + confluenceLink.getSpaceKey() + "'");
             }
-            return new UmlSourceBuilder().append(attachment.getContentsAsStream()).build();
+            dependencies.add(attachment.getId());
+            return getSource(attachment);
 
          } else {
-            return new UmlSourceBuilder().append(page.getBodyAsStringWithoutMarkup()).build();
+            dependencies.add(page.getId());
+            return getSource(page);
          }
       }
+
+      public Set<Long> getDependencies() {
+         return Collections.unmodifiableSet(dependencies);
+      }
+
+      private UmlSource getSource(Attachment attachment) throws IOException {
+         UmlSource source = includeCache.get(attachment.getId(), attachment.getVersion());
+         if (source == null) {
+            final InputStream stream = attachment.getContentsAsStream();
+            try {
+               source = new UmlSourceBuilder().append(stream).build();
+            } finally {
+               IOUtils.closeQuietly(stream);
+            }
+            includeCache.put(attachment.getId(), attachment.getVersion(), source);
+         }
+         return source;
+      }
+
+      private UmlSource getSource(Page page) {
+         UmlSource source = includeCache.get(page.getId(), page.getVersion());
+         if (source == null) {
+            source = new UmlSourceBuilder().append(page.getBodyAsStringWithoutMarkup()).build();
+            includeCache.put(page.getId(), page.getVersion(), source);
+         }
+         return source;
+      }
    }
 
    /**
@@ -441,8 +802,28 @@ public class PlantUmlMacro extends BaseMacro {
          return index < system.getNbImages();
       }
 
+      public int getNbImages() {
+         return system.getNbImages();
+      }
+
+      /**
+       * Returns true if the pages of the diagram can be exported concurrently. Sequence diagrams lay out each
+       * exported page independently and only read the parsed diagram, and they are by far the most common diagrams
+       * with several pages.
+       *
+       * @return true if {@link #renderImage(OutputStream, FileFormat, int)} may be called concurrently.
+       */
+      public boolean isParallelExportSupported() {
+         return system instanceof SequenceDiagram;
+      }
+
       public final ImageInfo renderImage(OutputStream outputStream, FileFormat format) throws IOException {
-         final ImageData imageData = system.exportDiagram(outputStream, index, new FileFormatOption(format));
+         return renderImage(outputStream, format, index++);
+      }
+
+      public final ImageInfo renderImage(OutputStream outputStream, FileFormat format, int imageIndex)
+            throws IOException {
+         final ImageData imageData = system.exportDiagram(outputStream, imageIndex, new FileFormatOption(format));
 
          final ImageMap imageMap;
          if (imageData.containsCMapData()) {
@@ -451,7 +832,7 @@ public class PlantUmlMacro extends BaseMacro {
          } else {
             imageMap = ImageMap.NULL;
          }
-         return new ImageInfo(imageMap, index++);
+         return new ImageInfo(imageMap, imageIndex);
       }
 
       public final class ImageInfo {
@@ -32,6 +32,8 @@ import net.sourceforge.plantuml.FileFormat;
 import net.sourceforge.plantuml.core.DiagramType;
 
 import java.util.Collections;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.NoSuchElementException;
 
@@ -44,6 +46,12 @@ public final class PlantUmlMacroParams {
       title, type, width, border, align, hspace, vspace, format, dropshadow, separation, exportName, debug;
    }
 
+   /**
+    * Parameters which only change how the images of a diagram are displayed, but not the images themselves.
+    */
+   private static final EnumSet<Param> DISPLAY_PARAMS =
+         EnumSet.of(Param.width, Param.border, Param.align, Param.hspace, Param.vspace);
+
    public enum Alignment {
       none(""), left("float: left;"), center("display: block; text-align: center;"), right("float: right;");
       private final String cssStyle;
@@ -74,18 +82,15 @@ public final class PlantUmlMacroParams {
    }
 
    public int getBorder() {
-      final String border = get(Param.border);
-      return border != null ? Integer.valueOf(border) : 0;
+      return getInt(Param.border);
    }
 
    public int getHspace() {
-      final String hspace = get(Param.hspace);
-      return hspace != null ? Integer.valueOf(hspace) : 0;
+      return getInt(Param.hspace);
    }
 
    public int getVspace() {
-      final String vspace = get(Param.vspace);
-      return vspace != null ? Integer.valueOf(vspace) : 0;
+      return getInt(Param.vspace);
    }
 
    public String getWidth() {
@@ -170,6 +175,22 @@ public final class PlantUmlMacroParams {
       return debug != null ? Boolean.valueOf(debug) : false;
    }
 
+   /**
+    * Returns the parameters which only change how the images of the diagram are displayed.
+    *
+    * @return the display parameters that are set, by name.
+    */
+   public Map<String, String> getDisplayParams() {
+      final Map<String, String> result = new LinkedHashMap<String, String>();
+      for (Param param : DISPLAY_PARAMS) {
+         final String value = get(param);
+         if (value != null) {
+            result.put(param.name(), value);
+         }
+      }
+      return result;
+   }
+
    @Override
    public String toString() {
       return "PlantUmlMacroParams [_params=" + params + "]";
@@ -179,6 +200,21 @@ public final class PlantUmlMacroParams {
       return (String) params.get(param.name());
    }
 
+   /**
+    * Returns the value of an integer parameter; <tt>0</tt> if it is missing or not a number.
+    */
+   private int getInt(Param param) {
+      final String value = get(param);
+      if (value == null) {
+         return 0;
+      }
+      try {
+         return Integer.parseInt(value.trim());
+      } catch (NumberFormatException e) {
+         return 0;
+      }
+   }
+
    private boolean isSvgSupported(RenderContext renderContext) {
         if (RenderContext.DISPLAY.equals(renderContext.getOutputType())) {
             return true;
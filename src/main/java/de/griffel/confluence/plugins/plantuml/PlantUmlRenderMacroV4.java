@@ -41,9 +41,14 @@ import com.atlassian.confluence.util.i18n.I18NBeanFactory;
 import com.atlassian.plugin.PluginAccessor;
 import com.atlassian.renderer.v2.macro.MacroException;
 
+import de.griffel.confluence.plugins.plantuml.cache.DependencyIndex;
+import de.griffel.confluence.plugins.plantuml.cache.DiagramCache;
+import de.griffel.confluence.plugins.plantuml.cache.IncludeCache;
 import de.griffel.confluence.plugins.plantuml.config.PlantUmlConfigurationManager;
+import de.griffel.confluence.plugins.plantuml.metrics.RenderMetrics;
 import de.griffel.confluence.plugins.plantuml.preprocess.PageAnchorBuilder;
 import de.griffel.confluence.plugins.plantuml.preprocess.PageAnchorV4Builder;
+import de.griffel.confluence.plugins.plantuml.render.RenderExecutor;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 
@@ -56,9 +61,10 @@ public class PlantUmlRenderMacroV4 extends PlantUmlMacro implements Macro {
    public PlantUmlRenderMacroV4(WritableDownloadResourceManager writeableDownloadResourceManager, PageManager pageManager,
          SpaceManager spaceManager, SettingsManager settingsManager, PluginAccessor pluginAccessor,
          ShortcutLinksManager shortcutLinksManager, PlantUmlConfigurationManager configurationManager,
-         I18NBeanFactory i18NBeanFactory) {
+         I18NBeanFactory i18NBeanFactory, DiagramCache diagramCache, RenderExecutor renderExecutor,
+         IncludeCache includeCache, DependencyIndex dependencyIndex, RenderMetrics renderMetrics) {
       super(writeableDownloadResourceManager, pageManager, spaceManager, settingsManager, pluginAccessor,
-            shortcutLinksManager, configurationManager, i18NBeanFactory);
+            shortcutLinksManager, configurationManager, i18NBeanFactory, diagramCache, renderExecutor, includeCache, dependencyIndex, renderMetrics);
    }
 
    public final BodyType getBodyType() {
@@ -38,7 +38,13 @@ import com.atlassian.renderer.RenderContext;
 import com.atlassian.renderer.v2.RenderMode;
 import com.atlassian.renderer.v2.macro.BaseMacro;
 import com.atlassian.renderer.v2.macro.MacroException;
+import de.griffel.confluence.plugins.plantuml.cache.DependencyIndex;
+import de.griffel.confluence.plugins.plantuml.cache.DiagramCache;
+import de.griffel.confluence.plugins.plantuml.cache.IncludeCache;
 import de.griffel.confluence.plugins.plantuml.config.PlantUmlConfigurationManager;
+import de.griffel.confluence.plugins.plantuml.graph.PageHierarchyIndex;
+import de.griffel.confluence.plugins.plantuml.metrics.RenderMetrics;
+import de.griffel.confluence.plugins.plantuml.render.RenderExecutor;
 import java.util.Map;
 
 /**
@@ -51,20 +57,24 @@ public class SpaceGraphMacro extends BaseMacro {
    private final SettingsManager _settingsManager;
    private final PermissionManager _permissionManager;
    private final ContentPropertyManager _contentPropertyManager;
+   private final PageHierarchyIndex _pageHierarchyIndex;
 
    public SpaceGraphMacro(WritableDownloadResourceManager writeableDownloadResourceManager, PageManager pageManager,
          SpaceManager spaceManager, SettingsManager settingsManager, PluginAccessor pluginAccessor,
          ShortcutLinksManager shortcutLinksManager, PlantUmlConfigurationManager configurationManager,
-         PermissionManager permissionManager, ContentPropertyManager contentPropertyManager, I18NBeanFactory i18NBeanFactory) {
+         PermissionManager permissionManager, ContentPropertyManager contentPropertyManager, I18NBeanFactory i18NBeanFactory,
+         DiagramCache diagramCache, RenderExecutor renderExecutor, IncludeCache includeCache,
+         DependencyIndex dependencyIndex, RenderMetrics renderMetrics, PageHierarchyIndex pageHierarchyIndex) {
 
       _spaceManager = spaceManager;
       _pageManager = pageManager;
       _settingsManager = settingsManager;
       _permissionManager = permissionManager;
       _contentPropertyManager = contentPropertyManager;
+      _pageHierarchyIndex = pageHierarchyIndex;
 
       plantUmlMacro = new PlantUmlMacro(writeableDownloadResourceManager, pageManager, spaceManager, settingsManager,
-            pluginAccessor, shortcutLinksManager, configurationManager, i18NBeanFactory);
+            pluginAccessor, shortcutLinksManager, configurationManager, i18NBeanFactory, diagramCache, renderExecutor, includeCache, dependencyIndex, renderMetrics);
    }
 
    @SuppressWarnings("unchecked")
@@ -74,7 +84,8 @@ public class SpaceGraphMacro extends BaseMacro {
          protected String executePlantUmlMacro(Map<String, String> params, String dotString, RenderContext context)
                throws MacroException {
             String realString = createDotForSpaceGraph(params, (PageContext) context,
-                  _spaceManager, _pageManager, _settingsManager, _permissionManager, _contentPropertyManager);
+                  _spaceManager, _pageManager, _settingsManager, _permissionManager, _contentPropertyManager,
+                  _pageHierarchyIndex);
             return plantUmlMacro.execute(params, realString, context);
          }
       }.execute(params, body, context);
@@ -39,7 +39,13 @@ import com.atlassian.confluence.util.i18n.I18NBeanFactory;
 import com.atlassian.plugin.PluginAccessor;
 import com.atlassian.renderer.RenderContext;
 import com.atlassian.renderer.v2.macro.MacroException;
+import de.griffel.confluence.plugins.plantuml.cache.DependencyIndex;
+import de.griffel.confluence.plugins.plantuml.cache.DiagramCache;
+import de.griffel.confluence.plugins.plantuml.cache.IncludeCache;
 import de.griffel.confluence.plugins.plantuml.config.PlantUmlConfigurationManager;
+import de.griffel.confluence.plugins.plantuml.graph.PageHierarchyIndex;
+import de.griffel.confluence.plugins.plantuml.metrics.RenderMetrics;
+import de.griffel.confluence.plugins.plantuml.render.RenderExecutor;
 import java.util.Map;
 
 /**
@@ -53,21 +59,26 @@ public class SpaceGraphMacroV4 implements Macro {
    private final SettingsManager _settingsManager;
    private final PermissionManager _permissionManager;
    private final ContentPropertyManager _contentPropertyManager;
+   private final PageHierarchyIndex _pageHierarchyIndex;
 
    public SpaceGraphMacroV4(WritableDownloadResourceManager writeableDownloadResourceManager, PageManager pageManager,
          SpaceManager spaceManager, SettingsManager settingsManager, PluginAccessor pluginAccessor,
          ShortcutLinksManager shortcutLinksManager, PlantUmlConfigurationManager configurationManager,
-         PermissionManager permissionManager, ContentPropertyManager contentPropertyManager, I18NBeanFactory i18NBeanFactory) {
+         PermissionManager permissionManager, ContentPropertyManager contentPropertyManager, I18NBeanFactory i18NBeanFactory,
+         DiagramCache diagramCache, RenderExecutor renderExecutor, IncludeCache includeCache,
+         DependencyIndex dependencyIndex, RenderMetrics renderMetrics, PageHierarchyIndex pageHierarchyIndex) {
 
       _spaceManager = spaceManager;
       _pageManager = pageManager;
       _settingsManager = settingsManager;
       _permissionManager = permissionManager;
       _contentPropertyManager = contentPropertyManager;
+      _pageHierarchyIndex = pageHierarchyIndex;
 
       plantUmlMacroV4 =
             new PlantUmlMacroV4(writeableDownloadResourceManager, pageManager, spaceManager, settingsManager,
-                  pluginAccessor, shortcutLinksManager, configurationManager, i18NBeanFactory);
+                  pluginAccessor, shortcutLinksManager, configurationManager, i18NBeanFactory, diagramCache,
+                  renderExecutor, includeCache, dependencyIndex, renderMetrics);
    }
 
    public String execute(Map<String, String> params, String body, ConversionContext context)
@@ -78,7 +89,8 @@ public class SpaceGraphMacroV4 implements Macro {
             protected String executePlantUmlMacro(Map<String, String> params, String dotString, RenderContext context)
                   throws MacroException {
                String realString = createDotForSpaceGraph(params, (PageContext) context,
-                     _spaceManager, _pageManager, _settingsManager, _permissionManager, _contentPropertyManager);
+                     _spaceManager, _pageManager, _settingsManager, _permissionManager, _contentPropertyManager,
+                     _pageHierarchyIndex);
                return plantUmlMacroV4.execute(params, realString, context);
             }
          }.execute(params, body, context.getPageContext());
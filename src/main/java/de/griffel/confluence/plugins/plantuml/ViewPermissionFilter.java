@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2011 Michael Griffel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * This distribution includes other third-party libraries.
+ * These libraries and their corresponding licenses (where different
+ * from the GNU General Public License) are enumerated below.
+ *
+ * PlantUML is a Open-Source tool in Java to draw UML Diagram.
+ * The software is developed by Arnaud Roques at
+ * http://plantuml.sourceforge.org.
+ */
+package de.griffel.confluence.plugins.plantuml;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import com.atlassian.confluence.core.ContentEntityObject;
+import com.atlassian.confluence.security.Permission;
+import com.atlassian.confluence.security.PermissionManager;
+import com.atlassian.confluence.user.AuthenticatedUserThreadLocal;
+import com.atlassian.confluence.util.GeneralUtil;
+import com.atlassian.user.User;
+
+/**
+ * Filters the pages the current user is allowed to view with a single bulk permission check.
+ */
+public final class ViewPermissionFilter {
+   /**
+    * Confluence versions prior to 5.2 do not provide {@link AuthenticatedUserThreadLocal#get()}. The version does not
+    * change while the plugin is running, so it is checked once when the class is loaded.
+    */
+   private static final boolean LEGACY_USER_API = isLegacyUserApi(GeneralUtil.getVersionNumber());
+
+   private final PermissionManager permissionManager;
+
+   public ViewPermissionFilter(PermissionManager permissionManager) {
+      this.permissionManager = permissionManager;
+   }
+
+   /**
+    * Returns the pages the current user is allowed to view.
+    *
+    * @param pages the candidate pages.
+    * @return the viewable pages in the order of the candidates.
+    */
+   <T extends ContentEntityObject> List<T> filter(Collection<T> pages) {
+      if (pages.isEmpty()) {
+         return new ArrayList<T>();
+      }
+      return permissionManager.getPermittedEntities(getUser(), Permission.VIEW, new ArrayList<T>(pages));
+   }
+
+   /**
+    * Returns true if the current user is allowed to view the given page.
+    *
+    * @param page the page.
+    * @return true if the page is viewable.
+    */
+   public boolean isPermitted(ContentEntityObject page) {
+      return permissionManager.hasPermission(getUser(), Permission.VIEW, page);
+   }
+
+   @SuppressWarnings("deprecation")
+   private static User getUser() {
+      return LEGACY_USER_API ? AuthenticatedUserThreadLocal.getUser() : AuthenticatedUserThreadLocal.get();
+   }
+
+   static boolean isLegacyUserApi(String versionNumber) {
+      return versionNumber.matches("^[0-4]\\..*$") || versionNumber.matches("^5\\.[0-1]\\..*$");
+   }
+}
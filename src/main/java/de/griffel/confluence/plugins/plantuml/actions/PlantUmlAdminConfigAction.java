@@ -9,6 +9,7 @@ import com.atlassian.confluence.util.breadcrumbs.AdminActionBreadcrumb;
 import com.atlassian.confluence.util.breadcrumbs.Breadcrumb;
 import com.atlassian.confluence.util.breadcrumbs.BreadcrumbAware;
 
+import de.griffel.confluence.plugins.plantuml.cache.CacheWarmUpJob;
 import de.griffel.confluence.plugins.plantuml.config.PlantUmlConfiguration;
 import de.griffel.confluence.plugins.plantuml.config.PlantUmlConfigurationBean;
 import de.griffel.confluence.plugins.plantuml.config.PlantUmlConfigurationManager;
@@ -22,10 +23,19 @@ public final class PlantUmlAdminConfigAction extends ConfluenceActionSupport imp
    private static final Logger logger = LoggerFactory.getLogger(PlantUmlAdminConfigAction.class);
 
    private PlantUmlConfigurationManager configurationManager;
+   private CacheWarmUpJob cacheWarmUpJob;
 
    private boolean isSvek;
    private String commonHeader;
    private String commonFooter;
+   private int diskCacheSize;
+   private int maxConcurrentRenders;
+   private int renderQueueLength;
+   private int maxRendersPerUser;
+   private int renderWaitTimeout;
+   private int renderTimeout;
+   private boolean asyncRendering;
+   private boolean cacheWarmUp;
 
    public void setSvek(boolean flag) {
       isSvek = flag;
@@ -51,6 +61,86 @@ public final class PlantUmlAdminConfigAction extends ConfluenceActionSupport imp
       this.commonFooter = commonFooter;
    }
 
+   public int getDiskCacheSize() {
+      return diskCacheSize;
+   }
+
+   public void setDiskCacheSize(int diskCacheSize) {
+      this.diskCacheSize = diskCacheSize;
+   }
+
+   public int getMaxConcurrentRenders() {
+      return maxConcurrentRenders;
+   }
+
+   public void setMaxConcurrentRenders(int maxConcurrentRenders) {
+      this.maxConcurrentRenders = maxConcurrentRenders;
+   }
+
+   public int getRenderQueueLength() {
+      return renderQueueLength;
+   }
+
+   public void setRenderQueueLength(int renderQueueLength) {
+      this.renderQueueLength = renderQueueLength;
+   }
+
+   public int getMaxRendersPerUser() {
+      return maxRendersPerUser;
+   }
+
+   public void setMaxRendersPerUser(int maxRendersPerUser) {
+      this.maxRendersPerUser = maxRendersPerUser;
+   }
+
+   public int getRenderWaitTimeout() {
+      return renderWaitTimeout;
+   }
+
+   public void setRenderWaitTimeout(int renderWaitTimeout) {
+      this.renderWaitTimeout = renderWaitTimeout;
+   }
+
+   public int getRenderTimeout() {
+      return renderTimeout;
+   }
+
+   public void setRenderTimeout(int renderTimeout) {
+      this.renderTimeout = renderTimeout;
+   }
+
+   public boolean isAsyncRendering() {
+      return asyncRendering;
+   }
+
+   public void setAsyncRendering(boolean asyncRendering) {
+      this.asyncRendering = asyncRendering;
+   }
+
+   public boolean isCacheWarmUp() {
+      return cacheWarmUp;
+   }
+
+   public void setCacheWarmUp(boolean cacheWarmUp) {
+      this.cacheWarmUp = cacheWarmUp;
+   }
+
+   public String getCacheWarmUpState() {
+      return cacheWarmUpJob.getState().name().toLowerCase();
+   }
+
+   public int getCacheWarmUpProcessedPages() {
+      return cacheWarmUpJob.getProcessedPages();
+   }
+
+   public int getCacheWarmUpTotalPages() {
+      return cacheWarmUpJob.getTotalPages();
+   }
+
+   public void setCacheWarmUpJob(CacheWarmUpJob cacheWarmUpJob) {
+      this.cacheWarmUpJob = cacheWarmUpJob;
+   }
+
    public void setConfigurationManager(PlantUmlConfigurationManager configurationManager) {
       this.configurationManager = configurationManager;
    }
@@ -64,6 +154,14 @@ public final class PlantUmlAdminConfigAction extends ConfluenceActionSupport imp
       isSvek = configuration.isSvek();
       commonHeader = (String) ObjectUtils.defaultIfNull(configuration.getCommonHeader(), "");
       commonFooter = (String) ObjectUtils.defaultIfNull(configuration.getCommonFooter(), "");
+      diskCacheSize = configuration.getDiskCacheSize();
+      maxConcurrentRenders = configuration.getMaxConcurrentRenders();
+      renderQueueLength = configuration.getRenderQueueLength();
+      maxRendersPerUser = configuration.getMaxRendersPerUser();
+      renderWaitTimeout = configuration.getRenderWaitTimeout();
+      renderTimeout = configuration.getRenderTimeout();
+      asyncRendering = configuration.isAsyncRendering();
+      cacheWarmUp = configuration.isCacheWarmUp();
 
       logger.debug("Loaded configuration {}", configuration);
       return SUCCESS;
@@ -73,18 +171,40 @@ public final class PlantUmlAdminConfigAction extends ConfluenceActionSupport imp
     * {@inheritDoc}
     */
    public String save() {
-      final PlantUmlConfiguration configuration = new PlantUmlConfigurationBean();
+      final PlantUmlConfigurationBean configuration = configurationManager.copy();
+      final boolean warmUpEnabled = cacheWarmUp && !configuration.isCacheWarmUp();
       configuration.setSvek(isSvek);
       configuration.setCommonHeader(commonHeader);
       configuration.setCommonFooter(commonFooter);
+      configuration.setDiskCacheSize(Math.max(0, diskCacheSize));
+      configuration.setMaxConcurrentRenders(Math.max(1, maxConcurrentRenders));
+      configuration.setRenderQueueLength(Math.max(0, renderQueueLength));
+      configuration.setMaxRendersPerUser(Math.max(1, maxRendersPerUser));
+      configuration.setRenderWaitTimeout(Math.max(0, renderWaitTimeout));
+      configuration.setRenderTimeout(Math.max(0, renderTimeout));
+      configuration.setAsyncRendering(asyncRendering);
+      configuration.setCacheWarmUp(cacheWarmUp);
 
       configurationManager.save(configuration);
+      if (warmUpEnabled) {
+         cacheWarmUpJob.start();
+      }
 
       logger.debug("Saved configuration {}", configuration);
       addActionMessage(getText("plantuml.admin.config.saved"));
       return SUCCESS;
    }
 
+   /**
+    * Starts the cache warm-up unless it is already running.
+    */
+   public String warmUp() {
+      if (cacheWarmUpJob.start()) {
+         logger.info("Cache warm-up started by {}", getAuthenticatedUser());
+      }
+      return SUCCESS;
+   }
+
    /**
     * {@inheritDoc}
     */
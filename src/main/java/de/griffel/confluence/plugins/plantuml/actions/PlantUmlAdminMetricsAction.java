@@ -0,0 +1,96 @@
+package de.griffel.confluence.plugins.plantuml.actions;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import javax.servlet.http.HttpServletResponse;
+
+import net.sourceforge.plantuml.core.DiagramType;
+
+import com.atlassian.confluence.core.ConfluenceActionSupport;
+import com.atlassian.confluence.util.breadcrumbs.AdminActionBreadcrumb;
+import com.atlassian.confluence.util.breadcrumbs.Breadcrumb;
+import com.atlassian.confluence.util.breadcrumbs.BreadcrumbAware;
+import com.opensymphony.webwork.ServletActionContext;
+
+import de.griffel.confluence.plugins.plantuml.metrics.LatencyHistogram;
+import de.griffel.confluence.plugins.plantuml.metrics.RenderMetrics;
+import de.griffel.confluence.plugins.plantuml.metrics.RenderPhase;
+import de.griffel.confluence.plugins.plantuml.metrics.SlowDiagram;
+
+/**
+ * XWork action that shows the render metrics of this node.
+ */
+public final class PlantUmlAdminMetricsAction extends ConfluenceActionSupport implements BreadcrumbAware {
+   private static final long serialVersionUID = 1L;
+
+   private RenderMetrics renderMetrics;
+
+   public void setRenderMetrics(RenderMetrics renderMetrics) {
+      this.renderMetrics = renderMetrics;
+   }
+
+   public RenderMetrics getRenderMetrics() {
+      return renderMetrics;
+   }
+
+   public List<RenderPhase> getPhases() {
+      return Arrays.asList(RenderPhase.values());
+   }
+
+   public LatencyHistogram getPhase(RenderPhase phase) {
+      return renderMetrics.getPhase(phase);
+   }
+
+   public Map<DiagramType, LatencyHistogram> getRenders() {
+      return renderMetrics.getRenders();
+   }
+
+   public List<SlowDiagram> getSlowDiagrams() {
+      return renderMetrics.getSlowDiagramReport().getSlowestDiagrams();
+   }
+
+   public String getCacheHitRatio() {
+      return String.format("%.1f %%", renderMetrics.getCacheHitRatio());
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public String execute() {
+      return SUCCESS;
+   }
+
+   /**
+    * Resets all timings and counters.
+    */
+   public String reset() {
+      renderMetrics.reset();
+      return SUCCESS;
+   }
+
+   /**
+    * Writes the slow diagram report as CSV file.
+    */
+   public String exportSlowDiagrams() throws IOException {
+      final HttpServletResponse response = ServletActionContext.getResponse();
+      response.setContentType("text/csv; charset=UTF-8");
+      response.setHeader("Content-Disposition", "attachment; filename=\"plantuml-slow-diagrams.csv\"");
+      final Writer writer = response.getWriter();
+      renderMetrics.getSlowDiagramReport().writeCsv(writer);
+      writer.flush();
+      return NONE;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public Breadcrumb getBreadcrumb() {
+      return new AdminActionBreadcrumb(this);
+   }
+
+}
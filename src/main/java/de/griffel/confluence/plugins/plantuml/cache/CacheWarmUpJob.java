@@ -0,0 +1,278 @@
+/*
+ * Copyright (C) 2011 Michael Griffel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * This distribution includes other third-party libraries.
+ * These libraries and their corresponding licenses (where different
+ * from the GNU General Public License) are enumerated below.
+ *
+ * PlantUML is a Open-Source tool in Java to draw UML Diagram.
+ * The software is developed by Arnaud Roques at
+ * http://plantuml.sourceforge.org.
+ */
+package de.griffel.confluence.plugins.plantuml.cache;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+
+import com.atlassian.beehive.ClusterLockService;
+import com.atlassian.bonnie.Searchable;
+import com.atlassian.confluence.content.render.xhtml.DefaultConversionContext;
+import com.atlassian.confluence.pages.AbstractPage;
+import com.atlassian.confluence.pages.PageManager;
+import com.atlassian.confluence.search.service.ContentTypeEnum;
+import com.atlassian.confluence.search.v2.ContentSearch;
+import com.atlassian.confluence.search.v2.InvalidSearchException;
+import com.atlassian.confluence.search.v2.SearchManager;
+import com.atlassian.confluence.search.v2.SearchQuery;
+import com.atlassian.confluence.search.v2.SearchResults;
+import com.atlassian.confluence.search.v2.filter.SubsetResultFilter;
+import com.atlassian.confluence.search.v2.query.BooleanQuery;
+import com.atlassian.confluence.search.v2.query.ContentTypeQuery;
+import com.atlassian.confluence.search.v2.query.MacroUsageQuery;
+import com.atlassian.confluence.search.v2.sort.ModifiedSort;
+import com.atlassian.confluence.xhtml.api.XhtmlContent;
+import com.atlassian.sal.api.transaction.TransactionCallback;
+import com.atlassian.sal.api.transaction.TransactionTemplate;
+
+import de.griffel.confluence.plugins.plantuml.config.PlantUmlConfigurationManager;
+import de.griffel.confluence.plugins.plantuml.render.RenderBudget;
+
+/**
+ * Fills the render cache in the background after a restart or an upgrade of the plugin, so that the first viewers of a
+ * page do not have to wait for its diagrams.
+ * <p>
+ * The job searches the pages and blog posts using one of the diagram macros, most recently modified first, and
+ * renders them one after the other through the normal macro execution in a single low priority thread. Diagrams that
+ * are already cached are not rendered again. The job pauses between two pages and renders on a {@link RenderBudget}
+ * of its own, so it does not take the render slots of anonymous users.
+ * <p>
+ * The rendered diagrams are stored in the shared disk cache, so only one node of a cluster warms up the cache. The
+ * other nodes skip the warm-up while the cluster lock of the job is held.
+ * <p>
+ * The job runs without a user. Space and link graphs depend on the permissions of the viewer, so their diagrams would
+ * not match the ones of logged in users. Pages using only these macros are not searched, and the macros render
+ * nothing while a page is rendered on the budget of the job.
+ */
+public final class CacheWarmUpJob implements InitializingBean, DisposableBean {
+   private static final Logger logger = Logger.getLogger(CacheWarmUpJob.class);
+
+   static final List<String> MACRO_NAMES = Arrays.asList("plantuml", "flowchart", "database-structure");
+
+   static final int BATCH_SIZE = 50;
+   private static final long START_DELAY_SECONDS = 120;
+   private static final long PAUSE_MILLIS = 500;
+   private static final String LOCK_NAME = CacheWarmUpJob.class.getName();
+   private static final String RENDER_BUDGET = "cache-warm-up";
+
+   /**
+    * State of the warm-up.
+    */
+   public enum State {
+      IDLE, RUNNING, FINISHED, FAILED
+   }
+
+   private final SearchManager searchManager;
+   private final PageManager pageManager;
+   private final XhtmlContent xhtmlContent;
+   private final TransactionTemplate transactionTemplate;
+   private final PlantUmlConfigurationManager configurationManager;
+   private final ClusterLockService clusterLockService;
+
+   private ScheduledExecutorService executor;
+   private Future<?> job;
+   private long pauseMillis = PAUSE_MILLIS;
+
+   private volatile State state = State.IDLE;
+   private volatile int processedPages;
+   private volatile int totalPages;
+
+   public CacheWarmUpJob(SearchManager searchManager, PageManager pageManager, XhtmlContent xhtmlContent,
+         TransactionTemplate transactionTemplate, PlantUmlConfigurationManager configurationManager,
+         ClusterLockService clusterLockService) {
+      this.searchManager = searchManager;
+      this.pageManager = pageManager;
+      this.xhtmlContent = xhtmlContent;
+      this.transactionTemplate = transactionTemplate;
+      this.configurationManager = configurationManager;
+      this.clusterLockService = clusterLockService;
+   }
+
+   public synchronized void afterPropertiesSet() {
+      executor = new ScheduledThreadPoolExecutor(1, new WarmUpThreadFactory());
+      if (configurationManager.load().isCacheWarmUp()) {
+         schedule(START_DELAY_SECONDS);
+      }
+   }
+
+   public synchronized void destroy() {
+      executor.shutdownNow();
+   }
+
+   /**
+    * Starts the warm-up unless it is already running.
+    *
+    * @return true if the warm-up has been started.
+    */
+   public boolean start() {
+      return schedule(0);
+   }
+
+   public State getState() {
+      return state;
+   }
+
+   public int getProcessedPages() {
+      return processedPages;
+   }
+
+   public int getTotalPages() {
+      return totalPages;
+   }
+
+   void setPauseMillis(long pauseMillis) {
+      this.pauseMillis = pauseMillis;
+   }
+
+   private synchronized boolean schedule(long delaySeconds) {
+      if (job != null && !job.isDone()) {
+         return false;
+      }
+      processedPages = 0;
+      totalPages = 0;
+      state = State.RUNNING;
+      job = executor.schedule(new Runnable() {
+         public void run() {
+            warmUp();
+         }
+      }, delaySeconds, TimeUnit.SECONDS);
+      return true;
+   }
+
+   void warmUp() {
+      if (configurationManager.load().getDiskCacheSize() <= 0) {
+         logger.info("Cache warm-up skipped as the disk cache is disabled");
+         state = State.IDLE;
+         return;
+      }
+      final Lock lock = clusterLockService.getLockForName(LOCK_NAME);
+      if (!lock.tryLock()) {
+         logger.info("Cache warm-up skipped as it is running on another node");
+         state = State.IDLE;
+         return;
+      }
+      logger.info("Cache warm-up started");
+      RenderBudget.set(RENDER_BUDGET);
+      try {
+         for (int start = 0;; start += BATCH_SIZE) {
+            final List<Long> pageIds = findPages(start);
+            for (Long pageId : pageIds) {
+               if (Thread.currentThread().isInterrupted()) {
+                  state = State.IDLE;
+                  return;
+               }
+               render(pageId);
+               processedPages++;
+               Thread.sleep(pauseMillis);
+            }
+            if (pageIds.size() < BATCH_SIZE) {
+               break;
+            }
+         }
+         state = State.FINISHED;
+         logger.info("Cache warm-up finished after " + processedPages + " pages");
+      } catch (InterruptedException e) {
+         state = State.IDLE;
+      } catch (RuntimeException e) {
+         state = State.FAILED;
+         logger.warn("Cache warm-up failed after " + processedPages + " pages", e);
+      } finally {
+         RenderBudget.reset();
+         lock.unlock();
+      }
+   }
+
+   private List<Long> findPages(final int start) {
+      return transactionTemplate.execute(new TransactionCallback<List<Long>>() {
+         public List<Long> doInTransaction() {
+            final Set<SearchQuery> macroQueries = new HashSet<SearchQuery>();
+            for (String macroName : MACRO_NAMES) {
+               macroQueries.add(new MacroUsageQuery(macroName));
+            }
+            final Set<SearchQuery> queries = new HashSet<SearchQuery>();
+            queries.add(new ContentTypeQuery(Arrays.asList(ContentTypeEnum.PAGE, ContentTypeEnum.BLOG)));
+            queries.add(BooleanQuery.composeOrQuery(macroQueries));
+            final SearchQuery query = BooleanQuery.composeAndQuery(queries);
+            final SearchResults results;
+            try {
+               results = searchManager.search(new ContentSearch(query, ModifiedSort.DESCENDING, null,
+                     new SubsetResultFilter(start, BATCH_SIZE)));
+            } catch (InvalidSearchException e) {
+               throw new IllegalStateException(e);
+            }
+            totalPages = results.getUnfilteredResultsCount();
+            final List<Long> pageIds = new ArrayList<Long>();
+            for (Searchable searchable : searchManager.convertToEntities(results,
+                  SearchManager.EntityVersionPolicy.LATEST_VERSION)) {
+               if (searchable instanceof AbstractPage) {
+                  pageIds.add(((AbstractPage) searchable).getId());
+               }
+            }
+            return pageIds;
+         }
+      });
+   }
+
+   private void render(final long pageId) {
+      transactionTemplate.execute(new TransactionCallback<Object>() {
+         public Object doInTransaction() {
+            final AbstractPage page = pageManager.getAbstractPage(pageId);
+            if (page == null) {
+               return null;
+            }
+            try {
+               xhtmlContent.convertStorageToView(page.getBodyAsString(),
+                     new DefaultConversionContext(page.toPageContext()));
+            } catch (Exception e) {
+               logger.debug("Cache warm-up of page " + pageId + " failed", e);
+            }
+            return null;
+         }
+      });
+   }
+
+   private static final class WarmUpThreadFactory implements ThreadFactory {
+      public Thread newThread(Runnable runnable) {
+         final Thread thread = new Thread(runnable, "plantuml-cache-warm-up");
+         thread.setDaemon(true);
+         thread.setPriority(Thread.MIN_PRIORITY);
+         thread.setContextClassLoader(CacheWarmUpJob.class.getClassLoader());
+         return thread;
+      }
+   }
+}
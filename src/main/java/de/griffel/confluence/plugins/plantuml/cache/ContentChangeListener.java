@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2011 Michael Griffel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * This distribution includes other third-party libraries.
+ * These libraries and their corresponding licenses (where different
+ * from the GNU General Public License) are enumerated below.
+ *
+ * PlantUML is a Open-Source tool in Java to draw UML Diagram.
+ * The software is developed by Arnaud Roques at
+ * http://plantuml.sourceforge.org.
+ */
+package de.griffel.confluence.plugins.plantuml.cache;
+
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+
+import com.atlassian.confluence.event.events.cluster.ClusterEventWrapper;
+import com.atlassian.confluence.event.events.content.attachment.AttachmentEvent;
+import com.atlassian.confluence.event.events.content.attachment.AttachmentRemoveEvent;
+import com.atlassian.confluence.event.events.content.attachment.AttachmentTrashedEvent;
+import com.atlassian.confluence.event.events.content.attachment.AttachmentUpdateEvent;
+import com.atlassian.confluence.event.events.content.page.PageRemoveEvent;
+import com.atlassian.confluence.event.events.content.page.PageTrashedEvent;
+import com.atlassian.confluence.event.events.content.page.PageUpdateEvent;
+import com.atlassian.confluence.pages.Attachment;
+import com.atlassian.event.api.EventListener;
+import com.atlassian.event.api.EventPublisher;
+
+/**
+ * Evicts the cached sources of pages and attachments that are updated, trashed or removed, together with all diagrams
+ * that include them directly or through nested includes.
+ * <p>
+ * As diagrams are cached by the content hash of their resolved source, an outdated diagram is never served even
+ * without this listener. It frees the space of outdated diagrams right away instead of waiting for their eviction.
+ * <p>
+ * Content events are only published on the node where the change happened, so the change is passed on to the other
+ * nodes of a cluster as {@link ContentChangedEvent}. Every node evicts the diagrams of its own dependency index.
+ */
+public final class ContentChangeListener implements InitializingBean, DisposableBean {
+   private static final Logger logger = Logger.getLogger(ContentChangeListener.class);
+
+   private final EventPublisher eventPublisher;
+   private final IncludeCache includeCache;
+   private final DependencyIndex dependencyIndex;
+   private final DiagramCache diagramCache;
+
+   public ContentChangeListener(EventPublisher eventPublisher, IncludeCache includeCache,
+         DependencyIndex dependencyIndex, DiagramCache diagramCache) {
+      this.eventPublisher = eventPublisher;
+      this.includeCache = includeCache;
+      this.dependencyIndex = dependencyIndex;
+      this.diagramCache = diagramCache;
+   }
+
+   public void afterPropertiesSet() {
+      eventPublisher.register(this);
+   }
+
+   public void destroy() {
+      eventPublisher.unregister(this);
+   }
+
+   @EventListener
+   public void onPageUpdate(PageUpdateEvent event) {
+      publishContentChanged(event.getPage().getId());
+   }
+
+   @EventListener
+   public void onPageTrashed(PageTrashedEvent event) {
+      publishContentChanged(event.getPage().getId());
+   }
+
+   @EventListener
+   public void onPageRemove(PageRemoveEvent event) {
+      publishContentChanged(event.getPage().getId());
+   }
+
+   @EventListener
+   public void onAttachmentUpdate(AttachmentUpdateEvent event) {
+      attachmentsChanged(event);
+   }
+
+   @EventListener
+   public void onAttachmentTrashed(AttachmentTrashedEvent event) {
+      attachmentsChanged(event);
+   }
+
+   @EventListener
+   public void onAttachmentRemove(AttachmentRemoveEvent event) {
+      attachmentsChanged(event);
+   }
+
+   /**
+    * Evicts the diagrams of this node that depend on content changed on another node of the cluster.
+    *
+    * @param event the cluster event.
+    */
+   @EventListener
+   public void onClusterEvent(ClusterEventWrapper event) {
+      if (event.getEvent() instanceof ContentChangedEvent) {
+         contentChanged(((ContentChangedEvent) event.getEvent()).getContentId());
+      }
+   }
+
+   private void attachmentsChanged(AttachmentEvent event) {
+      for (Attachment attachment : event.getAttachments()) {
+         publishContentChanged(attachment.getId());
+      }
+   }
+
+   private void publishContentChanged(long contentId) {
+      contentChanged(contentId);
+      eventPublisher.publish(new ContentChangedEvent(this, contentId));
+   }
+
+   private void contentChanged(long contentId) {
+      includeCache.remove(contentId);
+      for (String key : dependencyIndex.removeDependents(contentId)) {
+         logger.debug("Evicting diagram " + key + " which depends on content " + contentId);
+         diagramCache.remove(key);
+      }
+   }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2011 Michael Griffel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * This distribution includes other third-party libraries.
+ * These libraries and their corresponding licenses (where different
+ * from the GNU General Public License) are enumerated below.
+ *
+ * PlantUML is a Open-Source tool in Java to draw UML Diagram.
+ * The software is developed by Arnaud Roques at
+ * http://plantuml.sourceforge.org.
+ */
+package de.griffel.confluence.plugins.plantuml.cache;
+
+import com.atlassian.confluence.event.events.ConfluenceEvent;
+import com.atlassian.confluence.event.events.cluster.ClusterEvent;
+
+/**
+ * Tells the other nodes of a cluster that a page or attachment has changed, so that they evict the diagrams that
+ * depend on it from their caches.
+ */
+public final class ContentChangedEvent extends ConfluenceEvent implements ClusterEvent {
+   private static final long serialVersionUID = 1L;
+
+   private final long contentId;
+
+   public ContentChangedEvent(Object src, long contentId) {
+      super(src);
+      this.contentId = contentId;
+   }
+
+   /**
+    * Returns the id of the changed page or attachment.
+    *
+    * @return the id of the changed page or attachment.
+    */
+   public long getContentId() {
+      return contentId;
+   }
+}
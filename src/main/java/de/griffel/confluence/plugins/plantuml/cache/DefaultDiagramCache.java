@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2011 Michael Griffel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * This distribution includes other third-party libraries.
+ * These libraries and their corresponding licenses (where different
+ * from the GNU General Public License) are enumerated below.
+ *
+ * PlantUML is a Open-Source tool in Java to draw UML Diagram.
+ * The software is developed by Arnaud Roques at
+ * http://plantuml.sourceforge.org.
+ */
+package de.griffel.confluence.plugins.plantuml.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Two-tier {@link DiagramCache}. The first tier is an in-memory cache that evicts the least recently used diagrams as
+ * soon as the total size of all cached images exceeds the configured number of bytes. The second tier is the
+ * persistent {@link DiagramStore} that also serves the images for download.
+ */
+public final class DefaultDiagramCache implements DiagramCache {
+   private static final Logger logger = Logger.getLogger(DefaultDiagramCache.class);
+
+   /**
+    * Default size of the in-memory cache: {@value #DEFAULT_MAX_WEIGHT} bytes.
+    */
+   public static final long DEFAULT_MAX_WEIGHT = 32L * 1024 * 1024;
+
+   private final long maxWeight;
+   private final DiagramStore diagramStore;
+   private final Map<String, RenderedDiagram> diagrams =
+         new LinkedHashMap<String, RenderedDiagram>(16, 0.75f, true /* access order */);
+   private long weight;
+
+   public DefaultDiagramCache(DiagramStore diagramStore) {
+      this(DEFAULT_MAX_WEIGHT, diagramStore);
+   }
+
+   DefaultDiagramCache(long maxWeight, DiagramStore diagramStore) {
+      this.maxWeight = maxWeight;
+      this.diagramStore = diagramStore;
+   }
+
+   public RenderedDiagram get(String key) {
+      RenderedDiagram diagram = getFromMemory(key);
+      if (diagram == null) {
+         diagram = diagramStore.load(key);
+         if (diagram != null) {
+            putToMemory(key, diagram);
+         }
+      }
+      return diagram;
+   }
+
+   public void put(String key, RenderedDiagram diagram) {
+      putToMemory(key, diagram);
+      diagramStore.store(key, diagram);
+   }
+
+   public String getDownloadPath(String key, long contentId, RenderedDiagram diagram, RenderedImage image) {
+      return diagramStore.getDownloadPath(key, contentId, diagram, image);
+   }
+
+   public void addOwner(String key, long contentId) {
+      diagramStore.addOwner(key, contentId);
+   }
+
+   public void remove(String key) {
+      synchronized (this) {
+         final RenderedDiagram previous = diagrams.remove(key);
+         if (previous != null) {
+            weight -= previous.getWeight();
+         }
+      }
+      diagramStore.remove(key);
+   }
+
+   public void clear() {
+      synchronized (this) {
+         diagrams.clear();
+         weight = 0;
+      }
+      diagramStore.clear();
+   }
+
+   /**
+    * Returns the total size of all diagrams in the in-memory cache in bytes.
+    *
+    * @return the total size of all diagrams in the in-memory cache in bytes.
+    */
+   public synchronized long getWeight() {
+      return weight;
+   }
+
+   /**
+    * Returns the number of diagrams in the in-memory cache.
+    *
+    * @return the number of diagrams in the in-memory cache.
+    */
+   public synchronized int size() {
+      return diagrams.size();
+   }
+
+   private synchronized RenderedDiagram getFromMemory(String key) {
+      return diagrams.get(key);
+   }
+
+   private synchronized void putToMemory(String key, RenderedDiagram diagram) {
+      final long diagramWeight = diagram.getWeight();
+      if (diagramWeight > maxWeight) {
+         logger.debug("Diagram " + key + " is too large for the cache: " + diagramWeight + " bytes");
+         return;
+      }
+      final RenderedDiagram previous = diagrams.put(key, diagram);
+      if (previous != null) {
+         weight -= previous.getWeight();
+      }
+      weight += diagramWeight;
+      evict();
+   }
+
+   private void evict() {
+      final Iterator<RenderedDiagram> iterator = diagrams.values().iterator();
+      while (weight > maxWeight && iterator.hasNext()) {
+         weight -= iterator.next().getWeight();
+         iterator.remove();
+      }
+   }
+
+   @Override
+   public synchronized String toString() {
+      return "DefaultDiagramCache [size=" + diagrams.size() + ", weight=" + weight + ", maxWeight=" + maxWeight
+            + ", diagramStore=" + diagramStore + "]";
+   }
+}
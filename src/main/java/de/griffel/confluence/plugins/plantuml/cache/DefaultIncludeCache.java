@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2011 Michael Griffel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * This distribution includes other third-party libraries.
+ * These libraries and their corresponding licenses (where different
+ * from the GNU General Public License) are enumerated below.
+ *
+ * PlantUML is a Open-Source tool in Java to draw UML Diagram.
+ * The software is developed by Arnaud Roques at
+ * http://plantuml.sourceforge.org.
+ */
+package de.griffel.confluence.plugins.plantuml.cache;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import net.sourceforge.plantuml.core.UmlSource;
+
+/**
+ * In-memory {@link IncludeCache} that keeps the least recently used UML sources. Sources of pages and attachments
+ * that are updated, trashed or removed are evicted by the {@link ContentChangeListener}.
+ */
+public final class DefaultIncludeCache implements IncludeCache {
+   /**
+    * Default number of cached UML sources: {@value #DEFAULT_MAX_SIZE}.
+    */
+   public static final int DEFAULT_MAX_SIZE = 1000;
+
+   private final Map<Long, VersionedSource> sources;
+
+   public DefaultIncludeCache() {
+      this(DEFAULT_MAX_SIZE);
+   }
+
+   DefaultIncludeCache(final int maxSize) {
+      sources = new LinkedHashMap<Long, VersionedSource>(16, 0.75f, true /* access order */) {
+         private static final long serialVersionUID = 1L;
+
+         @Override
+         protected boolean removeEldestEntry(Map.Entry<Long, VersionedSource> eldest) {
+            return size() > maxSize;
+         }
+      };
+   }
+
+   public synchronized UmlSource get(long contentId, int version) {
+      final VersionedSource source = sources.get(contentId);
+      return source != null && source.version == version ? source.source : null;
+   }
+
+   public synchronized void put(long contentId, int version, UmlSource source) {
+      sources.put(contentId, new VersionedSource(version, source));
+   }
+
+   public synchronized void remove(long contentId) {
+      sources.remove(contentId);
+   }
+
+   public synchronized void clear() {
+      sources.clear();
+   }
+
+   /**
+    * Returns the number of cached UML sources.
+    *
+    * @return the number of cached UML sources.
+    */
+   public synchronized int size() {
+      return sources.size();
+   }
+
+   private static final class VersionedSource {
+      private final int version;
+      private final UmlSource source;
+
+      VersionedSource(int version, UmlSource source) {
+         this.version = version;
+         this.source = source;
+      }
+   }
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) 2011 Michael Griffel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * This distribution includes other third-party libraries.
+ * These libraries and their corresponding licenses (where different
+ * from the GNU General Public License) are enumerated below.
+ *
+ * PlantUML is a Open-Source tool in Java to draw UML Diagram.
+ * The software is developed by Arnaud Roques at
+ * http://plantuml.sourceforge.org.
+ */
+package de.griffel.confluence.plugins.plantuml.cache;
+
+import java.util.Set;
+
+/**
+ * Reverse index from included pages and attachments to the diagrams that have been generated from them.
+ */
+public interface DependencyIndex {
+
+   /**
+    * Records that a diagram has been generated from the given pages and attachments.
+    *
+    * @param key the content hash of the diagram.
+    * @param contentIds the ids of the pages and attachments included by the diagram.
+    */
+   void add(String key, Set<Long> contentIds);
+
+   /**
+    * Removes and returns the diagrams that have been generated from the given page or attachment.
+    *
+    * @param contentId the id of the page or attachment.
+    * @return the content hashes of the dependent diagrams.
+    */
+   Set<String> removeDependents(long contentId);
+}
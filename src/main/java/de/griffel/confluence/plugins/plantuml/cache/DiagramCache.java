@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2011 Michael Griffel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * This distribution includes other third-party libraries.
+ * These libraries and their corresponding licenses (where different
+ * from the GNU General Public License) are enumerated below.
+ *
+ * PlantUML is a Open-Source tool in Java to draw UML Diagram.
+ * The software is developed by Arnaud Roques at
+ * http://plantuml.sourceforge.org.
+ */
+package de.griffel.confluence.plugins.plantuml.cache;
+
+/**
+ * Cache for rendered diagrams.
+ * <p>
+ * Entries are addressed by a content hash (see {@link DiagramKeyBuilder}), so a changed diagram source always leads
+ * to a different key and entries never have to be updated in place.
+ */
+public interface DiagramCache {
+
+   /**
+    * Returns the rendered diagram for the given key.
+    *
+    * @param key the content hash of the diagram.
+    * @return the rendered diagram or <tt>null</tt> if the diagram is not cached.
+    */
+   RenderedDiagram get(String key);
+
+   /**
+    * Stores the rendered diagram under the given key.
+    *
+    * @param key the content hash of the diagram.
+    * @param diagram the rendered diagram.
+    */
+   void put(String key, RenderedDiagram diagram);
+
+   /**
+    * Returns the stable download path (URL path without base URL) of a cached image.
+    *
+    * @param key the content hash of the diagram.
+    * @param contentId the id of the page that shows the diagram.
+    * @param diagram the diagram.
+    * @param image the image of the diagram.
+    * @return the download path of the image or <tt>null</tt> if the image cannot be downloaded from the cache.
+    */
+   String getDownloadPath(String key, long contentId, RenderedDiagram diagram, RenderedImage image);
+
+   /**
+    * Records that the diagram is shown on the given page (see {@link DiagramStore#addOwner(String, long)}).
+    *
+    * @param key the content hash of the diagram.
+    * @param contentId the id of the page that shows the diagram.
+    */
+   void addOwner(String key, long contentId);
+
+   /**
+    * Removes the diagram with the given key.
+    *
+    * @param key the content hash of the diagram.
+    */
+   void remove(String key);
+
+   /**
+    * Removes all cached diagrams.
+    */
+   void clear();
+}
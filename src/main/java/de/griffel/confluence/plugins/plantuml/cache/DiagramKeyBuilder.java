@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2011 Michael Griffel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * This distribution includes other third-party libraries.
+ * These libraries and their corresponding licenses (where different
+ * from the GNU General Public License) are enumerated below.
+ *
+ * PlantUML is a Open-Source tool in Java to draw UML Diagram.
+ * The software is developed by Arnaud Roques at
+ * http://plantuml.sourceforge.org.
+ */
+package de.griffel.confluence.plugins.plantuml.cache;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+
+/**
+ * Builds the content hash that identifies a rendered diagram in the {@link DiagramCache}.
+ * <p>
+ * The hash must cover everything that influences the rendered image: the preprocessed UML block (which already
+ * contains the common header/footer, the shadowing and separation options), the PlantUML configuration lines (e.g.
+ * the title) and the output file format.
+ */
+public final class DiagramKeyBuilder {
+   private static final String DIGEST_ALGORITHM = "SHA-1";
+   private static final String ENCODING = "UTF-8";
+   private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+   private final MessageDigest digest;
+
+   public DiagramKeyBuilder() {
+      try {
+         digest = MessageDigest.getInstance(DIGEST_ALGORITHM);
+      } catch (NoSuchAlgorithmException e) {
+         throw new IllegalStateException(DIGEST_ALGORITHM + " not supported?", e);
+      }
+   }
+
+   public DiagramKeyBuilder append(String value) {
+      final String s = String.valueOf(value);
+      try {
+         // length prefix prevents ambiguous concatenations like "ab" + "c" and "a" + "bc"
+         digest.update(String.valueOf(s.length()).getBytes(ENCODING));
+         digest.update((byte) ':');
+         digest.update(s.getBytes(ENCODING));
+      } catch (UnsupportedEncodingException e) {
+         throw new IllegalStateException(ENCODING + " encoding not supported?", e);
+      }
+      return this;
+   }
+
+   public DiagramKeyBuilder append(List<String> values) {
+      append(String.valueOf(values.size()));
+      for (String value : values) {
+         append(value);
+      }
+      return this;
+   }
+
+   public DiagramKeyBuilder append(Enum<?> value) {
+      return append(value.name());
+   }
+
+   /**
+    * Returns the hex encoded hash of all appended values.
+    *
+    * @return the hex encoded hash of all appended values.
+    */
+   public String build() {
+      return toHex(digest.digest());
+   }
+
+   static String toHex(byte[] bytes) {
+      final char[] chars = new char[bytes.length * 2];
+      for (int i = 0; i < bytes.length; i++) {
+         chars[2 * i] = HEX_DIGITS[(bytes[i] >> 4) & 0x0f];
+         chars[2 * i + 1] = HEX_DIGITS[bytes[i] & 0x0f];
+      }
+      return new String(chars);
+   }
+}
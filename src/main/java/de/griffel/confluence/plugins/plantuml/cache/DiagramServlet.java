@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2011 Michael Griffel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * This distribution includes other third-party libraries.
+ * These libraries and their corresponding licenses (where different
+ * from the GNU General Public License) are enumerated below.
+ *
+ * PlantUML is a Open-Source tool in Java to draw UML Diagram.
+ * The software is developed by Arnaud Roques at
+ * http://plantuml.sourceforge.org.
+ */
+package de.griffel.confluence.plugins.plantuml.cache;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import net.sourceforge.plantuml.FileFormat;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang.math.NumberUtils;
+
+import com.atlassian.confluence.pages.PageManager;
+import com.atlassian.confluence.security.PermissionManager;
+
+/**
+ * Serves the images of the {@link DiagramStore}.
+ * <p>
+ * The download path contains the id of the page showing the diagram (<tt>&lt;pageId&gt;/&lt;file name&gt;</tt>). An
+ * image is only served to users who are allowed to view this page (see {@link DiagramViewPermission}). The file names
+ * of the images contain the content hash of the diagram source, so the images never change and may be cached by the
+ * browser for a long time, but not by shared caches.
+ */
+public final class DiagramServlet extends HttpServlet {
+   private static final long serialVersionUID = 1L;
+
+   private static final int MAX_AGE_SECONDS = 365 * 24 * 60 * 60;
+
+   private final DiagramStore diagramStore;
+   private final DiagramViewPermission viewPermission;
+
+   public DiagramServlet(DiagramStore diagramStore, PageManager pageManager, PermissionManager permissionManager) {
+      this.diagramStore = diagramStore;
+      this.viewPermission = new DiagramViewPermission(diagramStore, pageManager, permissionManager);
+   }
+
+   @Override
+   protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+      final String requestUri = request.getRequestURI();
+      final String fileName = StringUtils.substringAfterLast(requestUri, "/");
+      final long contentId =
+            NumberUtils.toLong(StringUtils.substringAfterLast(StringUtils.substringBeforeLast(requestUri, "/"), "/"));
+      final File file = diagramStore.getImageFile(fileName);
+      // missing permissions are not revealed
+      if (file == null || !viewPermission.isPermitted(StringUtils.substringBefore(fileName, "-"), contentId)) {
+         response.sendError(HttpServletResponse.SC_NOT_FOUND);
+         return;
+      }
+
+      final InputStream inputStream;
+      try {
+         inputStream = new FileInputStream(file);
+      } catch (FileNotFoundException e) {
+         // evicted in the meantime
+         response.sendError(HttpServletResponse.SC_NOT_FOUND);
+         return;
+      }
+      try {
+         response.setContentType(fileName.endsWith(FileFormat.SVG.getFileSuffix()) ? "image/svg+xml" : "image/png");
+         response.setContentLength((int) file.length());
+         response.setHeader("Cache-Control", "private, max-age=" + MAX_AGE_SECONDS);
+         IOUtils.copy(inputStream, response.getOutputStream());
+      } finally {
+         IOUtils.closeQuietly(inputStream);
+      }
+   }
+}
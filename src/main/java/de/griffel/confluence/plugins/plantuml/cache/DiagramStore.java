@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2011 Michael Griffel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * This distribution includes other third-party libraries.
+ * These libraries and their corresponding licenses (where different
+ * from the GNU General Public License) are enumerated below.
+ *
+ * PlantUML is a Open-Source tool in Java to draw UML Diagram.
+ * The software is developed by Arnaud Roques at
+ * http://plantuml.sourceforge.org.
+ */
+package de.griffel.confluence.plugins.plantuml.cache;
+
+import java.io.File;
+
+/**
+ * Persistent store for rendered diagrams. Stored images survive restarts and are served by the
+ * {@link DiagramServlet} under a stable download path.
+ */
+public interface DiagramStore {
+
+   /**
+    * Returns the stored diagram for the given key.
+    *
+    * @param key the content hash of the diagram.
+    * @return the stored diagram or <tt>null</tt> if the diagram is not stored.
+    */
+   RenderedDiagram load(String key);
+
+   /**
+    * Stores the rendered diagram under the given key. The diagram is silently skipped if the store is disabled or if
+    * the diagram does not fit into the store.
+    *
+    * @param key the content hash of the diagram.
+    * @param diagram the rendered diagram.
+    */
+   void store(String key, RenderedDiagram diagram);
+
+   /**
+    * Returns the download path (URL path without base URL) of a stored image.
+    *
+    * @param key the content hash of the diagram.
+    * @param contentId the id of the page that shows the diagram.
+    * @param diagram the diagram.
+    * @param image the image of the diagram.
+    * @return the download path of the image or <tt>null</tt> if the diagram is not stored or if there is no page.
+    */
+   String getDownloadPath(String key, long contentId, RenderedDiagram diagram, RenderedImage image);
+
+   /**
+    * Records that the diagram is shown on the given page. The images of a diagram are only served to users who are
+    * allowed to view one of its pages. Equal diagrams on different pages share the same key, so a diagram may have
+    * several owners.
+    *
+    * @param key the content hash of the diagram.
+    * @param contentId the id of the page that shows the diagram.
+    */
+   void addOwner(String key, long contentId);
+
+   /**
+    * Returns true if the diagram is shown on the given page.
+    *
+    * @param key the content hash of the diagram.
+    * @param contentId the id of the page.
+    * @return true if the page has been recorded as owner of the diagram.
+    */
+   boolean isOwner(String key, long contentId);
+
+   /**
+    * Returns the file of a stored image.
+    *
+    * @param fileName the file name of the image as used in the download path.
+    * @return the file of the image or <tt>null</tt> if there is no such image.
+    */
+   File getImageFile(String fileName);
+
+   /**
+    * Removes the diagram with the given key.
+    *
+    * @param key the content hash of the diagram.
+    */
+   void remove(String key);
+
+   /**
+    * Removes all stored diagrams.
+    */
+   void clear();
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2011 Michael Griffel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * This distribution includes other third-party libraries.
+ * These libraries and their corresponding licenses (where different
+ * from the GNU General Public License) are enumerated below.
+ *
+ * PlantUML is a Open-Source tool in Java to draw UML Diagram.
+ * The software is developed by Arnaud Roques at
+ * http://plantuml.sourceforge.org.
+ */
+package de.griffel.confluence.plugins.plantuml.cache;
+
+import com.atlassian.confluence.pages.AbstractPage;
+import com.atlassian.confluence.pages.PageManager;
+import com.atlassian.confluence.security.PermissionManager;
+
+import de.griffel.confluence.plugins.plantuml.ViewPermissionFilter;
+
+/**
+ * Checks whether the current user is allowed to view a stored diagram. The keys of the diagrams only depend on their
+ * source, so equal diagrams on different pages share the same images. An image is served if it is shown on the
+ * requested page and the user is allowed to view that page.
+ */
+public final class DiagramViewPermission {
+   private final DiagramStore diagramStore;
+   private final PageManager pageManager;
+   private final ViewPermissionFilter viewPermissionFilter;
+
+   public DiagramViewPermission(DiagramStore diagramStore, PageManager pageManager,
+         PermissionManager permissionManager) {
+      this.diagramStore = diagramStore;
+      this.pageManager = pageManager;
+      this.viewPermissionFilter = new ViewPermissionFilter(permissionManager);
+   }
+
+   /**
+    * Returns true if the current user is allowed to view the diagram on the given page.
+    *
+    * @param key the content hash of the diagram.
+    * @param contentId the id of the page that shows the diagram.
+    * @return true if the diagram is shown on the page and the page is viewable.
+    */
+   public boolean isPermitted(String key, long contentId) {
+      if (contentId <= 0 || !diagramStore.isOwner(key, contentId)) {
+         return false;
+      }
+      final AbstractPage page = pageManager.getAbstractPage(contentId);
+      return page != null && viewPermissionFilter.isPermitted(page);
+   }
+}
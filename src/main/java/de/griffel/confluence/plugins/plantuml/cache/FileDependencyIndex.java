@@ -0,0 +1,257 @@
+/*
+ * Copyright (C) 2011 Michael Griffel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * This distribution includes other third-party libraries.
+ * These libraries and their corresponding licenses (where different
+ * from the GNU General Public License) are enumerated below.
+ *
+ * PlantUML is a Open-Source tool in Java to draw UML Diagram.
+ * The software is developed by Arnaud Roques at
+ * http://plantuml.sourceforge.org.
+ */
+package de.griffel.confluence.plugins.plantuml.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang.StringUtils;
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+
+import com.atlassian.beehive.ClusterLockService;
+import com.atlassian.confluence.cluster.ClusterManager;
+import com.atlassian.confluence.setup.BootstrapManager;
+import com.atlassian.sal.api.ApplicationProperties;
+
+/**
+ * {@link DependencyIndex} that is persisted in the file <tt>plantuml/dependencies.properties</tt> next to the diagrams
+ * of the {@link FileDiagramStore}, so that stored diagrams are still evicted after a restart. The file maps the id of a
+ * page or attachment to the comma separated keys of its dependent diagrams.
+ * <p>
+ * Changes are kept in memory and written by a background thread every few seconds, so rendering never waits for the
+ * file. In a cluster all nodes share the file: a node re-reads the file under a cluster lock and merges its own
+ * changes, so that the changes of the other nodes are kept.
+ */
+public final class FileDependencyIndex implements DependencyIndex, InitializingBean, DisposableBean {
+   private static final Logger logger = Logger.getLogger(FileDependencyIndex.class);
+
+   /**
+    * Maximum number of diagrams recorded per page or attachment. The oldest diagrams are dropped first, as they have
+    * most likely been evicted from the cache already.
+    */
+   static final int MAX_DEPENDENTS = 1000;
+
+   private static final String FILE_NAME = "dependencies.properties";
+   private static final String LOCK_NAME = FileDependencyIndex.class.getName();
+   private static final long FLUSH_INTERVAL_SECONDS = 10;
+
+   private final ApplicationProperties applicationProperties;
+   private final ClusterManager clusterManager;
+   private final BootstrapManager bootstrapManager;
+   private final ClusterLockService clusterLockService;
+   private Map<Long, Set<String>> dependents; // lazy initialized, guarded by this
+   private final Map<Long, Set<String>> addedDependents = new HashMap<Long, Set<String>>(); // guarded by this
+   private final Set<Long> removedContents = new HashSet<Long>(); // guarded by this
+   private ScheduledExecutorService flusher;
+
+   public FileDependencyIndex(ApplicationProperties applicationProperties, ClusterManager clusterManager,
+         BootstrapManager bootstrapManager, ClusterLockService clusterLockService) {
+      this.applicationProperties = applicationProperties;
+      this.clusterManager = clusterManager;
+      this.bootstrapManager = bootstrapManager;
+      this.clusterLockService = clusterLockService;
+   }
+
+   public synchronized void afterPropertiesSet() {
+      flusher = new ScheduledThreadPoolExecutor(1, new FlushThreadFactory());
+      flusher.scheduleWithFixedDelay(new Runnable() {
+         public void run() {
+            flush();
+         }
+      }, FLUSH_INTERVAL_SECONDS, FLUSH_INTERVAL_SECONDS, TimeUnit.SECONDS);
+   }
+
+   public void destroy() {
+      synchronized (this) {
+         flusher.shutdownNow();
+      }
+      flush();
+   }
+
+   public synchronized void add(String key, Set<Long> contentIds) {
+      for (Long contentId : contentIds) {
+         if (addDependent(getDependents(), contentId, key)) {
+            addDependent(addedDependents, contentId, key);
+         }
+      }
+   }
+
+   public synchronized Set<String> removeDependents(long contentId) {
+      addedDependents.remove(contentId);
+      removedContents.add(contentId);
+      final Set<String> keys = getDependents().remove(contentId);
+      if (keys == null) {
+         return Collections.emptySet();
+      }
+      return keys;
+   }
+
+   /**
+    * Writes the changes since the last flush to the file. The file is read again before, so the index of this node
+    * also learns the dependencies recorded by the other nodes.
+    */
+   void flush() {
+      final Map<Long, Set<String>> added;
+      final Set<Long> removed;
+      synchronized (this) {
+         if (addedDependents.isEmpty() && removedContents.isEmpty()) {
+            return;
+         }
+         added = new HashMap<Long, Set<String>>(addedDependents);
+         removed = new HashSet<Long>(removedContents);
+         addedDependents.clear();
+         removedContents.clear();
+      }
+
+      final Lock lock = clusterLockService.getLockForName(LOCK_NAME);
+      lock.lock();
+      try {
+         final Map<Long, Set<String>> merged = load();
+         merge(merged, removed, added);
+         save(merged);
+         synchronized (this) {
+            // changes made in the meantime are written by the next flush
+            merge(merged, removedContents, addedDependents);
+            dependents = merged;
+         }
+      } finally {
+         lock.unlock();
+      }
+   }
+
+   private static void merge(Map<Long, Set<String>> target, Set<Long> removed, Map<Long, Set<String>> added) {
+      for (Long contentId : removed) {
+         target.remove(contentId);
+      }
+      for (Map.Entry<Long, Set<String>> entry : added.entrySet()) {
+         for (String key : entry.getValue()) {
+            addDependent(target, entry.getKey(), key);
+         }
+      }
+   }
+
+   /**
+    * Adds the key to the dependents of the content.
+    *
+    * @return true if the key has not been a dependent before.
+    */
+   private static boolean addDependent(Map<Long, Set<String>> target, Long contentId, String key) {
+      Set<String> keys = target.get(contentId);
+      if (keys == null) {
+         keys = new LinkedHashSet<String>();
+         target.put(contentId, keys);
+      }
+      if (!keys.add(key)) {
+         return false;
+      }
+      if (keys.size() > MAX_DEPENDENTS) {
+         final Iterator<String> eldest = keys.iterator();
+         eldest.next();
+         eldest.remove();
+      }
+      return true;
+   }
+
+   private Map<Long, Set<String>> getDependents() {
+      if (dependents == null) {
+         dependents = load();
+      }
+      return dependents;
+   }
+
+   private File getFile() {
+      return new File(FileDiagramStore.getPluginDirectory(applicationProperties, clusterManager, bootstrapManager),
+            FILE_NAME);
+   }
+
+   private Map<Long, Set<String>> load() {
+      final Map<Long, Set<String>> result = new HashMap<Long, Set<String>>();
+      final File file = getFile();
+      if (!file.isFile()) {
+         return result;
+      }
+      try {
+         final Properties properties = new Properties();
+         properties.load(new ByteArrayInputStream(FileUtils.readFileToByteArray(file)));
+         for (String contentId : properties.stringPropertyNames()) {
+            final Set<String> keys = new LinkedHashSet<String>();
+            Collections.addAll(keys, StringUtils.split(properties.getProperty(contentId), ','));
+            result.put(Long.valueOf(contentId), keys);
+         }
+      } catch (IOException e) {
+         logger.warn("Cannot read diagram dependencies from " + file + ": " + e.getMessage());
+      } catch (NumberFormatException e) {
+         logger.warn("Cannot read diagram dependencies from " + file + ": " + e.getMessage());
+      }
+      return result;
+   }
+
+   private void save(Map<Long, Set<String>> contents) {
+      final Properties properties = new Properties();
+      for (Map.Entry<Long, Set<String>> entry : contents.entrySet()) {
+         properties.setProperty(String.valueOf(entry.getKey()), StringUtils.join(entry.getValue(), ','));
+      }
+      final File file = getFile();
+      try {
+         final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+         properties.store(baos, null);
+         FileDiagramStore.writeAtomically(file, baos.toByteArray());
+      } catch (IOException e) {
+         logger.warn("Cannot write diagram dependencies to " + file + ": " + e.getMessage());
+      }
+   }
+
+   @Override
+   public synchronized String toString() {
+      return "FileDependencyIndex [contents=" + (dependents != null ? dependents.size() : 0) + "]";
+   }
+
+   private static final class FlushThreadFactory implements ThreadFactory {
+      public Thread newThread(Runnable runnable) {
+         final Thread thread = new Thread(runnable, "plantuml-dependency-index");
+         thread.setDaemon(true);
+         thread.setContextClassLoader(FileDependencyIndex.class.getClassLoader());
+         return thread;
+      }
+   }
+}
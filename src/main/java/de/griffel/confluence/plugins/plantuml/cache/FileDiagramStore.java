@@ -0,0 +1,495 @@
+/*
+ * Copyright (C) 2011 Michael Griffel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * This distribution includes other third-party libraries.
+ * These libraries and their corresponding licenses (where different
+ * from the GNU General Public License) are enumerated below.
+ *
+ * PlantUML is a Open-Source tool in Java to draw UML Diagram.
+ * The software is developed by Arnaud Roques at
+ * http://plantuml.sourceforge.org.
+ */
+package de.griffel.confluence.plugins.plantuml.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import net.sourceforge.plantuml.FileFormat;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.log4j.Logger;
+
+import com.atlassian.confluence.cluster.ClusterManager;
+import com.atlassian.confluence.setup.BootstrapManager;
+import com.atlassian.sal.api.ApplicationProperties;
+
+import de.griffel.confluence.plugins.plantuml.config.PlantUmlConfigurationManager;
+import de.griffel.confluence.plugins.plantuml.type.ImageMap;
+
+/**
+ * {@link DiagramStore} that keeps the rendered images in the directory <tt>plantuml/diagrams</tt> of the Confluence
+ * home directory. In a cluster the shared home directory is used, so a diagram rendered on one node is served from the
+ * store on all nodes.
+ * <p>
+ * Every diagram consists of one file per image (<tt>&lt;key&gt;-&lt;index&gt;.png</tt>) and a manifest file
+ * (<tt>&lt;key&gt;.diagram</tt>) holding the file format and the image maps. All files are written to a temporary
+ * file first and renamed afterwards. The manifest is written last, so a diagram without manifest is incomplete and
+ * removed on startup. The least recently used diagrams are evicted as soon as the total size of all files exceeds the
+ * configured disk cache size. In a cluster every node evicts the diagrams it knows of, i.e. the diagrams it stored or
+ * loaded since its start.
+ * <p>
+ * The ids of the pages showing a diagram are appended to an owners file (<tt>&lt;key&gt;.owners</tt>), one id per
+ * line. Appending keeps owners recorded by other nodes of the cluster.
+ */
+public final class FileDiagramStore implements DiagramStore {
+   private static final Logger logger = Logger.getLogger(FileDiagramStore.class);
+
+   /**
+    * URL path of the {@link DiagramServlet} relative to the base URL.
+    */
+   public static final String DOWNLOAD_PATH = "/plugins/servlet/plantuml/diagram/";
+
+   private static final String PLUGIN_DIRECTORY_NAME = "plantuml";
+   private static final String DIRECTORY_NAME = "diagrams";
+   private static final String MANIFEST_SUFFIX = ".diagram";
+   private static final String OWNERS_SUFFIX = ".owners";
+   private static final String ENCODING = "UTF-8";
+   private static final Pattern KEY_PATTERN = Pattern.compile("^([0-9a-f]{40})");
+   private static final Pattern IMAGE_FILE_NAME_PATTERN = Pattern.compile("([0-9a-f]{40})-\\d+\\.(png|svg)");
+   private static final long MEGABYTE = 1024L * 1024;
+
+   /**
+    * Age after which files of incomplete diagrams in the shared home are removed. Younger files may still be written by
+    * another node.
+    */
+   private static final long STALE_FILE_AGE = 60L * 60 * 1000;
+
+   private final ApplicationProperties applicationProperties;
+   private final ClusterManager clusterManager;
+   private final BootstrapManager bootstrapManager;
+   private final PlantUmlConfigurationManager configurationManager;
+   private final Map<String, Long> entries = new LinkedHashMap<String, Long>(16, 0.75f, true /* access order */);
+   private final ConcurrentMap<String, Set<Long>> owners = new ConcurrentHashMap<String, Set<Long>>();
+   private File directory; // lazy initialized
+   private boolean shared;
+   private long size;
+
+   public FileDiagramStore(ApplicationProperties applicationProperties, ClusterManager clusterManager,
+         BootstrapManager bootstrapManager, PlantUmlConfigurationManager configurationManager) {
+      this.applicationProperties = applicationProperties;
+      this.clusterManager = clusterManager;
+      this.bootstrapManager = bootstrapManager;
+      this.configurationManager = configurationManager;
+   }
+
+   public RenderedDiagram load(String key) {
+      if (!isEnabled() || !touch(key)) {
+         return null;
+      }
+      final File manifestFile = getManifestFile(key);
+      try {
+         final Properties manifest = new Properties();
+         manifest.load(new ByteArrayInputStream(FileUtils.readFileToByteArray(manifestFile)));
+         final FileFormat fileFormat = FileFormat.valueOf(manifest.getProperty("format"));
+         final int count = Integer.parseInt(manifest.getProperty("images"));
+         final List<RenderedImage> images = new ArrayList<RenderedImage>(count);
+         for (int i = 0; i < count; i++) {
+            final byte[] data = FileUtils.readFileToByteArray(getImageFile(key, i, fileFormat));
+            images.add(new RenderedImage(data, new ImageMap(manifest.getProperty("map." + i)), i));
+         }
+         // persist the access time for the eviction order after a restart
+         manifestFile.setLastModified(System.currentTimeMillis());
+         return new RenderedDiagram(fileFormat, images);
+      } catch (IOException e) {
+         logger.warn("Cannot read stored diagram " + key + ": " + e.getMessage());
+      } catch (RuntimeException e) {
+         logger.warn("Cannot read stored diagram " + key + ": " + e);
+      }
+      remove(key);
+      return null;
+   }
+
+   public void store(String key, RenderedDiagram diagram) {
+      final long maxSize = getMaxSize();
+      if (maxSize <= 0 || contains(key)) {
+         return;
+      }
+      final FileFormat fileFormat = diagram.getFileFormat();
+      final Properties manifest = new Properties();
+      manifest.setProperty("format", fileFormat.name());
+      manifest.setProperty("images", String.valueOf(diagram.getImages().size()));
+      long diagramSize = 0;
+      try {
+         for (RenderedImage image : diagram.getImages()) {
+            diagramSize += writeAtomically(getImageFile(key, image.getIndex(), fileFormat), image.getData());
+            if (image.getImageMap().isValid()) {
+               manifest.setProperty("map." + image.getIndex(), image.getImageMap().toHtmlString());
+            }
+         }
+         final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+         manifest.store(baos, null);
+         diagramSize += writeAtomically(getManifestFile(key), baos.toByteArray());
+      } catch (IOException e) {
+         logger.warn("Cannot store diagram " + key + ": " + e.getMessage());
+         deleteFiles(key);
+         return;
+      }
+      synchronized (this) {
+         final Long previous = entries.put(key, diagramSize);
+         if (previous != null) {
+            size -= previous;
+         }
+         size += diagramSize;
+         evict(maxSize);
+      }
+   }
+
+   public String getDownloadPath(String key, long contentId, RenderedDiagram diagram, RenderedImage image) {
+      if (contentId <= 0 || !isEnabled() || !contains(key)) {
+         return null;
+      }
+      return DOWNLOAD_PATH + contentId + "/" + getImageFileName(key, image.getIndex(), diagram.getFileFormat());
+   }
+
+   public void addOwner(String key, long contentId) {
+      if (!isEnabled() || isOwner(key, contentId)) {
+         return;
+      }
+      final File file = getOwnersFile(key);
+      OutputStream outputStream = null;
+      try {
+         final File parent = file.getParentFile();
+         if (!parent.isDirectory() && !parent.mkdirs() && !parent.isDirectory()) {
+            throw new IOException("Cannot create directory " + parent);
+         }
+         outputStream = new FileOutputStream(file, true);
+         outputStream.write((contentId + "\n").getBytes(ENCODING));
+      } catch (IOException e) {
+         logger.warn("Cannot record owner " + contentId + " of diagram " + key + ": " + e.getMessage());
+      } finally {
+         IOUtils.closeQuietly(outputStream);
+      }
+      // read again on the next check
+      owners.remove(key);
+   }
+
+   public boolean isOwner(String key, long contentId) {
+      if (!isEnabled()) {
+         return false;
+      }
+      Set<Long> keyOwners = owners.get(key);
+      if (keyOwners == null || !keyOwners.contains(contentId)) {
+         // the owner may have been recorded by another node
+         keyOwners = readOwners(key);
+         if (!keyOwners.isEmpty()) {
+            owners.put(key, keyOwners);
+         }
+      }
+      return keyOwners.contains(contentId);
+   }
+
+   public File getImageFile(String fileName) {
+      final Matcher matcher = IMAGE_FILE_NAME_PATTERN.matcher(fileName);
+      if (!matcher.matches() || !touch(matcher.group(1))) {
+         return null;
+      }
+      final File file = new File(getDirectory(matcher.group(1)), fileName);
+      return file.isFile() ? file : null;
+   }
+
+   public void remove(String key) {
+      synchronized (this) {
+         final Long previous = entries.remove(key);
+         if (previous != null) {
+            size -= previous;
+         }
+      }
+      deleteFiles(key);
+   }
+
+   public synchronized void clear() {
+      FileUtils.deleteQuietly(getDirectory());
+      entries.clear();
+      owners.clear();
+      size = 0;
+   }
+
+   /**
+    * Returns the total size of all stored diagrams in bytes.
+    *
+    * @return the total size of all stored diagrams in bytes.
+    */
+   public synchronized long getSize() {
+      getDirectory();
+      return size;
+   }
+
+   /**
+    * Returns the number of stored diagrams.
+    *
+    * @return the number of stored diagrams.
+    */
+   public synchronized int getCount() {
+      getDirectory();
+      return entries.size();
+   }
+
+   private boolean isEnabled() {
+      return getMaxSize() > 0;
+   }
+
+   private long getMaxSize() {
+      return configurationManager.load().getDiskCacheSize() * MEGABYTE;
+   }
+
+   private synchronized boolean contains(String key) {
+      getDirectory();
+      return entries.containsKey(key) || adopt(key);
+   }
+
+   /**
+    * Marks the diagram as recently used.
+    */
+   private synchronized boolean touch(String key) {
+      getDirectory();
+      return entries.get(key) != null || adopt(key);
+   }
+
+   /**
+    * Adds a diagram that has been stored by another node of the cluster.
+    */
+   private boolean adopt(String key) {
+      if (!shared || !getManifestFile(key).isFile()) {
+         return false;
+      }
+      long diagramSize = 0;
+      final File[] files = getDirectory(key).listFiles();
+      if (files != null) {
+         for (File file : files) {
+            if (file.getName().startsWith(key)) {
+               diagramSize += file.length();
+            }
+         }
+      }
+      entries.put(key, diagramSize);
+      size += diagramSize;
+      return true;
+   }
+
+   private void evict(long maxSize) {
+      final Iterator<Map.Entry<String, Long>> iterator = entries.entrySet().iterator();
+      while (size > maxSize && iterator.hasNext()) {
+         final Map.Entry<String, Long> entry = iterator.next();
+         size -= entry.getValue();
+         iterator.remove();
+         deleteFiles(entry.getKey());
+         logger.debug("Evicted diagram " + entry.getKey());
+      }
+   }
+
+   private synchronized File getDirectory() {
+      if (directory == null) {
+         shared = clusterManager.isClustered();
+         directory = new File(getPluginDirectory(applicationProperties, clusterManager, bootstrapManager),
+               DIRECTORY_NAME);
+         scan();
+      }
+      return directory;
+   }
+
+   /**
+    * Returns the directory of the plugin in the Confluence home directory. In a cluster the shared home directory is
+    * used.
+    */
+   static File getPluginDirectory(ApplicationProperties applicationProperties, ClusterManager clusterManager,
+         BootstrapManager bootstrapManager) {
+      final File home =
+            clusterManager.isClustered() ? bootstrapManager.getSharedHome() : applicationProperties.getHomeDirectory();
+      return new File(home, PLUGIN_DIRECTORY_NAME);
+   }
+
+   private File getDirectory(String key) {
+      return new File(getDirectory(), key.substring(0, 2));
+   }
+
+   private File getManifestFile(String key) {
+      return new File(getDirectory(key), key + MANIFEST_SUFFIX);
+   }
+
+   private File getImageFile(String key, int index, FileFormat fileFormat) {
+      return new File(getDirectory(key), getImageFileName(key, index, fileFormat));
+   }
+
+   private File getOwnersFile(String key) {
+      return new File(getDirectory(key), key + OWNERS_SUFFIX);
+   }
+
+   private Set<Long> readOwners(String key) {
+      final File file = getOwnersFile(key);
+      if (!file.isFile()) {
+         return Collections.emptySet();
+      }
+      final Set<Long> result = new HashSet<Long>();
+      try {
+         for (Object line : FileUtils.readLines(file, ENCODING)) {
+            try {
+               result.add(Long.valueOf(((String) line).trim()));
+            } catch (NumberFormatException e) {
+               // partially written line
+            }
+         }
+      } catch (IOException e) {
+         logger.warn("Cannot read owners of diagram " + key + ": " + e.getMessage());
+      }
+      return result;
+   }
+
+   private static String getImageFileName(String key, int index, FileFormat fileFormat) {
+      return key + "-" + index + fileFormat.getFileSuffix();
+   }
+
+   private void deleteFiles(String key) {
+      // the manifest goes first, so a partially deleted diagram is never loaded
+      FileUtils.deleteQuietly(getManifestFile(key));
+      owners.remove(key);
+      final File[] files = getDirectory(key).listFiles();
+      if (files != null) {
+         for (File file : files) {
+            if (file.getName().startsWith(key)) {
+               FileUtils.deleteQuietly(file);
+            }
+         }
+      }
+   }
+
+   /**
+    * Reads the stored diagrams in the order of their last access and removes incomplete diagrams.
+    */
+   private void scan() {
+      final Map<String, Long> sizes = new LinkedHashMap<String, Long>();
+      final Map<String, Long> lastModified = new HashMap<String, Long>();
+      final List<File> manifestFiles = new ArrayList<File>();
+      final File[] subDirectories = directory.listFiles();
+      if (subDirectories != null) {
+         for (File subDirectory : subDirectories) {
+            final File[] files = subDirectory.listFiles();
+            if (files == null) {
+               continue;
+            }
+            for (File file : files) {
+               if (file.getName().endsWith(".tmp")) {
+                  if (isStale(file.lastModified())) {
+                     FileUtils.deleteQuietly(file);
+                  }
+                  continue;
+               }
+               final Matcher matcher = KEY_PATTERN.matcher(file.getName());
+               if (matcher.find()) {
+                  final String key = matcher.group(1);
+                  final Long keySize = sizes.get(key);
+                  sizes.put(key, (keySize == null ? 0 : keySize) + file.length());
+                  final Long keyModified = lastModified.get(key);
+                  lastModified.put(key, Math.max(keyModified == null ? 0 : keyModified, file.lastModified()));
+                  if (file.getName().equals(key + MANIFEST_SUFFIX)) {
+                     manifestFiles.add(file);
+                  }
+               }
+            }
+         }
+      }
+      final File[] orderedManifestFiles = manifestFiles.toArray(new File[manifestFiles.size()]);
+      Arrays.sort(orderedManifestFiles, new Comparator<File>() {
+         public int compare(File f1, File f2) {
+            final long t1 = f1.lastModified();
+            final long t2 = f2.lastModified();
+            return t1 < t2 ? -1 : (t1 == t2 ? 0 : 1);
+         }
+      });
+      for (File manifestFile : orderedManifestFiles) {
+         final String name = manifestFile.getName();
+         final String key = name.substring(0, name.length() - MANIFEST_SUFFIX.length());
+         final long keySize = sizes.remove(key);
+         entries.put(key, keySize);
+         size += keySize;
+      }
+      for (String key : sizes.keySet()) {
+         if (isStale(lastModified.get(key))) {
+            logger.debug("Removing incomplete diagram " + key);
+            deleteFiles(key);
+         }
+      }
+      logger.info("Found " + entries.size() + " stored diagrams (" + size + " bytes) in " + directory);
+   }
+
+   /**
+    * Returns true if a file modified at the given time can be removed if it is incomplete.
+    */
+   private boolean isStale(long lastModified) {
+      return !shared || lastModified < System.currentTimeMillis() - STALE_FILE_AGE;
+   }
+
+   /**
+    * Writes the data to a temporary file and renames it to the given file afterwards.
+    *
+    * @return the number of bytes written.
+    */
+   static long writeAtomically(File file, byte[] data) throws IOException {
+      final File parent = file.getParentFile();
+      if (!parent.isDirectory() && !parent.mkdirs() && !parent.isDirectory()) {
+         throw new IOException("Cannot create directory " + parent);
+      }
+      final File tmpFile = File.createTempFile(file.getName(), ".tmp", parent);
+      try {
+         FileUtils.writeByteArrayToFile(tmpFile, data);
+         if (!tmpFile.renameTo(file)) {
+            // File.renameTo() does not replace an existing file on every platform
+            FileUtils.deleteQuietly(file);
+            if (!tmpFile.renameTo(file)) {
+               throw new IOException("Cannot rename " + tmpFile + " to " + file);
+            }
+         }
+      } finally {
+         FileUtils.deleteQuietly(tmpFile);
+      }
+      return data.length;
+   }
+
+   @Override
+   public synchronized String toString() {
+      return "FileDiagramStore [directory=" + directory + ", count=" + entries.size() + ", size=" + size + "]";
+   }
+}
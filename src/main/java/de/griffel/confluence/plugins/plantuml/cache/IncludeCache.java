@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2011 Michael Griffel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * This distribution includes other third-party libraries.
+ * These libraries and their corresponding licenses (where different
+ * from the GNU General Public License) are enumerated below.
+ *
+ * PlantUML is a Open-Source tool in Java to draw UML Diagram.
+ * The software is developed by Arnaud Roques at
+ * http://plantuml.sourceforge.org.
+ */
+package de.griffel.confluence.plugins.plantuml.cache;
+
+import net.sourceforge.plantuml.core.UmlSource;
+
+/**
+ * Cache for the UML sources of included pages and attachments.
+ * <p>
+ * Entries are addressed by the id of the page or attachment and only returned for the version they have been read
+ * from, so an outdated source is never used even if an update event has been missed.
+ */
+public interface IncludeCache {
+
+   /**
+    * Returns the UML source of the given version of a page or attachment.
+    *
+    * @param contentId the id of the page or attachment.
+    * @param version the version of the page or attachment.
+    * @return the UML source or <tt>null</tt> if this version is not cached.
+    */
+   UmlSource get(long contentId, int version);
+
+   /**
+    * Stores the UML source of the given version of a page or attachment.
+    *
+    * @param contentId the id of the page or attachment.
+    * @param version the version of the page or attachment.
+    * @param source the UML source.
+    */
+   void put(long contentId, int version, UmlSource source);
+
+   /**
+    * Removes the UML source of a page or attachment.
+    *
+    * @param contentId the id of the page or attachment.
+    */
+   void remove(long contentId);
+
+   /**
+    * Removes all cached UML sources.
+    */
+   void clear();
+}
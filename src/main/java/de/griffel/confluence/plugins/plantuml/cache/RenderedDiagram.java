@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2011 Michael Griffel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * This distribution includes other third-party libraries.
+ * These libraries and their corresponding licenses (where different
+ * from the GNU General Public License) are enumerated below.
+ *
+ * PlantUML is a Open-Source tool in Java to draw UML Diagram.
+ * The software is developed by Arnaud Roques at
+ * http://plantuml.sourceforge.org.
+ */
+package de.griffel.confluence.plugins.plantuml.cache;
+
+import java.util.List;
+
+import net.sourceforge.plantuml.FileFormat;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * All images of a rendered diagram. A diagram consists of more than one image if it is split into several pages
+ * (e.g. <tt>newpage</tt> in sequence diagrams).
+ */
+public final class RenderedDiagram {
+   private final FileFormat fileFormat;
+   private final List<RenderedImage> images;
+
+   public RenderedDiagram(FileFormat fileFormat, List<RenderedImage> images) {
+      this.fileFormat = fileFormat;
+      this.images = ImmutableList.copyOf(images);
+   }
+
+   public FileFormat getFileFormat() {
+      return fileFormat;
+   }
+
+   public List<RenderedImage> getImages() {
+      return images;
+   }
+
+   /**
+    * Returns {@code true} if the diagram consists of more than one image.
+    *
+    * @return {@code true} if the diagram consists of more than one image; {@code false} otherwise.
+    */
+   public boolean isSplitImage() {
+      return images.size() > 1;
+   }
+
+   /**
+    * Returns the approximate number of bytes this diagram occupies in memory.
+    *
+    * @return the approximate number of bytes this diagram occupies in memory.
+    */
+   public long getWeight() {
+      long weight = 0;
+      for (RenderedImage image : images) {
+         weight += image.getWeight();
+      }
+      return weight;
+   }
+
+   @Override
+   public String toString() {
+      return "RenderedDiagram [fileFormat=" + fileFormat + ", images=" + images + "]";
+   }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2011 Michael Griffel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * This distribution includes other third-party libraries.
+ * These libraries and their corresponding licenses (where different
+ * from the GNU General Public License) are enumerated below.
+ *
+ * PlantUML is a Open-Source tool in Java to draw UML Diagram.
+ * The software is developed by Arnaud Roques at
+ * http://plantuml.sourceforge.org.
+ */
+package de.griffel.confluence.plugins.plantuml.cache;
+
+import de.griffel.confluence.plugins.plantuml.type.ImageMap;
+
+/**
+ * A single image of a rendered diagram together with its HTML image map.
+ */
+public final class RenderedImage {
+   private final byte[] data;
+   private final ImageMap imageMap;
+   private final int index;
+
+   /**
+    * Constructs a new rendered image.
+    *
+    * @param data the encoded image (PNG or SVG).
+    * @param imageMap the image map of the image or {@link ImageMap#NULL}.
+    * @param index the index of the image within the diagram.
+    */
+   public RenderedImage(byte[] data, ImageMap imageMap, int index) {
+      this.data = data;
+      this.imageMap = imageMap;
+      this.index = index;
+   }
+
+   /**
+    * Returns the encoded image. The returned array must not be modified.
+    *
+    * @return the encoded image.
+    */
+   public byte[] getData() {
+      return data;
+   }
+
+   public ImageMap getImageMap() {
+      return imageMap;
+   }
+
+   public int getIndex() {
+      return index;
+   }
+
+   /**
+    * Returns the approximate number of bytes this image occupies in memory.
+    *
+    * @return the approximate number of bytes this image occupies in memory.
+    */
+   public long getWeight() {
+      return data.length + 2L * imageMap.toHtmlString().length();
+   }
+
+   @Override
+   public String toString() {
+      return "RenderedImage [index=" + index + ", size=" + data.length + "]";
+   }
+}
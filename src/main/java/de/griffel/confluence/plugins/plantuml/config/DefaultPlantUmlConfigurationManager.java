@@ -1,34 +1,81 @@
 package de.griffel.confluence.plugins.plantuml.config;
 
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+
 import com.atlassian.bandana.BandanaManager;
+import com.atlassian.confluence.event.events.cluster.ClusterEventWrapper;
 import com.atlassian.confluence.setup.bandana.ConfluenceBandanaContext;
+import com.atlassian.event.api.EventListener;
+import com.atlassian.event.api.EventPublisher;
 
 /**
- * This class is responsible for loading and storing the configuration for this plugin.
+ * This class is responsible for loading and storing the configuration for this plugin. The configuration is read
+ * once and kept as a snapshot until it is saved on this or another node of the cluster. {@link #load()} returns a
+ * copy of the snapshot, so callers may change it without affecting other callers.
  */
-public final class DefaultPlantUmlConfigurationManager implements PlantUmlConfigurationManager {
+public final class DefaultPlantUmlConfigurationManager implements PlantUmlConfigurationManager, InitializingBean,
+      DisposableBean {
 
    private final BandanaManager bandanaManager;
+   private final EventPublisher eventPublisher;
+   private volatile PlantUmlConfiguration configuration;
 
-   public DefaultPlantUmlConfigurationManager(BandanaManager bandanaManager) {
+   public DefaultPlantUmlConfigurationManager(BandanaManager bandanaManager, EventPublisher eventPublisher) {
       this.bandanaManager = bandanaManager;
+      this.eventPublisher = eventPublisher;
    }
 
-   public PlantUmlConfiguration load() {
-      final ConfluenceBandanaContext context = new ConfluenceBandanaContext();
+   public void afterPropertiesSet() {
+      eventPublisher.register(this);
+   }
 
-      PlantUmlConfiguration config = (PlantUmlConfiguration) bandanaManager.getValue(
-            context, PlantUmlConfigurationBean.class.getName());
+   public void destroy() {
+      eventPublisher.unregister(this);
+   }
 
+   public PlantUmlConfiguration load() {
+      PlantUmlConfiguration config = configuration;
       if (config == null) {
-         config = new PlantUmlConfigurationBean();
+         config = new PlantUmlConfigurationBean(read());
+         configuration = config;
       }
       return config;
    }
 
+   public PlantUmlConfigurationBean copy() {
+      return new PlantUmlConfigurationBean(load());
+   }
+
    public void save(PlantUmlConfiguration config) {
       final ConfluenceBandanaContext context = new ConfluenceBandanaContext();
       bandanaManager.setValue(context, PlantUmlConfigurationBean.class.getName(), config);
+      configuration = new PlantUmlConfigurationBean(config);
+      eventPublisher.publish(new PlantUmlConfigurationChangedEvent(this));
+   }
+
+   /**
+    * Drops the configuration snapshot when the configuration was saved on another node of the cluster.
+    *
+    * @param event the cluster event.
+    */
+   @EventListener
+   public void onClusterEvent(ClusterEventWrapper event) {
+      if (event.getEvent() instanceof PlantUmlConfigurationChangedEvent) {
+         configuration = null;
+      }
+   }
+
+   private PlantUmlConfiguration read() {
+      final ConfluenceBandanaContext context = new ConfluenceBandanaContext();
+
+      PlantUmlConfiguration config = (PlantUmlConfiguration) bandanaManager.getValue(
+            context, PlantUmlConfigurationBean.class.getName());
+
+      if (config == null) {
+         config = new PlantUmlConfigurationBean();
+      }
+      return config;
    }
 
 }
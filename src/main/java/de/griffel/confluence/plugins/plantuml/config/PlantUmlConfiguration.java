@@ -1,23 +1,96 @@
 package de.griffel.confluence.plugins.plantuml.config;
 
+import java.util.List;
+
 /**
- * Configuration properties.
+ * Configuration properties. This view of the configuration is read-only; {@link PlantUmlConfigurationBean} is the
+ * modifiable implementation.
  */
 public interface PlantUmlConfiguration {
 
    boolean isSvek();
 
-   void setSvek(boolean bool);
-
    String getCommonHeader();
 
-   void setCommonHeader(String commonHeader);
-
    boolean isSetCommonHeader();
 
-   String getCommonFooter();
+   /**
+    * Returns the lines of the common header.
+    *
+    * @return the lines of the common header; empty if no common header is set.
+    */
+   List<String> getCommonHeaderLines();
 
-   void setCommonFooter(String commonFooter);
+   String getCommonFooter();
 
    boolean isSetCommonFooter();
+
+   /**
+    * Returns the lines of the common footer.
+    *
+    * @return the lines of the common footer; empty if no common footer is set.
+    */
+   List<String> getCommonFooterLines();
+
+   /**
+    * Returns the maximum size of the disk cache for rendered diagrams in megabytes. A value of <tt>0</tt> disables the
+    * disk cache.
+    *
+    * @return the maximum size of the disk cache in megabytes.
+    */
+   int getDiskCacheSize();
+
+   /**
+    * Returns the maximum number of diagrams that are rendered concurrently.
+    *
+    * @return the maximum number of diagrams that are rendered concurrently.
+    */
+   int getMaxConcurrentRenders();
+
+   /**
+    * Returns the maximum number of diagrams waiting to be rendered.
+    *
+    * @return the maximum number of diagrams waiting to be rendered.
+    */
+   int getRenderQueueLength();
+
+   /**
+    * Returns the maximum number of diagrams of a single user that are rendered or waiting to be rendered. All
+    * anonymous users share a single limit.
+    *
+    * @return the maximum number of diagrams per user.
+    */
+   int getMaxRendersPerUser();
+
+   /**
+    * Returns the number of seconds a page view waits for a diagram. The diagram is still rendered in the background
+    * if the time is exceeded.
+    *
+    * @return the number of seconds a page view waits for a diagram.
+    */
+   int getRenderWaitTimeout();
+
+   /**
+    * Returns the maximum number of seconds a single diagram may take to render. Longer renders are cancelled. A
+    * value of <tt>0</tt> disables the timeout.
+    *
+    * @return the maximum render time of a diagram in seconds.
+    */
+   int getRenderTimeout();
+
+   /**
+    * Returns true if diagrams that are not cached yet are rendered in the background. The page shows a placeholder
+    * that is replaced by the diagram as soon as it has been rendered. Requires the disk cache.
+    *
+    * @return true if diagrams are rendered asynchronously.
+    */
+   boolean isAsyncRendering();
+
+   /**
+    * Returns true if the render cache is warmed up in the background after the plugin has been started.
+    *
+    * @return true if the cache warm-up is enabled.
+    */
+   boolean isCacheWarmUp();
+
 }
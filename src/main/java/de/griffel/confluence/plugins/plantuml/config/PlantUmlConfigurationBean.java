@@ -1,6 +1,9 @@
 package de.griffel.confluence.plugins.plantuml.config;
 
 import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 import org.apache.commons.lang.StringUtils;
 
@@ -10,9 +13,74 @@ import org.apache.commons.lang.StringUtils;
 public final class PlantUmlConfigurationBean implements Serializable, PlantUmlConfiguration {
    private static final long serialVersionUID = 1L;
 
+   /**
+    * Default size of the disk cache: {@value #DEFAULT_DISK_CACHE_SIZE} MB.
+    */
+   public static final int DEFAULT_DISK_CACHE_SIZE = 256;
+
+   /**
+    * Default number of diagrams rendered concurrently: the number of available processors.
+    */
+   public static final int DEFAULT_MAX_CONCURRENT_RENDERS = Math.max(1, Runtime.getRuntime().availableProcessors());
+
+   /**
+    * Default length of the render queue: {@value #DEFAULT_RENDER_QUEUE_LENGTH} diagrams.
+    */
+   public static final int DEFAULT_RENDER_QUEUE_LENGTH = 50;
+
+   /**
+    * Default number of renders per user: {@value #DEFAULT_MAX_RENDERS_PER_USER} diagrams.
+    */
+   public static final int DEFAULT_MAX_RENDERS_PER_USER = 10;
+
+   /**
+    * Default time to wait for a diagram: {@value #DEFAULT_RENDER_WAIT_TIMEOUT} seconds.
+    */
+   public static final int DEFAULT_RENDER_WAIT_TIMEOUT = 30;
+
+   /**
+    * Default maximum render time of a diagram: {@value #DEFAULT_RENDER_TIMEOUT} seconds.
+    */
+   public static final int DEFAULT_RENDER_TIMEOUT = 120;
+
    private boolean svek = true;
    private String commonHeader = StringUtils.EMPTY;
    private String commonFooter = StringUtils.EMPTY;
+   private Integer diskCacheSize = DEFAULT_DISK_CACHE_SIZE; // null in configurations stored by older versions
+   private Integer maxConcurrentRenders = DEFAULT_MAX_CONCURRENT_RENDERS;
+   private Integer renderQueueLength = DEFAULT_RENDER_QUEUE_LENGTH;
+   private Integer maxRendersPerUser = DEFAULT_MAX_RENDERS_PER_USER;
+   private Integer renderWaitTimeout = DEFAULT_RENDER_WAIT_TIMEOUT;
+   private Integer renderTimeout = DEFAULT_RENDER_TIMEOUT;
+   private boolean asyncRendering;
+   private boolean cacheWarmUp;
+   private transient List<String> commonHeaderLines;
+   private transient List<String> commonFooterLines;
+
+   public PlantUmlConfigurationBean() {
+   }
+
+   /**
+    * Creates a copy of the given configuration. The lines of the common header and footer are taken from the given
+    * configuration when the copy is created, so a copy that is not modified is safe to share between threads.
+    *
+    * @param config the configuration to copy.
+    */
+   public PlantUmlConfigurationBean(PlantUmlConfiguration config) {
+      svek = config.isSvek();
+      commonHeader = config.getCommonHeader();
+      commonHeaderLines = config.getCommonHeaderLines();
+      commonFooter = config.getCommonFooter();
+      commonFooterLines = config.getCommonFooterLines();
+      diskCacheSize = config.getDiskCacheSize();
+      maxConcurrentRenders = config.getMaxConcurrentRenders();
+      renderQueueLength = config.getRenderQueueLength();
+      maxRendersPerUser = config.getMaxRendersPerUser();
+      renderWaitTimeout = config.getRenderWaitTimeout();
+      renderTimeout = config.getRenderTimeout();
+      asyncRendering = config.isAsyncRendering();
+      cacheWarmUp = config.isCacheWarmUp();
+   }
 
    public boolean isSvek() {
       return svek;
@@ -28,24 +96,111 @@ public final class PlantUmlConfigurationBean implements Serializable, PlantUmlCo
 
    public void setCommonHeader(String commonHeader) {
       this.commonHeader = commonHeader;
+      commonHeaderLines = null;
    }
 
    public boolean isSetCommonHeader() {
       return !StringUtils.isEmpty(commonHeader);
    }
 
+   public List<String> getCommonHeaderLines() {
+      if (commonHeaderLines == null) {
+         commonHeaderLines = splitLines(commonHeader);
+      }
+      return commonHeaderLines;
+   }
+
    public String getCommonFooter() {
       return commonFooter;
    }
 
    public void setCommonFooter(String commonFooter) {
       this.commonFooter = commonFooter;
+      commonFooterLines = null;
    }
 
    public boolean isSetCommonFooter() {
       return !StringUtils.isEmpty(commonFooter);
    }
 
+   public List<String> getCommonFooterLines() {
+      if (commonFooterLines == null) {
+         commonFooterLines = splitLines(commonFooter);
+      }
+      return commonFooterLines;
+   }
+
+   public int getDiskCacheSize() {
+      return diskCacheSize != null ? diskCacheSize : DEFAULT_DISK_CACHE_SIZE;
+   }
+
+   public void setDiskCacheSize(int megabytes) {
+      diskCacheSize = megabytes;
+   }
+
+   public int getMaxConcurrentRenders() {
+      return maxConcurrentRenders != null ? maxConcurrentRenders : DEFAULT_MAX_CONCURRENT_RENDERS;
+   }
+
+   public void setMaxConcurrentRenders(int maxConcurrentRenders) {
+      this.maxConcurrentRenders = maxConcurrentRenders;
+   }
+
+   public int getRenderQueueLength() {
+      return renderQueueLength != null ? renderQueueLength : DEFAULT_RENDER_QUEUE_LENGTH;
+   }
+
+   public void setRenderQueueLength(int renderQueueLength) {
+      this.renderQueueLength = renderQueueLength;
+   }
+
+   public int getMaxRendersPerUser() {
+      return maxRendersPerUser != null ? maxRendersPerUser : DEFAULT_MAX_RENDERS_PER_USER;
+   }
+
+   public void setMaxRendersPerUser(int maxRendersPerUser) {
+      this.maxRendersPerUser = maxRendersPerUser;
+   }
+
+   public int getRenderWaitTimeout() {
+      return renderWaitTimeout != null ? renderWaitTimeout : DEFAULT_RENDER_WAIT_TIMEOUT;
+   }
+
+   public void setRenderWaitTimeout(int renderWaitTimeout) {
+      this.renderWaitTimeout = renderWaitTimeout;
+   }
+
+   public int getRenderTimeout() {
+      return renderTimeout != null ? renderTimeout : DEFAULT_RENDER_TIMEOUT;
+   }
+
+   public void setRenderTimeout(int renderTimeout) {
+      this.renderTimeout = renderTimeout;
+   }
+
+   public boolean isAsyncRendering() {
+      return asyncRendering;
+   }
+
+   public void setAsyncRendering(boolean asyncRendering) {
+      this.asyncRendering = asyncRendering;
+   }
+
+   public boolean isCacheWarmUp() {
+      return cacheWarmUp;
+   }
+
+   public void setCacheWarmUp(boolean cacheWarmUp) {
+      this.cacheWarmUp = cacheWarmUp;
+   }
+
+   private static List<String> splitLines(String text) {
+      if (StringUtils.isEmpty(text)) {
+         return Collections.emptyList();
+      }
+      return Collections.unmodifiableList(Arrays.asList(text.split("\n")));
+   }
+
    @Override
    public String toString() {
       final StringBuilder sb = new StringBuilder();
@@ -55,6 +210,22 @@ public final class PlantUmlConfigurationBean implements Serializable, PlantUmlCo
       sb.append(commonHeader);
       sb.append(", commonFooter=");
       sb.append(commonFooter);
+      sb.append(", diskCacheSize=");
+      sb.append(diskCacheSize);
+      sb.append(", maxConcurrentRenders=");
+      sb.append(maxConcurrentRenders);
+      sb.append(", renderQueueLength=");
+      sb.append(renderQueueLength);
+      sb.append(", maxRendersPerUser=");
+      sb.append(maxRendersPerUser);
+      sb.append(", renderWaitTimeout=");
+      sb.append(renderWaitTimeout);
+      sb.append(", renderTimeout=");
+      sb.append(renderTimeout);
+      sb.append(", asyncRendering=");
+      sb.append(asyncRendering);
+      sb.append(", cacheWarmUp=");
+      sb.append(cacheWarmUp);
       sb.append("]");
       return sb.toString();
    }
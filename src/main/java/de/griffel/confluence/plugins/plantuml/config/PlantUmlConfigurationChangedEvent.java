@@ -0,0 +1,16 @@
+package de.griffel.confluence.plugins.plantuml.config;
+
+import com.atlassian.confluence.event.events.ConfluenceEvent;
+import com.atlassian.confluence.event.events.cluster.ClusterEvent;
+
+/**
+ * Published when the configuration is saved. As a cluster event it tells the other nodes of a cluster to reload the
+ * configuration.
+ */
+public final class PlantUmlConfigurationChangedEvent extends ConfluenceEvent implements ClusterEvent {
+   private static final long serialVersionUID = 1L;
+
+   public PlantUmlConfigurationChangedEvent(Object src) {
+      super(src);
+   }
+}
@@ -6,12 +6,20 @@ package de.griffel.confluence.plugins.plantuml.config;
 public interface PlantUmlConfigurationManager {
 
    /**
-    * Loads the configuration.
+    * Loads the configuration. The returned configuration is shared by all callers; use {@link #copy()} to change it.
     *
     * @return configuration
     */
    PlantUmlConfiguration load();
 
+   /**
+    * Returns a modifiable copy of the configuration. Changes to it take effect only once it is passed to
+    * {@link #save(PlantUmlConfiguration)}.
+    *
+    * @return a copy of the configuration.
+    */
+   PlantUmlConfigurationBean copy();
+
    /**
     * Persists the given configuration.
     *
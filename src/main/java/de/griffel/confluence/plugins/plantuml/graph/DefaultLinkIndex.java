@@ -0,0 +1,440 @@
+/*
+ * Copyright (C) 2011 Michael Griffel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * This distribution includes other third-party libraries.
+ * These libraries and their corresponding licenses (where different
+ * from the GNU General Public License) are enumerated below.
+ *
+ * PlantUML is a Open-Source tool in Java to draw UML Diagram.
+ * The software is developed by Arnaud Roques at
+ * http://plantuml.sourceforge.org.
+ */
+package de.griffel.confluence.plugins.plantuml.graph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+
+import com.atlassian.confluence.core.ContentEntityObject;
+import com.atlassian.confluence.event.events.cluster.ClusterEventWrapper;
+import com.atlassian.confluence.event.events.content.blogpost.BlogPostCreateEvent;
+import com.atlassian.confluence.event.events.content.blogpost.BlogPostRemoveEvent;
+import com.atlassian.confluence.event.events.content.blogpost.BlogPostUpdateEvent;
+import com.atlassian.confluence.event.events.content.page.PageCreateEvent;
+import com.atlassian.confluence.event.events.content.page.PageRemoveEvent;
+import com.atlassian.confluence.event.events.content.page.PageRestoreEvent;
+import com.atlassian.confluence.event.events.content.page.PageUpdateEvent;
+import com.atlassian.confluence.links.LinkManager;
+import com.atlassian.confluence.links.OutgoingLink;
+import com.atlassian.confluence.pages.AbstractPage;
+import com.atlassian.confluence.pages.Page;
+import com.atlassian.confluence.pages.PageManager;
+import com.atlassian.confluence.spaces.Space;
+import com.atlassian.confluence.spaces.SpaceManager;
+import com.atlassian.event.api.EventListener;
+import com.atlassian.event.api.EventPublisher;
+import com.atlassian.sal.api.transaction.TransactionCallback;
+import com.atlassian.sal.api.transaction.TransactionTemplate;
+
+/**
+ * Keeps the links between the pages and blog posts of all spaces in memory. The index is built in a background thread
+ * on its first use, a batch of pages per transaction, and then kept up to date from the page and blog post events.
+ * Changes on other nodes of a cluster are passed on as {@link LinksChangedEvent}. The links of changed content are read
+ * in the same background thread, so that saving a page does not wait for a query per link.
+ * <p>
+ * Only links to pages are indexed, as the link graph shows pages only. The pages linking to a created or updated page
+ * are taken from the {@link LinkManager}, so that links to a page which did not exist or had another title before are
+ * picked up.
+ * <p>
+ * The index is released if no link graph has been drawn for an hour, and rebuilt on the next use. Instances with more
+ * than {@value #MAX_CONTENT} pages and blog posts are not indexed at all; their link graphs query the links of each
+ * page instead.
+ */
+public final class DefaultLinkIndex implements LinkIndex, InitializingBean, DisposableBean {
+   private static final Logger logger = Logger.getLogger(DefaultLinkIndex.class);
+
+   static final int MAX_CONTENT = 200000;
+   // pages read per transaction while building
+   private static final int BATCH_SIZE = 500;
+   private static final long IDLE_MILLIS = TimeUnit.HOURS.toMillis(1);
+   private static final long IDLE_CHECK_MINUTES = 10;
+
+   private final EventPublisher eventPublisher;
+   private final PageManager pageManager;
+   private final SpaceManager spaceManager;
+   private final LinkManager linkManager;
+   private final TransactionTemplate transactionTemplate;
+
+   private final AtomicBoolean building = new AtomicBoolean();
+   private volatile LinkGraph linkGraph;
+   private volatile long lastUsed;
+   private volatile boolean disabled;
+   private int maxContent = MAX_CONTENT;
+   // changes during the build, applied once it is finished
+   private final List<Long> pendingChanges = new ArrayList<Long>();
+   private ScheduledExecutorService executor;
+
+   public DefaultLinkIndex(EventPublisher eventPublisher, PageManager pageManager, SpaceManager spaceManager,
+         LinkManager linkManager, TransactionTemplate transactionTemplate) {
+      this.eventPublisher = eventPublisher;
+      this.pageManager = pageManager;
+      this.spaceManager = spaceManager;
+      this.linkManager = linkManager;
+      this.transactionTemplate = transactionTemplate;
+   }
+
+   public void afterPropertiesSet() {
+      executor = new ScheduledThreadPoolExecutor(1, new IndexThreadFactory());
+      executor.scheduleWithFixedDelay(new Runnable() {
+         public void run() {
+            releaseIfIdle();
+         }
+      }, IDLE_CHECK_MINUTES, IDLE_CHECK_MINUTES, TimeUnit.MINUTES);
+      eventPublisher.register(this);
+   }
+
+   public void destroy() {
+      eventPublisher.unregister(this);
+      executor.shutdownNow();
+   }
+
+   public LinkGraph getLinkGraph() {
+      lastUsed = System.currentTimeMillis();
+      final LinkGraph result = linkGraph;
+      if (result == null && !disabled && building.compareAndSet(false, true)) {
+         executor.execute(new Runnable() {
+            public void run() {
+               build();
+            }
+         });
+      }
+      return result;
+   }
+
+   @EventListener
+   public void onPageCreate(PageCreateEvent event) {
+      publishLinksChanged(event.getPage());
+   }
+
+   @EventListener
+   public void onPageUpdate(PageUpdateEvent event) {
+      publishLinksChanged(event.getPage());
+   }
+
+   @EventListener
+   public void onPageRestore(PageRestoreEvent event) {
+      publishLinksChanged(event.getPage());
+   }
+
+   @EventListener
+   public void onPageRemove(PageRemoveEvent event) {
+      publishLinksRemoved(event.getPage());
+   }
+
+   @EventListener
+   public void onBlogPostCreate(BlogPostCreateEvent event) {
+      publishLinksChanged(event.getBlogPost());
+   }
+
+   @EventListener
+   public void onBlogPostUpdate(BlogPostUpdateEvent event) {
+      publishLinksChanged(event.getBlogPost());
+   }
+
+   @EventListener
+   public void onBlogPostRemove(BlogPostRemoveEvent event) {
+      publishLinksRemoved(event.getBlogPost());
+   }
+
+   /**
+    * Updates the link index of this node with content changed on another node of the cluster.
+    *
+    * @param event the cluster event.
+    */
+   @EventListener
+   public void onClusterEvent(ClusterEventWrapper event) {
+      if (event.getEvent() instanceof LinksChangedEvent) {
+         queueLinksChanged(((LinksChangedEvent) event.getEvent()).getContentId());
+      }
+   }
+
+   void setMaxContent(int maxContent) {
+      this.maxContent = maxContent;
+   }
+
+   void build() {
+      final long start = System.currentTimeMillis();
+      try {
+         final List<String> spaceKeys = transactionTemplate.execute(new TransactionCallback<List<String>>() {
+            public List<String> doInTransaction() {
+               final List<String> result = new ArrayList<String>();
+               for (Space space : spaceManager.getAllSpaces()) {
+                  result.add(space.getKey());
+               }
+               return result;
+            }
+         });
+         // first collect the ids of all pages by title and the titles they link to, then resolve the titles
+         final Map<String, Long> pageIds = new HashMap<String, Long>();
+         final Map<Long, List<String>> linkedTitles = new HashMap<Long, List<String>>();
+         for (final String spaceKey : spaceKeys) {
+            if (Thread.currentThread().isInterrupted()) {
+               return;
+            }
+            // the pages are counted before they are read, and then read in batches
+            final List<Long> spacePageIds = transactionTemplate.execute(new TransactionCallback<List<Long>>() {
+               public List<Long> doInTransaction() {
+                  final Space space = spaceManager.getSpace(spaceKey);
+                  return space != null ? new ArrayList<Long>(pageManager.getPageIds(space)) : new ArrayList<Long>();
+               }
+            });
+            if (linkedTitles.size() + spacePageIds.size() > maxContent) {
+               disable();
+               return;
+            }
+            for (int from = 0; from < spacePageIds.size(); from += BATCH_SIZE) {
+               if (Thread.currentThread().isInterrupted()) {
+                  return;
+               }
+               final List<Long> batch = spacePageIds.subList(from, Math.min(from + BATCH_SIZE, spacePageIds.size()));
+               transactionTemplate.execute(new TransactionCallback<Object>() {
+                  public Object doInTransaction() {
+                     for (Long id : batch) {
+                        final Page page = pageManager.getPage(id);
+                        if (page != null && page.isCurrent() && page.isLatestVersion()) {
+                           pageIds.put(toKey(spaceKey, page.getTitle()), page.getId());
+                           linkedTitles.put(page.getId(), getLinkedTitles(page));
+                        }
+                     }
+                     return null;
+                  }
+               });
+            }
+            final boolean complete = transactionTemplate.execute(new TransactionCallback<Boolean>() {
+               public Boolean doInTransaction() {
+                  final Space space = spaceManager.getSpace(spaceKey);
+                  if (space != null) {
+                     for (AbstractPage blogPost : pageManager.getBlogPosts(space, true /* only current ones */)) {
+                        if (linkedTitles.size() >= maxContent) {
+                           return false;
+                        }
+                        linkedTitles.put(blogPost.getId(), getLinkedTitles(blogPost));
+                     }
+                  }
+                  return true;
+               }
+            });
+            if (!complete) {
+               disable();
+               return;
+            }
+         }
+         final Map<Long, long[]> outgoingIds = new HashMap<Long, long[]>();
+         for (Map.Entry<Long, List<String>> entry : linkedTitles.entrySet()) {
+            final long[] targets = new long[entry.getValue().size()];
+            int count = 0;
+            for (String title : entry.getValue()) {
+               final Long target = pageIds.get(title);
+               if (target != null) {
+                  targets[count++] = target;
+               }
+            }
+            if (count > 0) {
+               outgoingIds.put(entry.getKey(), Arrays.copyOf(targets, count));
+            }
+         }
+         final LinkGraph result = LinkGraph.create(pageIds.size(), outgoingIds);
+         synchronized (pendingChanges) {
+            linkGraph = result;
+            lastUsed = System.currentTimeMillis();
+         }
+         applyPendingChanges();
+         logger.debug("Link index with " + result.size() + " linked pages built in "
+               + (System.currentTimeMillis() - start) + " ms");
+      } catch (RuntimeException e) {
+         logger.warn("Failed to build the link index", e);
+      } finally {
+         synchronized (pendingChanges) {
+            // the changes of a build which did not finish are not needed, the next build reads them anyway
+            pendingChanges.clear();
+            building.set(false);
+         }
+      }
+   }
+
+   /**
+    * Releases the index if it has not been used for a while or has grown too large.
+    */
+   void releaseIfIdle() {
+      synchronized (pendingChanges) {
+         final LinkGraph graph = linkGraph;
+         if (graph == null) {
+            return;
+         }
+         if (graph.size() > maxContent) {
+            logger.info("Link index disabled as there are more than " + maxContent + " linked pages");
+            disabled = true;
+         } else if (System.currentTimeMillis() - lastUsed < IDLE_MILLIS) {
+            return;
+         }
+         linkGraph = null;
+      }
+      logger.debug("Link index released");
+   }
+
+   private void disable() {
+      logger.info("Link index disabled as there are more than " + maxContent + " pages and blog posts");
+      disabled = true;
+   }
+
+   private void applyPendingChanges() {
+      final List<Long> contentIds;
+      synchronized (pendingChanges) {
+         contentIds = new ArrayList<Long>(pendingChanges);
+         pendingChanges.clear();
+      }
+      for (final Long contentId : contentIds) {
+         transactionTemplate.execute(new TransactionCallback<Object>() {
+            public Object doInTransaction() {
+               linksChanged(contentId);
+               return null;
+            }
+         });
+      }
+   }
+
+   private void publishLinksChanged(ContentEntityObject content) {
+      queueLinksChanged(content.getId());
+      eventPublisher.publish(new LinksChangedEvent(this, content.getId()));
+   }
+
+   /**
+    * Reads the links of the changed content in the background thread, after a build in progress.
+    */
+   private void queueLinksChanged(final long contentId) {
+      if (linkGraph == null && !building.get()) {
+         return;
+      }
+      executor.execute(new Runnable() {
+         public void run() {
+            try {
+               transactionTemplate.execute(new TransactionCallback<Object>() {
+                  public Object doInTransaction() {
+                     linksChanged(contentId);
+                     return null;
+                  }
+               });
+            } catch (RuntimeException e) {
+               logger.warn("Failed to update the links of content " + contentId, e);
+            }
+         }
+      });
+   }
+
+   private void publishLinksRemoved(ContentEntityObject content) {
+      final LinkGraph graph = getGraphOrDefer(content.getId());
+      if (graph != null) {
+         graph.remove(content.getId());
+      }
+      // the content no longer exists when the other nodes receive the event, so they remove it as well
+      eventPublisher.publish(new LinksChangedEvent(this, content.getId()));
+   }
+
+   private void linksChanged(long contentId) {
+      final LinkGraph graph = getGraphOrDefer(contentId);
+      if (graph == null) {
+         return;
+      }
+      final AbstractPage content = pageManager.getAbstractPage(contentId);
+      if (content == null) {
+         graph.remove(contentId);
+         return;
+      }
+      final List<Long> targets = new ArrayList<Long>();
+      for (String title : getLinkedTitles(content)) {
+         final String[] spaceKeyAndTitle = title.split(":", 2);
+         final Page target = pageManager.getPage(spaceKeyAndTitle[0], spaceKeyAndTitle[1]);
+         if (target != null) {
+            targets.add(target.getId());
+         }
+      }
+      graph.setOutgoing(contentId, toArray(targets));
+      if (content instanceof Page) {
+         final List<Long> sources = new ArrayList<Long>();
+         for (ContentEntityObject source : linkManager.getReferringContent(content)) {
+            if (source instanceof AbstractPage) {
+               sources.add(source.getId());
+            }
+         }
+         graph.setIncoming(contentId, toArray(sources));
+      }
+   }
+
+   /**
+    * Returns the link graph or remembers the changed content until the graph has been built.
+    */
+   private LinkGraph getGraphOrDefer(long contentId) {
+      synchronized (pendingChanges) {
+         if (linkGraph == null && building.get()) {
+            pendingChanges.add(contentId);
+         }
+         return linkGraph;
+      }
+   }
+
+   private static List<String> getLinkedTitles(ContentEntityObject content) {
+      final List<String> result = new ArrayList<String>();
+      for (OutgoingLink link : content.getOutgoingLinks()) {
+         if (!link.isUrlLink() && link.getDestinationSpaceKey() != null && link.getDestinationPageTitle() != null) {
+            result.add(toKey(link.getDestinationSpaceKey(), link.getDestinationPageTitle()));
+         }
+      }
+      return result;
+   }
+
+   private static String toKey(String spaceKey, String title) {
+      return spaceKey + ":" + title;
+   }
+
+   private static long[] toArray(List<Long> ids) {
+      final long[] result = new long[ids.size()];
+      for (int i = 0; i < result.length; i++) {
+         result[i] = ids.get(i);
+      }
+      return result;
+   }
+
+   private static final class IndexThreadFactory implements ThreadFactory {
+      public Thread newThread(Runnable runnable) {
+         final Thread thread = new Thread(runnable, "plantuml-link-index");
+         thread.setDaemon(true);
+         thread.setPriority(Thread.MIN_PRIORITY);
+         thread.setContextClassLoader(DefaultLinkIndex.class.getClassLoader());
+         return thread;
+      }
+   }
+}
@@ -0,0 +1,332 @@
+/*
+ * Copyright (C) 2011 Michael Griffel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * This distribution includes other third-party libraries.
+ * These libraries and their corresponding licenses (where different
+ * from the GNU General Public License) are enumerated below.
+ *
+ * PlantUML is a Open-Source tool in Java to draw UML Diagram.
+ * The software is developed by Arnaud Roques at
+ * http://plantuml.sourceforge.org.
+ */
+package de.griffel.confluence.plugins.plantuml.graph;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+
+import com.atlassian.confluence.event.events.cluster.ClusterEventWrapper;
+import com.atlassian.confluence.event.events.content.page.PageCreateEvent;
+import com.atlassian.confluence.event.events.content.page.PageMoveEvent;
+import com.atlassian.confluence.event.events.content.page.PageRemoveEvent;
+import com.atlassian.confluence.event.events.content.page.PageRestoreEvent;
+import com.atlassian.confluence.event.events.content.page.PageTrashedEvent;
+import com.atlassian.confluence.event.events.content.page.PageUpdateEvent;
+import com.atlassian.confluence.event.events.space.SpaceRemoveEvent;
+import com.atlassian.confluence.pages.AbstractPage;
+import com.atlassian.confluence.pages.Page;
+import com.atlassian.confluence.pages.PageManager;
+import com.atlassian.confluence.spaces.Space;
+import com.atlassian.confluence.spaces.SpaceManager;
+import com.atlassian.event.api.EventListener;
+import com.atlassian.event.api.EventPublisher;
+import com.atlassian.sal.api.transaction.TransactionCallback;
+import com.atlassian.sal.api.transaction.TransactionTemplate;
+
+/**
+ * Keeps the page trees of the spaces in memory. The tree of a space is built in a background thread on its first use
+ * and then kept up to date from the page events. Changes on other nodes of a cluster are passed on as
+ * {@link PageHierarchyChangedEvent}.
+ * <p>
+ * The page events received while a tree is being built are queued and applied once the pages of the space have been
+ * read, as they may be newer than the pages read. A tree not used for an hour is released and built again on its next
+ * use; the tree of a removed space is dropped at once.
+ */
+public final class DefaultPageHierarchyIndex implements PageHierarchyIndex, InitializingBean, DisposableBean {
+   private static final Logger logger = Logger.getLogger(DefaultPageHierarchyIndex.class);
+
+   private static final long IDLE_MILLIS = TimeUnit.HOURS.toMillis(1);
+   private static final long IDLE_CHECK_MINUTES = 10;
+
+   private final EventPublisher eventPublisher;
+   private final PageManager pageManager;
+   private final SpaceManager spaceManager;
+   private final TransactionTemplate transactionTemplate;
+
+   private final ConcurrentMap<String, SpaceHierarchy> hierarchies = new ConcurrentHashMap<String, SpaceHierarchy>();
+   // changes of the trees being built, guarded by the list itself
+   private final ConcurrentMap<String, List<PageChange>> building = new ConcurrentHashMap<String, List<PageChange>>();
+   // time of the last use of each tree
+   private final ConcurrentMap<String, Long> lastUsed = new ConcurrentHashMap<String, Long>();
+   private ScheduledExecutorService executor;
+
+   public DefaultPageHierarchyIndex(EventPublisher eventPublisher, PageManager pageManager, SpaceManager spaceManager,
+         TransactionTemplate transactionTemplate) {
+      this.eventPublisher = eventPublisher;
+      this.pageManager = pageManager;
+      this.spaceManager = spaceManager;
+      this.transactionTemplate = transactionTemplate;
+   }
+
+   public void afterPropertiesSet() {
+      executor = new ScheduledThreadPoolExecutor(1, new IndexThreadFactory());
+      executor.scheduleWithFixedDelay(new Runnable() {
+         public void run() {
+            releaseIfIdle(IDLE_MILLIS);
+         }
+      }, IDLE_CHECK_MINUTES, IDLE_CHECK_MINUTES, TimeUnit.MINUTES);
+      eventPublisher.register(this);
+   }
+
+   public void destroy() {
+      eventPublisher.unregister(this);
+      executor.shutdownNow();
+   }
+
+   public SpaceHierarchy getHierarchy(final String spaceKey) {
+      lastUsed.put(spaceKey, System.currentTimeMillis());
+      final SpaceHierarchy hierarchy = hierarchies.get(spaceKey);
+      if (hierarchy == null && building.putIfAbsent(spaceKey, new ArrayList<PageChange>()) == null) {
+         executor.execute(new Runnable() {
+            public void run() {
+               build(spaceKey);
+            }
+         });
+      }
+      return hierarchy;
+   }
+
+   @EventListener
+   public void onPageCreate(PageCreateEvent event) {
+      publishPageChanged(event.getPage());
+   }
+
+   @EventListener
+   public void onPageUpdate(PageUpdateEvent event) {
+      publishPageChanged(event.getPage());
+   }
+
+   @EventListener
+   public void onPageMove(PageMoveEvent event) {
+      publishPageChanged(event.getPage());
+   }
+
+   @EventListener
+   public void onPageTrashed(PageTrashedEvent event) {
+      publishPageChanged(event.getPage());
+   }
+
+   @EventListener
+   public void onPageRestore(PageRestoreEvent event) {
+      publishPageChanged(event.getPage());
+   }
+
+   @EventListener
+   public void onPageRemove(PageRemoveEvent event) {
+      pageRemoved(event.getPage().getId());
+      eventPublisher.publish(new PageHierarchyChangedEvent(this, event.getPage().getId()));
+   }
+
+   @EventListener
+   public void onSpaceRemove(SpaceRemoveEvent event) {
+      final String spaceKey = event.getSpace().getKey();
+      hierarchies.remove(spaceKey);
+      lastUsed.remove(spaceKey);
+   }
+
+   /**
+    * Updates the page trees of this node with a page changed on another node of the cluster.
+    *
+    * @param event the cluster event.
+    */
+   @EventListener
+   public void onClusterEvent(ClusterEventWrapper event) {
+      if (event.getEvent() instanceof PageHierarchyChangedEvent) {
+         final long pageId = ((PageHierarchyChangedEvent) event.getEvent()).getPageId();
+         transactionTemplate.execute(new TransactionCallback<Object>() {
+            public Object doInTransaction() {
+               final AbstractPage page = pageManager.getAbstractPage(pageId);
+               if (page instanceof Page) {
+                  pageChanged((Page) page);
+               } else {
+                  pageRemoved(pageId);
+               }
+               return null;
+            }
+         });
+      }
+   }
+
+   void build(final String spaceKey) {
+      final long start = System.currentTimeMillis();
+      try {
+         final SpaceHierarchy hierarchy = transactionTemplate.execute(new TransactionCallback<SpaceHierarchy>() {
+            public SpaceHierarchy doInTransaction() {
+               final Space space = spaceManager.getSpace(spaceKey);
+               if (space == null) {
+                  return null;
+               }
+               final List<Page> pages = pageManager.getPages(space, true /* only current ones */);
+               final SpaceHierarchy result = new SpaceHierarchy(spaceKey, pages.size());
+               for (Page page : pages) {
+                  new PageChange(page).applyTo(result);
+               }
+               return result;
+            }
+         });
+         if (hierarchy != null) {
+            final List<PageChange> changes = building.get(spaceKey);
+            synchronized (changes) {
+               for (PageChange change : changes) {
+                  change.applyTo(hierarchy);
+               }
+               changes.clear();
+               hierarchies.put(spaceKey, hierarchy);
+            }
+            logger.debug("Page tree of space " + spaceKey + " with " + hierarchy.size() + " pages built in "
+                  + (System.currentTimeMillis() - start) + " ms");
+         }
+      } catch (RuntimeException e) {
+         logger.warn("Failed to build the page tree of space " + spaceKey, e);
+      } finally {
+         building.remove(spaceKey);
+      }
+   }
+
+   /**
+    * Releases the page trees that have not been used for the given time.
+    */
+   void releaseIfIdle(long idleMillis) {
+      final long now = System.currentTimeMillis();
+      for (String spaceKey : hierarchies.keySet()) {
+         final Long used = lastUsed.get(spaceKey);
+         if (used == null || now - used.longValue() >= idleMillis) {
+            hierarchies.remove(spaceKey);
+            if (used != null) {
+               lastUsed.remove(spaceKey, used);
+            }
+            logger.debug("Page tree of space " + spaceKey + " released");
+         }
+      }
+   }
+
+   private void publishPageChanged(Page page) {
+      pageChanged(page);
+      eventPublisher.publish(new PageHierarchyChangedEvent(this, page.getId()));
+   }
+
+   private void pageChanged(Page page) {
+      final PageChange change = new PageChange(page);
+      final PageChange removal = new PageChange(page.getId());
+      for (String spaceKey : getSpaceKeys()) {
+         // the page is removed from the other spaces in case it has been moved
+         apply(spaceKey, spaceKey.equals(page.getSpaceKey()) ? change : removal);
+      }
+   }
+
+   private void pageRemoved(long pageId) {
+      final PageChange removal = new PageChange(pageId);
+      for (String spaceKey : getSpaceKeys()) {
+         apply(spaceKey, removal);
+      }
+   }
+
+   private Set<String> getSpaceKeys() {
+      final Set<String> result = new HashSet<String>(hierarchies.keySet());
+      result.addAll(building.keySet());
+      return result;
+   }
+
+   /**
+    * Applies the change to the tree of the given space, or queues it if the tree is being built.
+    */
+   private void apply(String spaceKey, PageChange change) {
+      final SpaceHierarchy hierarchy = hierarchies.get(spaceKey);
+      if (hierarchy != null) {
+         change.applyTo(hierarchy);
+         return;
+      }
+      final List<PageChange> changes = building.get(spaceKey);
+      if (changes != null) {
+         synchronized (changes) {
+            // the tree may have been built in the meantime
+            final SpaceHierarchy built = hierarchies.get(spaceKey);
+            if (built != null) {
+               change.applyTo(built);
+            } else {
+               changes.add(change);
+            }
+         }
+      }
+   }
+
+   /**
+    * A page added to, updated in or removed from a page tree.
+    */
+   private static final class PageChange {
+      private final long pageId;
+      private final long parentId;
+      private final String title;
+      private final boolean deleted;
+      private final boolean removed;
+
+      PageChange(Page page) {
+         final Page parent = page.getParent();
+         pageId = page.getId();
+         parentId = parent != null ? parent.getId() : SpaceHierarchy.NO_PARENT;
+         title = page.getTitle();
+         deleted = page.isDeleted();
+         removed = false;
+      }
+
+      PageChange(long pageId) {
+         this.pageId = pageId;
+         parentId = SpaceHierarchy.NO_PARENT;
+         title = null;
+         deleted = false;
+         removed = true;
+      }
+
+      void applyTo(SpaceHierarchy hierarchy) {
+         if (removed) {
+            hierarchy.remove(pageId);
+         } else {
+            hierarchy.put(pageId, parentId, title, deleted);
+         }
+      }
+   }
+
+   private static final class IndexThreadFactory implements ThreadFactory {
+      public Thread newThread(Runnable runnable) {
+         final Thread thread = new Thread(runnable, "plantuml-page-hierarchy-index");
+         thread.setDaemon(true);
+         thread.setPriority(Thread.MIN_PRIORITY);
+         thread.setContextClassLoader(DefaultPageHierarchyIndex.class.getClassLoader());
+         return thread;
+      }
+   }
+}
@@ -0,0 +1,276 @@
+/*
+ * Copyright (C) 2011 Michael Griffel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * This distribution includes other third-party libraries.
+ * These libraries and their corresponding licenses (where different
+ * from the GNU General Public License) are enumerated below.
+ *
+ * PlantUML is a Open-Source tool in Java to draw UML Diagram.
+ * The software is developed by Arnaud Roques at
+ * http://plantuml.sourceforge.org.
+ */
+package de.griffel.confluence.plugins.plantuml.graph;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * The links between the pages and blog posts of all spaces: the outgoing and incoming content ids of each page, stored
+ * in sorted arrays indexed by slot. Links of a page to itself are not stored.
+ * <p>
+ * Instances are thread-safe. The arrays returned are copies.
+ */
+public final class LinkGraph {
+   private static final long[] NO_IDS = new long[0];
+   private static final int INITIAL_CAPACITY = 64;
+
+   private final LongIntMap slots;
+   private long[] ids;
+   private long[][] outgoing;
+   private long[][] incoming;
+   private int size;
+
+   LinkGraph(int expectedSize) {
+      final int capacity = Math.max(INITIAL_CAPACITY, expectedSize);
+      slots = new LongIntMap(capacity);
+      ids = new long[capacity];
+      outgoing = new long[capacity][];
+      incoming = new long[capacity][];
+   }
+
+   /**
+    * Creates the graph of the given links. The arrays of each page are built once, instead of being copied for every
+    * link added as with {@link #setOutgoing(long, long[])}.
+    *
+    * @param expectedSize the expected number of pages with links.
+    * @param outgoingIds the ids of the linked pages by the id of the linking page or blog post.
+    * @return the link graph.
+    */
+   static LinkGraph create(int expectedSize, Map<Long, long[]> outgoingIds) {
+      final LinkGraph result = new LinkGraph(expectedSize);
+      result.init(outgoingIds);
+      return result;
+   }
+
+   /**
+    * Returns the number of pages with links.
+    *
+    * @return the number of pages with links.
+    */
+   public synchronized int size() {
+      return size;
+   }
+
+   /**
+    * Returns the pages the given page links to.
+    *
+    * @param contentId the id of the page.
+    * @return the ids of the linked pages.
+    */
+   public synchronized long[] getOutgoingIds(long contentId) {
+      final int slot = slots.get(contentId);
+      return slot == LongIntMap.MISSING ? NO_IDS : outgoing[slot].clone();
+   }
+
+   /**
+    * Returns the pages and blog posts linking to the given page.
+    *
+    * @param contentId the id of the page.
+    * @return the ids of the linking pages.
+    */
+   public synchronized long[] getIncomingIds(long contentId) {
+      final int slot = slots.get(contentId);
+      return slot == LongIntMap.MISSING ? NO_IDS : incoming[slot].clone();
+   }
+
+   /**
+    * Replaces the links of the given page.
+    *
+    * @param contentId the id of the page.
+    * @param targetIds the ids of the linked pages.
+    */
+   synchronized void setOutgoing(long contentId, long[] targetIds) {
+      replace(true, contentId, targetIds);
+   }
+
+   /**
+    * Replaces the pages linking to the given page.
+    *
+    * @param contentId the id of the page.
+    * @param sourceIds the ids of the linking pages.
+    */
+   synchronized void setIncoming(long contentId, long[] sourceIds) {
+      replace(false, contentId, sourceIds);
+   }
+
+   /**
+    * Removes the given page and all its links.
+    *
+    * @param contentId the id of the page.
+    */
+   synchronized void remove(long contentId) {
+      if (slots.get(contentId) != LongIntMap.MISSING) {
+         setOutgoing(contentId, NO_IDS);
+         setIncoming(contentId, NO_IDS);
+      }
+   }
+
+   /**
+    * Fills the empty graph: the outgoing arrays first, then the incoming arrays sized by counting the links.
+    */
+   private synchronized void init(Map<Long, long[]> outgoingIds) {
+      for (Map.Entry<Long, long[]> entry : outgoingIds.entrySet()) {
+         final long[] targetIds = sortedDistinct(entry.getKey(), entry.getValue());
+         if (targetIds.length > 0) {
+            // the arrays may grow when a slot is added
+            final int slot = slotOf(entry.getKey());
+            outgoing[slot] = targetIds;
+            for (long id : targetIds) {
+               slotOf(id);
+            }
+         }
+      }
+      final int[] counts = new int[size];
+      for (int slot = 0; slot < size; slot++) {
+         for (long id : outgoing[slot]) {
+            counts[slots.get(id)]++;
+         }
+      }
+      for (int slot = 0; slot < size; slot++) {
+         incoming[slot] = counts[slot] > 0 ? new long[counts[slot]] : NO_IDS;
+         counts[slot] = 0;
+      }
+      for (int slot = 0; slot < size; slot++) {
+         for (long id : outgoing[slot]) {
+            final int target = slots.get(id);
+            incoming[target][counts[target]++] = ids[slot];
+         }
+      }
+      for (int slot = 0; slot < size; slot++) {
+         Arrays.sort(incoming[slot]);
+      }
+   }
+
+   /**
+    * Replaces the adjacent ids of a page in one direction and updates the opposite direction of the adjacent pages.
+    */
+   private void replace(boolean isOutgoing, long contentId, long[] adjacentIds) {
+      final long[] newIds = sortedDistinct(contentId, adjacentIds);
+      // the slot is added first, as the arrays may grow
+      final int contentSlot = slotOf(contentId);
+      final long[] oldIds = adjacency(isOutgoing)[contentSlot];
+      for (long id : oldIds) {
+         if (Arrays.binarySearch(newIds, id) < 0) {
+            final int slot = slots.get(id);
+            final long[][] opposite = adjacency(!isOutgoing);
+            opposite[slot] = without(opposite[slot], contentId);
+         }
+      }
+      for (long id : newIds) {
+         if (Arrays.binarySearch(oldIds, id) < 0) {
+            // the arrays may grow when a slot is added
+            final int slot = slotOf(id);
+            final long[][] opposite = adjacency(!isOutgoing);
+            opposite[slot] = with(opposite[slot], contentId);
+         }
+      }
+      adjacency(isOutgoing)[slots.get(contentId)] = newIds;
+      // free the slots of pages left without links; done last as it moves slots
+      releaseIfUnlinked(contentId);
+      for (long id : oldIds) {
+         releaseIfUnlinked(id);
+      }
+   }
+
+   private long[][] adjacency(boolean isOutgoing) {
+      return isOutgoing ? outgoing : incoming;
+   }
+
+   private int slotOf(long contentId) {
+      int slot = slots.get(contentId);
+      if (slot == LongIntMap.MISSING) {
+         if (size == ids.length) {
+            grow();
+         }
+         slot = size++;
+         slots.put(contentId, slot);
+         ids[slot] = contentId;
+         outgoing[slot] = NO_IDS;
+         incoming[slot] = NO_IDS;
+      }
+      return slot;
+   }
+
+   private void releaseIfUnlinked(long contentId) {
+      final int slot = slots.get(contentId);
+      if (slot == LongIntMap.MISSING || outgoing[slot].length > 0 || incoming[slot].length > 0) {
+         return;
+      }
+      slots.remove(contentId);
+      final int last = --size;
+      if (slot != last) {
+         ids[slot] = ids[last];
+         outgoing[slot] = outgoing[last];
+         incoming[slot] = incoming[last];
+         slots.put(ids[slot], slot);
+      }
+      outgoing[last] = null;
+      incoming[last] = null;
+   }
+
+   private void grow() {
+      final int capacity = ids.length * 2;
+      ids = Arrays.copyOf(ids, capacity);
+      outgoing = Arrays.copyOf(outgoing, capacity);
+      incoming = Arrays.copyOf(incoming, capacity);
+   }
+
+   private static long[] sortedDistinct(long contentId, long[] ids) {
+      final long[] sorted = ids.clone();
+      Arrays.sort(sorted);
+      int size = 0;
+      for (int i = 0; i < sorted.length; i++) {
+         if (sorted[i] != contentId && (size == 0 || sorted[size - 1] != sorted[i])) {
+            sorted[size++] = sorted[i];
+         }
+      }
+      return Arrays.copyOf(sorted, size);
+   }
+
+   private static long[] with(long[] sortedIds, long id) {
+      final int index = Arrays.binarySearch(sortedIds, id);
+      if (index >= 0) {
+         return sortedIds;
+      }
+      final int insert = -index - 1;
+      final long[] result = new long[sortedIds.length + 1];
+      System.arraycopy(sortedIds, 0, result, 0, insert);
+      result[insert] = id;
+      System.arraycopy(sortedIds, insert, result, insert + 1, sortedIds.length - insert);
+      return result;
+   }
+
+   private static long[] without(long[] sortedIds, long id) {
+      final int index = Arrays.binarySearch(sortedIds, id);
+      if (index < 0) {
+         return sortedIds;
+      }
+      final long[] result = new long[sortedIds.length - 1];
+      System.arraycopy(sortedIds, 0, result, 0, index);
+      System.arraycopy(sortedIds, index + 1, result, index, result.length - index);
+      return result;
+   }
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright (C) 2011 Michael Griffel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * This distribution includes other third-party libraries.
+ * These libraries and their corresponding licenses (where different
+ * from the GNU General Public License) are enumerated below.
+ *
+ * PlantUML is a Open-Source tool in Java to draw UML Diagram.
+ * The software is developed by Arnaud Roques at
+ * http://plantuml.sourceforge.org.
+ */
+package de.griffel.confluence.plugins.plantuml.graph;
+
+/**
+ * Index of the links between pages, so that link graphs can be built without querying the links of each page from the
+ * database.
+ */
+public interface LinkIndex {
+
+   /**
+    * Returns the links between the pages of all spaces. If the index has not been built yet, it is built in the
+    * background and <tt>null</tt> is returned in the meantime. The index may also be unavailable for good, e.g. if
+    * the instance is too large to keep all links in memory.
+    *
+    * @return the links or null if they are not available.
+    */
+   LinkGraph getLinkGraph();
+}
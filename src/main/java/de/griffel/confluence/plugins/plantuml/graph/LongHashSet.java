@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2011 Michael Griffel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * This distribution includes other third-party libraries.
+ * These libraries and their corresponding licenses (where different
+ * from the GNU General Public License) are enumerated below.
+ *
+ * PlantUML is a Open-Source tool in Java to draw UML Diagram.
+ * The software is developed by Arnaud Roques at
+ * http://plantuml.sourceforge.org.
+ */
+package de.griffel.confluence.plugins.plantuml.graph;
+
+/**
+ * Set of content ids using open addressing, so that the graph traversals do not box the ids of the pages they visit.
+ * The id <tt>0</tt> is not a valid content id. Not thread-safe.
+ */
+public final class LongHashSet {
+   private static final long FREE = 0L;
+   private static final int INITIAL_CAPACITY = 16;
+
+   private long[] keys = new long[INITIAL_CAPACITY];
+   private int size;
+
+   public int size() {
+      return size;
+   }
+
+   public boolean contains(long id) {
+      checkId(id);
+      for (int i = indexOf(keys, id);; i = next(keys, i)) {
+         if (keys[i] == id) {
+            return true;
+         }
+         if (keys[i] == FREE) {
+            return false;
+         }
+      }
+   }
+
+   /**
+    * Adds the given id.
+    *
+    * @param id the content id.
+    * @return true if the id was not contained before.
+    */
+   public boolean add(long id) {
+      checkId(id);
+      if ((size + 1) * 2 > keys.length) {
+         rehash();
+      }
+      if (insert(keys, id)) {
+         size++;
+         return true;
+      }
+      return false;
+   }
+
+   private void rehash() {
+      final long[] newKeys = new long[keys.length * 2];
+      for (long key : keys) {
+         if (key != FREE) {
+            insert(newKeys, key);
+         }
+      }
+      keys = newKeys;
+   }
+
+   private static boolean insert(long[] keys, long id) {
+      for (int i = indexOf(keys, id);; i = next(keys, i)) {
+         if (keys[i] == id) {
+            return false;
+         }
+         if (keys[i] == FREE) {
+            keys[i] = id;
+            return true;
+         }
+      }
+   }
+
+   static int hash(long id) {
+      final long hash = id * 0x9E3779B97F4A7C15L;
+      return (int) (hash ^ (hash >>> 32));
+   }
+
+   private static int indexOf(long[] keys, long id) {
+      return hash(id) & (keys.length - 1);
+   }
+
+   private static int next(long[] keys, int index) {
+      return (index + 1) & (keys.length - 1);
+   }
+
+   private static void checkId(long id) {
+      if (id == FREE) {
+         throw new IllegalArgumentException("Invalid content id " + id);
+      }
+   }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2011 Michael Griffel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * This distribution includes other third-party libraries.
+ * These libraries and their corresponding licenses (where different
+ * from the GNU General Public License) are enumerated below.
+ *
+ * PlantUML is a Open-Source tool in Java to draw UML Diagram.
+ * The software is developed by Arnaud Roques at
+ * http://plantuml.sourceforge.org.
+ */
+package de.griffel.confluence.plugins.plantuml.graph;
+
+import java.util.Arrays;
+
+/**
+ * Map from content ids to array slots using open addressing, so that the indexes do not box their keys. The id
+ * <tt>0</tt> is not a valid content id and is used to mark free entries. Not thread-safe.
+ */
+final class LongIntMap {
+   static final int MISSING = -1;
+
+   private static final long FREE = 0L;
+   private static final int INITIAL_CAPACITY = 16;
+
+   private long[] keys;
+   private int[] values;
+   private int size;
+
+   LongIntMap() {
+      this(INITIAL_CAPACITY);
+   }
+
+   LongIntMap(int expectedSize) {
+      allocate(capacityFor(expectedSize));
+   }
+
+   int size() {
+      return size;
+   }
+
+   /**
+    * Returns the value of the given key.
+    *
+    * @param key the key.
+    * @return the value or {@link #MISSING}.
+    */
+   int get(long key) {
+      checkKey(key);
+      for (int i = indexOf(key);; i = next(i)) {
+         if (keys[i] == key) {
+            return values[i];
+         }
+         if (keys[i] == FREE) {
+            return MISSING;
+         }
+      }
+   }
+
+   void put(long key, int value) {
+      checkKey(key);
+      if ((size + 1) * 2 > keys.length) {
+         rehash(keys.length * 2);
+      }
+      for (int i = indexOf(key);; i = next(i)) {
+         if (keys[i] == key) {
+            values[i] = value;
+            return;
+         }
+         if (keys[i] == FREE) {
+            keys[i] = key;
+            values[i] = value;
+            size++;
+            return;
+         }
+      }
+   }
+
+   /**
+    * Removes the given key.
+    *
+    * @param key the key.
+    * @return the removed value or {@link #MISSING}.
+    */
+   int remove(long key) {
+      checkKey(key);
+      int i = indexOf(key);
+      while (keys[i] != key) {
+         if (keys[i] == FREE) {
+            return MISSING;
+         }
+         i = next(i);
+      }
+      final int value = values[i];
+      size--;
+      // shift the following entries of the cluster back, so that lookups do not stop at the freed entry
+      for (int j = next(i);; j = next(j)) {
+         if (keys[j] == FREE) {
+            keys[i] = FREE;
+            return value;
+         }
+         final int home = indexOf(keys[j]);
+         if (i <= j ? (home <= i || home > j) : (home <= i && home > j)) {
+            keys[i] = keys[j];
+            values[i] = values[j];
+            i = j;
+         }
+      }
+   }
+
+   void clear() {
+      Arrays.fill(keys, FREE);
+      size = 0;
+   }
+
+   private void rehash(int capacity) {
+      final long[] oldKeys = keys;
+      final int[] oldValues = values;
+      allocate(capacity);
+      size = 0;
+      for (int i = 0; i < oldKeys.length; i++) {
+         if (oldKeys[i] != FREE) {
+            put(oldKeys[i], oldValues[i]);
+         }
+      }
+   }
+
+   private void allocate(int capacity) {
+      keys = new long[capacity];
+      values = new int[capacity];
+   }
+
+   private int indexOf(long key) {
+      return LongHashSet.hash(key) & (keys.length - 1);
+   }
+
+   private int next(int index) {
+      return (index + 1) & (keys.length - 1);
+   }
+
+   private static int capacityFor(int expectedSize) {
+      int capacity = INITIAL_CAPACITY;
+      while (capacity < expectedSize * 2) {
+         capacity <<= 1;
+      }
+      return capacity;
+   }
+
+   private static void checkKey(long key) {
+      if (key == FREE) {
+         throw new IllegalArgumentException("Invalid content id " + key);
+      }
+   }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2011 Michael Griffel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * This distribution includes other third-party libraries.
+ * These libraries and their corresponding licenses (where different
+ * from the GNU General Public License) are enumerated below.
+ *
+ * PlantUML is a Open-Source tool in Java to draw UML Diagram.
+ * The software is developed by Arnaud Roques at
+ * http://plantuml.sourceforge.org.
+ */
+package de.griffel.confluence.plugins.plantuml.graph;
+
+/**
+ * Set of ordered pairs of content ids using open addressing, e.g. the edges of a graph. The id <tt>0</tt> is not a
+ * valid content id. Not thread-safe.
+ */
+public final class LongPairHashSet {
+   private static final long FREE = 0L;
+   private static final int INITIAL_CAPACITY = 16;
+
+   private long[] firsts = new long[INITIAL_CAPACITY];
+   private long[] seconds = new long[INITIAL_CAPACITY];
+   private int size;
+
+   public int size() {
+      return size;
+   }
+
+   public boolean contains(long first, long second) {
+      checkId(first);
+      for (int i = indexOf(firsts.length, first, second);; i = next(firsts.length, i)) {
+         if (firsts[i] == first && seconds[i] == second) {
+            return true;
+         }
+         if (firsts[i] == FREE) {
+            return false;
+         }
+      }
+   }
+
+   /**
+    * Adds the given pair.
+    *
+    * @param first the first content id.
+    * @param second the second content id.
+    * @return true if the pair was not contained before.
+    */
+   public boolean add(long first, long second) {
+      checkId(first);
+      if ((size + 1) * 2 > firsts.length) {
+         rehash();
+      }
+      if (insert(firsts, seconds, first, second)) {
+         size++;
+         return true;
+      }
+      return false;
+   }
+
+   private void rehash() {
+      final long[] newFirsts = new long[firsts.length * 2];
+      final long[] newSeconds = new long[seconds.length * 2];
+      for (int i = 0; i < firsts.length; i++) {
+         if (firsts[i] != FREE) {
+            insert(newFirsts, newSeconds, firsts[i], seconds[i]);
+         }
+      }
+      firsts = newFirsts;
+      seconds = newSeconds;
+   }
+
+   private static boolean insert(long[] firsts, long[] seconds, long first, long second) {
+      for (int i = indexOf(firsts.length, first, second);; i = next(firsts.length, i)) {
+         if (firsts[i] == first && seconds[i] == second) {
+            return false;
+         }
+         if (firsts[i] == FREE) {
+            firsts[i] = first;
+            seconds[i] = second;
+            return true;
+         }
+      }
+   }
+
+   private static int indexOf(int capacity, long first, long second) {
+      return (LongHashSet.hash(first) * 31 + LongHashSet.hash(second)) & (capacity - 1);
+   }
+
+   private static int next(int capacity, int index) {
+      return (index + 1) & (capacity - 1);
+   }
+
+   private static void checkId(long id) {
+      if (id == FREE) {
+         throw new IllegalArgumentException("Invalid content id " + id);
+      }
+   }
+}
@@ -0,0 +1,218 @@
+/*
+ * Copyright (C) 2011 Michael Griffel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * This distribution includes other third-party libraries.
+ * These libraries and their corresponding licenses (where different
+ * from the GNU General Public License) are enumerated below.
+ *
+ * PlantUML is a Open-Source tool in Java to draw UML Diagram.
+ * The software is developed by Arnaud Roques at
+ * http://plantuml.sourceforge.org.
+ */
+package de.griffel.confluence.plugins.plantuml.graph;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * The page tree of one space: the parent, title and deleted flag of each page, stored in parallel arrays indexed by
+ * slot. The children of the pages are derived from the parents on the first read after a change and ordered by title.
+ * <p>
+ * Instances are thread-safe. The arrays returned are copies.
+ */
+public final class SpaceHierarchy {
+   /**
+    * Parent id of top level pages.
+    */
+   public static final long NO_PARENT = 0L;
+
+   private static final long[] NO_IDS = new long[0];
+   private static final int INITIAL_CAPACITY = 64;
+
+   private final String spaceKey;
+   private final LongIntMap slots;
+   private long[] ids;
+   private long[] parentIds;
+   private String[] titles;
+   private boolean[] deleted;
+   private int size;
+
+   // children of slot i are childSlots[childStart[i]..childStart[i + 1]), the top level pages are at index size
+   private int[] childStart;
+   private int[] childSlots;
+
+   SpaceHierarchy(String spaceKey, int expectedSize) {
+      this.spaceKey = spaceKey;
+      final int capacity = Math.max(INITIAL_CAPACITY, expectedSize);
+      slots = new LongIntMap(capacity);
+      ids = new long[capacity];
+      parentIds = new long[capacity];
+      titles = new String[capacity];
+      deleted = new boolean[capacity];
+   }
+
+   public String getSpaceKey() {
+      return spaceKey;
+   }
+
+   public synchronized int size() {
+      return size;
+   }
+
+   public synchronized boolean contains(long pageId) {
+      return slots.get(pageId) != LongIntMap.MISSING;
+   }
+
+   /**
+    * Returns the title of the given page.
+    *
+    * @param pageId the id of the page.
+    * @return the title or null if the page is not part of this space.
+    */
+   public synchronized String getTitle(long pageId) {
+      final int slot = slots.get(pageId);
+      return slot == LongIntMap.MISSING ? null : titles[slot];
+   }
+
+   /**
+    * Returns the top level pages of the space which are not deleted.
+    *
+    * @return the ids of the pages ordered by title.
+    */
+   public synchronized long[] getRootIds() {
+      return getChildIds(size);
+   }
+
+   /**
+    * Returns the children of the given page which are not deleted.
+    *
+    * @param pageId the id of the parent page.
+    * @return the ids of the children ordered by title.
+    */
+   public synchronized long[] getChildIds(long pageId) {
+      final int slot = slots.get(pageId);
+      if (slot == LongIntMap.MISSING || deleted[slot]) {
+         return NO_IDS;
+      }
+      return getChildIds(slot);
+   }
+
+   /**
+    * Adds the given page or updates it.
+    *
+    * @param pageId the id of the page.
+    * @param parentId the id of the parent page or {@link #NO_PARENT}.
+    * @param title the title of the page.
+    * @param isDeleted true if the page is in the trash.
+    */
+   synchronized void put(long pageId, long parentId, String title, boolean isDeleted) {
+      int slot = slots.get(pageId);
+      if (slot == LongIntMap.MISSING) {
+         if (size == ids.length) {
+            grow();
+         }
+         slot = size++;
+         slots.put(pageId, slot);
+         ids[slot] = pageId;
+      }
+      parentIds[slot] = parentId;
+      titles[slot] = title != null ? title : "";
+      deleted[slot] = isDeleted;
+      childStart = null;
+   }
+
+   /**
+    * Removes the given page. Its children are kept and become top level pages until they are updated.
+    *
+    * @param pageId the id of the page.
+    * @return true if the page was part of this space.
+    */
+   synchronized boolean remove(long pageId) {
+      final int slot = slots.remove(pageId);
+      if (slot == LongIntMap.MISSING) {
+         return false;
+      }
+      final int last = --size;
+      if (slot != last) {
+         ids[slot] = ids[last];
+         parentIds[slot] = parentIds[last];
+         titles[slot] = titles[last];
+         deleted[slot] = deleted[last];
+         slots.put(ids[slot], slot);
+      }
+      titles[last] = null;
+      childStart = null;
+      return true;
+   }
+
+   private long[] getChildIds(int slot) {
+      if (childStart == null) {
+         buildChildren();
+      }
+      final long[] result = new long[childStart[slot + 1] - childStart[slot]];
+      for (int i = 0; i < result.length; i++) {
+         result[i] = ids[childSlots[childStart[slot] + i]];
+      }
+      return result;
+   }
+
+   private void buildChildren() {
+      final int[] parentSlots = new int[size];
+      final int[] start = new int[size + 2];
+      int count = 0;
+      for (int i = 0; i < size; i++) {
+         if (deleted[i]) {
+            parentSlots[i] = LongIntMap.MISSING;
+            continue;
+         }
+         final int parentSlot = parentIds[i] == NO_PARENT ? LongIntMap.MISSING : slots.get(parentIds[i]);
+         parentSlots[i] = parentSlot == LongIntMap.MISSING ? size : parentSlot;
+         start[parentSlots[i] + 1]++;
+         count++;
+      }
+      for (int i = 1; i < start.length; i++) {
+         start[i] += start[i - 1];
+      }
+      final Integer[] children = new Integer[count];
+      final int[] fill = Arrays.copyOf(start, start.length);
+      for (int i = 0; i < size; i++) {
+         if (parentSlots[i] != LongIntMap.MISSING) {
+            children[fill[parentSlots[i]]++] = i;
+         }
+      }
+      final Comparator<Integer> byTitle = new Comparator<Integer>() {
+         public int compare(Integer a, Integer b) {
+            return titles[a].compareToIgnoreCase(titles[b]);
+         }
+      };
+      childSlots = new int[count];
+      for (int parent = 0; parent <= size; parent++) {
+         Arrays.sort(children, start[parent], start[parent + 1], byTitle);
+      }
+      for (int i = 0; i < count; i++) {
+         childSlots[i] = children[i];
+      }
+      childStart = start;
+   }
+
+   private void grow() {
+      final int capacity = ids.length * 2;
+      ids = Arrays.copyOf(ids, capacity);
+      parentIds = Arrays.copyOf(parentIds, capacity);
+      titles = Arrays.copyOf(titles, capacity);
+      deleted = Arrays.copyOf(deleted, capacity);
+   }
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright (C) 2011 Michael Griffel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * This distribution includes other third-party libraries.
+ * These libraries and their corresponding licenses (where different
+ * from the GNU General Public License) are enumerated below.
+ *
+ * PlantUML is a Open-Source tool in Java to draw UML Diagram.
+ * The software is developed by Arnaud Roques at
+ * http://plantuml.sourceforge.org.
+ */
+package de.griffel.confluence.plugins.plantuml.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+import net.sourceforge.plantuml.core.DiagramType;
+
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+
+import de.griffel.confluence.plugins.plantuml.render.RenderExecutor;
+
+/**
+ * {@link RenderMetrics} kept in memory and published via JMX in the domain {@value #JMX_DOMAIN}:
+ * <ul>
+ * <li><code>type=RenderMetrics</code>: cache hits and misses, active and queued renders,</li>
+ * <li><code>type=RenderPhase,name=&lt;phase&gt;</code>: the durations of each {@link RenderPhase},</li>
+ * <li><code>type=DiagramRender,name=&lt;diagram type&gt;</code>: the render durations of each diagram type.</li>
+ * </ul>
+ */
+public final class DefaultRenderMetrics implements RenderMetrics, RenderMetricsMBean, InitializingBean,
+      DisposableBean {
+   private static final Logger logger = Logger.getLogger(DefaultRenderMetrics.class);
+
+   static final String JMX_DOMAIN = "de.griffel.confluence.plugins.plantuml";
+
+   private final RenderExecutor renderExecutor;
+   private final MBeanServer mbeanServer;
+   private final Map<RenderPhase, LatencyHistogram> phases =
+         new EnumMap<RenderPhase, LatencyHistogram>(RenderPhase.class);
+   private final ConcurrentMap<DiagramType, LatencyHistogram> renders =
+         new ConcurrentHashMap<DiagramType, LatencyHistogram>();
+   private final AtomicLong cacheHits = new AtomicLong();
+   private final AtomicLong cacheMisses = new AtomicLong();
+   private final SlowDiagramReport slowDiagramReport = new SlowDiagramReport();
+   private final List<ObjectName> registered = Collections.synchronizedList(new ArrayList<ObjectName>());
+   private volatile boolean jmxEnabled;
+
+   public DefaultRenderMetrics(RenderExecutor renderExecutor) {
+      this(renderExecutor, ManagementFactory.getPlatformMBeanServer());
+   }
+
+   DefaultRenderMetrics(RenderExecutor renderExecutor, MBeanServer mbeanServer) {
+      this.renderExecutor = renderExecutor;
+      this.mbeanServer = mbeanServer;
+      for (RenderPhase phase : RenderPhase.values()) {
+         phases.put(phase, new LatencyHistogram());
+      }
+   }
+
+   public void afterPropertiesSet() {
+      jmxEnabled = true;
+      register("type=RenderMetrics", new StandardMBean(this, RenderMetricsMBean.class, false));
+      for (Map.Entry<RenderPhase, LatencyHistogram> phase : phases.entrySet()) {
+         register("type=RenderPhase,name=" + phase.getKey().getKey(), phase.getValue());
+      }
+      for (Map.Entry<DiagramType, LatencyHistogram> render : renders.entrySet()) {
+         registerRender(render.getKey(), render.getValue());
+      }
+   }
+
+   public void destroy() {
+      jmxEnabled = false;
+      synchronized (registered) {
+         for (ObjectName name : registered) {
+            try {
+               mbeanServer.unregisterMBean(name);
+            } catch (JMException e) {
+               logger.debug("Cannot unregister MBean " + name, e);
+            }
+         }
+         registered.clear();
+      }
+   }
+
+   public void recordPhase(RenderPhase phase, long millis) {
+      phases.get(phase).record(millis);
+   }
+
+   public void recordRender(DiagramType diagramType, long millis) {
+      LatencyHistogram histogram = renders.get(diagramType);
+      if (histogram == null) {
+         final LatencyHistogram created = new LatencyHistogram();
+         histogram = renders.putIfAbsent(diagramType, created);
+         if (histogram == null) {
+            histogram = created;
+            registerRender(diagramType, created);
+         }
+      }
+      histogram.record(millis);
+   }
+
+   public void recordCacheHit() {
+      cacheHits.incrementAndGet();
+   }
+
+   public void recordCacheMiss() {
+      cacheMisses.incrementAndGet();
+   }
+
+   public LatencyHistogram getPhase(RenderPhase phase) {
+      return phases.get(phase);
+   }
+
+   public Map<DiagramType, LatencyHistogram> getRenders() {
+      final Map<DiagramType, LatencyHistogram> result = new EnumMap<DiagramType, LatencyHistogram>(DiagramType.class);
+      result.putAll(renders);
+      return Collections.unmodifiableMap(result);
+   }
+
+   public long getCacheHits() {
+      return cacheHits.get();
+   }
+
+   public long getCacheMisses() {
+      return cacheMisses.get();
+   }
+
+   public double getCacheHitRatio() {
+      final long hits = cacheHits.get();
+      final long lookups = hits + cacheMisses.get();
+      return lookups > 0 ? 100.0 * hits / lookups : 0;
+   }
+
+   public int getActiveRenders() {
+      return renderExecutor.getActiveRenders();
+   }
+
+   public int getQueuedRenders() {
+      return renderExecutor.getQueuedRenders();
+   }
+
+   public SlowDiagramReport getSlowDiagramReport() {
+      return slowDiagramReport;
+   }
+
+   public void reset() {
+      for (LatencyHistogram histogram : phases.values()) {
+         histogram.reset();
+      }
+      for (LatencyHistogram histogram : renders.values()) {
+         histogram.reset();
+      }
+      cacheHits.set(0);
+      cacheMisses.set(0);
+      slowDiagramReport.clear();
+   }
+
+   private void registerRender(DiagramType diagramType, LatencyHistogram histogram) {
+      register("type=DiagramRender,name=" + diagramType.name().toLowerCase(), histogram);
+   }
+
+   private void register(String properties, Object mbean) {
+      if (!jmxEnabled) {
+         return;
+      }
+      try {
+         final ObjectName name = new ObjectName(JMX_DOMAIN + ":" + properties);
+         if (mbeanServer.isRegistered(name)) {
+            // left over by a previous instance of the plugin
+            mbeanServer.unregisterMBean(name);
+         }
+         mbeanServer.registerMBean(mbean, name);
+         registered.add(name);
+      } catch (JMException e) {
+         logger.warn("Cannot register MBean " + properties + ": " + e.getMessage());
+      }
+   }
+
+   @Override
+   public String toString() {
+      return "DefaultRenderMetrics [cacheHits=" + cacheHits + ", cacheMisses=" + cacheMisses + ", phases=" + phases
+            + "]";
+   }
+}
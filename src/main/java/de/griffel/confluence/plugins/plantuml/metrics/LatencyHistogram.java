@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2011 Michael Griffel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * This distribution includes other third-party libraries.
+ * These libraries and their corresponding licenses (where different
+ * from the GNU General Public License) are enumerated below.
+ *
+ * PlantUML is a Open-Source tool in Java to draw UML Diagram.
+ * The software is developed by Arnaud Roques at
+ * http://plantuml.sourceforge.org.
+ */
+package de.griffel.confluence.plugins.plantuml.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of durations in milliseconds. The durations are counted in fixed buckets, so a percentile is
+ * estimated as the upper bound of the bucket that contains it.
+ */
+public final class LatencyHistogram implements LatencyHistogramMBean {
+   static final long[] BUCKET_BOUNDS = { 1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000, 20000, 50000,
+         100000 };
+
+   private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_BOUNDS.length + 1);
+   private final AtomicLong count = new AtomicLong();
+   private final AtomicLong totalMillis = new AtomicLong();
+   private final AtomicLong maxMillis = new AtomicLong();
+
+   public void record(long millis) {
+      buckets.incrementAndGet(bucketOf(millis));
+      count.incrementAndGet();
+      totalMillis.addAndGet(millis);
+      long max = maxMillis.get();
+      while (millis > max && !maxMillis.compareAndSet(max, millis)) {
+         max = maxMillis.get();
+      }
+   }
+
+   public long getCount() {
+      return count.get();
+   }
+
+   public long getTotalMillis() {
+      return totalMillis.get();
+   }
+
+   public long getMeanMillis() {
+      final long n = count.get();
+      return n > 0 ? totalMillis.get() / n : 0;
+   }
+
+   public long getMaxMillis() {
+      return maxMillis.get();
+   }
+
+   public long getP50Millis() {
+      return getPercentile(0.50);
+   }
+
+   public long getP95Millis() {
+      return getPercentile(0.95);
+   }
+
+   public long getP99Millis() {
+      return getPercentile(0.99);
+   }
+
+   /**
+    * Returns the estimated duration that the given fraction of all recorded durations does not exceed.
+    *
+    * @param fraction the fraction between 0 and 1, e.g. 0.95 for the 95th percentile.
+    * @return the estimated percentile in milliseconds or 0 if nothing has been recorded.
+    */
+   public long getPercentile(double fraction) {
+      long total = 0;
+      for (int i = 0; i < buckets.length(); i++) {
+         total += buckets.get(i);
+      }
+      final long rank = (long) Math.ceil(fraction * total);
+      long seen = 0;
+      for (int i = 0; i < buckets.length(); i++) {
+         seen += buckets.get(i);
+         if (seen >= rank && seen > 0) {
+            final long max = maxMillis.get();
+            return i < BUCKET_BOUNDS.length ? Math.min(BUCKET_BOUNDS[i], max) : max;
+         }
+      }
+      return 0;
+   }
+
+   public void reset() {
+      for (int i = 0; i < buckets.length(); i++) {
+         buckets.set(i, 0);
+      }
+      count.set(0);
+      totalMillis.set(0);
+      maxMillis.set(0);
+   }
+
+   private static int bucketOf(long millis) {
+      for (int i = 0; i < BUCKET_BOUNDS.length; i++) {
+         if (millis <= BUCKET_BOUNDS[i]) {
+            return i;
+         }
+      }
+      return BUCKET_BOUNDS.length;
+   }
+
+   @Override
+   public String toString() {
+      return "LatencyHistogram [count=" + getCount() + ", mean=" + getMeanMillis() + ", p95=" + getP95Millis()
+            + ", max=" + getMaxMillis() + "]";
+   }
+}
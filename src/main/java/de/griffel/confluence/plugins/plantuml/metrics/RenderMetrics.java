@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2011 Michael Griffel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * This distribution includes other third-party libraries.
+ * These libraries and their corresponding licenses (where different
+ * from the GNU General Public License) are enumerated below.
+ *
+ * PlantUML is a Open-Source tool in Java to draw UML Diagram.
+ * The software is developed by Arnaud Roques at
+ * http://plantuml.sourceforge.org.
+ */
+package de.griffel.confluence.plugins.plantuml.metrics;
+
+import java.util.Map;
+
+import net.sourceforge.plantuml.core.DiagramType;
+
+/**
+ * Collects the timings, cache hits and render load of the diagrams rendered on this node.
+ */
+public interface RenderMetrics {
+
+   /**
+    * Records the duration of a phase of a diagram.
+    *
+    * @param phase the phase.
+    * @param millis the duration in milliseconds.
+    */
+   void recordPhase(RenderPhase phase, long millis);
+
+   /**
+    * Records the duration of a render, i.e. parsing and exporting all images of a diagram.
+    *
+    * @param diagramType the type of the rendered diagram.
+    * @param millis the duration in milliseconds.
+    */
+   void recordRender(DiagramType diagramType, long millis);
+
+   /**
+    * Records a diagram lookup that has been served from the diagram cache.
+    */
+   void recordCacheHit();
+
+   /**
+    * Records a diagram lookup that required rendering the diagram.
+    */
+   void recordCacheMiss();
+
+   LatencyHistogram getPhase(RenderPhase phase);
+
+   /**
+    * Returns the render durations by diagram type.
+    *
+    * @return the render durations by diagram type, ordered by type.
+    */
+   Map<DiagramType, LatencyHistogram> getRenders();
+
+   long getCacheHits();
+
+   long getCacheMisses();
+
+   /**
+    * Returns the percentage of diagram lookups served from the diagram cache.
+    *
+    * @return the percentage of diagram lookups served from the diagram cache.
+    */
+   double getCacheHitRatio();
+
+   /**
+    * Returns the number of renders that are running at the moment.
+    *
+    * @return the number of renders that are running at the moment.
+    */
+   int getActiveRenders();
+
+   /**
+    * Returns the number of renders that are waiting for a render thread.
+    *
+    * @return the number of renders that are waiting for a render thread.
+    */
+   int getQueuedRenders();
+
+   /**
+    * Returns the slowest diagrams of this node.
+    *
+    * @return the slowest diagrams of this node.
+    */
+   SlowDiagramReport getSlowDiagramReport();
+
+   /**
+    * Resets all timings, counters and the slow diagram report.
+    */
+   void reset();
+}
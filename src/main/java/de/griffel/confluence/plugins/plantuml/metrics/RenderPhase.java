@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2011 Michael Griffel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * This distribution includes other third-party libraries.
+ * These libraries and their corresponding licenses (where different
+ * from the GNU General Public License) are enumerated below.
+ *
+ * PlantUML is a Open-Source tool in Java to draw UML Diagram.
+ * The software is developed by Arnaud Roques at
+ * http://plantuml.sourceforge.org.
+ */
+package de.griffel.confluence.plugins.plantuml.metrics;
+
+/**
+ * The timed phases of a diagram.
+ */
+public enum RenderPhase {
+   /**
+    * Execution of the macro on the request thread, including the cache lookup and the wait for the render.
+    */
+   MACRO,
+   /**
+    * Building the UML block from the macro body, including includes and URL replacement.
+    */
+   PREPROCESS,
+   /**
+    * Parsing the UML block into a PlantUML diagram.
+    */
+   PARSE,
+   /**
+    * Layout and export of a single image. PlantUML lays out a diagram while exporting it, so both are timed together.
+    */
+   EXPORT,
+   /**
+    * Saving an exported image as attachment of the page.
+    */
+   ATTACHMENT;
+
+   public String getKey() {
+      return name().toLowerCase();
+   }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2011 Michael Griffel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * This distribution includes other third-party libraries.
+ * These libraries and their corresponding licenses (where different
+ * from the GNU General Public License) are enumerated below.
+ *
+ * PlantUML is a Open-Source tool in Java to draw UML Diagram.
+ * The software is developed by Arnaud Roques at
+ * http://plantuml.sourceforge.org.
+ */
+package de.griffel.confluence.plugins.plantuml.metrics;
+
+import net.sourceforge.plantuml.core.DiagramType;
+
+/**
+ * Row of the {@link SlowDiagramReport}.
+ */
+public final class SlowDiagram {
+   private final long pageId;
+   private final String spaceKey;
+   private final String pageTitle;
+   private final DiagramType diagramType;
+   private final String sourceHash;
+   private final int lines;
+   private final long executions;
+   private final long lastMillis;
+   private final long p95Millis;
+
+   SlowDiagram(long pageId, String spaceKey, String pageTitle, DiagramType diagramType, String sourceHash, int lines,
+         long executions, long lastMillis, long p95Millis) {
+      this.pageId = pageId;
+      this.spaceKey = spaceKey;
+      this.pageTitle = pageTitle;
+      this.diagramType = diagramType;
+      this.sourceHash = sourceHash;
+      this.lines = lines;
+      this.executions = executions;
+      this.lastMillis = lastMillis;
+      this.p95Millis = p95Millis;
+   }
+
+   public long getPageId() {
+      return pageId;
+   }
+
+   public String getSpaceKey() {
+      return spaceKey;
+   }
+
+   public String getPageTitle() {
+      return pageTitle;
+   }
+
+   public DiagramType getDiagramType() {
+      return diagramType;
+   }
+
+   /**
+    * Returns the content hash of the diagram, i.e. its key in the diagram cache.
+    *
+    * @return the content hash of the diagram.
+    */
+   public String getSourceHash() {
+      return sourceHash;
+   }
+
+   /**
+    * Returns the number of lines of the preprocessed diagram source.
+    *
+    * @return the number of lines of the preprocessed diagram source.
+    */
+   public int getLines() {
+      return lines;
+   }
+
+   public long getExecutions() {
+      return executions;
+   }
+
+   public long getLastMillis() {
+      return lastMillis;
+   }
+
+   public long getP95Millis() {
+      return p95Millis;
+   }
+
+   @Override
+   public String toString() {
+      return "SlowDiagram [pageId=" + pageId + ", spaceKey=" + spaceKey + ", diagramType=" + diagramType
+            + ", sourceHash=" + sourceHash + ", lines=" + lines + ", lastMillis=" + lastMillis + ", p95Millis="
+            + p95Millis + "]";
+   }
+}
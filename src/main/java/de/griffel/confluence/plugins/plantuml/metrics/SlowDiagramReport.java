@@ -0,0 +1,224 @@
+/*
+ * Copyright (C) 2011 Michael Griffel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * This distribution includes other third-party libraries.
+ * These libraries and their corresponding licenses (where different
+ * from the GNU General Public License) are enumerated below.
+ *
+ * PlantUML is a Open-Source tool in Java to draw UML Diagram.
+ * The software is developed by Arnaud Roques at
+ * http://plantuml.sourceforge.org.
+ */
+package de.griffel.confluence.plugins.plantuml.metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import net.sourceforge.plantuml.core.DiagramType;
+
+import org.apache.commons.lang.StringEscapeUtils;
+
+/**
+ * Bounded table of the slowest diagrams of this node, ranked by the 95th percentile of their recent macro execution
+ * times. A diagram is identified by its page and its content hash, so an edited diagram starts a new row. If the
+ * table is full, a diagram is only admitted if it is slower than the fastest diagram of the table, which is dropped.
+ */
+public final class SlowDiagramReport {
+   static final int DEFAULT_CAPACITY = 100;
+
+   /**
+    * Number of recent execution times the percentile of a diagram is computed from.
+    */
+   static final int SAMPLES = 20;
+
+   private static final Comparator<SlowDiagram> SLOWEST_FIRST = new Comparator<SlowDiagram>() {
+      public int compare(SlowDiagram d1, SlowDiagram d2) {
+         final long p1 = d1.getP95Millis();
+         final long p2 = d2.getP95Millis();
+         return p1 > p2 ? -1 : p1 < p2 ? 1 : 0;
+      }
+   };
+
+   private final int capacity;
+   private final Map<String, Row> rows = new HashMap<String, Row>(); // guarded by this
+   /**
+    * Lower bound of the percentiles of all rows. Executions that are not slower are rejected without looking at the
+    * rows.
+    */
+   private long admissionMillis = Long.MAX_VALUE; // guarded by this
+
+   public SlowDiagramReport() {
+      this(DEFAULT_CAPACITY);
+   }
+
+   SlowDiagramReport(int capacity) {
+      this.capacity = capacity;
+   }
+
+   /**
+    * Records the execution time of a diagram.
+    *
+    * @param pageId the id of the page or 0 if the diagram is not rendered on a page.
+    * @param spaceKey the key of the space of the page.
+    * @param pageTitle the title of the page.
+    * @param diagramType the type of the diagram.
+    * @param sourceHash the content hash of the diagram.
+    * @param lines the number of lines of the preprocessed diagram source.
+    * @param millis the execution time in milliseconds.
+    */
+   public synchronized void record(long pageId, String spaceKey, String pageTitle, DiagramType diagramType,
+         String sourceHash, int lines, long millis) {
+      final String key = pageId + ":" + sourceHash;
+      Row row = rows.get(key);
+      if (row == null) {
+         if (rows.size() >= capacity) {
+            if (millis <= admissionMillis || !evictFasterThan(millis)) {
+               return;
+            }
+         }
+         row = new Row(pageId, spaceKey, pageTitle, diagramType, sourceHash, lines);
+         rows.put(key, row);
+      }
+      row.add(millis);
+      admissionMillis = Math.min(admissionMillis, row.getP95Millis());
+   }
+
+   /**
+    * Returns the rows of the report, the slowest diagram first.
+    *
+    * @return the rows of the report, the slowest diagram first.
+    */
+   public List<SlowDiagram> getSlowestDiagrams() {
+      final List<SlowDiagram> result;
+      synchronized (this) {
+         result = new ArrayList<SlowDiagram>(rows.size());
+         for (Row row : rows.values()) {
+            result.add(row.toSlowDiagram());
+         }
+      }
+      Collections.sort(result, SLOWEST_FIRST);
+      return result;
+   }
+
+   public synchronized void clear() {
+      rows.clear();
+      admissionMillis = Long.MAX_VALUE;
+   }
+
+   /**
+    * Writes the report as comma separated values with a header line.
+    *
+    * @param writer the writer.
+    * @throws IOException if the report cannot be written.
+    */
+   public void writeCsv(Writer writer) throws IOException {
+      writer.write("Page Id,Space Key,Page Title,Diagram Type,Source Hash,Lines,Executions,Last ms,P95 ms\n");
+      for (SlowDiagram diagram : getSlowestDiagrams()) {
+         writer.write(String.valueOf(diagram.getPageId()));
+         writer.write(',');
+         writer.write(StringEscapeUtils.escapeCsv(diagram.getSpaceKey()));
+         writer.write(',');
+         writer.write(StringEscapeUtils.escapeCsv(diagram.getPageTitle()));
+         writer.write(',');
+         writer.write(diagram.getDiagramType().name().toLowerCase());
+         writer.write(',');
+         writer.write(diagram.getSourceHash());
+         writer.write(',');
+         writer.write(diagram.getLines() + "," + diagram.getExecutions() + "," + diagram.getLastMillis() + ","
+               + diagram.getP95Millis() + "\n");
+      }
+   }
+
+   /**
+    * Drops the fastest row if it is faster than the given execution time.
+    */
+   private boolean evictFasterThan(long millis) {
+      Map.Entry<String, Row> fastest = null;
+      long secondFastest = Long.MAX_VALUE;
+      for (Iterator<Map.Entry<String, Row>> it = rows.entrySet().iterator(); it.hasNext();) {
+         final Map.Entry<String, Row> entry = it.next();
+         final long p95 = entry.getValue().getP95Millis();
+         if (fastest == null || p95 < fastest.getValue().getP95Millis()) {
+            if (fastest != null) {
+               secondFastest = fastest.getValue().getP95Millis();
+            }
+            fastest = entry;
+         } else if (p95 < secondFastest) {
+            secondFastest = p95;
+         }
+      }
+      final long fastestMillis = fastest.getValue().getP95Millis();
+      if (millis <= fastestMillis) {
+         admissionMillis = fastestMillis;
+         return false;
+      }
+      rows.remove(fastest.getKey());
+      admissionMillis = secondFastest;
+      return true;
+   }
+
+   /**
+    * Mutable row with the recent execution times of a diagram.
+    */
+   private static final class Row {
+      private final long pageId;
+      private final String spaceKey;
+      private final String pageTitle;
+      private final DiagramType diagramType;
+      private final String sourceHash;
+      private final int lines;
+      private final long[] samples = new long[SAMPLES];
+      private long executions;
+      private long lastMillis;
+      private long p95Millis;
+
+      Row(long pageId, String spaceKey, String pageTitle, DiagramType diagramType, String sourceHash, int lines) {
+         this.pageId = pageId;
+         this.spaceKey = spaceKey;
+         this.pageTitle = pageTitle;
+         this.diagramType = diagramType;
+         this.sourceHash = sourceHash;
+         this.lines = lines;
+      }
+
+      void add(long millis) {
+         samples[(int) (executions % SAMPLES)] = millis;
+         executions++;
+         lastMillis = millis;
+         final int n = (int) Math.min(executions, SAMPLES);
+         final long[] sorted = Arrays.copyOf(samples, n);
+         Arrays.sort(sorted);
+         p95Millis = sorted[(int) Math.ceil(0.95 * n) - 1];
+      }
+
+      long getP95Millis() {
+         return p95Millis;
+      }
+
+      SlowDiagram toSlowDiagram() {
+         return new SlowDiagram(pageId, spaceKey, pageTitle, diagramType, sourceHash, lines, executions, lastMillis,
+               p95Millis);
+      }
+   }
+}
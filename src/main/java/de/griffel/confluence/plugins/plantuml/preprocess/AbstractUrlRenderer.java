@@ -42,7 +42,7 @@ public abstract class AbstractUrlRenderer implements UrlRenderer {
     */
    public String getDefaultAlias(PreprocessingContext context, ConfluenceLink link) {
       final StringBuilder sb = new StringBuilder();
-      final Space space = context.getSpaceManager().getSpace(link.getSpaceKey());
+      final Space space = context.getLinkResolver().getSpace(link.getSpaceKey());
       sb.append(space.getName());
       sb.append(" - ");
       sb.append(link.getPageTitle());
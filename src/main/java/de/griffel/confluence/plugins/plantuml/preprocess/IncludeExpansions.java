@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2011 Michael Griffel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * This distribution includes other third-party libraries.
+ * These libraries and their corresponding licenses (where different
+ * from the GNU General Public License) are enumerated below.
+ *
+ * PlantUML is a Open-Source tool in Java to draw UML Diagram.
+ * The software is developed by Arnaud Roques at
+ * http://plantuml.sourceforge.org.
+ */
+package de.griffel.confluence.plugins.plantuml.preprocess;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * Keeps track of the includes that are expanded while a diagram is preprocessed: remembers the expanded blocks, so
+ * that a file included several times is only expanded once, and the chain of includes currently being expanded, to
+ * detect cycles. An expanded block is remembered as the range of the buffer it was preprocessed into, so no copy of it
+ * is kept.
+ */
+final class IncludeExpansions {
+   /**
+    * Maximum nesting depth of includes.
+    */
+   static final int MAX_DEPTH = 32;
+
+   private final Map<String, Block> blocks = new HashMap<String, Block>();
+   private final Set<String> stack = new LinkedHashSet<String>();
+
+   /**
+    * Appends the expanded block of the given include to the buffer.
+    * 
+    * @param name the name of the include.
+    * @param sb the buffer.
+    * @return <tt>true</tt> if the block was appended; <tt>false</tt> if the include is not expanded yet.
+    */
+   boolean appendTo(String name, StringBuilder sb) {
+      final Block block = blocks.get(name);
+      if (block == null) {
+         return false;
+      }
+      sb.append(block.buffer, block.start, block.end);
+      return true;
+   }
+
+   /**
+    * Marks the start of the expansion of the given include.
+    * 
+    * @param line the line with the include directive.
+    * @param name the name of the include.
+    * @throws PreprocessingException if the include is already being expanded or the includes are nested too deep.
+    */
+   void enter(String line, String name) throws PreprocessingException {
+      if (stack.contains(name)) {
+         throw new PreprocessingException(line, "Cyclic include: " + StringUtils.join(stack, " -> ") + " -> " + name);
+      }
+      if (stack.size() >= MAX_DEPTH) {
+         throw new PreprocessingException(line, "Includes are nested deeper than " + MAX_DEPTH + " levels: "
+               + StringUtils.join(stack, " -> "));
+      }
+      stack.add(name);
+   }
+
+   /**
+    * Marks the end of the expansion of the given include, whose block was appended to the buffer from the given
+    * start to its end.
+    * 
+    * @param name the name of the include.
+    * @param sb the buffer.
+    * @param start the start of the block in the buffer.
+    */
+   void leave(String name, StringBuilder sb, int start) {
+      stack.remove(name);
+      blocks.put(name, new Block(sb, start, sb.length()));
+   }
+
+   /**
+    * Marks the end of an include that could not be expanded. The part of the block already appended to the buffer
+    * is removed, together with the blocks of nested includes it contains.
+    * 
+    * @param name the name of the include.
+    * @param sb the buffer.
+    * @param start the start of the block in the buffer.
+    */
+   void abort(String name, StringBuilder sb, int start) {
+      stack.remove(name);
+      for (Iterator<Block> it = blocks.values().iterator(); it.hasNext();) {
+         final Block block = it.next();
+         if (block.buffer == sb && block.end > start) {
+            it.remove();
+         }
+      }
+      sb.setLength(start);
+   }
+
+   private static final class Block {
+      private final StringBuilder buffer;
+      private final int start;
+      private final int end;
+
+      Block(StringBuilder buffer, int start, int end) {
+         this.buffer = buffer;
+         this.start = start;
+         this.end = end;
+      }
+   }
+}
@@ -40,38 +40,103 @@ public final class IncludeFunction implements LineFunction {
     */
    private static final Pattern INCLUDE_PATTERN = Pattern.compile("^\\s*!include\\s+\"?([^\"]+)\"?$");
 
+   private static final String INCLUDE_DIRECTIVE = "!include";
+
    private final UmlSourceLocator umlSourceLocator;
 
+   private final IncludeExpansions expansions;
+
    /**
     * Constructs a new instance using the given umlSourceLocator
     * 
     * @param umlSourceLocator
     */
    public IncludeFunction(UmlSourceLocator umlSourceLocator) {
+      this(umlSourceLocator, new IncludeExpansions());
+   }
+
+   IncludeFunction(UmlSourceLocator umlSourceLocator, IncludeExpansions expansions) {
       this.umlSourceLocator = umlSourceLocator;
+      this.expansions = expansions;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public boolean isApplicable(String line) {
+      final int length = line.length();
+      int start = 0;
+      while (start < length && Character.isWhitespace(line.charAt(start))) {
+         start++;
+      }
+      return line.startsWith(INCLUDE_DIRECTIVE, start);
    }
 
    /**
     * {@inheritDoc}
     */
    public String apply(PreprocessingContext context, String from) throws IOException, PreprocessingException {
+      if (!INCLUDE_PATTERN.matcher(from).find()) {
+         return from;
+      }
       final StringBuilder sb = new StringBuilder();
-      final Matcher matcher = INCLUDE_PATTERN.matcher(from);
-      if (matcher.find()) {
-         final String fileName = matcher.group(1);
-         final UmlSource includeSource = umlSourceLocator.get(fileName);
-         final PlantUmlPreprocessor subPreprocessor =
-               new PlantUmlPreprocessor(includeSource, umlSourceLocator, context);
-
-         sb.append(subPreprocessor.toUmlBlock());
+      appendTo(context, from, sb);
+      // the caller terminates the included block like any other line
+      return sb.substring(0, sb.length() - 1);
+   }
 
-         if (subPreprocessor.hasExceptions()) {
-            subPreprocessor.handleExceptions();
+   /**
+    * Appends the given line to the buffer, followed by a line separator. An include directive is replaced by the
+    * preprocessed lines of the included source, which are appended straight to the buffer. If the include fails,
+    * nothing is appended.
+    * 
+    * @param context the preprocessing context
+    * @param line the current input line.
+    * @param sb the buffer.
+    * @throws IOException in case of any I/O error.
+    * @throws PreprocessingException in case of a problem during pre-processing.
+    */
+   void appendTo(PreprocessingContext context, String line, StringBuilder sb) throws IOException,
+         PreprocessingException {
+      final Matcher matcher = INCLUDE_PATTERN.matcher(line);
+      if (!matcher.find()) {
+         sb.append(line).append('\n');
+         return;
+      }
+      final String fileName = matcher.group(1);
+      if (expansions.appendTo(fileName, sb)) {
+         return;
+      }
+      expansions.enter(line, fileName);
+      final int start = sb.length();
+      boolean expanded = false;
+      try {
+         expand(context, fileName, sb);
+         expanded = true;
+      } finally {
+         if (expanded) {
+            expansions.leave(fileName, sb, start);
+         } else {
+            expansions.abort(fileName, sb, start);
          }
-      } else {
-         sb.append(from);
-         sb.append("\n");
       }
-      return sb.toString();
+   }
+
+   private void expand(PreprocessingContext context, String fileName, StringBuilder sb) throws IOException,
+         PreprocessingException {
+      final UmlSource includeSource = umlSourceLocator.get(fileName);
+      final PlantUmlPreprocessor subPreprocessor =
+            new PlantUmlPreprocessor(includeSource, umlSourceLocator, context, expansions);
+
+      final int start = sb.length();
+      subPreprocessor.appendTo(sb);
+      if (sb.length() == start) {
+         // an empty include leaves an empty line like any other line
+         sb.append('\n');
+      }
+
+      if (subPreprocessor.hasExceptions()) {
+         subPreprocessor.handleExceptions();
+      }
    }
 }
@@ -31,12 +31,23 @@ import java.io.IOException;
  */
 public interface LineFunction {
 
+   /**
+    * Returns {@code true} if this function may transform the given line. This check must be cheap, e.g. a test of
+    * the leading token of the line, since it is done for every line; {@link #apply(PreprocessingContext, String)} is
+    * only called for lines that pass it.
+    * 
+    * @param line the current input line.
+    * @return {@code true} if this function may transform the given line; {@code false} otherwise.
+    */
+   boolean isApplicable(String line);
+
    /**
     * Transforms the given line.
     * 
     * @param ctx the preprocessing context
     * @param line the current input line.
-    * @return the transformed line.
+    * @return the transformed line without a trailing line separator or the given line itself if the function
+    *         doesn't change it.
     * @throws IOException in case of any I/O error.
     * @throws PreprocessingException in case of a problem during pre-processing.
     * 
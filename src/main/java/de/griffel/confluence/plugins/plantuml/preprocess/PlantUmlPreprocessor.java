@@ -28,6 +28,7 @@ import java.io.IOException;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
 
 import net.sourceforge.plantuml.core.UmlSource;
 
@@ -41,31 +42,65 @@ public final class PlantUmlPreprocessor {
    private final UmlSource umlSource;
    private final UmlSourceLocator umlSourceLocator;
    private final PreprocessingContext context;
+   private final IncludeExpansions includeExpansions;
    private final List<PreprocessingException> errors = Lists.newArrayList();
 
    public PlantUmlPreprocessor(UmlSource umlSource, UmlSourceLocator includeFileHandler, PreprocessingContext context)
          throws IOException {
+      this(umlSource, includeFileHandler, context, new IncludeExpansions());
+   }
+
+   PlantUmlPreprocessor(UmlSource umlSource, UmlSourceLocator includeFileHandler, PreprocessingContext context,
+         IncludeExpansions includeExpansions) {
       this.umlSource = umlSource;
       umlSourceLocator = includeFileHandler;
       this.context = context;
+      this.includeExpansions = includeExpansions;
    }
 
    public String toUmlBlock() throws IOException {
       final StringBuilder sb = new StringBuilder();
+      appendTo(sb);
+      return sb.toString();
+   }
+
+   /**
+    * Appends the preprocessed UML source to the given buffer, one line after the other. Lines that are not
+    * transformed are appended as they are, so no memory is allocated for them. Included sources are preprocessed
+    * straight into the buffer.
+    *
+    * @param sb the buffer.
+    * @throws IOException in case of any I/O error.
+    */
+   void appendTo(StringBuilder sb) throws IOException {
+      final IncludeFunction includeFunction = new IncludeFunction(umlSourceLocator, includeExpansions);
       final StringFunctions functions = StringFunctions.builder()
-            .add(new IncludeFunction(umlSourceLocator))
             .add(new UrlReplaceFunction())
             .build();
 
       for (IteratorCounter2 iterator = umlSource.iterator2(); iterator.hasNext();) {
+         // the line is backed by a string, which is returned as it is
          final String line = iterator.next().toString2();
          try {
-            sb.append(functions.apply(context, line));
+            if (includeFunction.isApplicable(line)) {
+               includeFunction.appendTo(context, line, sb);
+            } else {
+               sb.append(functions.apply(context, line)).append('\n');
+            }
          } catch (PreprocessingException e) {
             errors.add(e);
          }
       }
-      return sb.toString();
+   }
+
+   /**
+    * Returns the ids of the pages and attachments included by the UML source, directly or through nested includes.
+    * Only complete after {@link #toUmlBlock()}.
+    *
+    * @return the ids of the included pages and attachments.
+    */
+   public Set<Long> getDependencies() {
+      return umlSourceLocator.getDependencies();
    }
 
    /**
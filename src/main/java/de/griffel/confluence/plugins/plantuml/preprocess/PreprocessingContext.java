@@ -31,6 +31,8 @@ import com.atlassian.confluence.renderer.PageContext;
 import com.atlassian.confluence.renderer.ShortcutLinkConfig;
 import com.atlassian.confluence.spaces.SpaceManager;
 
+import de.griffel.confluence.plugins.plantuml.type.ConfluenceLinkResolver;
+
 /**
  * Preprocessing Context.
  */
@@ -77,4 +79,11 @@ public interface PreprocessingContext {
     * @return the page anchor builder.
     */
    PageAnchorBuilder getPageAnchorBuilder();
+
+   /**
+    * Returns the link resolver that is shared by all preprocessing steps of the current diagram.
+    * 
+    * @return the link resolver.
+    */
+   ConfluenceLinkResolver getLinkResolver();
 }
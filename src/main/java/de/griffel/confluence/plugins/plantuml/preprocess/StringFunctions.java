@@ -19,11 +19,22 @@ public final class StringFunctions implements LineFunction {
    public String apply(PreprocessingContext context, String line) throws IOException, PreprocessingException {
       String result = line;
       for (LineFunction function : functions) {
-         result = function.apply(context, result);
+         if (function.isApplicable(result)) {
+            result = function.apply(context, result);
+         }
       }
       return result;
    }
 
+   public boolean isApplicable(String line) {
+      for (LineFunction function : functions) {
+         if (function.isApplicable(line)) {
+            return true;
+         }
+      }
+      return false;
+   }
+
    @Override
    public String toString() {
       return "StringFunctions [ffunctions=" + functions + "]";
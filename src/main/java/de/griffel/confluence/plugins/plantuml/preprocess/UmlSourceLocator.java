@@ -27,6 +27,7 @@ package de.griffel.confluence.plugins.plantuml.preprocess;
 import java.io.IOException;
 
 import net.sourceforge.plantuml.core.UmlSource;
+import java.util.Set;
 
 /**
  * Interface to locate a UML source.
@@ -41,4 +42,12 @@ public interface UmlSourceLocator {
     * @throws IOException in case of an I/O error.
     */
    UmlSource get(String name) throws IOException;
+
+   /**
+    * Returns the ids of the pages and attachments that have been resolved by this locator so far, including those of
+    * nested includes.
+    *
+    * @return the ids of the resolved pages and attachments.
+    */
+   Set<Long> getDependencies();
 }
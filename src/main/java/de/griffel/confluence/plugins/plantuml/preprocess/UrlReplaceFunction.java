@@ -59,6 +59,12 @@ public class UrlReplaceFunction implements LineFunction {
 
    private static final Pattern URL_LINE_PATTERN = Pattern.compile(URL_LINE_REGEX);
 
+   private static final String URL_KEYWORD = "url";
+
+   public final boolean isApplicable(String line) {
+      return line.startsWith(URL_KEYWORD);
+   }
+
    public final String apply(PreprocessingContext context, final String line) throws PreprocessingException {
       final String result;
       final Matcher matcher = URL_LINE_PATTERN.matcher(line);
@@ -98,11 +104,9 @@ public class UrlReplaceFunction implements LineFunction {
 
    private static String renderUrl(PreprocessingContext context, final String line, final String url, final String alias)
          throws PreprocessingException {
-      final ConfluenceLink.Parser parser =
-            new ConfluenceLink.Parser(context.getPageContext(), context.getSpaceManager(), context.getPageManager());
       final ConfluenceLink link;
       try {
-         link = parser.parse(url);
+         link = context.getLinkResolver().parse(url);
       } catch (NoSuchPageException e) {
          throw new PreprocessingException(line, e.getMessage(), e);
       } catch (NoSuchSpaceException e) {
@@ -0,0 +1,442 @@
+/*
+ * Copyright (C) 2011 Michael Griffel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * This distribution includes other third-party libraries.
+ * These libraries and their corresponding licenses (where different
+ * from the GNU General Public License) are enumerated below.
+ *
+ * PlantUML is a Open-Source tool in Java to draw UML Diagram.
+ * The software is developed by Arnaud Roques at
+ * http://plantuml.sourceforge.org.
+ */
+package de.griffel.confluence.plugins.plantuml.render;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.DisposableBean;
+
+import com.atlassian.confluence.user.AuthenticatedUserThreadLocal;
+
+import de.griffel.confluence.plugins.plantuml.cache.DiagramCache;
+import de.griffel.confluence.plugins.plantuml.cache.RenderedDiagram;
+import de.griffel.confluence.plugins.plantuml.config.PlantUmlConfiguration;
+import de.griffel.confluence.plugins.plantuml.config.PlantUmlConfigurationManager;
+
+/**
+ * {@link RenderExecutor} backed by a bounded thread pool. The pool size, the queue length, the number of renders per
+ * user and the timeouts are read from the {@link PlantUmlConfiguration}. The pool is replaced if the pool size or the
+ * queue length is changed.
+ * <p>
+ * Renders that exceed the render timeout are cancelled by interrupting the render thread, which also terminates a
+ * running Graphviz process. The keys of cancelled diagrams are remembered, so that the same diagram fails fast until
+ * the render timeout is increased.
+ * <p>
+ * Renders of a thread with a {@link RenderBudget} count towards the limit of renders per user of the budget instead
+ * of the limit of the current user.
+ * <p>
+ * The pages of a diagram are exported by a second pool of the same size. If all of its threads are busy, the render
+ * thread exports the page itself, so that a render never waits for another render.
+ */
+public final class DefaultRenderExecutor implements RenderExecutor, DisposableBean {
+   private static final Logger logger = Logger.getLogger(DefaultRenderExecutor.class);
+
+   private static final long KEEP_ALIVE_SECONDS = 60;
+
+   private static final int MAX_TIMED_OUT_DIAGRAMS = 1000;
+
+   // not a valid user name, so that a budget never shares the renders of a user
+   private static final String BUDGET_PREFIX = "\0budget:";
+
+   private static final RejectedExecutionHandler RUN_IN_CALLER = new RejectedExecutionHandler() {
+      public void rejectedExecution(Runnable task, ThreadPoolExecutor executor) {
+         // unlike CallerRunsPolicy, the task also runs if the pool has been replaced in the meantime
+         task.run();
+      }
+   };
+
+   private final PlantUmlConfigurationManager configurationManager;
+   private final DiagramCache diagramCache;
+   private final ConcurrentMap<String, RenderTask> inProgress = new ConcurrentHashMap<String, RenderTask>();
+   private final ConcurrentMap<String, AtomicInteger> rendersPerUser = new ConcurrentHashMap<String, AtomicInteger>();
+   private final Map<String, Integer> timedOut = new LinkedHashMap<String, Integer>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+         return size() > MAX_TIMED_OUT_DIAGRAMS;
+      }
+   }; // guarded by itself
+   private final ThreadFactory threadFactory = new RenderThreadFactory("plantuml-render-");
+   private final ThreadFactory pageThreadFactory = new RenderThreadFactory("plantuml-render-page-");
+   private ThreadPoolExecutor executor; // guarded by this
+   private ThreadPoolExecutor pageExecutor; // guarded by this
+   private ScheduledExecutorService watchdog; // guarded by this
+   private int poolSize;
+   private int queueLength;
+
+   public DefaultRenderExecutor(PlantUmlConfigurationManager configurationManager, DiagramCache diagramCache) {
+      this.configurationManager = configurationManager;
+      this.diagramCache = diagramCache;
+   }
+
+   public RenderedDiagram render(String key, Callable<RenderedDiagram> task)
+         throws RenderRejectedException, RenderTimeoutException, IOException {
+      final PlantUmlConfiguration configuration = configurationManager.load();
+      final int renderTimeout = configuration.getRenderTimeout();
+      checkTimedOut(key, renderTimeout);
+
+      Future<RenderedDiagram> future = inProgress.get(key);
+      if (future == null) {
+         future = execute(key, task, configuration, true);
+      } else {
+         logger.debug("Diagram " + key + " is already being rendered");
+      }
+      return await(future, configuration.getRenderWaitTimeout(), renderTimeout);
+   }
+
+   public void submit(String key, Callable<RenderedDiagram> task)
+         throws RenderRejectedException, RenderTimeoutException {
+      final PlantUmlConfiguration configuration = configurationManager.load();
+      checkTimedOut(key, configuration.getRenderTimeout());
+
+      if (!inProgress.containsKey(key)) {
+         execute(key, task, configuration, true);
+      }
+   }
+
+   public void prerender(String key, Callable<RenderedDiagram> task)
+         throws RenderRejectedException, RenderTimeoutException {
+      final PlantUmlConfiguration configuration = configurationManager.load();
+      checkTimedOut(key, configuration.getRenderTimeout());
+
+      if (!inProgress.containsKey(key)) {
+         execute(key, task, configuration, false);
+      }
+   }
+
+   public boolean isInProgress(String key) {
+      return inProgress.containsKey(key);
+   }
+
+   public <T> List<T> invokeAll(List<Callable<T>> tasks) throws IOException {
+      final ThreadPoolExecutor pages = getPageExecutor(configurationManager.load());
+      final List<Future<T>> futures = new ArrayList<Future<T>>(tasks.size());
+      try {
+         for (Callable<T> task : tasks) {
+            final FutureTask<T> future = new FutureTask<T>(task);
+            futures.add(future);
+            pages.execute(future);
+         }
+         final List<T> results = new ArrayList<T>(tasks.size());
+         for (Future<T> future : futures) {
+            results.add(future.get());
+         }
+         return results;
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+         throw new InterruptedIOException("Rendering cancelled");
+      } catch (ExecutionException e) {
+         throw toIOException(e.getCause());
+      } finally {
+         // a failed or cancelled render stops its remaining tasks
+         for (Future<T> future : futures) {
+            future.cancel(true);
+         }
+      }
+   }
+
+   public synchronized int getActiveRenders() {
+      return executor != null ? executor.getActiveCount() : 0;
+   }
+
+   public synchronized int getQueuedRenders() {
+      return executor != null ? executor.getQueue().size() : 0;
+   }
+
+   public synchronized void destroy() {
+      if (executor != null) {
+         executor.shutdownNow();
+         executor = null;
+      }
+      if (pageExecutor != null) {
+         pageExecutor.shutdownNow();
+         pageExecutor = null;
+      }
+      if (watchdog != null) {
+         watchdog.shutdownNow();
+         watchdog = null;
+      }
+   }
+
+   private void checkTimedOut(String key, int renderTimeout) throws RenderTimeoutException {
+      final Integer exceededTimeout;
+      synchronized (timedOut) {
+         exceededTimeout = timedOut.get(key);
+      }
+      if (exceededTimeout != null && (renderTimeout <= 0 || renderTimeout > exceededTimeout)) {
+         // the timeout has been increased or disabled since: try again
+         synchronized (timedOut) {
+            timedOut.remove(key);
+         }
+      } else if (exceededTimeout != null) {
+         throw new RenderTimeoutException("Diagram " + key + " exceeded the render timeout before", exceededTimeout);
+      }
+   }
+
+   /**
+    * Queues the render.
+    *
+    * @param countUser true if the render counts towards the render limit of the current user, or of the
+    *           {@link RenderBudget} of the current thread if it has one.
+    */
+   private Future<RenderedDiagram> execute(String key, Callable<RenderedDiagram> task,
+         PlantUmlConfiguration configuration, boolean countUser) throws RenderRejectedException {
+      AtomicInteger userRenders = null;
+      if (countUser) {
+         final String budget = RenderBudget.get();
+         final String user = StringUtils.defaultString(AuthenticatedUserThreadLocal.getUsername());
+         userRenders = getRendersOf(budget != null ? BUDGET_PREFIX + budget : user);
+         if (userRenders.incrementAndGet() > configuration.getMaxRendersPerUser()) {
+            userRenders.decrementAndGet();
+            throw new RenderRejectedException(budget != null
+                  ? "Too many diagrams of budget '" + budget + "' are being rendered"
+                  : "Too many diagrams of user '" + user + "' are being rendered", false);
+         }
+      }
+
+      final RenderTask future = new RenderTask(key, task, userRenders, configuration.getRenderTimeout());
+      final Future<RenderedDiagram> running = inProgress.putIfAbsent(key, future);
+      if (running != null) {
+         future.release();
+         return running;
+      }
+      try {
+         getExecutor(configuration).execute(future);
+      } catch (RejectedExecutionException e) {
+         future.release();
+         throw new RenderRejectedException("The render queue is full", false);
+      }
+      return future;
+   }
+
+   private static RenderedDiagram await(Future<RenderedDiagram> future, int waitTimeout, int renderTimeout)
+         throws RenderRejectedException, RenderTimeoutException, IOException {
+      try {
+         return future.get(waitTimeout, TimeUnit.SECONDS);
+      } catch (TimeoutException e) {
+         throw new RenderRejectedException("The diagram has not been rendered within " + waitTimeout + " seconds",
+               true);
+      } catch (CancellationException e) {
+         throw new RenderTimeoutException("The diagram has been cancelled", renderTimeout);
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+         throw new RenderRejectedException("Interrupted while waiting for the diagram", true);
+      } catch (ExecutionException e) {
+         throw toIOException(e.getCause());
+      }
+   }
+
+   private static IOException toIOException(Throwable cause) {
+      if (cause instanceof IOException) {
+         return (IOException) cause;
+      } else if (cause instanceof RuntimeException) {
+         throw (RuntimeException) cause;
+      } else if (cause instanceof Error) {
+         throw (Error) cause;
+      }
+      return new IOException(cause);
+   }
+
+   private AtomicInteger getRendersOf(String user) {
+      final AtomicInteger renders = rendersPerUser.get(user);
+      if (renders != null) {
+         return renders;
+      }
+      final AtomicInteger newRenders = new AtomicInteger();
+      final AtomicInteger existingRenders = rendersPerUser.putIfAbsent(user, newRenders);
+      return existingRenders != null ? existingRenders : newRenders;
+   }
+
+   private synchronized ThreadPoolExecutor getExecutor(PlantUmlConfiguration configuration) {
+      final int newPoolSize = Math.max(1, configuration.getMaxConcurrentRenders());
+      final int newQueueLength = Math.max(0, configuration.getRenderQueueLength());
+      if (executor == null || newPoolSize != poolSize || newQueueLength != queueLength) {
+         if (executor != null) {
+            // already queued renders are completed by the old pool
+            executor.shutdown();
+            pageExecutor.shutdown();
+         }
+         final BlockingQueue<Runnable> queue = newQueueLength > 0
+               ? new ArrayBlockingQueue<Runnable>(newQueueLength)
+               : new SynchronousQueue<Runnable>();
+         executor = new ThreadPoolExecutor(newPoolSize, newPoolSize, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, queue,
+               threadFactory);
+         executor.allowCoreThreadTimeOut(true);
+         // page exports which find no idle page thread run in the render thread itself
+         pageExecutor = new ThreadPoolExecutor(newPoolSize, newPoolSize, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+               new SynchronousQueue<Runnable>(), pageThreadFactory, RUN_IN_CALLER);
+         pageExecutor.allowCoreThreadTimeOut(true);
+         poolSize = newPoolSize;
+         queueLength = newQueueLength;
+         logger.info("Using " + poolSize + " render threads and a render queue of length " + queueLength);
+      }
+      return executor;
+   }
+
+   private synchronized ThreadPoolExecutor getPageExecutor(PlantUmlConfiguration configuration) {
+      getExecutor(configuration);
+      return pageExecutor;
+   }
+
+   private synchronized ScheduledExecutorService getWatchdog() {
+      if (watchdog == null) {
+         watchdog = new ScheduledThreadPoolExecutor(1, new RenderThreadFactory("plantuml-render-watchdog-"));
+      }
+      return watchdog;
+   }
+
+   @Override
+   public synchronized String toString() {
+      return "DefaultRenderExecutor [poolSize=" + poolSize + ", queueLength=" + queueLength + ", inProgress="
+            + inProgress.size() + "]";
+   }
+
+   /**
+    * Renders a diagram, stores it in the diagram cache and cancels itself if the render timeout is exceeded. The
+    * timeout starts when the task leaves the queue.
+    * <p>
+    * The render slot of the user is released before the result is published. A waiter that is woken up by the result
+    * may start its next render right away without hitting the limit of renders per user.
+    */
+   private final class RenderTask extends FutureTask<RenderedDiagram> {
+      private final String key;
+      private final AtomicInteger userRenders;
+      private final int renderTimeout;
+      private final AtomicBoolean released = new AtomicBoolean();
+
+      RenderTask(String key, Callable<RenderedDiagram> task, AtomicInteger userRenders, int renderTimeout) {
+         super(task);
+         this.key = key;
+         this.userRenders = userRenders;
+         this.renderTimeout = renderTimeout;
+      }
+
+      @Override
+      public void run() {
+         final ScheduledFuture<?> timeout = renderTimeout > 0 ? getWatchdog().schedule(new Runnable() {
+            public void run() {
+               cancelRender();
+            }
+         }, renderTimeout, TimeUnit.SECONDS) : null;
+         try {
+            super.run();
+         } finally {
+            if (timeout != null) {
+               timeout.cancel(false);
+            }
+            release();
+         }
+      }
+
+      @Override
+      protected void set(RenderedDiagram diagram) {
+         // a render cancelled before the task returned may produce a diagram broken by the interrupt
+         if (!isCancelled()) {
+            diagramCache.put(key, diagram);
+         }
+         release();
+         super.set(diagram);
+      }
+
+      @Override
+      protected void setException(Throwable t) {
+         release();
+         super.setException(t);
+      }
+
+      /**
+       * Removes the render from the renders in progress and frees the render slot of the user, if it counts towards
+       * the limit of the user.
+       */
+      void release() {
+         if (released.compareAndSet(false, true)) {
+            inProgress.remove(key, this);
+            if (userRenders != null) {
+               userRenders.decrementAndGet();
+            }
+         }
+      }
+
+      private void cancelRender() {
+         // updated before cancelling, so that woken up waiters see the timed out diagram only
+         synchronized (timedOut) {
+            timedOut.put(key, renderTimeout);
+         }
+         release();
+         if (cancel(true)) {
+            logger.warn("Rendering of diagram " + key + " cancelled after " + renderTimeout + " seconds");
+         } else {
+            synchronized (timedOut) {
+               timedOut.remove(key);
+            }
+         }
+      }
+   }
+
+   private static final class RenderThreadFactory implements ThreadFactory {
+      private final String prefix;
+      private final AtomicInteger count = new AtomicInteger();
+
+      RenderThreadFactory(String prefix) {
+         this.prefix = prefix;
+      }
+
+      public Thread newThread(Runnable runnable) {
+         final Thread thread = new Thread(runnable, prefix + count.incrementAndGet());
+         thread.setDaemon(true);
+         thread.setContextClassLoader(DefaultRenderExecutor.class.getClassLoader());
+         return thread;
+      }
+   }
+}
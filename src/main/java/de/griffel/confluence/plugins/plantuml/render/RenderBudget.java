@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2011 Michael Griffel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * This distribution includes other third-party libraries.
+ * These libraries and their corresponding licenses (where different
+ * from the GNU General Public License) are enumerated below.
+ *
+ * PlantUML is a Open-Source tool in Java to draw UML Diagram.
+ * The software is developed by Arnaud Roques at
+ * http://plantuml.sourceforge.org.
+ */
+package de.griffel.confluence.plugins.plantuml.render;
+
+/**
+ * Lets background jobs of the plugin render diagrams on a budget of their own. Renders started by a thread with a
+ * budget count towards the limit of renders per user of this budget instead of the limit of the current user, e.g.
+ * of the anonymous user.
+ */
+public final class RenderBudget {
+   private static final ThreadLocal<String> CURRENT = new ThreadLocal<String>();
+
+   private RenderBudget() {
+   }
+
+   /**
+    * Sets the budget of the current thread.
+    *
+    * @param name the name of the budget.
+    */
+   public static void set(String name) {
+      CURRENT.set(name);
+   }
+
+   /**
+    * Removes the budget of the current thread, so that its renders count towards the limit of the current user again.
+    */
+   public static void reset() {
+      CURRENT.remove();
+   }
+
+   /**
+    * Returns the budget of the current thread.
+    *
+    * @return the name of the budget or <tt>null</tt> if the current thread has no budget.
+    */
+   public static String get() {
+      return CURRENT.get();
+   }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2011 Michael Griffel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * This distribution includes other third-party libraries.
+ * These libraries and their corresponding licenses (where different
+ * from the GNU General Public License) are enumerated below.
+ *
+ * PlantUML is a Open-Source tool in Java to draw UML Diagram.
+ * The software is developed by Arnaud Roques at
+ * http://plantuml.sourceforge.org.
+ */
+package de.griffel.confluence.plugins.plantuml.render;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import de.griffel.confluence.plugins.plantuml.cache.RenderedDiagram;
+
+/**
+ * Limits the number of diagrams that are rendered concurrently, so that diagram rendering cannot occupy all request
+ * threads of the node.
+ */
+public interface RenderExecutor {
+
+   /**
+    * Renders a diagram, stores it in the diagram cache and waits for the result. If the same diagram is already being
+    * rendered, the running render is awaited instead of rendering the diagram a second time. A render which outlasts
+    * the wait timeout continues in the background.
+    *
+    * @param key the content hash of the diagram.
+    * @param task the render task.
+    * @return the rendered diagram.
+    * @throws RenderRejectedException if the diagram has not been rendered in time or the render has been rejected.
+    * @throws RenderTimeoutException if the render has been cancelled because it exceeded the render timeout.
+    * @throws IOException if the render task failed.
+    */
+   RenderedDiagram render(String key, Callable<RenderedDiagram> task)
+         throws RenderRejectedException, RenderTimeoutException, IOException;
+
+   /**
+    * Starts rendering a diagram in the background unless it is already being rendered. The rendered diagram is stored
+    * in the diagram cache.
+    *
+    * @param key the content hash of the diagram.
+    * @param task the render task.
+    * @throws RenderRejectedException if the render has been rejected.
+    * @throws RenderTimeoutException if the diagram exceeded the render timeout before.
+    */
+   void submit(String key, Callable<RenderedDiagram> task) throws RenderRejectedException, RenderTimeoutException;
+
+   /**
+    * Starts rendering a diagram in the background like {@link #submit(String, Callable)}, but the render does not
+    * count towards the render limit of the current user. Used for diagrams the user has not requested yet, e.g. the
+    * other diagrams of a page. These renders are still limited by the render queue.
+    *
+    * @param key the content hash of the diagram.
+    * @param task the render task.
+    * @throws RenderRejectedException if the render queue is full.
+    * @throws RenderTimeoutException if the diagram exceeded the render timeout before.
+    */
+   void prerender(String key, Callable<RenderedDiagram> task) throws RenderRejectedException, RenderTimeoutException;
+
+   /**
+    * Returns true if the diagram is being rendered or waiting to be rendered.
+    *
+    * @param key the content hash of the diagram.
+    * @return true if the diagram is being rendered or waiting to be rendered.
+    */
+   boolean isInProgress(String key);
+
+   /**
+    * Runs the tasks of a single render in parallel, e.g. the export of the pages of a diagram, and waits for all of
+    * them. A task runs in the calling thread if no other thread is available, so this method may be called from
+    * within a render task.
+    *
+    * @param tasks the tasks.
+    * @return the results of the tasks in the order of the tasks.
+    * @throws IOException if a task failed or the calling thread has been interrupted.
+    */
+   <T> List<T> invokeAll(List<Callable<T>> tasks) throws IOException;
+
+   /**
+    * Returns the number of renders that are running at the moment.
+    *
+    * @return the number of renders that are running at the moment.
+    */
+   int getActiveRenders();
+
+   /**
+    * Returns the number of renders that are waiting for a render thread.
+    *
+    * @return the number of renders that are waiting for a render thread.
+    */
+   int getQueuedRenders();
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2011 Michael Griffel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * This distribution includes other third-party libraries.
+ * These libraries and their corresponding licenses (where different
+ * from the GNU General Public License) are enumerated below.
+ *
+ * PlantUML is a Open-Source tool in Java to draw UML Diagram.
+ * The software is developed by Arnaud Roques at
+ * http://plantuml.sourceforge.org.
+ */
+package de.griffel.confluence.plugins.plantuml.render;
+
+/**
+ * Thrown if a diagram cannot be rendered right now.
+ */
+public class RenderRejectedException extends Exception {
+   private static final long serialVersionUID = 1L;
+
+   private final boolean inProgress;
+
+   /**
+    * Constructs a new exception.
+    *
+    * @param message the detail message.
+    * @param inProgress <tt>true</tt> if the diagram is still being rendered in the background.
+    */
+   public RenderRejectedException(String message, boolean inProgress) {
+      super(message);
+      this.inProgress = inProgress;
+   }
+
+   /**
+    * Returns <tt>true</tt> if the diagram is still being rendered in the background.
+    *
+    * @return <tt>true</tt> if the diagram is still being rendered; <tt>false</tt> if the render has been rejected.
+    */
+   public boolean isInProgress() {
+      return inProgress;
+   }
+}
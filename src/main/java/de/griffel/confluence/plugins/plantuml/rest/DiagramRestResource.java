@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2011 Michael Griffel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * This distribution includes other third-party libraries.
+ * These libraries and their corresponding licenses (where different
+ * from the GNU General Public License) are enumerated below.
+ *
+ * PlantUML is a Open-Source tool in Java to draw UML Diagram.
+ * The software is developed by Arnaud Roques at
+ * http://plantuml.sourceforge.org.
+ */
+package de.griffel.confluence.plugins.plantuml.rest;
+
+import java.io.UnsupportedEncodingException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.CacheControl;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.UriInfo;
+
+import net.sourceforge.plantuml.FileFormat;
+
+import com.atlassian.confluence.pages.PageManager;
+import com.atlassian.confluence.security.PermissionManager;
+import com.atlassian.confluence.setup.settings.SettingsManager;
+import com.atlassian.plugins.rest.common.security.AnonymousAllowed;
+
+import de.griffel.confluence.plugins.plantuml.DiagramHtmlBuilder;
+import de.griffel.confluence.plugins.plantuml.PlantUmlMacroParams;
+import de.griffel.confluence.plugins.plantuml.cache.DiagramCache;
+import de.griffel.confluence.plugins.plantuml.cache.DiagramStore;
+import de.griffel.confluence.plugins.plantuml.cache.DiagramViewPermission;
+import de.griffel.confluence.plugins.plantuml.cache.RenderedDiagram;
+import de.griffel.confluence.plugins.plantuml.cache.RenderedImage;
+import de.griffel.confluence.plugins.plantuml.render.RenderExecutor;
+
+/**
+ * Delivers diagrams rendered in the background to the placeholders of the page. The diagram is identified by its
+ * content hash and delivered to users who are allowed to view the page showing it.
+ */
+@Path("/diagram")
+public class DiagramRestResource {
+   private static final Pattern WIDTH = Pattern.compile("\\d+(px|%)?");
+   private static final Pattern NUMBER = Pattern.compile("\\d+");
+
+   private final DiagramCache diagramCache;
+
+   private final RenderExecutor renderExecutor;
+
+   private final SettingsManager settingsManager;
+
+   private final DiagramViewPermission viewPermission;
+
+   public DiagramRestResource(DiagramCache diagramCache, RenderExecutor renderExecutor,
+         SettingsManager settingsManager, DiagramStore diagramStore, PageManager pageManager,
+         PermissionManager permissionManager) {
+      this.diagramCache = diagramCache;
+      this.renderExecutor = renderExecutor;
+      this.settingsManager = settingsManager;
+      this.viewPermission = new DiagramViewPermission(diagramStore, pageManager, permissionManager);
+   }
+
+   @GET
+   @AnonymousAllowed
+   @Produces({MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML})
+   @Path("/{key}")
+   public Response getDiagram(@PathParam("key") String key, @QueryParam("contentId") long contentId,
+         @Context UriInfo uriInfo) throws UnsupportedEncodingException {
+      if (!key.matches("[0-9a-f]{40}") || !viewPermission.isPermitted(key, contentId)) {
+         return Response.status(Response.Status.NOT_FOUND).build();
+      }
+
+      final CacheControl noCache = new CacheControl();
+      noCache.setNoCache(true);
+
+      final RenderedDiagram diagram = diagramCache.get(key);
+      if (diagram == null) {
+         final String status =
+               renderExecutor.isInProgress(key) ? DiagramRestResourceModel.PENDING : DiagramRestResourceModel.FAILED;
+         return Response.ok(new DiagramRestResourceModel(status, null)).cacheControl(noCache).build();
+      }
+
+      final PlantUmlMacroParams macroParams = new PlantUmlMacroParams(getDisplayParams(uriInfo));
+      final DiagramHtmlBuilder html = new DiagramHtmlBuilder(macroParams);
+      final FileFormat fileFormat = diagram.getFileFormat();
+      for (RenderedImage image : diagram.getImages()) {
+         String downloadPath = null; // SVG images are inlined
+         if (FileFormat.SVG != fileFormat) {
+            downloadPath = diagramCache.getDownloadPath(key, contentId, diagram, image);
+            if (downloadPath == null) {
+               // the disk cache has been disabled in the meantime
+               return Response.ok(new DiagramRestResourceModel(DiagramRestResourceModel.FAILED, null))
+                     .cacheControl(noCache).build();
+            }
+            downloadPath = settingsManager.getGlobalSettings().getBaseUrl() + downloadPath;
+         }
+         html.appendImageMap(image);
+         html.appendImage(image, fileFormat, downloadPath);
+      }
+      return Response.ok(new DiagramRestResourceModel(DiagramRestResourceModel.DONE, html.toString()))
+            .cacheControl(noCache).build();
+   }
+
+   private static Map<String, String> getDisplayParams(UriInfo uriInfo) {
+      return getDisplayParams(uriInfo.getQueryParameters());
+   }
+
+   /**
+    * Returns the display parameters of the query. Only display parameters are accepted, the diagram itself is defined
+    * by the key. The values end up in the HTML of the diagram, so values which are not plain sizes are dropped.
+    *
+    * @param query the query parameters.
+    * @return the valid display parameters.
+    */
+   static Map<String, String> getDisplayParams(MultivaluedMap<String, String> query) {
+      final Map<String, String> params = new HashMap<String, String>();
+      for (String name : query.keySet()) {
+         params.put(name, query.getFirst(name));
+      }
+      final Map<String, String> result = new PlantUmlMacroParams(params).getDisplayParams();
+      for (Iterator<Map.Entry<String, String>> it = result.entrySet().iterator(); it.hasNext();) {
+         final Map.Entry<String, String> param = it.next();
+         if (!isValid(param.getKey(), param.getValue())) {
+            it.remove();
+         }
+      }
+      return result;
+   }
+
+   private static boolean isValid(String name, String value) {
+      if (PlantUmlMacroParams.Param.width.name().equals(name)) {
+         return WIDTH.matcher(value).matches();
+      } else if (PlantUmlMacroParams.Param.align.name().equals(name)) {
+         // unknown alignments fall back to the default
+         return true;
+      }
+      return NUMBER.matcher(value).matches();
+   }
+}
@@ -31,11 +31,8 @@ import java.util.Calendar;
 
 import org.apache.commons.lang.StringUtils;
 
-import com.atlassian.confluence.pages.BlogPost;
-import com.atlassian.confluence.pages.Page;
 import com.atlassian.confluence.pages.PageManager;
 import com.atlassian.confluence.renderer.PageContext;
-import com.atlassian.confluence.spaces.Space;
 import com.atlassian.confluence.spaces.SpaceManager;
 import com.google.common.base.Objects;
 import com.google.common.base.Preconditions;
@@ -252,8 +249,7 @@ public final class ConfluenceLink implements Serializable {
        */
       public static final String FRAGMENT_SEPARATOR = "#";
       private final PageContext pageContext;
-      private final SpaceManager spaceManager;
-      private final PageManager pageManager;
+      private final ConfluenceLinkResolver resolver;
 
       /**
        * Constructs a new Parser. This parser validates if the link references a valid page and a valid space using the
@@ -262,11 +258,15 @@ public final class ConfluenceLink implements Serializable {
        * @param context the page context.
        * @param spaceManager the space manager.
        * @param pageManager the page manger.
+       * @see ConfluenceLinkResolver
        */
       public Parser(PageContext context, SpaceManager spaceManager, PageManager pageManager) {
+         this(context, new ConfluenceLinkResolver(context, spaceManager, pageManager));
+      }
+
+      Parser(PageContext context, ConfluenceLinkResolver resolver) {
          pageContext = context;
-         this.spaceManager = spaceManager;
-         this.pageManager = pageManager;
+         this.resolver = resolver;
       }
 
       /**
@@ -275,7 +275,7 @@ public final class ConfluenceLink implements Serializable {
        * @param context the page context.
        */
       public Parser(PageContext context) {
-         this(context, null, null);
+         this(context, null);
       }
 
       /**
@@ -338,30 +338,8 @@ public final class ConfluenceLink implements Serializable {
          }
 
          final ConfluenceLink result = new ConfluenceLink(spaceKey, pageTitle, attachmentName, fragment);
-         if (!result.isShortCutLink()) {
-            if (spaceManager != null) {
-
-               final Space space = spaceManager.getSpace(spaceKey);
-               if (space == null) {
-                  throw new NoSuchSpaceException(link, spaceKey);
-               }
-            }
-
-            if (pageManager != null) {
-
-               if (result.isBlogPost()) {
-                  final BlogPost blogPost =
-                        pageManager.getBlogPost(spaceKey, result.getBlogPostTitle(), result.getBlogPostDay());
-                  if (blogPost == null) {
-                     throw new NoSuchBlogPostException(link, spaceKey, result.getPageTitle());
-                  }
-               } else {
-                  final Page page = pageManager.getPage(spaceKey, pageTitle);
-                  if (page == null) {
-                     throw new NoSuchPageException(link, spaceKey, pageTitle);
-                  }
-               }
-            }
+         if (resolver != null) {
+            resolver.validate(link, result);
          }
          return result;
       }
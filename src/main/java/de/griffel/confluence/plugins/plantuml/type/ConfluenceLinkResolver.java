@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2011 Michael Griffel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * This distribution includes other third-party libraries.
+ * These libraries and their corresponding licenses (where different
+ * from the GNU General Public License) are enumerated below.
+ *
+ * PlantUML is a Open-Source tool in Java to draw UML Diagram.
+ * The software is developed by Arnaud Roques at
+ * http://plantuml.sourceforge.org.
+ */
+package de.griffel.confluence.plugins.plantuml.type;
+
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.atlassian.confluence.pages.BlogPost;
+import com.atlassian.confluence.pages.Page;
+import com.atlassian.confluence.pages.PageManager;
+import com.atlassian.confluence.renderer.PageContext;
+import com.atlassian.confluence.spaces.Space;
+import com.atlassian.confluence.spaces.SpaceManager;
+
+/**
+ * Parses and validates Confluence links and remembers the results, so that each distinct link, space and page is
+ * looked up only once. The resolved {@link Space} and {@link Page} objects are shared by all users of the resolver.
+ * <p>
+ * A resolver is meant to be used for the rendering of a single diagram and is not thread-safe.
+ */
+public final class ConfluenceLinkResolver {
+   private final PageContext pageContext;
+   private final SpaceManager spaceManager;
+   private final PageManager pageManager;
+
+   private final Map<String, ConfluenceLink> links = new HashMap<String, ConfluenceLink>();
+   private final Map<String, RuntimeException> invalidLinks = new HashMap<String, RuntimeException>();
+   private final Map<String, Space> spaces = new HashMap<String, Space>();
+   private final Map<String, Page> pages = new HashMap<String, Page>();
+   private final Map<String, BlogPost> blogPosts = new HashMap<String, BlogPost>();
+
+   /**
+    * Constructs a new resolver. The space or page of a link is not validated if the respective manager is
+    * <tt>null</tt>.
+    * 
+    * @param context the page context.
+    * @param spaceManager the space manager.
+    * @param pageManager the page manger.
+    */
+   public ConfluenceLinkResolver(PageContext context, SpaceManager spaceManager, PageManager pageManager) {
+      pageContext = context;
+      this.spaceManager = spaceManager;
+      this.pageManager = pageManager;
+   }
+
+   /**
+    * Parses and validates the string representation of a Confluence link.
+    * 
+    * @param link the Confluence link as string. see {@link ConfluenceLink.Parser} for more information about the link
+    *           syntax.
+    * @return a instance of {@link ConfluenceLink} that build of the given string representation.
+    * @throws ConfluenceLink.NoSuchSpaceException if the space of the link does not exist.
+    * @throws ConfluenceLink.NoSuchPageException if the page of the link does not exist.
+    * @throws ConfluenceLink.NoSuchBlogPostException if the blog post of the link does not exist.
+    */
+   public ConfluenceLink parse(String link) {
+      final RuntimeException invalid = invalidLinks.get(link);
+      if (invalid != null) {
+         throw invalid;
+      }
+      ConfluenceLink result = links.get(link);
+      if (result == null) {
+         try {
+            result = new ConfluenceLink.Parser(pageContext, this).parse(link);
+         } catch (RuntimeException e) {
+            invalidLinks.put(link, e);
+            throw e;
+         }
+         links.put(link, result);
+      }
+      return result;
+   }
+
+   /**
+    * Returns the space with the given key.
+    * 
+    * @param spaceKey the space key.
+    * @return the space or <tt>null</tt> if no such space exists.
+    */
+   public Space getSpace(String spaceKey) {
+      if (!spaces.containsKey(spaceKey)) {
+         spaces.put(spaceKey, spaceManager.getSpace(spaceKey));
+      }
+      return spaces.get(spaceKey);
+   }
+
+   /**
+    * Returns the page with the given title.
+    * 
+    * @param spaceKey the space key.
+    * @param pageTitle the page title.
+    * @return the page or <tt>null</tt> if no such page exists.
+    */
+   public Page getPage(String spaceKey, String pageTitle) {
+      final String key = spaceKey + ":" + pageTitle;
+      if (!pages.containsKey(key)) {
+         pages.put(key, pageManager.getPage(spaceKey, pageTitle));
+      }
+      return pages.get(key);
+   }
+
+   private BlogPost getBlogPost(String spaceKey, String blogPostTitle, Calendar day) {
+      final String key = spaceKey + ":" + day.getTimeInMillis() + "/" + blogPostTitle;
+      if (!blogPosts.containsKey(key)) {
+         blogPosts.put(key, pageManager.getBlogPost(spaceKey, blogPostTitle, day));
+      }
+      return blogPosts.get(key);
+   }
+
+   void validate(String link, ConfluenceLink result) {
+      if (result.isShortCutLink()) {
+         return;
+      }
+      if (spaceManager != null) {
+         if (getSpace(result.getSpaceKey()) == null) {
+            throw new ConfluenceLink.NoSuchSpaceException(link, result.getSpaceKey());
+         }
+      }
+
+      if (pageManager != null) {
+         if (result.isBlogPost()) {
+            if (getBlogPost(result.getSpaceKey(), result.getBlogPostTitle(), result.getBlogPostDay()) == null) {
+               throw new ConfluenceLink.NoSuchBlogPostException(link, result.getSpaceKey(), result.getPageTitle());
+            }
+         } else {
+            if (getPage(result.getSpaceKey(), result.getPageTitle()) == null) {
+               throw new ConfluenceLink.NoSuchPageException(link, result.getSpaceKey(), result.getPageTitle());
+            }
+         }
+      }
+   }
+}
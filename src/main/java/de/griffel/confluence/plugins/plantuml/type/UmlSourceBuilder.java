@@ -82,7 +82,7 @@ public final class UmlSourceBuilder {
                appendLine("skinparam svek off");
             }
             if (configuration.isSetCommonHeader()) {
-               append(configuration.getCommonHeader());
+               append(configuration.getCommonHeaderLines());
             }
          } else if (DiagramType.SALT == diagramType) {
             appendLine("{");
@@ -130,7 +130,7 @@ public final class UmlSourceBuilder {
       if (diagramType != null) {
          if (DiagramType.UML == diagramType) {
             if (configuration.isSetCommonFooter()) {
-               append(configuration.getCommonFooter());
+               append(configuration.getCommonFooterLines());
             }
          } else if (DiagramType.SALT == diagramType) {
             appendLine("}");
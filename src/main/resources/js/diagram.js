@@ -0,0 +1,40 @@
+/*
+ * Replaces the placeholders of diagrams that are rendered in the background
+ * by the rendered diagrams as soon as they are available.
+ */
+AJS.toInit(function ($) {
+    var POLL_INTERVAL = 1000;
+    var MAX_POLL_INTERVAL = 10000;
+    var MAX_POLLS = 100;
+
+    function fail(placeholder) {
+        placeholder.removeClass("plantuml-async").text(placeholder.attr("data-plantuml-failed"));
+    }
+
+    function poll(placeholder, count) {
+        var params = placeholder.attr("data-plantuml-params");
+        $.ajax({
+            url: AJS.contextPath() + "/rest/plantuml/1.0/diagram/" + placeholder.attr("data-plantuml-key")
+                    + (params ? "?" + params : ""),
+            dataType: "json",
+            cache: false
+        }).done(function (diagram) {
+            if (diagram.status === "done") {
+                placeholder.replaceWith(diagram.html);
+            } else if (diagram.status === "pending" && count < MAX_POLLS) {
+                // back off slowly, so that long running renders do not cause too many requests
+                setTimeout(function () {
+                    poll(placeholder, count + 1);
+                }, Math.min(POLL_INTERVAL * (1 + Math.floor(count / 5)), MAX_POLL_INTERVAL));
+            } else {
+                fail(placeholder);
+            }
+        }).fail(function () {
+            fail(placeholder);
+        });
+    }
+
+    $(".plantuml-async").each(function () {
+        poll($(this), 0);
+    });
+});
@@ -0,0 +1,283 @@
+/*
+ * Copyright (C) 2011 Michael Griffel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * This distribution includes other third-party libraries.
+ * These libraries and their corresponding licenses (where different
+ * from the GNU General Public License) are enumerated below.
+ *
+ * PlantUML is a Open-Source tool in Java to draw UML Diagram.
+ * The software is developed by Arnaud Roques at
+ * http://plantuml.sourceforge.org.
+ */
+package de.griffel.confluence.plugins.plantuml;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyList;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.atlassian.confluence.core.ContentEntityObject;
+import com.atlassian.confluence.core.ContentPropertyManager;
+import com.atlassian.confluence.links.LinkManager;
+import com.atlassian.confluence.links.OutgoingLink;
+import com.atlassian.confluence.pages.Page;
+import com.atlassian.confluence.pages.PageManager;
+import com.atlassian.confluence.security.Permission;
+import com.atlassian.confluence.security.PermissionManager;
+import com.atlassian.confluence.spaces.Space;
+import com.atlassian.confluence.spaces.SpaceManager;
+import com.atlassian.renderer.RenderContext;
+import com.atlassian.user.User;
+
+import de.griffel.confluence.plugins.plantuml.graph.LinkIndex;
+import de.griffel.confluence.plugins.plantuml.graph.PageHierarchyIndex;
+import de.griffel.confluence.plugins.plantuml.preprocess.PageContextMock;
+import de.griffel.confluence.plugins.plantuml.render.RenderBudget;
+
+/**
+ * Testing the page traversal of {@link AbstractLinkAndSpaceGraphMacroImpl}.
+ */
+public class AbstractLinkAndSpaceGraphMacroImplTest {
+   private static final String SPACE_KEY = "PUML";
+
+   private final Mocks mocks = new Mocks();
+   private final SpaceManager spaceManager = mock(SpaceManager.class);
+   private final PageManager pageManager = mock(PageManager.class);
+   private final PermissionManager permissionManager = mock(PermissionManager.class);
+   private final ContentPropertyManager contentPropertyManager = mock(ContentPropertyManager.class);
+   private final PageHierarchyIndex pageHierarchyIndex = mock(PageHierarchyIndex.class);
+   private final LinkManager linkManager = mock(LinkManager.class);
+   private final LinkIndex linkIndex = mock(LinkIndex.class);
+   private final Set<Long> deniedPageIds = new HashSet<Long>();
+   private final List<List<Long>> checkedPageIds = new ArrayList<List<Long>>();
+   private final AbstractLinkAndSpaceGraphMacroImpl macro = new AbstractLinkAndSpaceGraphMacroImpl() {
+      @Override
+      protected String executePlantUmlMacro(Map<String, String> params, String dotString, RenderContext context) {
+         throw new UnsupportedOperationException();
+      }
+   };
+
+   @Before
+   @SuppressWarnings("unchecked")
+   public void setUp() {
+      when(permissionManager.hasPermission(any(User.class), eq(Permission.VIEW), any())).thenReturn(true);
+      when(permissionManager.getPermittedEntities(any(User.class), eq(Permission.VIEW), anyList())).thenAnswer(
+            new Answer<List<Object>>() {
+               public List<Object> answer(InvocationOnMock invocation) {
+                  final List<Long> pageIds = new ArrayList<Long>();
+                  final List<Object> permitted = new ArrayList<Object>();
+                  for (Object entity : (List<Object>) invocation.getArguments()[2]) {
+                     final long pageId = ((ContentEntityObject) entity).getId();
+                     pageIds.add(pageId);
+                     if (!deniedPageIds.contains(pageId)) {
+                        permitted.add(entity);
+                     }
+                  }
+                  checkedPageIds.add(pageIds);
+                  return permitted;
+               }
+            });
+   }
+
+   @Test
+   public void testRendersNothingOnRenderBudget() throws Exception {
+      RenderBudget.set("cache-warm-up");
+      try {
+         Assert.assertEquals("", macro.execute(new HashMap<String, String>(), "", new PageContextMock()));
+      } finally {
+         RenderBudget.reset();
+      }
+   }
+
+   @Test
+   public void testChecksSpaceGraphPermissionsOncePerLevel() {
+      final Page a1 = mockPage(11, "A1");
+      final Page a = mockPage(1, "A", a1);
+      final Page b1 = mockPage(21, "B1");
+      final Page b = mockPage(2, "B", b1);
+      mockPage(0, "Root", a, b);
+
+      final String dot = createDotForSpaceGraph(Collections.<String, String> emptyMap());
+
+      Assert.assertEquals(Arrays.asList(Arrays.asList(1L, 2L), Arrays.asList(11L, 21L)), checkedPageIds);
+      Assert.assertTrue(dot.contains("\"Root\" -> \"A\";"));
+      Assert.assertTrue(dot.contains("\"A\" -> \"A1\";"));
+      Assert.assertTrue(dot.contains("\"B\" -> \"B1\";"));
+   }
+
+   @Test
+   public void testSkipsChildrenOfHiddenPages() {
+      final Page a1 = mockPage(11, "A1");
+      final Page a = mockPage(1, "A", a1);
+      final Page b = mockPage(2, "B");
+      mockPage(0, "Root", a, b);
+      deniedPageIds.add(1L);
+
+      final String dot = createDotForSpaceGraph(Collections.<String, String> emptyMap());
+
+      Assert.assertFalse(dot.contains("\"A\""));
+      Assert.assertFalse(dot.contains("\"A1\""));
+      Assert.assertTrue(dot.contains("\"Root\" -> \"B\";"));
+      verify(a, never()).getChildren();
+   }
+
+   @Test
+   public void testOrdersChildrenByTitle() {
+      mockPage(0, "Root", mockPage(2, "b"), mockPage(3, "C"), mockPage(1, "A"));
+
+      final String dot = createDotForSpaceGraph(Collections.<String, String> emptyMap());
+
+      Assert.assertEquals(Arrays.asList(Arrays.asList(1L, 2L, 3L)), checkedPageIds);
+      Assert.assertTrue(dot.indexOf("\"Root\" -> \"A\";") < dot.indexOf("\"Root\" -> \"b\";"));
+      Assert.assertTrue(dot.indexOf("\"Root\" -> \"b\";") < dot.indexOf("\"Root\" -> \"C\";"));
+   }
+
+   @Test
+   public void testKeepsPagesNearestToRootWithinBudget() {
+      final Page a = mockPage(1, "A", mockPage(11, "A1"), mockPage(12, "A2"));
+      final Page b = mockPage(2, "B");
+      final Page c = mockPage(3, "C");
+      mockPage(0, "Root", a, b, c);
+
+      final String dot = createDotForSpaceGraph(Collections.singletonMap(
+            LinkAndSpaceGraphMacroParams.Param.maxNodes.name(), "3"));
+
+      Assert.assertTrue(dot.contains("\"Root\" -> \"A\";"));
+      Assert.assertTrue(dot.contains("\"Root\" -> \"B\";"));
+      Assert.assertFalse(dot.contains("\"C\""));
+      Assert.assertFalse(dot.contains("\"A1\""));
+      Assert.assertFalse(dot.contains("\"A2\""));
+   }
+
+   @Test
+   public void testCountsOmittedPagesPerParent() {
+      final Page a = mockPage(1, "A", mockPage(11, "A1"), mockPage(12, "A2"));
+      final Page b = mockPage(2, "B", mockPage(21, "B1"));
+      final Page c = mockPage(3, "C");
+      mockPage(0, "Root", a, b, c);
+
+      final String dot = createDotForSpaceGraph(Collections.singletonMap(
+            LinkAndSpaceGraphMacroParams.Param.maxNodes.name(), "3"));
+
+      Assert.assertTrue(dot.contains("\"more:0\" [label=\"+ 1 more\""));
+      Assert.assertTrue(dot.contains("\"Root\" -> \"more:0\" [style=\"dashed\"];"));
+      Assert.assertTrue(dot.contains("\"more:1\" [label=\"+ 2 more\""));
+      Assert.assertTrue(dot.contains("\"A\" -> \"more:1\" [style=\"dashed\"];"));
+      Assert.assertTrue(dot.contains("\"more:2\" [label=\"+ 1 more\""));
+      Assert.assertTrue(dot.contains("\"B\" -> \"more:2\" [style=\"dashed\"];"));
+   }
+
+   @Test
+   public void testTruncatesRootPages() {
+      final Space space = mock(Space.class);
+      final List<Page> topLevelPages = Arrays.asList(mockPage(1, "A"), mockPage(2, "B"), mockPage(3, "C"));
+      when(spaceManager.getSpace(SPACE_KEY)).thenReturn(space);
+      when(pageManager.getTopLevelPages(space)).thenReturn(topLevelPages);
+
+      final Map<String, String> params = new HashMap<String, String>();
+      params.put(LinkAndSpaceGraphMacroParams.Param.space.name(), SPACE_KEY);
+      params.put(LinkAndSpaceGraphMacroParams.Param.maxNodes.name(), "2");
+      final String dot = macro.createDotForSpaceGraph(params, new PageContextMock(), spaceManager, pageManager,
+            mocks.getSettingsManager(), permissionManager, contentPropertyManager, pageHierarchyIndex);
+
+      Assert.assertTrue(dot.contains("\"A\" ["));
+      Assert.assertTrue(dot.contains("\"B\" ["));
+      Assert.assertFalse(dot.contains("\"C\""));
+      Assert.assertTrue(dot.contains("\"more:roots\" [label=\"+ 1 more\""));
+   }
+
+   @Test
+   public void testChecksLinkGraphPermissionsOncePerLevel() {
+      final Page root = mockPage(0, "Root");
+      final Page x = mockPage(1, "X");
+      final Page y = mockPage(2, "Y");
+      final Page z = mockPage(3, "Z");
+      mockLinks(root, x, y);
+      mockLinks(x, y, z);
+      deniedPageIds.add(2L);
+
+      final Map<String, String> params = new HashMap<String, String>();
+      params.put(LinkAndSpaceGraphMacroParams.Param.outgoingLinkLevels.name(), "2");
+      params.put(LinkAndSpaceGraphMacroParams.Param.incomingLinkLevels.name(), "0");
+      final String dot = createDotForLinkGraph(params);
+
+      // the denied page is not checked again on the second level
+      Assert.assertEquals(Arrays.asList(Arrays.asList(1L, 2L), Arrays.asList(3L)), checkedPageIds);
+      Assert.assertTrue(dot.contains("\"Root\" -> \"X\";"));
+      Assert.assertTrue(dot.contains("\"X\" -> \"Z\";"));
+      Assert.assertFalse(dot.contains("\"Y\""));
+   }
+
+   String createDotForSpaceGraph(Map<String, String> params) {
+      final Map<String, String> macroParams = new HashMap<String, String>(params);
+      macroParams.put(LinkAndSpaceGraphMacroParams.Param.space.name(), SPACE_KEY);
+      if (!macroParams.containsKey(LinkAndSpaceGraphMacroParams.Param.page.name())) {
+         macroParams.put(LinkAndSpaceGraphMacroParams.Param.page.name(), "Root");
+      }
+      return macro.createDotForSpaceGraph(macroParams, new PageContextMock(), spaceManager, pageManager,
+            mocks.getSettingsManager(), permissionManager, contentPropertyManager, pageHierarchyIndex);
+   }
+
+   private String createDotForLinkGraph(Map<String, String> params) {
+      final Map<String, String> macroParams = new HashMap<String, String>(params);
+      macroParams.put(LinkAndSpaceGraphMacroParams.Param.space.name(), SPACE_KEY);
+      macroParams.put(LinkAndSpaceGraphMacroParams.Param.page.name(), "Root");
+      return macro.createDotForLinkGraph(macroParams, new PageContextMock(), spaceManager, pageManager,
+            mocks.getSettingsManager(), permissionManager, contentPropertyManager, linkManager, linkIndex);
+   }
+
+   Page mockPage(long id, String title, Page... children) {
+      final Page page = mock(Page.class);
+      when(page.getId()).thenReturn(id);
+      when(page.getTitle()).thenReturn(title);
+      when(page.getDisplayTitle()).thenReturn(title);
+      when(page.getSpaceKey()).thenReturn(SPACE_KEY);
+      when(page.getUrlPath()).thenReturn("/pages/viewpage.action?pageId=" + id);
+      when(page.getChildren()).thenReturn(Arrays.asList(children));
+      when(pageManager.getPage(SPACE_KEY, title)).thenReturn(page);
+      return page;
+   }
+
+   private void mockLinks(Page page, Page... referredPages) {
+      final List<OutgoingLink> links = new ArrayList<OutgoingLink>();
+      for (Page referredPage : referredPages) {
+         final String title = referredPage.getDisplayTitle();
+         final OutgoingLink link = mock(OutgoingLink.class);
+         when(link.getDestinationSpaceKey()).thenReturn(SPACE_KEY);
+         when(link.getDestinationPageTitle()).thenReturn(title);
+         links.add(link);
+      }
+      when(page.getOutgoingLinks()).thenReturn(links);
+   }
+}
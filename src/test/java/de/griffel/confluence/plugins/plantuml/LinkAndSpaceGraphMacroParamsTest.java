@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2011 Michael Griffel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * This distribution includes other third-party libraries.
+ * These libraries and their corresponding licenses (where different
+ * from the GNU General Public License) are enumerated below.
+ *
+ * PlantUML is a Open-Source tool in Java to draw UML Diagram.
+ * The software is developed by Arnaud Roques at
+ * http://plantuml.sourceforge.org.
+ */
+package de.griffel.confluence.plugins.plantuml;
+
+import java.util.Collections;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * LinkAndSpaceGraphMacroParamsTest.
+ */
+public class LinkAndSpaceGraphMacroParamsTest {
+   private static final int DEFAULT_MAX_NODES = 500;
+
+   @Test
+   public void testMaxNodes() {
+      Assert.assertEquals(25, maxNodes("25"));
+      Assert.assertEquals(1, maxNodes("1"));
+   }
+
+   @Test
+   public void testMaxNodesDefault() {
+      Assert.assertEquals(DEFAULT_MAX_NODES, new LinkAndSpaceGraphMacroParams(
+            Collections.<String, String> emptyMap()).getMaxNodes());
+      Assert.assertEquals(DEFAULT_MAX_NODES, maxNodes("0"));
+      Assert.assertEquals(DEFAULT_MAX_NODES, maxNodes("-3"));
+      Assert.assertEquals(DEFAULT_MAX_NODES, maxNodes("many"));
+      Assert.assertEquals(DEFAULT_MAX_NODES, maxNodes(""));
+   }
+
+   private static int maxNodes(String value) {
+      final Map<String, String> params =
+            Collections.singletonMap(LinkAndSpaceGraphMacroParams.Param.maxNodes.name(), value);
+      return new LinkAndSpaceGraphMacroParams(params).getMaxNodes();
+   }
+}
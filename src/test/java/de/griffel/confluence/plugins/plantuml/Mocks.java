@@ -49,10 +49,21 @@ import com.atlassian.plugin.PluginAccessor;
 import com.atlassian.plugin.PluginInformation;
 import com.google.common.collect.ImmutableMap;
 
+import de.griffel.confluence.plugins.plantuml.cache.DefaultDiagramCache;
+import de.griffel.confluence.plugins.plantuml.cache.DefaultIncludeCache;
+import de.griffel.confluence.plugins.plantuml.cache.DependencyIndex;
+import de.griffel.confluence.plugins.plantuml.cache.DiagramCache;
+import de.griffel.confluence.plugins.plantuml.cache.DiagramStore;
+import de.griffel.confluence.plugins.plantuml.cache.IncludeCache;
 import de.griffel.confluence.plugins.plantuml.config.PlantUmlConfigurationBean;
 import de.griffel.confluence.plugins.plantuml.config.PlantUmlConfigurationManager;
+import de.griffel.confluence.plugins.plantuml.metrics.DefaultRenderMetrics;
+import de.griffel.confluence.plugins.plantuml.metrics.RenderMetrics;
 import de.griffel.confluence.plugins.plantuml.preprocess.PageContextMock;
 import de.griffel.confluence.plugins.plantuml.preprocess.PreprocessingContext;
+import de.griffel.confluence.plugins.plantuml.render.DefaultRenderExecutor;
+import de.griffel.confluence.plugins.plantuml.render.RenderExecutor;
+import de.griffel.confluence.plugins.plantuml.type.ConfluenceLinkResolver;
 
 /**
  * Holds the Mock objects for unit testing.
@@ -69,6 +80,11 @@ public final class Mocks {
    private final PreprocessingContext preprocessingContext = mock(PreprocessingContext.class);
    private final ShortcutLinksManager shortcutLinksManager = mock(ShortcutLinksManager.class);
    private final PlantUmlConfigurationManager configurationManager = mock(PlantUmlConfigurationManager.class);
+   private final DiagramCache diagramCache = new DefaultDiagramCache(mock(DiagramStore.class));
+   private final RenderExecutor renderExecutor = new DefaultRenderExecutor(configurationManager, diagramCache);
+   private final IncludeCache includeCache = new DefaultIncludeCache();
+   private final DependencyIndex dependencyIndex = mock(DependencyIndex.class);
+   private final RenderMetrics renderMetrics = new DefaultRenderMetrics(renderExecutor);
 
    public Mocks() {
       when(pluginAccessor.getPlugin(PlantUmlPluginInfo.PLUGIN_KEY)).thenReturn(plugin);
@@ -92,6 +108,8 @@ public final class Mocks {
       when(preprocessingContext.getPageContext()).thenReturn(new PageContextMock());
       when(preprocessingContext.getSpaceManager()).thenReturn(spaceManager);
       when(preprocessingContext.getShortcutLinks()).thenReturn(shortcutLinks);
+      when(preprocessingContext.getLinkResolver()).thenReturn(
+            new ConfluenceLinkResolver(new PageContextMock(), spaceManager, null));
 
       when(configurationManager.load()).thenReturn(new PlantUmlConfigurationBean());
    }
@@ -124,6 +142,26 @@ public final class Mocks {
       return configurationManager;
    }
 
+   public DiagramCache getDiagramCache() {
+      return diagramCache;
+   }
+
+   public RenderExecutor getRenderExecutor() {
+      return renderExecutor;
+   }
+
+   public IncludeCache getIncludeCache() {
+      return includeCache;
+   }
+
+   public DependencyIndex getDependencyIndex() {
+      return dependencyIndex;
+   }
+
+   public RenderMetrics getRenderMetrics() {
+      return renderMetrics;
+   }
+
    public I18NBeanFactory getI18NBeanFactory() {
       I18NBeanFactory mock = mock(I18NBeanFactory.class);
       I18NBean i18NBeanMock = mock(I18NBean.class);
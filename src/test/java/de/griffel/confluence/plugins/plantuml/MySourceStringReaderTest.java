@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2011 Michael Griffel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * This distribution includes other third-party libraries.
+ * These libraries and their corresponding licenses (where different
+ * from the GNU General Public License) are enumerated below.
+ *
+ * PlantUML is a Open-Source tool in Java to draw UML Diagram.
+ * The software is developed by Arnaud Roques at
+ * http://plantuml.sourceforge.org.
+ */
+package de.griffel.confluence.plugins.plantuml;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import net.sourceforge.plantuml.FileFormat;
+import net.sourceforge.plantuml.preproc.Defines;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.griffel.confluence.plugins.plantuml.PlantUmlMacro.MySourceStringReader;
+
+/**
+ * Testing the export of the pages of one parsed diagram by several threads at once.
+ */
+public class MySourceStringReaderTest {
+   private static final int PAGES = 8;
+
+   private ExecutorService executor;
+
+   @Before
+   public void setUp() {
+      executor = Executors.newFixedThreadPool(PAGES);
+   }
+
+   @After
+   public void tearDown() {
+      executor.shutdownNow();
+   }
+
+   @Test
+   public void testParallelExportEqualsSequentialExport() throws Exception {
+      for (FileFormat fileFormat : Arrays.asList(FileFormat.PNG, FileFormat.SVG)) {
+         final MySourceStringReader reader = createReader();
+         Assert.assertTrue(reader.isParallelExportSupported());
+         Assert.assertEquals(PAGES, reader.getNbImages());
+
+         final List<byte[]> expected = new ArrayList<byte[]>();
+         for (int i = 0; i < PAGES; i++) {
+            expected.add(export(reader, fileFormat, i));
+         }
+         for (int round = 0; round < 10; round++) {
+            final List<byte[]> actual = exportInParallel(createReader(), fileFormat);
+            for (int i = 0; i < PAGES; i++) {
+               Assert.assertArrayEquals(fileFormat + " page " + i, expected.get(i), actual.get(i));
+            }
+         }
+      }
+   }
+
+   private List<byte[]> exportInParallel(final MySourceStringReader reader, final FileFormat fileFormat)
+         throws Exception {
+      final List<Callable<byte[]>> tasks = new ArrayList<Callable<byte[]>>();
+      for (int i = 0; i < PAGES; i++) {
+         final int index = i;
+         tasks.add(new Callable<byte[]>() {
+            public byte[] call() throws IOException {
+               return export(reader, fileFormat, index);
+            }
+         });
+      }
+      final List<byte[]> result = new ArrayList<byte[]>();
+      for (Future<byte[]> page : executor.invokeAll(tasks)) {
+         result.add(page.get());
+      }
+      return result;
+   }
+
+   private static byte[] export(MySourceStringReader reader, FileFormat fileFormat, int index) throws IOException {
+      final ByteArrayOutputStream out = new ByteArrayOutputStream();
+      reader.renderImage(out, fileFormat, index);
+      return out.toByteArray();
+   }
+
+   private static MySourceStringReader createReader() {
+      final StringBuilder source = new StringBuilder("@startuml\nautonumber\nactor User\n");
+      for (int page = 0; page < PAGES; page++) {
+         if (page > 0) {
+            source.append("newpage Page ").append(page).append('\n');
+         }
+         for (int i = 0; i < 20; i++) {
+            source.append("Participant").append(i % 5).append(" -> Participant").append((i + page + 1) % 5)
+                  .append(" : message ").append(page).append('.').append(i).append('\n');
+         }
+         source.append("activate Participant").append(page % 5).append('\n');
+         source.append("note over User : page ").append(page).append('\n');
+         source.append("deactivate Participant").append(page % 5).append('\n');
+      }
+      return new MySourceStringReader(new Defines(), source.append("@enduml\n").toString(),
+            Collections.<String> emptyList());
+   }
+}
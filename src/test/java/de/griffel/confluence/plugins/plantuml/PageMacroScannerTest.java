@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2011 Michael Griffel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * This distribution includes other third-party libraries.
+ * These libraries and their corresponding licenses (where different
+ * from the GNU General Public License) are enumerated below.
+ *
+ * PlantUML is a Open-Source tool in Java to draw UML Diagram.
+ * The software is developed by Arnaud Roques at
+ * http://plantuml.sourceforge.org.
+ */
+package de.griffel.confluence.plugins.plantuml;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import de.griffel.confluence.plugins.plantuml.PageMacroScanner.MacroInstance;
+
+/**
+ * PageMacroScannerTest.
+ */
+public class PageMacroScannerTest {
+
+   @Test
+   public void testScan() {
+      final String storageFormat = "<p>Intro</p>"
+            + "<ac:structured-macro ac:name=\"plantuml\" ac:schema-version=\"1\">"
+            + "<ac:parameter ac:name=\"format\">SVG</ac:parameter>"
+            + "<ac:parameter ac:name=\"title\">A &amp; B</ac:parameter>"
+            + "<ac:plain-text-body><![CDATA[Alice -> Bob: <hello>\n  Bob --> Alice]]></ac:plain-text-body>"
+            + "</ac:structured-macro>"
+            + "<ac:structured-macro ac:name=\"expand\"><ac:rich-text-body>"
+            + "<ac:structured-macro ac:name=\"flowchart\">"
+            + "<ac:plain-text-body><![CDATA[a -> b]]></ac:plain-text-body>"
+            + "</ac:structured-macro>"
+            + "</ac:rich-text-body></ac:structured-macro>"
+            + "<ac:structured-macro ac:name=\"linkgraph\"/>";
+
+      final List<MacroInstance> macros =
+            new PageMacroScanner(Arrays.asList("plantuml", "flowchart")).scan(storageFormat);
+
+      Assert.assertEquals(2, macros.size());
+      Assert.assertEquals("plantuml", macros.get(0).getName());
+      Assert.assertEquals("SVG", macros.get(0).getParams().get("format"));
+      Assert.assertEquals("A & B", macros.get(0).getParams().get("title"));
+      Assert.assertEquals("Alice -> Bob: <hello>\n  Bob --> Alice", macros.get(0).getBody());
+      Assert.assertEquals("flowchart", macros.get(1).getName());
+      Assert.assertEquals("a -> b", macros.get(1).getBody());
+   }
+}
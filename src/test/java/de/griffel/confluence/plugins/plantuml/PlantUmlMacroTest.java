@@ -75,7 +75,10 @@ public class PlantUmlMacroTest {
             mocks.getPluginAccessor(),
             mocks.getShortcutLinksManager(),
             mocks.getConfigurationManager(),
-            mocks.getI18NBeanFactory());
+            mocks.getI18NBeanFactory(),
+            mocks.getDiagramCache(),
+            mocks.getRenderExecutor(),
+            mocks.getIncludeCache(), mocks.getDependencyIndex(), mocks.getRenderMetrics());
       final Map<String, String> macroParams = ImmutableMap.<String, String> builder()
             .put(PlantUmlMacroParams.Param.title.name(), "Sample Title")
             .put(PlantUmlMacroParams.Param.type.name(), DiagramType.UML.name().toLowerCase())
@@ -111,7 +114,10 @@ public class PlantUmlMacroTest {
             mocks.getPluginAccessor(),
             mocks.getShortcutLinksManager(),
             mocks.getConfigurationManager(),
-            mocks.getI18NBeanFactory());
+            mocks.getI18NBeanFactory(),
+            mocks.getDiagramCache(),
+            mocks.getRenderExecutor(),
+            mocks.getIncludeCache(), mocks.getDependencyIndex(), mocks.getRenderMetrics());
       final ImmutableMap<String, String> macroParams = new ImmutableMap.Builder<String, String>().put(
             PlantUmlMacroParams.Param.type.name(), DiagramType.DITAA.name().toLowerCase())
             .put(PlantUmlMacroParams.Param.align.name(), PlantUmlMacroParams.Alignment.center.name())
@@ -132,6 +138,8 @@ public class PlantUmlMacroTest {
             .getStreamForWriting();
       assertTrue(out.toByteArray().length > 0); // file size depends on installation of graphviz
       IOUtils.write(out.toByteArray(), new FileOutputStream("target/junit-ditaat.png"));
+      assertEquals(1, mocks.getRenderMetrics().getCacheMisses());
+      assertEquals(1, mocks.getRenderMetrics().getRenders().get(DiagramType.DITAA).getCount());
    }
 
    @Test
@@ -143,7 +151,10 @@ public class PlantUmlMacroTest {
             mocks.getPluginAccessor(),
             mocks.getShortcutLinksManager(),
             mocks.getConfigurationManager(),
-            mocks.getI18NBeanFactory());
+            mocks.getI18NBeanFactory(),
+            mocks.getDiagramCache(),
+            mocks.getRenderExecutor(),
+            mocks.getIncludeCache(), mocks.getDependencyIndex(), mocks.getRenderMetrics());
       final ImmutableMap<String, String> macroParams = new ImmutableMap.Builder<String, String>().put(
             PlantUmlMacroParams.Param.type.name(), DiagramType.UML.name().toLowerCase()).build();
       final String macroBody = new StringBuilder()
@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2011 Michael Griffel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * This distribution includes other third-party libraries.
+ * These libraries and their corresponding licenses (where different
+ * from the GNU General Public License) are enumerated below.
+ *
+ * PlantUML is a Open-Source tool in Java to draw UML Diagram.
+ * The software is developed by Arnaud Roques at
+ * http://plantuml.sourceforge.org.
+ */
+package de.griffel.confluence.plugins.plantuml;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyZeroInteractions;
+
+import java.util.Collections;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.atlassian.confluence.pages.Page;
+import com.atlassian.confluence.security.PermissionManager;
+
+/**
+ * ViewPermissionFilterTest.
+ */
+public class ViewPermissionFilterTest {
+
+   @Test
+   public void testIsLegacyUserApi() {
+      Assert.assertTrue(ViewPermissionFilter.isLegacyUserApi("3.5.17"));
+      Assert.assertTrue(ViewPermissionFilter.isLegacyUserApi("4.3.7"));
+      Assert.assertTrue(ViewPermissionFilter.isLegacyUserApi("5.0.3"));
+      Assert.assertTrue(ViewPermissionFilter.isLegacyUserApi("5.1.5"));
+      Assert.assertFalse(ViewPermissionFilter.isLegacyUserApi("5.2"));
+      Assert.assertFalse(ViewPermissionFilter.isLegacyUserApi("5.2.3"));
+      Assert.assertFalse(ViewPermissionFilter.isLegacyUserApi("5.10.3"));
+      Assert.assertFalse(ViewPermissionFilter.isLegacyUserApi("6.0.1"));
+      Assert.assertFalse(ViewPermissionFilter.isLegacyUserApi("10.0.0"));
+   }
+
+   @Test
+   public void testFilterSkipsCheckWithoutPages() {
+      final PermissionManager permissionManager = mock(PermissionManager.class);
+
+      Assert.assertTrue(new ViewPermissionFilter(permissionManager).filter(Collections.<Page> emptyList()).isEmpty());
+      verifyZeroInteractions(permissionManager);
+   }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2011 Michael Griffel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * This distribution includes other third-party libraries.
+ * These libraries and their corresponding licenses (where different
+ * from the GNU General Public License) are enumerated below.
+ *
+ * PlantUML is a Open-Source tool in Java to draw UML Diagram.
+ * The software is developed by Arnaud Roques at
+ * http://plantuml.sourceforge.org.
+ */
+package de.griffel.confluence.plugins.plantuml.cache;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.atlassian.beehive.ClusterLockService;
+import com.atlassian.bonnie.Searchable;
+import com.atlassian.confluence.content.render.xhtml.ConversionContext;
+import com.atlassian.confluence.pages.Page;
+import com.atlassian.confluence.pages.PageManager;
+import com.atlassian.confluence.search.v2.ISearch;
+import com.atlassian.confluence.search.v2.SearchManager;
+import com.atlassian.confluence.search.v2.SearchResults;
+import com.atlassian.confluence.xhtml.api.XhtmlContent;
+import com.atlassian.sal.api.transaction.TransactionCallback;
+import com.atlassian.sal.api.transaction.TransactionTemplate;
+
+import de.griffel.confluence.plugins.plantuml.config.PlantUmlConfigurationBean;
+import de.griffel.confluence.plugins.plantuml.config.PlantUmlConfigurationManager;
+import de.griffel.confluence.plugins.plantuml.render.RenderBudget;
+
+/**
+ * CacheWarmUpJobTest.
+ */
+public class CacheWarmUpJobTest {
+   private final SearchManager searchManager = mock(SearchManager.class);
+   private final PageManager pageManager = mock(PageManager.class);
+   private final XhtmlContent xhtmlContent = mock(XhtmlContent.class);
+   private final TransactionTemplate transactionTemplate = mock(TransactionTemplate.class);
+   private final PlantUmlConfigurationManager configurationManager = mock(PlantUmlConfigurationManager.class);
+   private final ClusterLockService clusterLockService = mock(ClusterLockService.class);
+   private final ReentrantLock lock = new ReentrantLock();
+   private final PlantUmlConfigurationBean configuration = new PlantUmlConfigurationBean();
+   private final CacheWarmUpJob job = new CacheWarmUpJob(searchManager, pageManager, xhtmlContent,
+         transactionTemplate, configurationManager, clusterLockService);
+
+   @Before
+   @SuppressWarnings("unchecked")
+   public void setUp() {
+      configuration.setDiskCacheSize(10);
+      when(configurationManager.load()).thenReturn(configuration);
+      when(transactionTemplate.execute(any(TransactionCallback.class))).thenAnswer(new Answer<Object>() {
+         public Object answer(InvocationOnMock invocation) {
+            return ((TransactionCallback<?>) invocation.getArguments()[0]).doInTransaction();
+         }
+      });
+      when(clusterLockService.getLockForName(anyString())).thenReturn(lock);
+      job.setPauseMillis(0);
+   }
+
+   @Test
+   public void testRendersFoundPages() throws Exception {
+      final Page page1 = mockPage(1L);
+      final Page page2 = mockPage(2L);
+      final SearchResults results = mock(SearchResults.class);
+      when(results.getUnfilteredResultsCount()).thenReturn(2);
+      when(searchManager.search(any(ISearch.class))).thenReturn(results);
+      when(searchManager.convertToEntities(results, SearchManager.EntityVersionPolicy.LATEST_VERSION))
+            .thenReturn(Arrays.<Searchable> asList(page1, page2));
+
+      job.warmUp();
+
+      verify(xhtmlContent).convertStorageToView(eq("body1"), any(ConversionContext.class));
+      verify(xhtmlContent).convertStorageToView(eq("body2"), any(ConversionContext.class));
+      Assert.assertEquals(CacheWarmUpJob.State.FINISHED, job.getState());
+      Assert.assertEquals(2, job.getProcessedPages());
+      Assert.assertEquals(2, job.getTotalPages());
+   }
+
+   @Test
+   public void testRendersOnOwnBudget() throws Exception {
+      final Page page = mockPage(1L);
+      final SearchResults results = mock(SearchResults.class);
+      when(searchManager.search(any(ISearch.class))).thenReturn(results);
+      when(searchManager.convertToEntities(results, SearchManager.EntityVersionPolicy.LATEST_VERSION))
+            .thenReturn(Arrays.<Searchable> asList(page));
+      final List<String> budgets = new ArrayList<String>();
+      when(xhtmlContent.convertStorageToView(anyString(), any(ConversionContext.class))).thenAnswer(
+            new Answer<String>() {
+               public String answer(InvocationOnMock invocation) {
+                  budgets.add(RenderBudget.get());
+                  return "";
+               }
+            });
+
+      job.warmUp();
+
+      Assert.assertEquals(1, budgets.size());
+      Assert.assertNotNull(budgets.get(0));
+      Assert.assertNull(RenderBudget.get());
+      Assert.assertFalse(lock.isLocked());
+   }
+
+   @Test
+   public void testSkipsIfRunningOnOtherNode() throws Exception {
+      final Thread otherNode = new Thread() {
+         @Override
+         public void run() {
+            lock.lock();
+         }
+      };
+      otherNode.start();
+      otherNode.join();
+
+      job.warmUp();
+
+      verify(searchManager, never()).search(any(ISearch.class));
+      Assert.assertEquals(CacheWarmUpJob.State.IDLE, job.getState());
+   }
+
+   @Test
+   public void testSkipsWithoutDiskCache() throws Exception {
+      configuration.setDiskCacheSize(0);
+
+      job.warmUp();
+
+      verify(searchManager, never()).search(any(ISearch.class));
+      verify(xhtmlContent, never()).convertStorageToView(anyString(), any(ConversionContext.class));
+      Assert.assertEquals(CacheWarmUpJob.State.IDLE, job.getState());
+   }
+
+   private Page mockPage(long id) {
+      final Page page = mock(Page.class);
+      when(page.getId()).thenReturn(id);
+      when(page.getBodyAsString()).thenReturn("body" + id);
+      when(pageManager.getAbstractPage(id)).thenReturn(page);
+      return page;
+   }
+}
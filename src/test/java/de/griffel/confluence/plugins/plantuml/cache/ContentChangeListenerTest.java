@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2011 Michael Griffel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * This distribution includes other third-party libraries.
+ * These libraries and their corresponding licenses (where different
+ * from the GNU General Public License) are enumerated below.
+ *
+ * PlantUML is a Open-Source tool in Java to draw UML Diagram.
+ * The software is developed by Arnaud Roques at
+ * http://plantuml.sourceforge.org.
+ */
+package de.griffel.confluence.plugins.plantuml.cache;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Collections;
+
+import org.junit.Test;
+
+import com.atlassian.confluence.event.events.cluster.ClusterEventWrapper;
+import com.atlassian.confluence.event.events.content.page.PageUpdateEvent;
+import com.atlassian.confluence.pages.Page;
+import com.atlassian.event.api.EventPublisher;
+
+/**
+ * ContentChangeListenerTest.
+ */
+public class ContentChangeListenerTest {
+   private static final String KEY_A = "aa00000000000000000000000000000000000000";
+
+   private final IncludeCache includeCache = mock(IncludeCache.class);
+   private final DependencyIndex dependencyIndex = mock(DependencyIndex.class);
+   private final DiagramCache diagramCache = mock(DiagramCache.class);
+   private final EventPublisher eventPublisher = mock(EventPublisher.class);
+   private final ContentChangeListener listener =
+         new ContentChangeListener(eventPublisher, includeCache, dependencyIndex, diagramCache);
+
+   @Test
+   public void testEvictsDependentsOfUpdatedPage() {
+      final Page page = mock(Page.class);
+      when(page.getId()).thenReturn(1L);
+      final PageUpdateEvent event = mock(PageUpdateEvent.class);
+      when(event.getPage()).thenReturn(page);
+      when(dependencyIndex.removeDependents(1L)).thenReturn(Collections.singleton(KEY_A));
+
+      listener.onPageUpdate(event);
+
+      verify(includeCache).remove(1L);
+      verify(diagramCache).remove(KEY_A);
+      verify(eventPublisher).publish(any(ContentChangedEvent.class));
+   }
+
+   @Test
+   public void testEvictsDependentsOfContentChangedOnOtherNode() {
+      final ClusterEventWrapper event = mock(ClusterEventWrapper.class);
+      when(event.getEvent()).thenReturn(new ContentChangedEvent(this, 2L));
+      when(dependencyIndex.removeDependents(2L)).thenReturn(Collections.singleton(KEY_A));
+
+      listener.onClusterEvent(event);
+
+      verify(includeCache).remove(2L);
+      verify(diagramCache).remove(KEY_A);
+      verify(eventPublisher, never()).publish(any());
+   }
+}
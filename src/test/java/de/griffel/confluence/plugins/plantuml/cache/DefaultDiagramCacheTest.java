@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2011 Michael Griffel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * This distribution includes other third-party libraries.
+ * These libraries and their corresponding licenses (where different
+ * from the GNU General Public License) are enumerated below.
+ *
+ * PlantUML is a Open-Source tool in Java to draw UML Diagram.
+ * The software is developed by Arnaud Roques at
+ * http://plantuml.sourceforge.org.
+ */
+package de.griffel.confluence.plugins.plantuml.cache;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Collections;
+
+import net.sourceforge.plantuml.FileFormat;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import de.griffel.confluence.plugins.plantuml.type.ImageMap;
+
+/**
+ * DefaultDiagramCacheTest.
+ */
+public class DefaultDiagramCacheTest {
+
+   private final DiagramStore diagramStore = mock(DiagramStore.class);
+
+   @Test
+   public void testEvictsLeastRecentlyUsed() {
+      final DefaultDiagramCache cache = new DefaultDiagramCache(250, diagramStore);
+      cache.put("a", diagram(100));
+      cache.put("b", diagram(100));
+      Assert.assertNotNull(cache.get("a"));
+      cache.put("c", diagram(100));
+
+      Assert.assertNotNull(cache.get("a"));
+      Assert.assertNull(cache.get("b"));
+      Assert.assertNotNull(cache.get("c"));
+      Assert.assertEquals(2, cache.size());
+      Assert.assertEquals(200, cache.getWeight());
+   }
+
+   @Test
+   public void testSkipsOversizedDiagram() {
+      final DefaultDiagramCache cache = new DefaultDiagramCache(50, diagramStore);
+      final RenderedDiagram diagram = diagram(100);
+      cache.put("a", diagram);
+
+      Assert.assertEquals(0, cache.size());
+      verify(diagramStore).store("a", diagram);
+   }
+
+   @Test
+   public void testLoadsFromStore() {
+      final DefaultDiagramCache cache = new DefaultDiagramCache(250, diagramStore);
+      final RenderedDiagram diagram = diagram(100);
+      when(diagramStore.load("a")).thenReturn(diagram);
+
+      Assert.assertSame(diagram, cache.get("a"));
+      Assert.assertEquals(1, cache.size());
+   }
+
+   @Test
+   public void testRemove() {
+      final DefaultDiagramCache cache = new DefaultDiagramCache(250, diagramStore);
+      cache.put("a", diagram(100));
+      cache.remove("a");
+
+      Assert.assertNull(cache.get("a"));
+      Assert.assertEquals(0, cache.getWeight());
+      verify(diagramStore).remove("a");
+   }
+
+   @Test
+   public void testKeyBuilder() {
+      final String key = new DiagramKeyBuilder().append("@startuml\nA -> B\n@enduml").append(FileFormat.PNG).build();
+      Assert.assertEquals(40, key.length());
+      Assert.assertEquals(key,
+            new DiagramKeyBuilder().append("@startuml\nA -> B\n@enduml").append(FileFormat.PNG).build());
+      Assert.assertFalse(key.equals(
+            new DiagramKeyBuilder().append("@startuml\nA -> B\n@enduml").append(FileFormat.SVG).build()));
+      Assert.assertFalse(new DiagramKeyBuilder().append("ab").append("c").build().equals(
+            new DiagramKeyBuilder().append("a").append("bc").build()));
+   }
+
+   private static RenderedDiagram diagram(int size) {
+      return new RenderedDiagram(FileFormat.PNG,
+            Collections.singletonList(new RenderedImage(new byte[size], ImageMap.NULL, 0)));
+   }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2011 Michael Griffel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * This distribution includes other third-party libraries.
+ * These libraries and their corresponding licenses (where different
+ * from the GNU General Public License) are enumerated below.
+ *
+ * PlantUML is a Open-Source tool in Java to draw UML Diagram.
+ * The software is developed by Arnaud Roques at
+ * http://plantuml.sourceforge.org.
+ */
+package de.griffel.confluence.plugins.plantuml.cache;
+
+import net.sourceforge.plantuml.CharSequence2;
+import net.sourceforge.plantuml.CharSequence2Impl;
+import net.sourceforge.plantuml.core.UmlSource;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * DefaultIncludeCacheTest.
+ */
+public class DefaultIncludeCacheTest {
+
+   private final UmlSource source =
+         new UmlSource(ImmutableList.<CharSequence2>of(new CharSequence2Impl("Alice -> Bob", null)), true);
+
+   @Test
+   public void testReturnsCachedVersionOnly() {
+      final DefaultIncludeCache cache = new DefaultIncludeCache();
+      cache.put(1L, 3, source);
+
+      Assert.assertSame(source, cache.get(1L, 3));
+      Assert.assertNull(cache.get(1L, 4));
+      Assert.assertNull(cache.get(2L, 3));
+   }
+
+   @Test
+   public void testEvictsLeastRecentlyUsed() {
+      final DefaultIncludeCache cache = new DefaultIncludeCache(2);
+      cache.put(1L, 1, source);
+      cache.put(2L, 1, source);
+      Assert.assertNotNull(cache.get(1L, 1));
+      cache.put(3L, 1, source);
+
+      Assert.assertNotNull(cache.get(1L, 1));
+      Assert.assertNull(cache.get(2L, 1));
+      Assert.assertNotNull(cache.get(3L, 1));
+      Assert.assertEquals(2, cache.size());
+   }
+}
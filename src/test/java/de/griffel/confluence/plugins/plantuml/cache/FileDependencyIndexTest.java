@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2011 Michael Griffel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * This distribution includes other third-party libraries.
+ * These libraries and their corresponding licenses (where different
+ * from the GNU General Public License) are enumerated below.
+ *
+ * PlantUML is a Open-Source tool in Java to draw UML Diagram.
+ * The software is developed by Arnaud Roques at
+ * http://plantuml.sourceforge.org.
+ */
+package de.griffel.confluence.plugins.plantuml.cache;
+
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.atlassian.beehive.ClusterLockService;
+import com.atlassian.confluence.cluster.ClusterManager;
+import com.atlassian.confluence.setup.BootstrapManager;
+import com.atlassian.sal.api.ApplicationProperties;
+
+/**
+ * FileDependencyIndexTest.
+ */
+public class FileDependencyIndexTest {
+   private static final String KEY_A = "aa00000000000000000000000000000000000000";
+   private static final String KEY_B = "bb00000000000000000000000000000000000000";
+
+   @Rule
+   public TemporaryFolder home = new TemporaryFolder();
+
+   private final ApplicationProperties applicationProperties = mock(ApplicationProperties.class);
+   private final ClusterManager clusterManager = mock(ClusterManager.class);
+   private final BootstrapManager bootstrapManager = mock(BootstrapManager.class);
+   private final ClusterLockService clusterLockService = mock(ClusterLockService.class);
+   private final ReentrantLock lock = new ReentrantLock();
+
+   @Before
+   public void setUp() {
+      when(applicationProperties.getHomeDirectory()).thenReturn(home.getRoot());
+      when(clusterLockService.getLockForName(anyString())).thenReturn(lock);
+   }
+
+   @Test
+   public void testRemoveDependentsAfterRestart() {
+      final FileDependencyIndex index = createIndex();
+      index.add(KEY_A, new HashSet<Long>(Arrays.asList(1L, 2L)));
+      index.add(KEY_B, Collections.singleton(2L));
+      index.flush();
+
+      final FileDependencyIndex restarted = createIndex();
+      Assert.assertEquals(Collections.singleton(KEY_A), restarted.removeDependents(1L));
+      Assert.assertEquals(new HashSet<String>(Arrays.asList(KEY_A, KEY_B)), restarted.removeDependents(2L));
+      Assert.assertTrue(restarted.removeDependents(2L).isEmpty());
+      restarted.flush();
+
+      Assert.assertTrue(createIndex().removeDependents(2L).isEmpty());
+      Assert.assertFalse(lock.isLocked());
+   }
+
+   @Test
+   public void testWritesOnFlushOnly() {
+      final FileDependencyIndex index = createIndex();
+      index.add(KEY_A, Collections.singleton(1L));
+      Assert.assertTrue(createIndex().removeDependents(1L).isEmpty());
+
+      index.flush();
+      Assert.assertEquals(Collections.singleton(KEY_A), createIndex().removeDependents(1L));
+   }
+
+   @Test
+   public void testMergesChangesOfOtherNodes() throws IOException {
+      when(clusterManager.isClustered()).thenReturn(true);
+      when(bootstrapManager.getSharedHome()).thenReturn(home.newFolder("shared"));
+      final FileDependencyIndex node1 = createIndex();
+      final FileDependencyIndex node2 = createIndex();
+      node1.add(KEY_A, new HashSet<Long>(Arrays.asList(1L, 2L)));
+      node2.add(KEY_B, Collections.singleton(1L));
+      node1.flush();
+      node2.flush();
+
+      Assert.assertEquals(new HashSet<String>(Arrays.asList(KEY_A, KEY_B)), node2.removeDependents(1L));
+      node2.flush();
+      final FileDependencyIndex node3 = createIndex();
+      Assert.assertTrue(node3.removeDependents(1L).isEmpty());
+      Assert.assertEquals(Collections.singleton(KEY_A), node3.removeDependents(2L));
+   }
+
+   @Test
+   public void testDropsOldestDependents() {
+      final FileDependencyIndex index = createIndex();
+      for (int i = 0; i <= FileDependencyIndex.MAX_DEPENDENTS; i++) {
+         index.add(String.format("%040d", i), Collections.singleton(1L));
+      }
+      final Set<String> dependents = index.removeDependents(1L);
+      Assert.assertEquals(FileDependencyIndex.MAX_DEPENDENTS, dependents.size());
+      Assert.assertFalse(dependents.contains(String.format("%040d", 0)));
+   }
+
+   private FileDependencyIndex createIndex() {
+      return new FileDependencyIndex(applicationProperties, clusterManager, bootstrapManager, clusterLockService);
+   }
+}
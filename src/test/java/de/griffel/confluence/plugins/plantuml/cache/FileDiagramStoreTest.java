@@ -0,0 +1,217 @@
+/*
+ * Copyright (C) 2011 Michael Griffel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * This distribution includes other third-party libraries.
+ * These libraries and their corresponding licenses (where different
+ * from the GNU General Public License) are enumerated below.
+ *
+ * PlantUML is a Open-Source tool in Java to draw UML Diagram.
+ * The software is developed by Arnaud Roques at
+ * http://plantuml.sourceforge.org.
+ */
+package de.griffel.confluence.plugins.plantuml.cache;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+
+import net.sourceforge.plantuml.FileFormat;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.atlassian.confluence.cluster.ClusterManager;
+import com.atlassian.confluence.setup.BootstrapManager;
+import com.atlassian.sal.api.ApplicationProperties;
+
+import de.griffel.confluence.plugins.plantuml.config.PlantUmlConfigurationBean;
+import de.griffel.confluence.plugins.plantuml.config.PlantUmlConfigurationManager;
+import de.griffel.confluence.plugins.plantuml.type.ImageMap;
+
+/**
+ * FileDiagramStoreTest.
+ */
+public class FileDiagramStoreTest {
+   private static final String KEY_A = "aa00000000000000000000000000000000000000";
+   private static final String KEY_B = "bb00000000000000000000000000000000000000";
+   private static final String KEY_C = "cc00000000000000000000000000000000000000";
+   private static final String CMAP = "<map id=\"plantuml1\" name=\"plantuml1\"></map>";
+
+   @Rule
+   public TemporaryFolder home = new TemporaryFolder();
+
+   private final ApplicationProperties applicationProperties = mock(ApplicationProperties.class);
+   private final ClusterManager clusterManager = mock(ClusterManager.class);
+   private final BootstrapManager bootstrapManager = mock(BootstrapManager.class);
+   private final PlantUmlConfigurationManager configurationManager = mock(PlantUmlConfigurationManager.class);
+   private final PlantUmlConfigurationBean configuration = new PlantUmlConfigurationBean();
+
+   @Before
+   public void setUp() {
+      when(applicationProperties.getHomeDirectory()).thenReturn(home.getRoot());
+      when(configurationManager.load()).thenReturn(configuration);
+      configuration.setDiskCacheSize(1);
+   }
+
+   @Test
+   public void testStoreAndLoadAfterRestart() {
+      final RenderedDiagram diagram = new RenderedDiagram(FileFormat.PNG, Arrays.asList(
+            new RenderedImage(new byte[] { 1, 2, 3 }, new ImageMap(CMAP), 0),
+            new RenderedImage(new byte[] { 4, 5 }, ImageMap.NULL, 1)));
+      createStore().store(KEY_A, diagram);
+
+      final FileDiagramStore store = createStore();
+      final RenderedDiagram loaded = store.load(KEY_A);
+      Assert.assertNotNull(loaded);
+      Assert.assertEquals(FileFormat.PNG, loaded.getFileFormat());
+      Assert.assertEquals(2, loaded.getImages().size());
+      Assert.assertArrayEquals(new byte[] { 1, 2, 3 }, loaded.getImages().get(0).getData());
+      Assert.assertEquals("plantuml1", loaded.getImages().get(0).getImageMap().getId());
+      Assert.assertFalse(loaded.getImages().get(1).getImageMap().isValid());
+
+      final RenderedImage image = loaded.getImages().get(1);
+      Assert.assertEquals(FileDiagramStore.DOWNLOAD_PATH + "42/" + KEY_A + "-1.png",
+            store.getDownloadPath(KEY_A, 42, loaded, image));
+      Assert.assertNull(store.getDownloadPath(KEY_A, 0, loaded, image));
+      Assert.assertEquals(2, store.getImageFile(KEY_A + "-1.png").length());
+   }
+
+   @Test
+   public void testEvictsLeastRecentlyUsed() {
+      final FileDiagramStore store = createStore();
+      store.store(KEY_A, diagram(400 * 1024));
+      store.store(KEY_B, diagram(400 * 1024));
+      Assert.assertNotNull(store.load(KEY_A));
+      store.store(KEY_C, diagram(400 * 1024));
+
+      Assert.assertNotNull(store.load(KEY_A));
+      Assert.assertNull(store.load(KEY_B));
+      Assert.assertNotNull(store.load(KEY_C));
+      Assert.assertNull(store.getImageFile(KEY_B + "-0.png"));
+      Assert.assertEquals(2, store.getCount());
+   }
+
+   @Test
+   public void testDisabled() {
+      configuration.setDiskCacheSize(0);
+      final FileDiagramStore store = createStore();
+      final RenderedDiagram diagram = diagram(10);
+      store.store(KEY_A, diagram);
+
+      Assert.assertNull(store.load(KEY_A));
+      Assert.assertNull(store.getDownloadPath(KEY_A, 42, diagram, diagram.getImages().get(0)));
+   }
+
+   @Test
+   public void testRecordsOwners() {
+      final FileDiagramStore store = createStore();
+      store.store(KEY_A, diagram(10));
+      Assert.assertFalse(store.isOwner(KEY_A, 1));
+
+      store.addOwner(KEY_A, 1);
+      store.addOwner(KEY_A, 2);
+      store.addOwner(KEY_A, 1);
+      Assert.assertTrue(store.isOwner(KEY_A, 1));
+      Assert.assertTrue(store.isOwner(KEY_A, 2));
+      Assert.assertFalse(store.isOwner(KEY_A, 3));
+      Assert.assertFalse(store.isOwner(KEY_B, 1));
+      Assert.assertTrue(createStore().isOwner(KEY_A, 2));
+
+      store.remove(KEY_A);
+      Assert.assertFalse(store.isOwner(KEY_A, 1));
+   }
+
+   @Test
+   public void testSharesOwnersBetweenNodes() throws IOException {
+      when(clusterManager.isClustered()).thenReturn(true);
+      when(bootstrapManager.getSharedHome()).thenReturn(home.newFolder("shared"));
+      final FileDiagramStore node1 = createStore();
+      final FileDiagramStore node2 = createStore();
+      node1.store(KEY_A, diagram(10));
+      node1.addOwner(KEY_A, 1);
+      Assert.assertTrue(node2.isOwner(KEY_A, 1));
+
+      node2.addOwner(KEY_A, 2);
+      Assert.assertTrue(node1.isOwner(KEY_A, 2));
+      Assert.assertTrue(node1.isOwner(KEY_A, 1));
+   }
+
+   @Test
+   public void testRemovesIncompleteDiagramOnStartup() throws IOException {
+      final File image = new File(home.getRoot(), "plantuml/diagrams/aa/" + KEY_A + "-0.png");
+      FileUtils.writeByteArrayToFile(image, new byte[] { 1 });
+
+      final FileDiagramStore store = createStore();
+      Assert.assertEquals(0, store.getCount());
+      Assert.assertFalse(image.exists());
+   }
+
+   @Test
+   public void testSharesDiagramsBetweenNodes() throws IOException {
+      when(clusterManager.isClustered()).thenReturn(true);
+      when(bootstrapManager.getSharedHome()).thenReturn(home.newFolder("shared"));
+      final FileDiagramStore node1 = createStore();
+      final FileDiagramStore node2 = createStore();
+      Assert.assertEquals(0, node2.getCount());
+
+      node1.store(KEY_A, diagram(10));
+      Assert.assertNotNull(node2.load(KEY_A));
+      Assert.assertNotNull(node2.getImageFile(KEY_A + "-0.png"));
+      Assert.assertEquals(1, node2.getCount());
+
+      node2.remove(KEY_A);
+      Assert.assertNull(node1.load(KEY_A));
+   }
+
+   @Test
+   public void testKeepsRecentIncompleteDiagramInSharedHome() throws IOException {
+      when(clusterManager.isClustered()).thenReturn(true);
+      when(bootstrapManager.getSharedHome()).thenReturn(home.getRoot());
+      final File image = new File(home.getRoot(), "plantuml/diagrams/aa/" + KEY_A + "-0.png");
+      FileUtils.writeByteArrayToFile(image, new byte[] { 1 });
+
+      Assert.assertEquals(0, createStore().getCount());
+      Assert.assertTrue(image.exists());
+   }
+
+   @Test
+   public void testRejectsInvalidFileNames() {
+      final FileDiagramStore store = createStore();
+      store.store(KEY_A, diagram(10));
+
+      Assert.assertNotNull(store.getImageFile(KEY_A + "-0.png"));
+      Assert.assertNull(store.getImageFile(KEY_A + ".diagram"));
+      Assert.assertNull(store.getImageFile("../" + KEY_A + "-0.png"));
+      Assert.assertNull(store.getImageFile(KEY_B + "-0.png"));
+   }
+
+   private FileDiagramStore createStore() {
+      return new FileDiagramStore(applicationProperties, clusterManager, bootstrapManager, configurationManager);
+   }
+
+   private static RenderedDiagram diagram(int size) {
+      return new RenderedDiagram(FileFormat.PNG,
+            Collections.singletonList(new RenderedImage(new byte[size], ImageMap.NULL, 0)));
+   }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2011 Michael Griffel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * This distribution includes other third-party libraries.
+ * These libraries and their corresponding licenses (where different
+ * from the GNU General Public License) are enumerated below.
+ *
+ * PlantUML is a Open-Source tool in Java to draw UML Diagram.
+ * The software is developed by Arnaud Roques at
+ * http://plantuml.sourceforge.org.
+ */
+package de.griffel.confluence.plugins.plantuml.config;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.atlassian.bandana.BandanaContext;
+import com.atlassian.bandana.BandanaManager;
+import com.atlassian.confluence.event.events.cluster.ClusterEventWrapper;
+import com.atlassian.event.api.EventPublisher;
+
+/**
+ * DefaultPlantUmlConfigurationManagerTest.
+ */
+public class DefaultPlantUmlConfigurationManagerTest {
+   private static final String KEY = PlantUmlConfigurationBean.class.getName();
+
+   private final BandanaManager bandanaManager = mock(BandanaManager.class);
+   private final EventPublisher eventPublisher = mock(EventPublisher.class);
+   private final DefaultPlantUmlConfigurationManager manager =
+         new DefaultPlantUmlConfigurationManager(bandanaManager, eventPublisher);
+
+   @Test
+   public void testLoadsSnapshotOnce() {
+      final PlantUmlConfigurationBean stored = new PlantUmlConfigurationBean();
+      stored.setCommonHeader("skinparam a b\nskinparam c d");
+      when(bandanaManager.getValue(any(BandanaContext.class), eq(KEY))).thenReturn(stored);
+
+      final PlantUmlConfiguration config = manager.load();
+      Assert.assertSame(config, manager.load());
+      Assert.assertEquals(Arrays.asList("skinparam a b", "skinparam c d"), config.getCommonHeaderLines());
+      Assert.assertTrue(config.getCommonFooterLines().isEmpty());
+      verify(bandanaManager, times(1)).getValue(any(BandanaContext.class), eq(KEY));
+   }
+
+   @Test
+   public void testCopyDoesNotChangeSnapshot() {
+      final PlantUmlConfigurationBean config = manager.copy();
+      Assert.assertNotSame(manager.load(), config);
+      config.setSvek(false);
+      config.setCommonHeader("skinparam a b");
+
+      Assert.assertEquals(Arrays.asList("skinparam a b"), config.getCommonHeaderLines());
+      Assert.assertTrue(manager.load().isSvek());
+      Assert.assertTrue(manager.load().getCommonHeaderLines().isEmpty());
+   }
+
+   @Test
+   public void testSaveReplacesSnapshot() {
+      final PlantUmlConfigurationBean saved = new PlantUmlConfigurationBean();
+      saved.setRenderTimeout(5);
+      manager.save(saved);
+
+      Assert.assertEquals(5, manager.load().getRenderTimeout());
+      verify(bandanaManager).setValue(any(BandanaContext.class), eq(KEY), eq(saved));
+      verify(eventPublisher).publish(any(PlantUmlConfigurationChangedEvent.class));
+   }
+
+   @Test
+   public void testReloadsAfterSaveOnOtherNode() {
+      manager.load();
+      final ClusterEventWrapper event = mock(ClusterEventWrapper.class);
+      when(event.getEvent()).thenReturn(new PlantUmlConfigurationChangedEvent(this));
+      manager.onClusterEvent(event);
+      manager.load();
+
+      verify(bandanaManager, times(2)).getValue(any(BandanaContext.class), eq(KEY));
+   }
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright (C) 2011 Michael Griffel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * This distribution includes other third-party libraries.
+ * These libraries and their corresponding licenses (where different
+ * from the GNU General Public License) are enumerated below.
+ *
+ * PlantUML is a Open-Source tool in Java to draw UML Diagram.
+ * The software is developed by Arnaud Roques at
+ * http://plantuml.sourceforge.org.
+ */
+package de.griffel.confluence.plugins.plantuml.graph;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.atlassian.confluence.event.events.cluster.ClusterEventWrapper;
+import com.atlassian.confluence.event.events.content.page.PageUpdateEvent;
+import com.atlassian.confluence.pages.AbstractPage;
+import com.atlassian.confluence.links.LinkManager;
+import com.atlassian.confluence.pages.Page;
+import com.atlassian.confluence.pages.PageManager;
+import com.atlassian.confluence.spaces.Space;
+import com.atlassian.confluence.spaces.SpaceManager;
+import com.atlassian.event.api.EventPublisher;
+import com.atlassian.sal.api.transaction.TransactionCallback;
+import com.atlassian.sal.api.transaction.TransactionTemplate;
+
+/**
+ * DefaultLinkIndexTest.
+ */
+public class DefaultLinkIndexTest {
+   private static final String SPACE_KEY = "ds";
+
+   private final EventPublisher eventPublisher = mock(EventPublisher.class);
+   private final PageManager pageManager = mock(PageManager.class);
+   private final SpaceManager spaceManager = mock(SpaceManager.class);
+   private final LinkManager linkManager = mock(LinkManager.class);
+   private final TransactionTemplate transactionTemplate = mock(TransactionTemplate.class);
+   private final Space space = mock(Space.class);
+   private final AtomicInteger transactions = new AtomicInteger();
+   private final DefaultLinkIndex index =
+         new DefaultLinkIndex(eventPublisher, pageManager, spaceManager, linkManager, transactionTemplate);
+
+   @Before
+   @SuppressWarnings("unchecked")
+   public void setUp() {
+      when(transactionTemplate.execute(any(TransactionCallback.class))).thenAnswer(new Answer<Object>() {
+         public Object answer(InvocationOnMock invocation) {
+            transactions.incrementAndGet();
+            return ((TransactionCallback<?>) invocation.getArguments()[0]).doInTransaction();
+         }
+      });
+      when(space.getKey()).thenReturn(SPACE_KEY);
+      when(spaceManager.getSpace(SPACE_KEY)).thenReturn(space);
+      final Page home = mockPage(1L, "Home");
+      final Page child = mockPage(2L, "Child");
+      when(pageManager.getPageIds(space)).thenReturn(Arrays.asList(1L, 2L));
+      when(pageManager.getPage(1L)).thenReturn(home);
+      when(pageManager.getPage(2L)).thenReturn(child);
+      index.afterPropertiesSet();
+   }
+
+   @After
+   public void tearDown() {
+      index.destroy();
+   }
+
+   @Test
+   public void testRebuildsAfterInterruptedBuild() throws Exception {
+      final List<Space> spaces = Arrays.asList(space);
+      when(spaceManager.getAllSpaces()).thenAnswer(new Answer<List<Space>>() {
+         private boolean interrupted;
+
+         public List<Space> answer(InvocationOnMock invocation) {
+            if (!interrupted) {
+               // the first build is interrupted, e.g. by a plugin restart
+               interrupted = true;
+               Thread.currentThread().interrupt();
+            }
+            return spaces;
+         }
+      });
+
+      Assert.assertNull(index.getLinkGraph());
+      Assert.assertNotNull(awaitLinkGraph());
+      verify(spaceManager, times(2)).getAllSpaces();
+   }
+
+   @Test
+   public void testDisabledForLargeInstances() throws Exception {
+      when(spaceManager.getAllSpaces()).thenReturn(Arrays.asList(space));
+      index.setMaxContent(1);
+
+      Assert.assertNull(index.getLinkGraph());
+      for (int i = 0; i < 100 && transactions.get() < 2; i++) {
+         Thread.sleep(20);
+      }
+      Thread.sleep(100);
+      Assert.assertNull(index.getLinkGraph());
+      verify(spaceManager, times(1)).getAllSpaces();
+      // the pages are counted before any of them is read
+      verify(pageManager, never()).getPage(anyLong());
+   }
+
+   @Test
+   public void testReleasesLargeIndex() throws Exception {
+      when(spaceManager.getAllSpaces()).thenReturn(Arrays.asList(space));
+      final LinkGraph graph = awaitLinkGraph();
+      graph.setOutgoing(1L, new long[] { 2L });
+      graph.setOutgoing(2L, new long[] { 1L });
+
+      index.setMaxContent(1);
+      index.releaseIfIdle();
+
+      Assert.assertNull(index.getLinkGraph());
+   }
+
+   @Test
+   public void testAppliesClusterEventsInTransaction() throws Exception {
+      when(spaceManager.getAllSpaces()).thenReturn(Arrays.asList(space));
+      awaitLinkGraph();
+      final int before = transactions.get();
+
+      final ClusterEventWrapper event = mock(ClusterEventWrapper.class);
+      when(event.getEvent()).thenReturn(new LinksChangedEvent(this, 2L));
+      index.onClusterEvent(event);
+
+      for (int i = 0; i < 100 && transactions.get() == before; i++) {
+         Thread.sleep(20);
+      }
+      Assert.assertEquals(before + 1, transactions.get());
+      verify(pageManager).getAbstractPage(2L);
+   }
+
+   @Test
+   public void testReadsLinksOfUpdatedPageInBackground() throws Exception {
+      when(spaceManager.getAllSpaces()).thenReturn(Arrays.asList(space));
+      awaitLinkGraph();
+      final Page page = mockPage(2L, "Child");
+      final AtomicReference<Thread> readBy = new AtomicReference<Thread>();
+      when(pageManager.getAbstractPage(2L)).thenAnswer(new Answer<AbstractPage>() {
+         public AbstractPage answer(InvocationOnMock invocation) {
+            readBy.set(Thread.currentThread());
+            return page;
+         }
+      });
+
+      final PageUpdateEvent event = mock(PageUpdateEvent.class);
+      when(event.getPage()).thenReturn(page);
+      index.onPageUpdate(event);
+
+      for (int i = 0; i < 100 && readBy.get() == null; i++) {
+         Thread.sleep(20);
+      }
+      Assert.assertNotNull(readBy.get());
+      Assert.assertNotSame(Thread.currentThread(), readBy.get());
+   }
+
+   private LinkGraph awaitLinkGraph() throws InterruptedException {
+      LinkGraph graph = index.getLinkGraph();
+      for (int i = 0; i < 100 && graph == null; i++) {
+         Thread.sleep(20);
+         graph = index.getLinkGraph();
+      }
+      Assert.assertNotNull(graph);
+      return graph;
+   }
+
+   private Page mockPage(long id, String title) {
+      final Page page = mock(Page.class);
+      when(page.getId()).thenReturn(id);
+      when(page.getTitle()).thenReturn(title);
+      when(page.getSpaceKey()).thenReturn(SPACE_KEY);
+      when(page.isCurrent()).thenReturn(true);
+      when(page.isLatestVersion()).thenReturn(true);
+      return page;
+   }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright (C) 2011 Michael Griffel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * This distribution includes other third-party libraries.
+ * These libraries and their corresponding licenses (where different
+ * from the GNU General Public License) are enumerated below.
+ *
+ * PlantUML is a Open-Source tool in Java to draw UML Diagram.
+ * The software is developed by Arnaud Roques at
+ * http://plantuml.sourceforge.org.
+ */
+package de.griffel.confluence.plugins.plantuml.graph;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.atlassian.confluence.event.events.content.page.PageCreateEvent;
+import com.atlassian.confluence.event.events.content.page.PageRemoveEvent;
+import com.atlassian.confluence.event.events.content.page.PageUpdateEvent;
+import com.atlassian.confluence.event.events.space.SpaceRemoveEvent;
+import com.atlassian.confluence.pages.Page;
+import com.atlassian.confluence.pages.PageManager;
+import com.atlassian.confluence.spaces.Space;
+import com.atlassian.confluence.spaces.SpaceManager;
+import com.atlassian.event.api.EventPublisher;
+import com.atlassian.sal.api.transaction.TransactionCallback;
+import com.atlassian.sal.api.transaction.TransactionTemplate;
+
+/**
+ * DefaultPageHierarchyIndexTest.
+ */
+public class DefaultPageHierarchyIndexTest {
+   private static final String SPACE_KEY = "ds";
+
+   private final EventPublisher eventPublisher = mock(EventPublisher.class);
+   private final PageManager pageManager = mock(PageManager.class);
+   private final SpaceManager spaceManager = mock(SpaceManager.class);
+   private final TransactionTemplate transactionTemplate = mock(TransactionTemplate.class);
+   private final Space space = mock(Space.class);
+   private final DefaultPageHierarchyIndex index =
+         new DefaultPageHierarchyIndex(eventPublisher, pageManager, spaceManager, transactionTemplate);
+
+   @Before
+   @SuppressWarnings("unchecked")
+   public void setUp() {
+      when(transactionTemplate.execute(any(TransactionCallback.class))).thenAnswer(new Answer<Object>() {
+         public Object answer(InvocationOnMock invocation) {
+            return ((TransactionCallback<?>) invocation.getArguments()[0]).doInTransaction();
+         }
+      });
+      when(spaceManager.getSpace(SPACE_KEY)).thenReturn(space);
+      index.afterPropertiesSet();
+   }
+
+   @After
+   public void tearDown() {
+      index.destroy();
+   }
+
+   @Test
+   public void testAppliesChangesMadeWhileBuilding() throws Exception {
+      final Page home = mockPage(1L, "Home", null);
+      final Page child = mockPage(2L, "Child", home);
+      final Page renamedChild = mockPage(2L, "Renamed child", home);
+      final Page addedChild = mockPage(3L, "Added child", home);
+      final Page removedChild = mockPage(4L, "Removed child", home);
+      final PageUpdateEvent updateEvent = mock(PageUpdateEvent.class);
+      when(updateEvent.getPage()).thenReturn(renamedChild);
+      final PageCreateEvent createEvent = mock(PageCreateEvent.class);
+      when(createEvent.getPage()).thenReturn(addedChild);
+      final PageRemoveEvent removeEvent = mock(PageRemoveEvent.class);
+      when(removeEvent.getPage()).thenReturn(removedChild);
+      when(pageManager.getPages(space, true)).thenAnswer(new Answer<List<Page>>() {
+         public List<Page> answer(InvocationOnMock invocation) {
+            // the pages are changed after they have been read
+            index.onPageUpdate(updateEvent);
+            index.onPageCreate(createEvent);
+            index.onPageRemove(removeEvent);
+            return Arrays.asList(home, child, removedChild);
+         }
+      });
+
+      final SpaceHierarchy hierarchy = awaitHierarchy();
+      Assert.assertEquals("Renamed child", hierarchy.getTitle(2L));
+      Assert.assertArrayEquals(new long[] { 3L, 2L }, hierarchy.getChildIds(1L));
+      Assert.assertFalse(hierarchy.contains(4L));
+   }
+
+   @Test
+   public void testUpdatesBuiltTree() throws Exception {
+      final Page home = mockPage(1L, "Home", null);
+      when(pageManager.getPages(space, true)).thenReturn(Arrays.asList(home));
+      final SpaceHierarchy hierarchy = awaitHierarchy();
+
+      final PageCreateEvent createEvent = mock(PageCreateEvent.class);
+      final Page child = mockPage(2L, "Child", home);
+      when(createEvent.getPage()).thenReturn(child);
+      index.onPageCreate(createEvent);
+
+      Assert.assertArrayEquals(new long[] { 2L }, hierarchy.getChildIds(1L));
+   }
+
+   @Test
+   public void testKeepsTreeInUse() throws Exception {
+      when(pageManager.getPages(space, true)).thenReturn(Arrays.asList(mockPage(1L, "Home", null)));
+      final SpaceHierarchy hierarchy = awaitHierarchy();
+
+      index.releaseIfIdle(60000L);
+
+      Assert.assertSame(hierarchy, index.getHierarchy(SPACE_KEY));
+   }
+
+   @Test
+   public void testReleasesIdleTree() throws Exception {
+      when(pageManager.getPages(space, true)).thenReturn(Arrays.asList(mockPage(1L, "Home", null)));
+      awaitHierarchy();
+
+      index.releaseIfIdle(0L);
+
+      Assert.assertNull(index.getHierarchy(SPACE_KEY));
+      awaitHierarchy();
+      verify(pageManager, times(2)).getPages(space, true);
+   }
+
+   @Test
+   public void testDropsTreeOfRemovedSpace() throws Exception {
+      when(pageManager.getPages(space, true)).thenReturn(Arrays.asList(mockPage(1L, "Home", null)));
+      awaitHierarchy();
+
+      final SpaceRemoveEvent event = mock(SpaceRemoveEvent.class);
+      when(event.getSpace()).thenReturn(space);
+      when(space.getKey()).thenReturn(SPACE_KEY);
+      index.onSpaceRemove(event);
+
+      Assert.assertNull(index.getHierarchy(SPACE_KEY));
+   }
+
+   private SpaceHierarchy awaitHierarchy() throws InterruptedException {
+      SpaceHierarchy hierarchy = index.getHierarchy(SPACE_KEY);
+      for (int i = 0; i < 100 && hierarchy == null; i++) {
+         Thread.sleep(20);
+         hierarchy = index.getHierarchy(SPACE_KEY);
+      }
+      Assert.assertNotNull(hierarchy);
+      return hierarchy;
+   }
+
+   private static Page mockPage(long id, String title, Page parent) {
+      final Page page = mock(Page.class);
+      when(page.getId()).thenReturn(id);
+      when(page.getTitle()).thenReturn(title);
+      when(page.getSpaceKey()).thenReturn(SPACE_KEY);
+      when(page.getParent()).thenReturn(parent);
+      return page;
+   }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2011 Michael Griffel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * This distribution includes other third-party libraries.
+ * These libraries and their corresponding licenses (where different
+ * from the GNU General Public License) are enumerated below.
+ *
+ * PlantUML is a Open-Source tool in Java to draw UML Diagram.
+ * The software is developed by Arnaud Roques at
+ * http://plantuml.sourceforge.org.
+ */
+package de.griffel.confluence.plugins.plantuml.graph;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * LinkGraphTest.
+ */
+public class LinkGraphTest {
+   private LinkGraph graph;
+
+   @Before
+   public void setUp() {
+      graph = new LinkGraph(0);
+      graph.setOutgoing(1L, new long[] { 3L, 2L, 2L, 1L });
+      graph.setOutgoing(2L, new long[] { 3L });
+   }
+
+   @Test
+   public void testLinks() {
+      Assert.assertArrayEquals(new long[] { 2L, 3L }, graph.getOutgoingIds(1L));
+      Assert.assertArrayEquals(new long[] { 3L }, graph.getOutgoingIds(2L));
+      Assert.assertArrayEquals(new long[0], graph.getOutgoingIds(3L));
+      Assert.assertArrayEquals(new long[] { 1L, 2L }, graph.getIncomingIds(3L));
+      Assert.assertArrayEquals(new long[] { 1L }, graph.getIncomingIds(2L));
+      Assert.assertArrayEquals(new long[0], graph.getIncomingIds(1L));
+      Assert.assertEquals(3, graph.size());
+   }
+
+   @Test
+   public void testUpdateOutgoing() {
+      graph.setOutgoing(1L, new long[] { 4L });
+      Assert.assertArrayEquals(new long[] { 4L }, graph.getOutgoingIds(1L));
+      Assert.assertArrayEquals(new long[] { 2L }, graph.getIncomingIds(3L));
+      Assert.assertArrayEquals(new long[0], graph.getIncomingIds(2L));
+      Assert.assertArrayEquals(new long[] { 1L }, graph.getIncomingIds(4L));
+   }
+
+   @Test
+   public void testUpdateIncoming() {
+      graph.setIncoming(3L, new long[] { 2L, 5L });
+      Assert.assertArrayEquals(new long[] { 2L }, graph.getOutgoingIds(1L));
+      Assert.assertArrayEquals(new long[] { 3L }, graph.getOutgoingIds(5L));
+      Assert.assertArrayEquals(new long[] { 2L, 5L }, graph.getIncomingIds(3L));
+   }
+
+   @Test
+   public void testRemove() {
+      graph.remove(2L);
+      Assert.assertArrayEquals(new long[] { 3L }, graph.getOutgoingIds(1L));
+      Assert.assertArrayEquals(new long[] { 1L }, graph.getIncomingIds(3L));
+      Assert.assertArrayEquals(new long[0], graph.getOutgoingIds(2L));
+      Assert.assertEquals(2, graph.size());
+      graph.remove(1L);
+      Assert.assertEquals(0, graph.size());
+   }
+
+   @Test
+   public void testCreate() {
+      final Map<Long, long[]> links = new LinkedHashMap<Long, long[]>();
+      final LinkGraph expected = new LinkGraph(0);
+      for (long id = 999; id >= 100; id--) {
+         // every page links to the hub page 1, itself and its successor
+         final long[] targets = new long[] { id + 1, 1L, id, 1L };
+         links.put(id, targets);
+         expected.setOutgoing(id, targets);
+      }
+      links.put(2L, new long[0]);
+      links.put(3L, new long[] { 3L });
+
+      final LinkGraph graph = LinkGraph.create(0, links);
+
+      Assert.assertEquals(expected.size(), graph.size());
+      for (long id = 1; id <= 1000; id++) {
+         Assert.assertArrayEquals(expected.getOutgoingIds(id), graph.getOutgoingIds(id));
+         Assert.assertArrayEquals(expected.getIncomingIds(id), graph.getIncomingIds(id));
+      }
+      Assert.assertEquals(900, graph.getIncomingIds(1L).length);
+      Assert.assertArrayEquals(new long[0], graph.getOutgoingIds(3L));
+
+      graph.remove(1L);
+      Assert.assertArrayEquals(new long[] { 101L }, graph.getOutgoingIds(100L));
+   }
+
+   @Test
+   public void testGrow() {
+      for (long id = 100; id < 1000; id++) {
+         graph.setOutgoing(id, new long[] { 1L, id + 1 });
+      }
+      Assert.assertEquals(900, graph.getIncomingIds(1L).length);
+      Assert.assertArrayEquals(new long[] { 1L, 101L }, graph.getOutgoingIds(100L));
+      Assert.assertArrayEquals(new long[] { 999L }, graph.getIncomingIds(1000L));
+   }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2011 Michael Griffel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * This distribution includes other third-party libraries.
+ * These libraries and their corresponding licenses (where different
+ * from the GNU General Public License) are enumerated below.
+ *
+ * PlantUML is a Open-Source tool in Java to draw UML Diagram.
+ * The software is developed by Arnaud Roques at
+ * http://plantuml.sourceforge.org.
+ */
+package de.griffel.confluence.plugins.plantuml.graph;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * LongHashSetTest.
+ */
+public class LongHashSetTest {
+
+   @Test
+   public void testAddContains() {
+      final LongHashSet set = new LongHashSet();
+      Assert.assertFalse(set.contains(42L));
+      Assert.assertTrue(set.add(42L));
+      Assert.assertFalse(set.add(42L));
+      Assert.assertTrue(set.contains(42L));
+      Assert.assertEquals(1, set.size());
+   }
+
+   @Test
+   public void testGrow() {
+      final LongHashSet set = new LongHashSet();
+      for (long id = 1; id <= 10000; id++) {
+         Assert.assertTrue(set.add(id * 4096));
+      }
+      Assert.assertEquals(10000, set.size());
+      for (long id = 1; id <= 10000; id++) {
+         Assert.assertTrue(set.contains(id * 4096));
+         Assert.assertFalse(set.contains(id * 4096 + 1));
+      }
+   }
+
+   @Test(expected = IllegalArgumentException.class)
+   public void testZeroIdRejected() {
+      new LongHashSet().add(0L);
+   }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2011 Michael Griffel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * This distribution includes other third-party libraries.
+ * These libraries and their corresponding licenses (where different
+ * from the GNU General Public License) are enumerated below.
+ *
+ * PlantUML is a Open-Source tool in Java to draw UML Diagram.
+ * The software is developed by Arnaud Roques at
+ * http://plantuml.sourceforge.org.
+ */
+package de.griffel.confluence.plugins.plantuml.graph;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * LongIntMapTest.
+ */
+public class LongIntMapTest {
+
+   @Test
+   public void testPutGetRemove() {
+      final LongIntMap map = new LongIntMap();
+      Assert.assertEquals(LongIntMap.MISSING, map.get(42L));
+      map.put(42L, 1);
+      map.put(43L, 2);
+      map.put(42L, 3);
+      Assert.assertEquals(2, map.size());
+      Assert.assertEquals(3, map.get(42L));
+      Assert.assertEquals(2, map.get(43L));
+      Assert.assertEquals(3, map.remove(42L));
+      Assert.assertEquals(LongIntMap.MISSING, map.remove(42L));
+      Assert.assertEquals(LongIntMap.MISSING, map.get(42L));
+      Assert.assertEquals(1, map.size());
+   }
+
+   @Test(expected = IllegalArgumentException.class)
+   public void testZeroKeyRejected() {
+      new LongIntMap().put(0L, 1);
+   }
+
+   @Test
+   public void testRandomOperationsMatchHashMap() {
+      final LongIntMap map = new LongIntMap();
+      final Map<Long, Integer> expected = new HashMap<Long, Integer>();
+      final Random random = new Random(4711L);
+      for (int i = 0; i < 20000; i++) {
+         final long key = 1 + random.nextInt(2000);
+         if (random.nextInt(3) == 0) {
+            final Integer removed = expected.remove(key);
+            Assert.assertEquals(removed != null ? removed.intValue() : LongIntMap.MISSING, map.remove(key));
+         } else {
+            expected.put(key, i);
+            map.put(key, i);
+         }
+      }
+      Assert.assertEquals(expected.size(), map.size());
+      for (long key = 1; key <= 2000; key++) {
+         final Integer value = expected.get(key);
+         Assert.assertEquals(value != null ? value.intValue() : LongIntMap.MISSING, map.get(key));
+      }
+   }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2011 Michael Griffel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * This distribution includes other third-party libraries.
+ * These libraries and their corresponding licenses (where different
+ * from the GNU General Public License) are enumerated below.
+ *
+ * PlantUML is a Open-Source tool in Java to draw UML Diagram.
+ * The software is developed by Arnaud Roques at
+ * http://plantuml.sourceforge.org.
+ */
+package de.griffel.confluence.plugins.plantuml.graph;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * LongPairHashSetTest.
+ */
+public class LongPairHashSetTest {
+
+   @Test
+   public void testPairsAreOrdered() {
+      final LongPairHashSet set = new LongPairHashSet();
+      Assert.assertTrue(set.add(1L, 2L));
+      Assert.assertFalse(set.add(1L, 2L));
+      Assert.assertTrue(set.add(2L, 1L));
+      Assert.assertTrue(set.contains(1L, 2L));
+      Assert.assertTrue(set.contains(2L, 1L));
+      Assert.assertFalse(set.contains(1L, 3L));
+      Assert.assertEquals(2, set.size());
+   }
+
+   @Test
+   public void testGrow() {
+      final LongPairHashSet set = new LongPairHashSet();
+      for (long first = 1; first <= 100; first++) {
+         for (long second = 1; second <= 100; second++) {
+            Assert.assertTrue(set.add(first, second));
+         }
+      }
+      Assert.assertEquals(10000, set.size());
+      Assert.assertTrue(set.contains(100L, 1L));
+      Assert.assertFalse(set.contains(101L, 1L));
+   }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2011 Michael Griffel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * This distribution includes other third-party libraries.
+ * These libraries and their corresponding licenses (where different
+ * from the GNU General Public License) are enumerated below.
+ *
+ * PlantUML is a Open-Source tool in Java to draw UML Diagram.
+ * The software is developed by Arnaud Roques at
+ * http://plantuml.sourceforge.org.
+ */
+package de.griffel.confluence.plugins.plantuml.graph;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * SpaceHierarchyTest.
+ */
+public class SpaceHierarchyTest {
+   private SpaceHierarchy hierarchy;
+
+   @Before
+   public void setUp() {
+      hierarchy = new SpaceHierarchy("ds", 0);
+      hierarchy.put(1L, SpaceHierarchy.NO_PARENT, "Home", false);
+      hierarchy.put(2L, 1L, "b child", false);
+      hierarchy.put(3L, 1L, "A child", false);
+      hierarchy.put(4L, 2L, "Grandchild", false);
+      hierarchy.put(5L, SpaceHierarchy.NO_PARENT, "Another root", false);
+   }
+
+   @Test
+   public void testTree() {
+      Assert.assertEquals("ds", hierarchy.getSpaceKey());
+      Assert.assertEquals(5, hierarchy.size());
+      Assert.assertArrayEquals(new long[] { 5L, 1L }, hierarchy.getRootIds());
+      Assert.assertArrayEquals(new long[] { 3L, 2L }, hierarchy.getChildIds(1L));
+      Assert.assertArrayEquals(new long[] { 4L }, hierarchy.getChildIds(2L));
+      Assert.assertArrayEquals(new long[0], hierarchy.getChildIds(4L));
+      Assert.assertArrayEquals(new long[0], hierarchy.getChildIds(42L));
+      Assert.assertEquals("Grandchild", hierarchy.getTitle(4L));
+      Assert.assertNull(hierarchy.getTitle(42L));
+   }
+
+   @Test
+   public void testMoveAndRename() {
+      hierarchy.put(2L, 5L, "B child", false);
+      Assert.assertArrayEquals(new long[] { 3L }, hierarchy.getChildIds(1L));
+      Assert.assertArrayEquals(new long[] { 2L }, hierarchy.getChildIds(5L));
+      Assert.assertEquals("B child", hierarchy.getTitle(2L));
+   }
+
+   @Test
+   public void testDeleted() {
+      hierarchy.put(3L, 1L, "A child", true);
+      Assert.assertArrayEquals(new long[] { 2L }, hierarchy.getChildIds(1L));
+      Assert.assertArrayEquals(new long[0], hierarchy.getChildIds(3L));
+      Assert.assertTrue(hierarchy.contains(3L));
+   }
+
+   @Test
+   public void testRemove() {
+      Assert.assertTrue(hierarchy.remove(1L));
+      Assert.assertFalse(hierarchy.remove(1L));
+      Assert.assertFalse(hierarchy.contains(1L));
+      Assert.assertEquals(4, hierarchy.size());
+      // the children of a removed page are shown as top level pages until they are updated
+      Assert.assertArrayEquals(new long[] { 3L, 5L, 2L }, hierarchy.getRootIds());
+      Assert.assertArrayEquals(new long[] { 4L }, hierarchy.getChildIds(2L));
+   }
+
+   @Test
+   public void testGrow() {
+      for (long id = 100; id < 1000; id++) {
+         hierarchy.put(id, 1L, "Page " + id, false);
+      }
+      Assert.assertEquals(905, hierarchy.size());
+      Assert.assertEquals(902, hierarchy.getChildIds(1L).length);
+   }
+}
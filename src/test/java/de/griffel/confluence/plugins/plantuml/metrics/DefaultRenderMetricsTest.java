@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2011 Michael Griffel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * This distribution includes other third-party libraries.
+ * These libraries and their corresponding licenses (where different
+ * from the GNU General Public License) are enumerated below.
+ *
+ * PlantUML is a Open-Source tool in Java to draw UML Diagram.
+ * The software is developed by Arnaud Roques at
+ * http://plantuml.sourceforge.org.
+ */
+package de.griffel.confluence.plugins.plantuml.metrics;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+
+import net.sourceforge.plantuml.core.DiagramType;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import de.griffel.confluence.plugins.plantuml.render.RenderExecutor;
+
+/**
+ * DefaultRenderMetricsTest.
+ */
+public class DefaultRenderMetricsTest {
+   private final RenderExecutor renderExecutor = mock(RenderExecutor.class);
+   private final MBeanServer mbeanServer = MBeanServerFactory.newMBeanServer();
+   private final DefaultRenderMetrics metrics = new DefaultRenderMetrics(renderExecutor, mbeanServer);
+
+   @After
+   public void tearDown() {
+      metrics.destroy();
+   }
+
+   @Test
+   public void testCacheHitRatio() {
+      metrics.recordCacheHit();
+      metrics.recordCacheHit();
+      metrics.recordCacheHit();
+      metrics.recordCacheMiss();
+      Assert.assertEquals(75.0, metrics.getCacheHitRatio(), 0.001);
+
+      metrics.reset();
+      Assert.assertEquals(0, metrics.getCacheHits());
+      Assert.assertEquals(0.0, metrics.getCacheHitRatio(), 0.001);
+   }
+
+   @Test
+   public void testPublishesMetricsViaJmx() throws Exception {
+      when(renderExecutor.getActiveRenders()).thenReturn(2);
+      when(renderExecutor.getQueuedRenders()).thenReturn(5);
+      metrics.afterPropertiesSet();
+      metrics.recordPhase(RenderPhase.EXPORT, 12);
+      metrics.recordRender(DiagramType.UML, 30);
+
+      final String domain = DefaultRenderMetrics.JMX_DOMAIN;
+      Assert.assertEquals(2, mbeanServer.getAttribute(new ObjectName(domain + ":type=RenderMetrics"), "ActiveRenders"));
+      Assert.assertEquals(5, mbeanServer.getAttribute(new ObjectName(domain + ":type=RenderMetrics"), "QueuedRenders"));
+      Assert.assertEquals(1L,
+            mbeanServer.getAttribute(new ObjectName(domain + ":type=RenderPhase,name=export"), "Count"));
+      Assert.assertEquals(1L,
+            mbeanServer.getAttribute(new ObjectName(domain + ":type=DiagramRender,name=uml"), "Count"));
+
+      metrics.destroy();
+      Assert.assertTrue(mbeanServer.queryNames(new ObjectName(domain + ":*"), null).isEmpty());
+   }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2011 Michael Griffel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * This distribution includes other third-party libraries.
+ * These libraries and their corresponding licenses (where different
+ * from the GNU General Public License) are enumerated below.
+ *
+ * PlantUML is a Open-Source tool in Java to draw UML Diagram.
+ * The software is developed by Arnaud Roques at
+ * http://plantuml.sourceforge.org.
+ */
+package de.griffel.confluence.plugins.plantuml.metrics;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * LatencyHistogramTest.
+ */
+public class LatencyHistogramTest {
+
+   @Test
+   public void testEmpty() {
+      final LatencyHistogram histogram = new LatencyHistogram();
+      Assert.assertEquals(0, histogram.getCount());
+      Assert.assertEquals(0, histogram.getMeanMillis());
+      Assert.assertEquals(0, histogram.getP95Millis());
+   }
+
+   @Test
+   public void testPercentiles() {
+      final LatencyHistogram histogram = new LatencyHistogram();
+      for (int i = 0; i < 95; i++) {
+         histogram.record(3);
+      }
+      for (int i = 0; i < 5; i++) {
+         histogram.record(700);
+      }
+      Assert.assertEquals(100, histogram.getCount());
+      Assert.assertEquals((95 * 3 + 5 * 700) / 100, histogram.getMeanMillis());
+      Assert.assertEquals(700, histogram.getMaxMillis());
+      Assert.assertEquals(5, histogram.getP50Millis());
+      Assert.assertEquals(5, histogram.getP95Millis());
+      Assert.assertEquals(700, histogram.getP99Millis());
+   }
+
+   @Test
+   public void testOverflowBucket() {
+      final LatencyHistogram histogram = new LatencyHistogram();
+      histogram.record(250000);
+      Assert.assertEquals(250000, histogram.getP50Millis());
+   }
+
+   @Test
+   public void testReset() {
+      final LatencyHistogram histogram = new LatencyHistogram();
+      histogram.record(42);
+      histogram.reset();
+      Assert.assertEquals(0, histogram.getCount());
+      Assert.assertEquals(0, histogram.getMaxMillis());
+      Assert.assertEquals(0, histogram.getP99Millis());
+   }
+}
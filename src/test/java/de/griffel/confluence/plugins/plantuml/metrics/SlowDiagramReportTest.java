@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2011 Michael Griffel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * This distribution includes other third-party libraries.
+ * These libraries and their corresponding licenses (where different
+ * from the GNU General Public License) are enumerated below.
+ *
+ * PlantUML is a Open-Source tool in Java to draw UML Diagram.
+ * The software is developed by Arnaud Roques at
+ * http://plantuml.sourceforge.org.
+ */
+package de.griffel.confluence.plugins.plantuml.metrics;
+
+import java.io.StringWriter;
+import java.util.List;
+
+import net.sourceforge.plantuml.core.DiagramType;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * SlowDiagramReportTest.
+ */
+public class SlowDiagramReportTest {
+   private static final String HASH_A = "aa00000000000000000000000000000000000000";
+   private static final String HASH_B = "bb00000000000000000000000000000000000000";
+   private static final String HASH_C = "cc00000000000000000000000000000000000000";
+
+   @Test
+   public void testRanksByPercentile() {
+      final SlowDiagramReport report = new SlowDiagramReport();
+      report.record(1L, "SP", "Fast", DiagramType.UML, HASH_A, 10, 20);
+      report.record(2L, "SP", "Slow", DiagramType.DOT, HASH_B, 500, 900);
+      report.record(2L, "SP", "Slow", DiagramType.DOT, HASH_B, 500, 10);
+
+      final List<SlowDiagram> diagrams = report.getSlowestDiagrams();
+      Assert.assertEquals(2, diagrams.size());
+      Assert.assertEquals(2L, diagrams.get(0).getPageId());
+      Assert.assertEquals(900, diagrams.get(0).getP95Millis());
+      Assert.assertEquals(10, diagrams.get(0).getLastMillis());
+      Assert.assertEquals(2, diagrams.get(0).getExecutions());
+      Assert.assertEquals(1L, diagrams.get(1).getPageId());
+   }
+
+   @Test
+   public void testDropsFastestDiagramIfFull() {
+      final SlowDiagramReport report = new SlowDiagramReport(2);
+      report.record(1L, "SP", "A", DiagramType.UML, HASH_A, 10, 100);
+      report.record(2L, "SP", "B", DiagramType.UML, HASH_B, 10, 200);
+      report.record(3L, "SP", "C", DiagramType.UML, HASH_C, 10, 50);
+      Assert.assertEquals(2, report.getSlowestDiagrams().size());
+      Assert.assertEquals(1L, report.getSlowestDiagrams().get(1).getPageId());
+
+      report.record(3L, "SP", "C", DiagramType.UML, HASH_C, 10, 300);
+      final List<SlowDiagram> diagrams = report.getSlowestDiagrams();
+      Assert.assertEquals(2, diagrams.size());
+      Assert.assertEquals(3L, diagrams.get(0).getPageId());
+      Assert.assertEquals(2L, diagrams.get(1).getPageId());
+   }
+
+   @Test
+   public void testWritesCsv() throws Exception {
+      final SlowDiagramReport report = new SlowDiagramReport();
+      report.record(1L, "SP", "Title, with comma", DiagramType.UML, HASH_A, 10, 20);
+
+      final StringWriter csv = new StringWriter();
+      report.writeCsv(csv);
+      Assert.assertEquals("Page Id,Space Key,Page Title,Diagram Type,Source Hash,Lines,Executions,Last ms,P95 ms\n"
+            + "1,SP,\"Title, with comma\",uml," + HASH_A + ",10,1,20,20\n", csv.toString());
+   }
+}
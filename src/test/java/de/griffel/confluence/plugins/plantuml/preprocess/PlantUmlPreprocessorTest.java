@@ -29,6 +29,7 @@ import com.atlassian.confluence.renderer.PageContext;
 import com.atlassian.confluence.renderer.ShortcutLinkConfig;
 import com.atlassian.confluence.spaces.SpaceManager;
 import com.google.common.collect.ImmutableList;
+import de.griffel.confluence.plugins.plantuml.type.ConfluenceLinkResolver;
 import net.sourceforge.plantuml.CharSequence2;
 import net.sourceforge.plantuml.CharSequence2Impl;
 import net.sourceforge.plantuml.core.UmlSource;
@@ -36,9 +37,18 @@ import org.junit.Assert;
 import org.junit.Test;
 import org.mockito.Mockito;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 public class PlantUmlPreprocessorTest {
+   private static final Pattern INCLUDE_PATTERN = Pattern.compile("^\\s*!include\\s+\"?([^\"]+)\"?$");
+
    @Test
    public void testInlining() throws Exception {
       final UmlSource umlSource = new UmlSource(
@@ -54,6 +64,10 @@ public class PlantUmlPreprocessorTest {
                         new CharSequence2Impl("foo", null),
                         new CharSequence2Impl("bar", null)), true);
                }
+
+               public Set<Long> getDependencies() {
+                  return Collections.emptySet();
+               }
             }, new PreprocessingContext() {
 
                public PageContext getPageContext() {
@@ -80,6 +94,112 @@ public class PlantUmlPreprocessorTest {
                   return new PageAnchorBuilder();
                }
 
+               public ConfluenceLinkResolver getLinkResolver() {
+                  return new ConfluenceLinkResolver(null, getSpaceManager(), getPageManager());
+               }
+
             }).toUmlBlock());
    }
+
+   @Test
+   public void testExpandsIncludeOnce() throws Exception {
+      final MapSourceLocator locator = new MapSourceLocator();
+      locator.put("root", "!include left", "!include right");
+      locator.put("left", "!include common", "left");
+      locator.put("right", "!include common", "right");
+      locator.put("common", "common");
+
+      final PlantUmlPreprocessor preprocessor = new PlantUmlPreprocessor(locator.get("root"), locator, null);
+      Assert.assertEquals("common\nleft\ncommon\nright\n", preprocessor.toUmlBlock());
+      Assert.assertFalse(preprocessor.hasExceptions());
+      Assert.assertEquals(Integer.valueOf(1), locator.lookups.get("common"));
+   }
+
+   @Test
+   public void testReportsCyclicInclude() throws Exception {
+      final MapSourceLocator locator = new MapSourceLocator();
+      locator.put("root", "!include a");
+      locator.put("a", "!include b");
+      locator.put("b", "!include a");
+
+      final PlantUmlPreprocessor preprocessor = new PlantUmlPreprocessor(locator.get("root"), locator, null);
+      preprocessor.toUmlBlock();
+      Assert.assertEquals(1, preprocessor.getExceptions().size());
+      Assert.assertEquals("Cyclic include: a -> b -> a", preprocessor.getExceptions().get(0).getMessage());
+   }
+
+   @Test
+   public void testIncludesEqualLineByLineExpansion() throws Exception {
+      final MapSourceLocator locator = new MapSourceLocator();
+      locator.put("root", "start", "!include nested", " !include \"empty\"", "!include blank", "middle",
+            "!include trailing", "!include nested", "!include", "end", "!include trailing");
+      locator.put("nested", "nested", "!include inner", "!include trailing", "");
+      locator.put("inner", "inner 1", "!include empty", "inner 2");
+      locator.put("empty");
+      locator.put("blank", "");
+      locator.put("trailing", "trailing", "", "");
+
+      final PlantUmlPreprocessor preprocessor = new PlantUmlPreprocessor(locator.get("root"), locator, null);
+      Assert.assertEquals(expandLineByLine(locator, "root"), preprocessor.toUmlBlock());
+      Assert.assertFalse(preprocessor.hasExceptions());
+      Assert.assertEquals("trailing\n\n", new IncludeFunction(locator).apply(null, "!include trailing"));
+   }
+
+   @Test
+   public void testFailedIncludeAppendsNothing() throws Exception {
+      final MapSourceLocator locator = new MapSourceLocator();
+      locator.put("root", "before", "!include a", "!include b", "after");
+      locator.put("a", "a", "!include b", "!include c");
+      locator.put("b", "b");
+      locator.put("c", "!include a");
+
+      final PlantUmlPreprocessor preprocessor = new PlantUmlPreprocessor(locator.get("root"), locator, null);
+      Assert.assertEquals("before\nb\nafter\n", preprocessor.toUmlBlock());
+      Assert.assertEquals(1, preprocessor.getExceptions().size());
+   }
+
+   /**
+    * Expands the includes of the given source the way the preprocessor did before the included sources were
+    * preprocessed straight into the buffer: each included source is preprocessed on its own, its last line separator
+    * is removed and the block is terminated like any other line.
+    */
+   private static String expandLineByLine(MapSourceLocator locator, String name) {
+      final StringBuilder sb = new StringBuilder();
+      for (String line : locator.lines.get(name)) {
+         final Matcher matcher = INCLUDE_PATTERN.matcher(line);
+         if (matcher.find()) {
+            final String block = expandLineByLine(locator, matcher.group(1));
+            sb.append(block.length() > 0 ? block.substring(0, block.length() - 1) : block);
+         } else {
+            sb.append(line);
+         }
+         sb.append('\n');
+      }
+      return sb.toString();
+   }
+
+   private static final class MapSourceLocator implements UmlSourceLocator {
+      private final Map<String, List<CharSequence2>> sources = new HashMap<String, List<CharSequence2>>();
+      private final Map<String, String[]> lines = new HashMap<String, String[]>();
+      private final Map<String, Integer> lookups = new HashMap<String, Integer>();
+
+      void put(String name, String... lines) {
+         final List<CharSequence2> source = new ArrayList<CharSequence2>();
+         for (String line : lines) {
+            source.add(new CharSequence2Impl(line, null));
+         }
+         sources.put(name, source);
+         this.lines.put(name, lines);
+      }
+
+      public UmlSource get(String name) {
+         final Integer count = lookups.get(name);
+         lookups.put(name, count == null ? 1 : count + 1);
+         return new UmlSource(sources.get(name), true);
+      }
+
+      public Set<Long> getDependencies() {
+         return Collections.emptySet();
+      }
+   }
 }
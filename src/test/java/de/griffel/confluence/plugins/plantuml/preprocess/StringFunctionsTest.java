@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2011 Michael Griffel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * This distribution includes other third-party libraries.
+ * These libraries and their corresponding licenses (where different
+ * from the GNU General Public License) are enumerated below.
+ *
+ * PlantUML is a Open-Source tool in Java to draw UML Diagram.
+ * The software is developed by Arnaud Roques at
+ * http://plantuml.sourceforge.org.
+ */
+package de.griffel.confluence.plugins.plantuml.preprocess;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * StringFunctionsTest.
+ */
+public class StringFunctionsTest {
+
+   @Test
+   public void testIsApplicable() throws Exception {
+      final IncludeFunction include = new IncludeFunction(null);
+      Assert.assertTrue(include.isApplicable("!include foo"));
+      Assert.assertTrue(include.isApplicable(" \t!include foo"));
+      Assert.assertFalse(include.isApplicable("Bob -> Alice : !include"));
+
+      final UrlReplaceFunction url = new UrlReplaceFunction();
+      Assert.assertTrue(url.isApplicable("url of Bob is [[Home]]"));
+      Assert.assertFalse(url.isApplicable("Bob -> Alice"));
+      Assert.assertFalse(url.isApplicable(" url of Bob is [[Home]]"));
+   }
+
+   @Test
+   public void testSkipsFunctionsThatAreNotApplicable() throws Exception {
+      final StringFunctions functions = StringFunctions.builder()
+            .add(new IncludeFunction(null))
+            .add(new LineFunction() {
+               public boolean isApplicable(String line) {
+                  return line.startsWith("x");
+               }
+
+               public String apply(PreprocessingContext ctx, String line) {
+                  return "y" + line.substring(1);
+               }
+            })
+            .build();
+      final String line = "Bob -> Alice";
+      Assert.assertSame(line, functions.apply(null, line));
+      Assert.assertEquals("yz", functions.apply(null, "xz"));
+      Assert.assertFalse(functions.isApplicable(line));
+   }
+}
@@ -0,0 +1,283 @@
+/*
+ * Copyright (C) 2011 Michael Griffel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * This distribution includes other third-party libraries.
+ * These libraries and their corresponding licenses (where different
+ * from the GNU General Public License) are enumerated below.
+ *
+ * PlantUML is a Open-Source tool in Java to draw UML Diagram.
+ * The software is developed by Arnaud Roques at
+ * http://plantuml.sourceforge.org.
+ */
+package de.griffel.confluence.plugins.plantuml.render;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.sourceforge.plantuml.FileFormat;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import de.griffel.confluence.plugins.plantuml.cache.DiagramCache;
+import de.griffel.confluence.plugins.plantuml.cache.RenderedDiagram;
+import de.griffel.confluence.plugins.plantuml.cache.RenderedImage;
+import de.griffel.confluence.plugins.plantuml.config.PlantUmlConfiguration;
+import de.griffel.confluence.plugins.plantuml.config.PlantUmlConfigurationBean;
+import de.griffel.confluence.plugins.plantuml.config.PlantUmlConfigurationManager;
+import de.griffel.confluence.plugins.plantuml.type.ImageMap;
+
+/**
+ * DefaultRenderExecutorTest.
+ */
+public class DefaultRenderExecutorTest {
+   private static final RenderedDiagram DIAGRAM = new RenderedDiagram(FileFormat.PNG,
+         Collections.singletonList(new RenderedImage(new byte[1], ImageMap.NULL, 0)));
+
+   private final PlantUmlConfigurationBean configuration = new PlantUmlConfigurationBean();
+   private final CountDownLatch release = new CountDownLatch(1);
+   private final AtomicInteger calls = new AtomicInteger();
+   private final Map<String, RenderedDiagram> cachedDiagrams = new ConcurrentHashMap<String, RenderedDiagram>();
+   private final DefaultRenderExecutor executor = new DefaultRenderExecutor(new PlantUmlConfigurationManager() {
+      public PlantUmlConfiguration load() {
+         return configuration;
+      }
+
+      public PlantUmlConfigurationBean copy() {
+         throw new UnsupportedOperationException();
+      }
+
+      public void save(PlantUmlConfiguration config) {
+         throw new UnsupportedOperationException();
+      }
+   }, new DiagramCache() {
+      public RenderedDiagram get(String key) {
+         return cachedDiagrams.get(key);
+      }
+
+      public void put(String key, RenderedDiagram diagram) {
+         cachedDiagrams.put(key, diagram);
+      }
+
+      public String getDownloadPath(String key, long contentId, RenderedDiagram diagram, RenderedImage image) {
+         return null;
+      }
+
+      public void addOwner(String key, long contentId) {
+      }
+
+      public void remove(String key) {
+         cachedDiagrams.remove(key);
+      }
+
+      public void clear() {
+         cachedDiagrams.clear();
+      }
+   });
+
+   @After
+   public void tearDown() {
+      release.countDown();
+      executor.destroy();
+   }
+
+   @Test
+   public void testRender() throws Exception {
+      Assert.assertSame(DIAGRAM, executor.render("a", new Callable<RenderedDiagram>() {
+         public RenderedDiagram call() {
+            return DIAGRAM;
+         }
+      }));
+      Assert.assertSame(DIAGRAM, cachedDiagrams.get("a"));
+   }
+
+   @Test
+   public void testCancelsRenderAfterTimeout() throws Exception {
+      configuration.setRenderTimeout(1);
+      try {
+         executor.render("a", blockingTask());
+         Assert.fail("RenderTimeoutException expected");
+      } catch (RenderTimeoutException e) {
+         Assert.assertEquals(1, e.getTimeoutSeconds());
+      }
+      Assert.assertNull(cachedDiagrams.get("a"));
+
+      // fails fast without rendering the diagram again
+      try {
+         executor.render("a", blockingTask());
+         Assert.fail("RenderTimeoutException expected");
+      } catch (RenderTimeoutException e) {
+         Assert.assertEquals(1, calls.get());
+      }
+
+      // rendered again after the timeout has been increased
+      configuration.setRenderTimeout(10);
+      release.countDown();
+      Assert.assertSame(DIAGRAM, executor.render("a", blockingTask()));
+   }
+
+   @Test
+   public void testPendingRenderIsShared() throws Exception {
+      configuration.setRenderWaitTimeout(0);
+      assertRejected(true, "a", blockingTask());
+
+      configuration.setRenderWaitTimeout(10);
+      new Thread() {
+         @Override
+         public void run() {
+            try {
+               Thread.sleep(200);
+            } catch (InterruptedException e) {
+               Thread.currentThread().interrupt();
+            }
+            release.countDown();
+         }
+      }.start();
+      Assert.assertSame(DIAGRAM, executor.render("a", blockingTask()));
+      Assert.assertEquals(1, calls.get());
+   }
+
+   @Test
+   public void testRejectsIfQueueIsFull() throws Exception {
+      configuration.setMaxConcurrentRenders(1);
+      configuration.setRenderQueueLength(1);
+      configuration.setRenderWaitTimeout(0);
+      assertRejected(true, "a", blockingTask());
+      assertRejected(true, "b", blockingTask());
+      assertRejected(false, "c", blockingTask());
+   }
+
+   @Test
+   public void testRejectsIfUserLimitIsReached() throws Exception {
+      configuration.setMaxRendersPerUser(1);
+      configuration.setRenderWaitTimeout(0);
+      assertRejected(true, "a", blockingTask());
+      assertRejected(false, "b", blockingTask());
+   }
+
+   @Test
+   public void testBudgetHasItsOwnUserLimit() throws Exception {
+      configuration.setMaxRendersPerUser(1);
+      configuration.setRenderWaitTimeout(0);
+      assertRejected(true, "a", blockingTask());
+
+      RenderBudget.set("test");
+      try {
+         assertRejected(true, "b", blockingTask());
+         assertRejected(false, "c", blockingTask());
+      } finally {
+         RenderBudget.reset();
+      }
+      assertRejected(false, "d", blockingTask());
+   }
+
+   @Test
+   public void testPrerenderDoesNotCountTowardsUserLimit() throws Exception {
+      configuration.setMaxRendersPerUser(1);
+      configuration.setRenderWaitTimeout(0);
+      executor.prerender("a", blockingTask());
+      Assert.assertTrue(executor.isInProgress("a"));
+
+      // the slot of the user is still free
+      assertRejected(true, "b", blockingTask());
+      executor.prerender("c", blockingTask());
+      assertRejected(false, "d", blockingTask());
+      Assert.assertTrue(executor.isInProgress("c"));
+   }
+
+   @Test
+   public void testReleasesUserSlotBeforeReturning() throws Exception {
+      configuration.setMaxRendersPerUser(1);
+      for (int i = 0; i < 100; i++) {
+         Assert.assertSame(DIAGRAM, executor.render("a" + i, new Callable<RenderedDiagram>() {
+            public RenderedDiagram call() {
+               return DIAGRAM;
+            }
+         }));
+      }
+   }
+
+   @Test
+   public void testSubmitRendersInBackground() throws Exception {
+      executor.submit("a", blockingTask());
+      executor.submit("a", blockingTask());
+      Assert.assertTrue(executor.isInProgress("a"));
+      Assert.assertNull(cachedDiagrams.get("a"));
+
+      release.countDown();
+      for (int i = 0; i < 100 && executor.isInProgress("a"); i++) {
+         Thread.sleep(20);
+      }
+      Assert.assertFalse(executor.isInProgress("a"));
+      Assert.assertSame(DIAGRAM, cachedDiagrams.get("a"));
+      Assert.assertEquals(1, calls.get());
+   }
+
+   @Test
+   public void testInvokeAllKeepsOrder() throws Exception {
+      // with a single page thread the remaining tasks run in the calling thread
+      configuration.setMaxConcurrentRenders(1);
+      final List<Callable<Integer>> tasks = new ArrayList<Callable<Integer>>();
+      for (int i = 0; i < 5; i++) {
+         final int index = i;
+         tasks.add(new Callable<Integer>() {
+            public Integer call() throws InterruptedException {
+               Thread.sleep(10 * (5 - index));
+               return index;
+            }
+         });
+      }
+      Assert.assertEquals(Arrays.asList(0, 1, 2, 3, 4), executor.invokeAll(tasks));
+   }
+
+   @Test(expected = IOException.class)
+   public void testPropagatesException() throws Exception {
+      executor.render("a", new Callable<RenderedDiagram>() {
+         public RenderedDiagram call() throws IOException {
+            throw new IOException("failed");
+         }
+      });
+   }
+
+   private Callable<RenderedDiagram> blockingTask() {
+      return new Callable<RenderedDiagram>() {
+         public RenderedDiagram call() throws InterruptedException {
+            calls.incrementAndGet();
+            release.await();
+            return DIAGRAM;
+         }
+      };
+   }
+
+   private void assertRejected(boolean inProgress, String key, Callable<RenderedDiagram> task)
+         throws IOException, RenderTimeoutException {
+      try {
+         executor.render(key, task);
+         Assert.fail("RenderRejectedException expected");
+      } catch (RenderRejectedException e) {
+         Assert.assertEquals(inProgress, e.isInProgress());
+      }
+   }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2011 Michael Griffel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * This distribution includes other third-party libraries.
+ * These libraries and their corresponding licenses (where different
+ * from the GNU General Public License) are enumerated below.
+ *
+ * PlantUML is a Open-Source tool in Java to draw UML Diagram.
+ * The software is developed by Arnaud Roques at
+ * http://plantuml.sourceforge.org.
+ */
+package de.griffel.confluence.plugins.plantuml.rest;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Map;
+
+import javax.ws.rs.core.MultivaluedMap;
+
+import net.sourceforge.plantuml.FileFormat;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableMap;
+
+import de.griffel.confluence.plugins.plantuml.DiagramHtmlBuilder;
+import de.griffel.confluence.plugins.plantuml.PlantUmlMacroParams;
+import de.griffel.confluence.plugins.plantuml.cache.RenderedImage;
+import de.griffel.confluence.plugins.plantuml.type.ImageMap;
+
+/**
+ * DiagramRestResourceTest.
+ */
+public class DiagramRestResourceTest {
+
+   @Test
+   public void testAcceptsDisplayParams() throws Exception {
+      final Map<String, String> params = DiagramRestResource.getDisplayParams(query(ImmutableMap.of(
+            "width", "50%", "border", "2", "hspace", "3", "vspace", "4", "align", "center")));
+
+      Assert.assertEquals(ImmutableMap.of(
+            "width", "50%", "border", "2", "hspace", "3", "vspace", "4", "align", "center"), params);
+      Assert.assertEquals(ImmutableMap.of("width", "120px"),
+            DiagramRestResource.getDisplayParams(query(ImmutableMap.of("width", "120px"))));
+   }
+
+   @Test
+   public void testDropsMaliciousWidth() throws Exception {
+      final Map<String, String> params = DiagramRestResource.getDisplayParams(query(ImmutableMap.of(
+            "width", "100px\" onmouseover=\"alert(1)", "border", "1")));
+
+      Assert.assertEquals(ImmutableMap.of("border", "1"), params);
+      final String html = new DiagramHtmlBuilder(new PlantUmlMacroParams(params)).appendImage(
+            new RenderedImage(new byte[1], ImageMap.NULL, 0), FileFormat.PNG, "/download/diagram.png").toString();
+      Assert.assertFalse(html, html.contains("onmouseover"));
+   }
+
+   @Test
+   public void testDropsNonNumericSpaces() throws Exception {
+      final Map<String, String> params = DiagramRestResource.getDisplayParams(query(ImmutableMap.of(
+            "border", "x", "hspace", "1;", "vspace", "-1", "title", "ignored")));
+
+      Assert.assertTrue(params.toString(), params.isEmpty());
+   }
+
+   @Test
+   public void testNonNumericSpacesDefaultToZero() {
+      final PlantUmlMacroParams params = new PlantUmlMacroParams(ImmutableMap.of(
+            "border", "x", "hspace", "", "vspace", "1.5"));
+
+      Assert.assertEquals(0, params.getBorder());
+      Assert.assertEquals(0, params.getHspace());
+      Assert.assertEquals(0, params.getVspace());
+   }
+
+   @SuppressWarnings("unchecked")
+   private static MultivaluedMap<String, String> query(Map<String, String> values) {
+      final MultivaluedMap<String, String> query = mock(MultivaluedMap.class);
+      when(query.keySet()).thenReturn(values.keySet());
+      for (Map.Entry<String, String> value : values.entrySet()) {
+         when(query.getFirst(value.getKey())).thenReturn(value.getValue());
+      }
+      return query;
+   }
+}
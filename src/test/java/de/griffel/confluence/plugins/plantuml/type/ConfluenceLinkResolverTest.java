@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2011 Michael Griffel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * This distribution includes other third-party libraries.
+ * These libraries and their corresponding licenses (where different
+ * from the GNU General Public License) are enumerated below.
+ *
+ * PlantUML is a Open-Source tool in Java to draw UML Diagram.
+ * The software is developed by Arnaud Roques at
+ * http://plantuml.sourceforge.org.
+ */
+package de.griffel.confluence.plugins.plantuml.type;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.atlassian.confluence.pages.Page;
+import com.atlassian.confluence.pages.PageManager;
+import com.atlassian.confluence.spaces.Space;
+import com.atlassian.confluence.spaces.SpaceManager;
+
+import de.griffel.confluence.plugins.plantuml.preprocess.PageContextMock;
+
+/**
+ * ConfluenceLinkResolverTest.
+ */
+public class ConfluenceLinkResolverTest {
+   private final SpaceManager spaceManager = mock(SpaceManager.class);
+   private final PageManager pageManager = mock(PageManager.class);
+
+   @Test
+   public void testResolvesEachLinkOnce() {
+      final Space space = mock(Space.class);
+      final Page page = mock(Page.class);
+      when(spaceManager.getSpace("PUML")).thenReturn(space);
+      when(pageManager.getPage("PUML", "Bar")).thenReturn(page);
+
+      final ConfluenceLinkResolver resolver =
+            new ConfluenceLinkResolver(new PageContextMock(), spaceManager, pageManager);
+      final ConfluenceLink link = resolver.parse("Bar");
+      Assert.assertSame(link, resolver.parse("Bar"));
+      Assert.assertEquals(new ConfluenceLink("PUML", "Bar", "a.txt", null), resolver.parse("Bar^a.txt"));
+      Assert.assertSame(space, resolver.getSpace("PUML"));
+      Assert.assertSame(page, resolver.getPage("PUML", "Bar"));
+
+      verify(spaceManager, times(1)).getSpace("PUML");
+      verify(pageManager, times(1)).getPage("PUML", "Bar");
+   }
+
+   @Test
+   public void testRemembersInvalidLinks() {
+      when(spaceManager.getSpace("PUML")).thenReturn(mock(Space.class));
+
+      final ConfluenceLinkResolver resolver =
+            new ConfluenceLinkResolver(new PageContextMock(), spaceManager, pageManager);
+      for (int i = 0; i < 2; i++) {
+         try {
+            resolver.parse("Missing");
+            Assert.fail();
+         } catch (ConfluenceLink.NoSuchPageException e) {
+            Assert.assertTrue(e.getMessage().contains("Missing"));
+         }
+      }
+      verify(pageManager, times(1)).getPage("PUML", "Missing");
+   }
+}